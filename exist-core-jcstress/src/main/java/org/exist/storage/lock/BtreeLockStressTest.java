@@ -0,0 +1,113 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.lock;
+
+import org.exist.util.LockException;
+import org.openjdk.jcstress.annotations.*;
+import org.openjdk.jcstress.infra.results.IIII_Result;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Stress tests for the read/write latching of BTrees by the {@link LockManager}.
+ */
+public class BtreeLockStressTest {
+
+    private static final String BTREE_FILE_NAME = "stress.dbx";
+
+    @JCStressTest
+    @Outcome(id = {"0, 0, 0, 0", "1, 1, 1, 1", "0, 0, 1, 1", "1, 1, 0, 0"}, expect = Expect.ACCEPTABLE, desc = "Readers saw the writer's changes atomically")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "Reader saw a partial write")
+    @State
+    public static class SharedReadersExcludeWriter {
+        final LockManager lockManager = new LockManager(1);
+        int x;
+        int y;
+
+        public SharedReadersExcludeWriter() {
+            lockManager.enableBtreeSharedReads(BTREE_FILE_NAME);
+        }
+
+        @Actor
+        public void writer() {
+            try (final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(BTREE_FILE_NAME)) {
+                x = 1;
+                y = 1;
+            } catch (final LockException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Actor
+        public void reader1(final IIII_Result r) {
+            try (final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeReadLock(BTREE_FILE_NAME)) {
+                r.r1 = x;
+                r.r2 = y;
+            } catch (final LockException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Actor
+        public void reader2(final IIII_Result r) {
+            try (final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeReadLock(BTREE_FILE_NAME)) {
+                r.r3 = x;
+                r.r4 = y;
+            } catch (final LockException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @JCStressTest
+    @Outcome(id = "2", expect = Expect.ACCEPTABLE, desc = "Readers were mutually exclusive")
+    @Outcome(id = "1", expect = Expect.FORBIDDEN, desc = "Readers were not mutually exclusive")
+    @State
+    public static class ExclusiveReadersByDefault {
+        final LockManager lockManager = new LockManager(1);
+        int reads;
+
+        @Actor
+        public void reader1() {
+            try (final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeReadLock(BTREE_FILE_NAME)) {
+                reads++;
+            } catch (final LockException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Actor
+        public void reader2() {
+            try (final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeReadLock(BTREE_FILE_NAME)) {
+                reads++;
+            } catch (final LockException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Arbiter
+        public void arbiter(final I_Result r) {
+            r.r1 = reads;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.dom.persistent;
+
+import org.exist.EXistException;
+import org.exist.dom.QName;
+import org.exist.numbering.NodeId;
+import org.exist.storage.BrokerPool;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.Expression;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Node;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link NewArrayNodeSet} with {@link PackedNodeSet} when building a large
+ * node set, iterating over it, and joining it with a set of parent nodes, as is done
+ * for a path step such as {@code //section/para}.
+ *
+ * The nodes are added as they are by the structural index, i.e. from the
+ * bytes of the node id, and with a proxy per node for {@link NewArrayNodeSet}.
+ *
+ * To compare the memory used by the sets, run with the GC profiler, i.e. {@code -prof gc},
+ * for the allocation rate; the heap retained by a built set is printed at the end of each trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class PackedNodeSetBenchmark {
+
+    private static final int DOCUMENTS = 20;
+    private static final int SECTIONS_PER_DOCUMENT = 1000;
+    private static final int PARAS_PER_SECTION = 100;
+    private static final QName PARA = new QName("para");
+
+    @Param({"false", "true"})
+    private boolean packed;
+
+    private ExistEmbeddedServer existEmbeddedServer;
+    private DocumentImpl[] documents;
+    private byte[][] paraIds;
+    private int[] paraUnits;
+    private NodeSet paras;
+    private NodeSet sections;
+
+    @Setup(Level.Trial)
+    public void setup() throws DatabaseConfigurationException, EXistException, IOException {
+        existEmbeddedServer = new ExistEmbeddedServer(true, true);
+        existEmbeddedServer.startDb();
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+
+        documents = new DocumentImpl[DOCUMENTS];
+        paraIds = new byte[SECTIONS_PER_DOCUMENT * PARAS_PER_SECTION][];
+        paraUnits = new int[paraIds.length];
+        sections = new NewArrayNodeSet();
+        final NodeId root = pool.getNodeFactory().createInstance();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            documents[i] = new DocumentImpl(pool, null, i + 1, XmldbURI.create("doc" + i + ".xml"));
+        }
+
+        int p = 0;
+        NodeId section = root.newChild();
+        for (int i = 0; i < SECTIONS_PER_DOCUMENT; i++) {
+            if (i % 10 == 0) {
+                // only every tenth section is joined with
+                for (final DocumentImpl doc : documents) {
+                    sections.add(new NodeProxy(doc, section, Node.ELEMENT_NODE));
+                }
+            }
+            NodeId para = section.newChild();
+            for (int j = 0; j < PARAS_PER_SECTION; j++) {
+                paraIds[p] = new byte[para.size()];
+                para.serialize(paraIds[p], 0);
+                paraUnits[p++] = para.units();
+                para = para.nextSibling();
+            }
+            section = section.nextSibling();
+        }
+
+        paras = build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.gc();
+        final Runtime runtime = Runtime.getRuntime();
+        final long withSet = runtime.totalMemory() - runtime.freeMemory();
+        paras = null;
+        System.gc();
+        final long withoutSet = runtime.totalMemory() - runtime.freeMemory();
+        System.out.println("\nRetained heap of " + (packed ? "PackedNodeSet" : "NewArrayNodeSet") + " of "
+                + (DOCUMENTS * paraIds.length) + " nodes: " + ((withSet - withoutSet) / 1024) + " KB");
+
+        existEmbeddedServer.stopDb(true);
+    }
+
+    private NodeSet build() {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        if (packed) {
+            final PackedNodeSet set = new PackedNodeSet();
+            for (final DocumentImpl doc : documents) {
+                for (int i = 0; i < paraIds.length; i++) {
+                    set.add(doc, paraUnits[i], paraIds[i], 0, Node.ELEMENT_NODE, i, PARA);
+                }
+            }
+            return set;
+        } else {
+            final NewArrayNodeSet set = new NewArrayNodeSet();
+            for (final DocumentImpl doc : documents) {
+                for (int i = 0; i < paraIds.length; i++) {
+                    final NodeId nodeId = pool.getNodeFactory().createFromData(paraUnits[i], paraIds[i], 0);
+                    final NodeProxy node = new NodeProxy(doc, nodeId, Node.ELEMENT_NODE, i);
+                    node.setQName(PARA);
+                    set.add(node);
+                }
+            }
+            return set;
+        }
+    }
+
+    @Benchmark
+    public int buildSet() {
+        return build().getLength();
+    }
+
+    @Benchmark
+    public void iterate(final Blackhole blackhole) {
+        for (final NodeProxy node : paras) {
+            blackhole.consume(node.getInternalAddress());
+        }
+    }
+
+    @Benchmark
+    public int selectParentChild() {
+        return paras.selectParentChild(sections, NodeSet.DESCENDANT, Expression.NO_CONTEXT_ID).getLength();
+    }
+}
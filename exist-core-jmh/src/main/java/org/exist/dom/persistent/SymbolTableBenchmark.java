@@ -0,0 +1,121 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.dom.persistent;
+
+import org.exist.EXistException;
+import org.exist.dom.QName;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Node;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of resolving existing symbols from the {@link SymbolTable}
+ * as the number of concurrent threads increases, as happens when many documents
+ * are indexed or serialized at the same time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SymbolTableBenchmark {
+
+    private static final int NAMES = 256;
+    private static final String NAMESPACE = "http://exist-db.org/symbol-table-benchmark";
+
+    private ExistEmbeddedServer existEmbeddedServer;
+    private SymbolTable symbolTable;
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void setup() throws DatabaseConfigurationException, EXistException, IOException {
+        existEmbeddedServer = new ExistEmbeddedServer(true, true);
+        existEmbeddedServer.startDb();
+        symbolTable = existEmbeddedServer.getBrokerPool().getSymbols();
+
+        // register the symbols up-front, so that only lookups are measured
+        names = new String[NAMES];
+        for (int i = 0; i < NAMES; i++) {
+            names[i] = "name-" + i;
+            symbolTable.getSymbol(names[i]);
+        }
+        symbolTable.getNSSymbol(NAMESPACE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        existEmbeddedServer.stopDb(true);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public short getSymbol1Thread() {
+        return getSymbol();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public short getSymbol4Threads() {
+        return getSymbol();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public short getSymbol16Threads() {
+        return getSymbol();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public short getNSSymbol1Thread() {
+        return symbolTable.getNSSymbol(NAMESPACE);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public short getNSSymbol16Threads() {
+        return symbolTable.getNSSymbol(NAMESPACE);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public QName getQName1Thread() {
+        return getQName();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public QName getQName16Threads() {
+        return getQName();
+    }
+
+    private short getSymbol() {
+        return symbolTable.getSymbol(names[ThreadLocalRandom.current().nextInt(NAMES)]);
+    }
+
+    private QName getQName() {
+        return symbolTable.getQName(Node.ELEMENT_NODE, NAMESPACE, names[ThreadLocalRandom.current().nextInt(NAMES)], null);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.exist.EXistException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.lock.LockManager;
+import org.exist.storage.lock.ManagedLock;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.FileUtils;
+import org.exist.util.LockException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Measures the throughput of {@link BTree#findValue(Value)} as the number
+ * of concurrent readers increases, with exclusive and with shared read latches
+ * (see {@link LockManager#enableBtreeSharedReads(String)}).
+ *
+ * With exclusive read latches the throughput should stay roughly flat
+ * as threads are added. With shared read latches the throughput should
+ * scale with the number of reader threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class ConcurrentFindValueBenchmark {
+
+    private static final byte FILE_ID = 0x7F;
+    private static final short FILE_VERSION = Short.MIN_VALUE;
+    private static final int KEYS = 100_000;
+
+    @Param({"false", "true"})
+    private boolean sharedReads;
+
+    private ExistEmbeddedServer existEmbeddedServer;
+    private Path file;
+    private BTree btree;
+    private LockManager lockManager;
+    private String lockName;
+
+    @Setup(Level.Trial)
+    public void setup() throws DatabaseConfigurationException, EXistException, IOException, DBException {
+        existEmbeddedServer = new ExistEmbeddedServer(true, true);
+        existEmbeddedServer.startDb();
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        file = Files.createTempFile("concurrent-find-value-benchmark", ".dbx");
+        Files.delete(file);
+        btree = new BTree(pool, FILE_ID, FILE_VERSION, false, pool.getCacheManager(), file);
+        btree.create((short) -1);
+        for (int i = 0; i < KEYS; i++) {
+            btree.addValue(key(i), i);
+        }
+        btree.flush();
+
+        lockManager = pool.getLockManager();
+        lockName = FileUtils.fileName(file);
+        if (sharedReads) {
+            lockManager.enableBtreeSharedReads(lockName);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws DBException {
+        btree.close();
+        FileUtils.deleteQuietly(file);
+        existEmbeddedServer.stopDb(true);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long findValue1Reader() throws LockException, IOException, BTreeException {
+        return findValue();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long findValue4Readers() throws LockException, IOException, BTreeException {
+        return findValue();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long findValue16Readers() throws LockException, IOException, BTreeException {
+        return findValue();
+    }
+
+    private long findValue() throws LockException, IOException, BTreeException {
+        final Value key = key(ThreadLocalRandom.current().nextInt(KEYS));
+        try (final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeReadLock(lockName)) {
+            return btree.findValue(key);
+        }
+    }
+
+    private static Value key(final int i) {
+        return new Value("key-" + i);
+    }
+}
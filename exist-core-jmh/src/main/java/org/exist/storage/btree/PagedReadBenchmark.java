@@ -0,0 +1,163 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionException;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.openjdk.jmh.annotations.*;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares XPath scans over the database files when pages are read
+ * with a seek and read of the file, and when they are read through a
+ * memory mapping of the file (see {@link Paged#PROPERTY_MEMORY_MAPPED_FILES}).
+ *
+ * A warm scan runs against a database whose page caches have already been
+ * populated. A cold scan runs against a freshly restarted database, so every
+ * page has to be fetched from the database files. NOTE: the operating system's
+ * own file cache is not dropped between cold scans.
+ */
+public class PagedReadBenchmark {
+
+    private static final XmldbURI COLLECTION_URI = XmldbURI.create("/db/paged-read-benchmark");
+    private static final int DOCUMENTS = 200;
+    private static final int ITEMS_PER_DOCUMENT = 1000;
+    private static final String QUERY = "count(collection('" + COLLECTION_URI + "')//item[@value = 'v42'])";
+
+    @State(Scope.Benchmark)
+    public static class WarmDatabase {
+        @Param({"false", "true"})
+        private boolean memoryMapped;
+
+        private ExistEmbeddedServer existEmbeddedServer;
+
+        @Setup(Level.Trial)
+        public void setup() throws DatabaseConfigurationException, EXistException, IOException, PermissionDeniedException, LockException, SAXException, TriggerException, TransactionException {
+            existEmbeddedServer = startDb(memoryMapped);
+            storeDocuments(existEmbeddedServer.getBrokerPool());
+            scan(existEmbeddedServer.getBrokerPool());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            existEmbeddedServer.stopDb(true);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ColdDatabase {
+        @Param({"false", "true"})
+        private boolean memoryMapped;
+
+        private ExistEmbeddedServer existEmbeddedServer;
+
+        @Setup(Level.Trial)
+        public void setup() throws DatabaseConfigurationException, EXistException, IOException, PermissionDeniedException, LockException, SAXException, TriggerException, TransactionException {
+            existEmbeddedServer = startDb(memoryMapped);
+            storeDocuments(existEmbeddedServer.getBrokerPool());
+        }
+
+        @Setup(Level.Invocation)
+        public void restart() throws DatabaseConfigurationException, EXistException, IOException {
+            // restart without clearing the storage, so that the page caches are empty
+            existEmbeddedServer.restart(false);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            existEmbeddedServer.stopDb(true);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Sequence warmScan(final WarmDatabase warmDatabase) throws EXistException, XPathException, PermissionDeniedException {
+        return scan(warmDatabase.existEmbeddedServer.getBrokerPool());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Sequence coldScan(final ColdDatabase coldDatabase) throws EXistException, XPathException, PermissionDeniedException {
+        return scan(coldDatabase.existEmbeddedServer.getBrokerPool());
+    }
+
+    private static ExistEmbeddedServer startDb(final boolean memoryMapped) throws DatabaseConfigurationException, EXistException, IOException {
+        final Properties configProperties = new Properties();
+        if (memoryMapped) {
+            configProperties.put(Paged.PROPERTY_MEMORY_MAPPED_FILES, new HashSet<>(Arrays.asList("dom.dbx", "structure.dbx", "collections.dbx")));
+        }
+
+        final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(configProperties, true, true);
+        existEmbeddedServer.startDb();
+        return existEmbeddedServer;
+    }
+
+    private static void storeDocuments(final BrokerPool pool) throws EXistException, PermissionDeniedException, IOException, LockException, SAXException, TriggerException, TransactionException {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION_URI);
+
+            for (int i = 0; i < DOCUMENTS; i++) {
+                final StringBuilder builder = new StringBuilder("<items>");
+                for (int j = 0; j < ITEMS_PER_DOCUMENT; j++) {
+                    builder.append("<item value=\"v").append(j % 100).append("\">item ").append(j).append("</item>");
+                }
+                builder.append("</items>");
+
+                broker.storeDocument(transaction, XmldbURI.create("doc" + i + ".xml"), new StringInputSource(builder.toString()), MimeType.XML_TYPE, collection);
+            }
+
+            transaction.commit();
+        }
+    }
+
+    private static Sequence scan(final BrokerPool pool) throws EXistException, XPathException, PermissionDeniedException {
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            return xquery.execute(broker, QUERY, null);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.journal;
+
+import org.exist.EXistException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.txn.TransactionException;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the number of transaction commits per second
+ * that the journal can make durable, with and without group commit,
+ * as the number of concurrent writer threads increases.
+ *
+ * Without group commit every commit pays for its own sync of the journal,
+ * so the throughput should stay roughly flat as threads are added. With group
+ * commit the throughput should scale with the number of writer threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class GroupCommitBenchmark {
+
+    @Param({"false", "true"})
+    private boolean groupCommit;
+
+    @Param({"0", "200"})
+    private int groupCommitWindow;
+
+    private ExistEmbeddedServer existEmbeddedServer;
+    private TransactionManager transactionManager;
+
+    @Setup(Level.Trial)
+    public void startDb() throws DatabaseConfigurationException, EXistException, IOException {
+        final Properties configProperties = new Properties();
+        configProperties.put(BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT, groupCommit);
+        configProperties.put(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW, groupCommitWindow);
+        configProperties.put(Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT, true);
+
+        existEmbeddedServer = new ExistEmbeddedServer(configProperties, true, true);
+        existEmbeddedServer.startDb();
+        transactionManager = existEmbeddedServer.getBrokerPool().getTransactionManager();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopDb() {
+        existEmbeddedServer.stopDb(true);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void commit1Writer() throws TransactionException {
+        commit();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void commit4Writers() throws TransactionException {
+        commit();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void commit16Writers() throws TransactionException {
+        commit();
+    }
+
+    @Benchmark
+    @Threads(40)
+    public void commit40Writers() throws TransactionException {
+        commit();
+    }
+
+    private void commit() throws TransactionException {
+        try (final Txn txn = transactionManager.beginTransaction()) {
+            txn.commit();
+        }
+    }
+}
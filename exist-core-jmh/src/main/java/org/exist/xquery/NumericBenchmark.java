@@ -0,0 +1,79 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.xquery.value.Sequence;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures numeric-heavy XQuery workloads: aggregates over
+ * range expressions, over sequences of computed xs:integer and xs:double values,
+ * and over the result of a FLWOR expression, which is not kept in a primitive array.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class NumericBenchmark {
+
+    @Param({
+            "sum(1 to 10000000)",
+            "avg(1 to 10000000)",
+            "sum((1 to 1000000) ! (. * 2))",
+            "avg((1 to 1000000) ! xs:double(.))",
+            "max((1 to 1000000) ! (. mod 1000))",
+            "min((1 to 1000000) ! (xs:double(.) div 3))",
+            "sum(for $i in 1 to 1000000 return $i * 2)"
+    })
+    private String query;
+
+    private ExistEmbeddedServer existEmbeddedServer;
+
+    @Setup(Level.Trial)
+    public void startDb() throws DatabaseConfigurationException, EXistException, IOException {
+        existEmbeddedServer = new ExistEmbeddedServer(true, true);
+        existEmbeddedServer.startDb();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopDb() {
+        existEmbeddedServer.stopDb(true);
+    }
+
+    @Benchmark
+    public Sequence execute() throws EXistException, XPathException, PermissionDeniedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            return xquery.execute(broker, query, null);
+        }
+    }
+}
@@ -163,6 +163,11 @@ imaginaryTokenDefinitions
 	ORDER_BY
     GROUP_BY
 	POSITIONAL_VAR
+	WINDOW
+	WINDOW_CONDITION
+	CURRENT_ITEM
+	PREVIOUS_ITEM
+	NEXT_ITEM
 	CATCH_ERROR_CODE
 	CATCH_ERROR_DESC
 	CATCH_ERROR_VAL
@@ -692,7 +697,7 @@ expr throws XPathException
 
 exprSingle throws XPathException
 :
-	( ( "for" | "let" ) DOLLAR ) => flworExpr
+	( ( "for" ( DOLLAR | "tumbling" | "sliding" ) ) | ( "let" DOLLAR ) ) => flworExpr
 	| ( "try" LCURLY ) => tryCatchExpr
 	| ( ( "some" | "every" ) DOLLAR ) => quantifiedExpr
 	| ( "if" LPAREN ) => ifExpr
@@ -799,7 +804,7 @@ flworExpr throws XPathException
 
 initialClause throws XPathException
 :
-    ( forClause | letClause )
+    ( ( "for" ( "tumbling" | "sliding" ) ) => windowClause | forClause | letClause )
     ;
 
 intermediateClause throws XPathException
@@ -846,6 +851,55 @@ allowingEmpty
 	"allowing"! "empty"
 	;
 
+windowClause throws XPathException
+{ String varName; }
+:
+	"for"! ( "tumbling" | "sliding" ) "window"! DOLLAR! varName=v:varName! ( typeDeclaration )?
+	"in"! exprSingle windowStartCondition ( windowEndCondition )?
+	{
+		#windowClause= #(#[WINDOW, varName], #windowClause);
+		#windowClause.copyLexInfo(#v);
+	}
+	;
+
+windowStartCondition throws XPathException
+:
+	"start"! windowVars "when"! exprSingle
+	{ #windowStartCondition= #(#[WINDOW_CONDITION, "start"], #windowStartCondition); }
+	;
+
+windowEndCondition throws XPathException
+:
+	( "only" )? "end"! windowVars "when"! exprSingle
+	{ #windowEndCondition= #(#[WINDOW_CONDITION, "end"], #windowEndCondition); }
+	;
+
+windowVars
+:
+	( currentItem )? ( positionalVar )? ( previousItem )? ( nextItem )?
+	;
+
+currentItem
+{ String varName; }
+:
+	DOLLAR! varName=varName
+	{ #currentItem= #[CURRENT_ITEM, varName]; }
+	;
+
+previousItem
+{ String varName; }
+:
+	"previous" DOLLAR! varName=varName
+	{ #previousItem= #[PREVIOUS_ITEM, varName]; }
+	;
+
+nextItem
+{ String varName; }
+:
+	"next" DOLLAR! varName=varName
+	{ #nextItem= #[NEXT_ITEM, varName]; }
+	;
+
 letVarBinding throws XPathException
 { String varName; }
 :
@@ -2224,6 +2278,24 @@ reservedKeywords returns [String name]
 	"map" { name = "map"; }
 	|
 	"array" { name = "array"; }
+	|
+	"tumbling" { name = "tumbling"; }
+	|
+	"sliding" { name = "sliding"; }
+	|
+	"window" { name = "window"; }
+	|
+	"start" { name = "start"; }
+	|
+	"end" { name = "end"; }
+	|
+	"only" { name = "only"; }
+	|
+	"when" { name = "when"; }
+	|
+	"previous" { name = "previous"; }
+	|
+	"next" { name = "next"; }
 	;
 
 /**
@@ -137,6 +137,9 @@ options {
 		List<GroupSpec> groupSpecs = null;
 		List<OrderSpec> orderSpecs = null;
 		boolean allowEmpty = false;
+		WindowExpr.WindowType windowType = null;
+		WindowCondition windowStart = null;
+		WindowCondition windowEnd = null;
 	}
 
 	/**
@@ -1590,6 +1593,48 @@ throws PermissionDeniedException, EXistException, XPathException
 				)+
 			)
 			|
+			// XQuery 3.0 window clause
+			#(
+				win:WINDOW
+				{
+					ForLetClause clause= new ForLetClause();
+					clause.ast = win;
+					clause.type = FLWORClause.ClauseType.WINDOW;
+					PathExpr inputSequence= new PathExpr(context);
+					WindowCondition windowStart= null;
+					WindowCondition windowEnd= null;
+				}
+				(
+					"tumbling"
+					{ clause.windowType = WindowExpr.WindowType.TUMBLING; }
+					|
+					"sliding"
+					{ clause.windowType = WindowExpr.WindowType.SLIDING; }
+				)
+				(
+					#(
+						"as"
+						{ clause.sequenceType= new SequenceType(); }
+						sequenceType [clause.sequenceType]
+					)
+				)?
+				step=expr [inputSequence]
+				windowStart=windowCondition
+				(
+					windowEnd=windowCondition
+				)?
+				{
+					if (clause.windowType == WindowExpr.WindowType.SLIDING && windowEnd == null) {
+						throw new XPathException(win, ErrorCodes.XPST0003, "A sliding window clause requires an end condition");
+					}
+					clause.varName= win.getText();
+					clause.inputSequence= inputSequence;
+					clause.windowStart= windowStart;
+					clause.windowEnd= windowEnd;
+					clauses.add(clause);
+				}
+			)
+			|
 			// XQuery 3.0 group by clause
       #(
           gb:GROUP_BY
@@ -1724,6 +1769,9 @@ throws PermissionDeniedException, EXistException, XPathException
                 break;
             case ORDERBY:
                 expr = new OrderByClause(context, clause.orderSpecs);
+                break;
+            case WINDOW:
+                expr = new WindowExpr(context, clause.windowType, clause.windowStart, clause.windowEnd);
                 break;
 						case WHERE:
 								expr = new WhereClause(context, new DebuggableExpression(clause.inputSequence));
@@ -1733,7 +1781,8 @@ throws PermissionDeniedException, EXistException, XPathException
                 break;
 				}
 				expr.setASTNode(clause.ast);
-				if (clause.type == FLWORClause.ClauseType.FOR || clause.type == FLWORClause.ClauseType.LET) {
+				if (clause.type == FLWORClause.ClauseType.FOR || clause.type == FLWORClause.ClauseType.LET
+						|| clause.type == FLWORClause.ClauseType.WINDOW) {
 				    final BindingExpression bind = (BindingExpression)expr;
             bind.setVariable(clause.varName);
             bind.setSequenceType(clause.sequenceType);
@@ -2923,6 +2972,49 @@ throws PermissionDeniedException, EXistException, XPathException
 	)
 	;
 
+windowCondition
+returns [WindowCondition condition]
+throws PermissionDeniedException, EXistException, XPathException
+{
+	condition= null;
+	boolean only= false;
+	String currentItem= null;
+	String posVar= null;
+	String previousItem= null;
+	String nextItem= null;
+	PathExpr whenExpr= new PathExpr(context);
+	Expression step= null;
+}
+:
+	#(
+		WINDOW_CONDITION
+		(
+			"only"
+			{ only= true; }
+		)?
+		(
+			cur:CURRENT_ITEM
+			{ currentItem= cur.getText(); }
+		)?
+		(
+			pos:POSITIONAL_VAR
+			{ posVar= pos.getText(); }
+		)?
+		(
+			prev:PREVIOUS_ITEM
+			{ previousItem= prev.getText(); }
+		)?
+		(
+			next:NEXT_ITEM
+			{ nextItem= next.getText(); }
+		)?
+		step=expr [whenExpr]
+		{
+			condition= new WindowCondition(context, whenExpr, only, currentItem, posVar, previousItem, nextItem);
+		}
+	)
+	;
+
 forwardAxis returns [int axis]
 throws PermissionDeniedException, EXistException
 { axis= Constants.UNKNOWN_AXIS; }
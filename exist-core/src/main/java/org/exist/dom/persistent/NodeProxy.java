@@ -209,6 +209,16 @@ public class NodeProxy implements NodeSet, NodeValue, NodeHandle, DocumentSet, C
         this.qname = qname;
     }
 
+    /**
+     * Get the name of the node if it is already known,
+     * i.e. without loading the node as {@link #getQName()} would.
+     *
+     * @return the name of the node, or null if it is not known
+     */
+    QName getKnownQName() {
+        return qname;
+    }
+
     @Override
     public int getImplementationType() {
         return NodeValue.PERSISTENT_NODE;
@@ -573,6 +583,10 @@ public class NodeProxy implements NodeSet, NodeValue, NodeHandle, DocumentSet, C
         return context;
     }
 
+    void setContext(final ContextItem context) {
+        this.context = context;
+    }
+
     public String debugContext() {
         final StringBuilder buf = new StringBuilder();
         buf.append("Context for ").append(nodeId).append(" [ ").append(toString()).append("] : ");
@@ -0,0 +1,1026 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.dom.persistent;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.jcip.annotations.NotThreadSafe;
+import org.exist.dom.INode;
+import org.exist.dom.QName;
+import org.exist.numbering.NodeId;
+import org.exist.xquery.Constants;
+import org.exist.xquery.Expression;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.Type;
+import org.w3c.dom.Node;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A node set which stores its nodes column by column in arrays of primitives,
+ * rather than as an array of {@link NodeProxy} objects like {@link NewArrayNodeSet}.
+ *
+ * For each node the set keeps the document id, the bit count and bytes of the node id,
+ * the storage address, the node type and the index of the node's name in a table of names.
+ * The matches and context items, which most nodes do not have, are kept in columns which
+ * are only allocated once a node has any. A large set therefore takes up a fraction of the
+ * memory of a {@link NewArrayNodeSet}, and can be filled from an index without creating any
+ * objects per node, see {@link #add(DocumentImpl, int, byte[], int, short, long, QName)}.
+ *
+ * A {@link NodeProxy} is only created when a node is first read from the set. From then on the
+ * set holds on to that proxy, and hands out the same proxy for the node again, so that changes
+ * made to its matches, context or address are seen by the set and by any other holder of the
+ * proxy, as with the other node sets. Proxies which were added to the set are kept in the same
+ * way. Joins with a set of parent or ancestor nodes are evaluated on the columns, see
+ * {@link #selectParentChild(NodeSet, int, int)}, and their result is again a packed set. A set
+ * which is only joined, and not iterated, therefore never creates a proxy for most of its nodes.
+ *
+ * Like {@link NewArrayNodeSet}, the nodes are appended and the set is sorted and its
+ * duplicates are removed on first read, unless the nodes were added in document order.
+ */
+@NotThreadSafe
+public class PackedNodeSet extends AbstractNodeSet implements ExtNodeSet {
+
+    private static final int INITIAL_SIZE = 64;
+    private static final short NO_QNAME = -1;
+
+    private int size = 0;
+
+    private int[] docIds;
+    private int[] nodeIdUnits;
+    private int[] nodeIdOffsets;
+    private byte[] nodeIdData;
+    private int nodeIdDataLen = 0;
+    private long[] addresses;
+    private short[] nodeTypes;
+    private short[] qnames;
+    @Nullable private Match[] matches = null;
+    @Nullable private ContextItem[] contexts = null;
+
+    private final Int2ObjectMap<DocumentImpl> documents = new Int2ObjectOpenHashMap<>();
+    private final List<QName> qnameTable = new ArrayList<>();
+    private final Object2IntMap<QName> qnameIndexes = new Object2IntOpenHashMap<>();
+
+    /**
+     * The nodes of each document, valid whilst the set is sorted,
+     * see {@link NewArrayNodeSet} for the layout.
+     */
+    private int documentCount = 0;
+    private int[] documentIds = new int[16];
+    private int[] documentNodesOffset = new int[16];
+    private int[] documentNodesCount = new int[16];
+
+    private boolean isSorted = true;
+    private boolean hasOne = false;
+    private int state = 0;
+    private int itemType = Type.ANY_TYPE;
+    @Nullable private DocumentSet documentSet = null;
+
+    /**
+     * The proxies which have been handed out or added, by the index of their node.
+     * A proxy is the current state of its node, its columns are brought up to date
+     * by {@link #syncProxies()}.
+     */
+    @Nullable private NodeProxy[] proxies = null;
+
+    public PackedNodeSet() {
+        this(INITIAL_SIZE);
+    }
+
+    public PackedNodeSet(final int initialSize) {
+        final int capacity = Math.max(initialSize, 1);
+        docIds = new int[capacity];
+        nodeIdUnits = new int[capacity];
+        nodeIdOffsets = new int[capacity];
+        nodeIdData = new byte[capacity * 4];
+        addresses = new long[capacity];
+        nodeTypes = new short[capacity];
+        qnames = new short[capacity];
+        qnameIndexes.defaultReturnValue(NO_QNAME);
+    }
+
+    /**
+     * Add a node to the set, without creating a {@link NodeProxy} for it.
+     *
+     * @param doc the document of the node
+     * @param units the number of bits of the node id
+     * @param data the serialized node id
+     * @param offset the offset of the node id in {@code data}
+     * @param nodeType the type of the node
+     * @param address the storage address of the node
+     * @param qname the name of the node, or null if it is not known
+     */
+    public void add(final DocumentImpl doc, final int units, final byte[] data, final int offset,
+            final short nodeType, final long address, @Nullable final QName qname) {
+        final int idx = append(doc, units, nodeType, address, qname);
+        System.arraycopy(data, offset, nodeIdData, nodeIdOffsets[idx], nodeIdLength(units));
+        appended(idx);
+    }
+
+    @Override
+    public void add(final NodeProxy proxy) {
+        final NodeId nodeId = proxy.getNodeId();
+        final int idx = append(proxy.getOwnerDocument(), nodeId.units(), proxy.getNodeType(),
+                proxy.getInternalAddress(), proxy.getKnownQName());
+        serializeNodeId(nodeId, idx);
+        if (proxy.getMatches() != null) {
+            ensureMatches()[idx] = proxy.getMatches();
+        }
+        if (proxy.getContext() != null) {
+            ensureContexts()[idx] = proxy.getContext();
+        }
+        ensureProxies()[idx] = proxy;
+        appended(idx);
+    }
+
+    /**
+     * Append a copy of a node of this set to another set, without creating a proxy for it.
+     */
+    private void copyTo(final PackedNodeSet target, final int idx) {
+        target.add(documents.get(docIds[idx]), nodeIdUnits[idx], nodeIdData, nodeIdOffsets[idx], nodeTypes[idx],
+                addresses[idx], qnames[idx] == NO_QNAME ? null : qnameTable.get(qnames[idx]));
+        final int targetIdx = target.size - 1;
+        if (matches != null && matches[idx] != null) {
+            target.ensureMatches()[targetIdx] = matches[idx];
+        }
+        if (contexts != null && contexts[idx] != null) {
+            target.ensureContexts()[targetIdx] = contexts[idx];
+        }
+    }
+
+    @Override
+    public void addAll(final NodeSet other) {
+        for (final NodeProxy node : other) {
+            add(node);
+        }
+    }
+
+    private int append(final DocumentImpl doc, final int units, final short nodeType, final long address,
+            @Nullable final QName qname) {
+        ensureCapacity(nodeIdLength(units));
+        final int idx = size++;
+        final int docId = doc.getDocId();
+        if (!documents.containsKey(docId)) {
+            documents.put(docId, doc);
+            documentSet = null;
+        }
+        docIds[idx] = docId;
+        nodeIdUnits[idx] = units;
+        nodeIdOffsets[idx] = nodeIdDataLen;
+        nodeIdDataLen += nodeIdLength(units);
+        addresses[idx] = address;
+        nodeTypes[idx] = nodeType;
+        qnames[idx] = qnameIndex(qname);
+        return idx;
+    }
+
+    /**
+     * Update the order, the ranges of the documents and the
+     * state of the set after a node was appended.
+     */
+    private void appended(final int idx) {
+        if (idx == 0) {
+            hasOne = true;
+        } else {
+            hasOne = hasOne && compareNodes(0, idx) == 0;
+            if (isSorted && compareNodes(idx - 1, idx) >= 0) {
+                // out of order or a duplicate, both are dealt with by sort()
+                isSorted = false;
+            }
+        }
+        if (isSorted) {
+            addToDocumentRange(idx);
+        }
+        checkItemType(nodeTypes[idx] == Node.ATTRIBUTE_NODE ? Type.ATTRIBUTE : Type.ELEMENT);
+        state = (state == Integer.MAX_VALUE ? 0 : state + 1);
+    }
+
+    private void checkItemType(final int type) {
+        if (itemType == Type.NODE || itemType == type) {
+            return;
+        }
+        if (itemType == Type.ANY_TYPE) {
+            itemType = type;
+        } else {
+            itemType = Type.NODE;
+        }
+    }
+
+    @Override
+    public int getItemType() {
+        return itemType;
+    }
+
+    private void ensureCapacity(final int nodeIdLength) {
+        if (size == docIds.length) {
+            final int capacity = size << 1;
+            docIds = Arrays.copyOf(docIds, capacity);
+            nodeIdUnits = Arrays.copyOf(nodeIdUnits, capacity);
+            nodeIdOffsets = Arrays.copyOf(nodeIdOffsets, capacity);
+            addresses = Arrays.copyOf(addresses, capacity);
+            nodeTypes = Arrays.copyOf(nodeTypes, capacity);
+            qnames = Arrays.copyOf(qnames, capacity);
+            if (matches != null) {
+                matches = Arrays.copyOf(matches, capacity);
+            }
+            if (contexts != null) {
+                contexts = Arrays.copyOf(contexts, capacity);
+            }
+            if (proxies != null) {
+                proxies = Arrays.copyOf(proxies, capacity);
+            }
+        }
+        ensureNodeIdDataCapacity(nodeIdLength);
+    }
+
+    private void ensureNodeIdDataCapacity(final int nodeIdLength) {
+        if (nodeIdDataLen + nodeIdLength > nodeIdData.length) {
+            nodeIdData = Arrays.copyOf(nodeIdData, Math.max(nodeIdData.length << 1, nodeIdDataLen + nodeIdLength));
+        }
+    }
+
+    private Match[] ensureMatches() {
+        if (matches == null) {
+            matches = new Match[docIds.length];
+        }
+        return matches;
+    }
+
+    private ContextItem[] ensureContexts() {
+        if (contexts == null) {
+            contexts = new ContextItem[docIds.length];
+        }
+        return contexts;
+    }
+
+    private NodeProxy[] ensureProxies() {
+        if (proxies == null) {
+            proxies = new NodeProxy[docIds.length];
+        }
+        return proxies;
+    }
+
+    private short qnameIndex(@Nullable final QName qname) {
+        if (qname == null) {
+            return NO_QNAME;
+        }
+        int idx = qnameIndexes.getInt(qname);
+        if (idx == NO_QNAME) {
+            if (qnameTable.size() == Short.MAX_VALUE) {
+                // too many distinct names, the name is looked up when needed
+                return NO_QNAME;
+            }
+            idx = qnameTable.size();
+            qnameTable.add(qname);
+            qnameIndexes.put(qname, idx);
+        }
+        return (short) idx;
+    }
+
+    private static int nodeIdLength(final int units) {
+        return (units + 7) >>> 3;
+    }
+
+    private void serializeNodeId(final NodeId nodeId, final int idx) {
+        // NOTE: the bytes of a node id may have trailing padding, which is not kept
+        if (nodeId.size() > nodeIdLength(nodeId.units())) {
+            final byte[] data = new byte[nodeId.size()];
+            nodeId.serialize(data, 0);
+            System.arraycopy(data, 0, nodeIdData, nodeIdOffsets[idx], nodeIdLength(nodeId.units()));
+        } else {
+            nodeId.serialize(nodeIdData, nodeIdOffsets[idx]);
+        }
+    }
+
+    /**
+     * Compare two nodes of the set in document order.
+     */
+    private int compareNodes(final int idx0, final int idx1) {
+        if (docIds[idx0] != docIds[idx1]) {
+            return docIds[idx0] < docIds[idx1] ? -1 : 1;
+        }
+        return compareNodeIds(idx0, nodeIdData, nodeIdOffsets[idx1], nodeIdLength(nodeIdUnits[idx1]));
+    }
+
+    /**
+     * Compare the node id of a node of the set with a serialized node id,
+     * in the same way as {@link NodeId#compareTo(NodeId)}.
+     */
+    private int compareNodeIds(final int idx, final byte[] data, final int offset, final int length) {
+        final int start = nodeIdOffsets[idx];
+        final int len = nodeIdLength(nodeIdUnits[idx]);
+        final int limit = Math.min(len, length);
+        for (int i = 0; i < limit; i++) {
+            final int b0 = nodeIdData[start + i] & 0xFF;
+            final int b1 = data[offset + i] & 0xFF;
+            if (b0 != b1) {
+                return b0 - b1;
+            }
+        }
+        return len - length;
+    }
+
+    private NodeId nodeIdAt(final int idx) {
+        return documents.get(docIds[idx]).getBrokerPool().getNodeFactory()
+                .createFromData(nodeIdUnits[idx], nodeIdData, nodeIdOffsets[idx]);
+    }
+
+    /**
+     * Create a proxy for a node of the set.
+     */
+    private NodeProxy newProxy(final int idx) {
+        final NodeProxy proxy = new NodeProxy(documents.get(docIds[idx]), nodeIdAt(idx), nodeTypes[idx], addresses[idx]);
+        if (qnames[idx] != NO_QNAME) {
+            proxy.setQName(qnameTable.get(qnames[idx]));
+        }
+        if (matches != null && matches[idx] != null) {
+            proxy.setMatches(matches[idx]);
+        }
+        if (contexts != null && contexts[idx] != null) {
+            proxy.setContext(contexts[idx]);
+        }
+        return proxy;
+    }
+
+    /**
+     * Write the changes made to a proxy of a node back to the columns of the set.
+     */
+    private void writeBack(final int idx, final NodeProxy proxy) {
+        addresses[idx] = proxy.getInternalAddress();
+        nodeTypes[idx] = proxy.getNodeType();
+        if (qnames[idx] == NO_QNAME && proxy.getKnownQName() != null) {
+            qnames[idx] = qnameIndex(proxy.getKnownQName());
+        }
+        final Match match = proxy.getMatches();
+        if (match != null || matches != null) {
+            ensureMatches()[idx] = match;
+        }
+        final ContextItem context = proxy.getContext();
+        if (context != null || contexts != null) {
+            ensureContexts()[idx] = context;
+        }
+    }
+
+    /**
+     * Bring the columns up to date with the changes made to the proxies handed out,
+     * before the columns are read directly.
+     */
+    private void syncProxies() {
+        if (proxies == null) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (proxies[i] != null) {
+                writeBack(i, proxies[i]);
+            }
+        }
+    }
+
+    /**
+     * Get the proxy of a node to hand out. The same proxy is returned
+     * for the node from then on.
+     */
+    private NodeProxy proxy(final int idx) {
+        if (proxies != null && proxies[idx] != null) {
+            return proxies[idx];
+        }
+        final NodeProxy proxy = newProxy(idx);
+        ensureProxies()[idx] = proxy;
+        return proxy;
+    }
+
+    /**
+     * Get the proxy of a node to be changed or read by the set itself. This is
+     * the proxy handed out for the node if there is one, so that its holders see
+     * the changes, or else a new proxy, which must be written back with
+     * {@link #writeBack(int, NodeProxy)} if it was changed.
+     */
+    private NodeProxy nodeAt(final int idx) {
+        if (proxies != null && proxies[idx] != null) {
+            return proxies[idx];
+        }
+        return newProxy(idx);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean hasOne() {
+        return hasOne;
+    }
+
+    @Override
+    public int getLength() {
+        sort();
+        return size;
+    }
+
+    @Override
+    public long getItemCountLong() {
+        return getLength();
+    }
+
+    @Override
+    public Node item(final int pos) {
+        final NodeProxy p = get(pos);
+        return p == null ? null : p.getNode();
+    }
+
+    @Override
+    public Item itemAt(final int pos) {
+        return get(pos);
+    }
+
+    @Override
+    public NodeProxy get(final int pos) {
+        sort();
+        if (pos < 0 || pos >= size) {
+            return null;
+        }
+        return proxy(pos);
+    }
+
+    @Override
+    public NodeProxy get(final NodeProxy proxy) {
+        return get(proxy.getOwnerDocument(), proxy.getNodeId());
+    }
+
+    @Override
+    public NodeProxy get(final DocumentImpl doc, final NodeId nodeId) {
+        final int idx = indexOf(doc.getDocId(), nodeId);
+        return idx < 0 ? null : proxy(idx);
+    }
+
+    @Override
+    public boolean contains(final NodeProxy proxy) {
+        return indexOf(proxy.getOwnerDocument().getDocId(), proxy.getNodeId()) > -1;
+    }
+
+    @Override
+    public boolean containsReference(final Item item) {
+        if (!(item instanceof NodeProxy) || proxies == null) {
+            return false;
+        }
+        final NodeProxy proxy = (NodeProxy) item;
+        final int idx = indexOf(proxy.getOwnerDocument().getDocId(), proxy.getNodeId());
+        return idx > -1 && proxies[idx] == item;
+    }
+
+    @Override
+    public boolean contains(final Item item) {
+        if (!(item instanceof NodeProxy)) {
+            return false;
+        }
+        return contains((NodeProxy) item);
+    }
+
+    /**
+     * Find a node in the set.
+     *
+     * @param docId the id of the document of the node
+     * @param nodeId the id of the node
+     *
+     * @return the index of the node, or -1 if the node is not in the set
+     */
+    private int indexOf(final int docId, final NodeId nodeId) {
+        sort();
+        final int docIdx = findDoc(docId);
+        if (docIdx < 0) {
+            return -1;
+        }
+        final byte[] id = serialize(nodeId);
+        final int idx = lowerBound(docIdx, id);
+        if (idx < documentNodesOffset[docIdx] + documentNodesCount[docIdx]
+                && compareNodeIds(idx, id, 0, id.length) == 0) {
+            return idx;
+        }
+        return -1;
+    }
+
+    private static byte[] serialize(final NodeId nodeId) {
+        final byte[] data = new byte[nodeId.size()];
+        nodeId.serialize(data, 0);
+        return Arrays.copyOf(data, nodeIdLength(nodeId.units()));
+    }
+
+    /**
+     * Find the first node of a document, which is not before the given node id.
+     *
+     * @param docIdx the index of the document in {@link #documentIds}
+     * @param id the serialized node id
+     *
+     * @return the index of the node, or the end of the nodes of the document
+     */
+    private int lowerBound(final int docIdx, final byte[] id) {
+        int low = documentNodesOffset[docIdx];
+        int high = low + documentNodesCount[docIdx];
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compareNodeIds(mid, id, 0, id.length) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int findDoc(final int docId) {
+        return Arrays.binarySearch(documentIds, 0, documentCount, docId);
+    }
+
+    private void addToDocumentRange(final int idx) {
+        if (documentCount > 0 && documentIds[documentCount - 1] == docIds[idx]) {
+            documentNodesCount[documentCount - 1]++;
+            return;
+        }
+        if (documentCount == documentIds.length) {
+            final int capacity = documentCount << 1;
+            documentIds = Arrays.copyOf(documentIds, capacity);
+            documentNodesOffset = Arrays.copyOf(documentNodesOffset, capacity);
+            documentNodesCount = Arrays.copyOf(documentNodesCount, capacity);
+        }
+        documentIds[documentCount] = docIds[idx];
+        documentNodesOffset[documentCount] = idx;
+        documentNodesCount[documentCount++] = 1;
+    }
+
+    @Override
+    public int getSizeHint(final DocumentImpl doc) {
+        sort();
+        final int docIdx = findDoc(doc.getDocId());
+        return docIdx < 0 ? Constants.NO_SIZE_HINT : documentNodesCount[docIdx];
+    }
+
+    /**
+     * Sort the nodes in document order and remove the duplicates,
+     * without merging their contexts.
+     */
+    public void sort() {
+        sort(false);
+    }
+
+    /**
+     * Remove all duplicate nodes, but merge their contexts.
+     */
+    public void mergeDuplicates() {
+        sort(true);
+    }
+
+    /**
+     * Sort the nodes in document order and remove the duplicates.
+     * The matches of duplicates are always merged.
+     *
+     * @param mergeContexts true to also merge the contexts of duplicates
+     */
+    public void sort(final boolean mergeContexts) {
+        if (isSorted) {
+            return;
+        }
+        syncProxies();
+
+        final int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        IntArrays.quickSort(order, 0, size, this::compareNodes);
+
+        final int[] oldDocIds = docIds;
+        final int[] oldNodeIdUnits = nodeIdUnits;
+        final int[] oldNodeIdOffsets = nodeIdOffsets;
+        final byte[] oldNodeIdData = nodeIdData;
+        final long[] oldAddresses = addresses;
+        final short[] oldNodeTypes = nodeTypes;
+        final short[] oldQNames = qnames;
+        @Nullable final Match[] oldMatches = matches;
+        @Nullable final ContextItem[] oldContexts = contexts;
+        @Nullable final NodeProxy[] oldProxies = proxies;
+
+        final int capacity = docIds.length;
+        docIds = new int[capacity];
+        nodeIdUnits = new int[capacity];
+        nodeIdOffsets = new int[capacity];
+        nodeIdData = new byte[Math.max(nodeIdDataLen, 1)];
+        addresses = new long[capacity];
+        nodeTypes = new short[capacity];
+        qnames = new short[capacity];
+        matches = oldMatches == null ? null : new Match[capacity];
+        contexts = oldContexts == null ? null : new ContextItem[capacity];
+        proxies = oldProxies == null ? null : new NodeProxy[capacity];
+
+        // the duplicates whose matches or contexts have to be merged into the node kept
+        final List<int[]> merges = new ArrayList<>();
+        int j = -1;
+        int kept = -1;
+        nodeIdDataLen = 0;
+        for (final int i : order) {
+            if (kept > -1 && compareNodes(kept, i) == 0) {
+                if ((oldMatches != null && oldMatches[i] != null) || (mergeContexts && oldContexts != null && oldContexts[i] != null)) {
+                    merges.add(new int[] { j, i });
+                }
+                continue;
+            }
+            kept = i;
+            j++;
+            docIds[j] = oldDocIds[i];
+            nodeIdUnits[j] = oldNodeIdUnits[i];
+            nodeIdOffsets[j] = nodeIdDataLen;
+            final int len = nodeIdLength(oldNodeIdUnits[i]);
+            System.arraycopy(oldNodeIdData, oldNodeIdOffsets[i], nodeIdData, nodeIdDataLen, len);
+            nodeIdDataLen += len;
+            addresses[j] = oldAddresses[i];
+            nodeTypes[j] = oldNodeTypes[i];
+            qnames[j] = oldQNames[i];
+            if (oldMatches != null) {
+                matches[j] = oldMatches[i];
+            }
+            if (oldContexts != null) {
+                contexts[j] = oldContexts[i];
+            }
+            if (oldProxies != null) {
+                proxies[j] = oldProxies[i];
+            }
+        }
+        size = j + 1;
+
+        for (final int[] merge : merges) {
+            final NodeProxy node = nodeAt(merge[0]);
+            final NodeProxy duplicate = new NodeProxy(node.getOwnerDocument(), node.getNodeId());
+            if (oldMatches != null) {
+                duplicate.setMatches(oldMatches[merge[1]]);
+            }
+            if (mergeContexts && oldContexts != null) {
+                duplicate.setContext(oldContexts[merge[1]]);
+                node.addContext(duplicate);
+            }
+            node.addMatches(duplicate);
+            writeBack(merge[0], node);
+        }
+
+        documentCount = 0;
+        for (int i = 0; i < size; i++) {
+            addToDocumentRange(i);
+        }
+        hasOne = size == 1;
+        isSorted = true;
+    }
+
+    @Override
+    public NodeSetIterator iterator() {
+        sort();
+        return new PackedIterator();
+    }
+
+    @Override
+    public SequenceIterator iterate() {
+        sort();
+        return new PackedIterator();
+    }
+
+    @Override
+    public SequenceIterator unorderedIterator() {
+        sort();
+        return new PackedIterator();
+    }
+
+    @Override
+    public NodeSet copy() {
+        sort();
+        syncProxies();
+        final PackedNodeSet copy = new PackedNodeSet(Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            if (proxies != null && proxies[i] != null) {
+                // like the other node sets, the copy holds on to the same proxies
+                copy.add(proxies[i]);
+            } else {
+                copyTo(copy, i);
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    public DocumentSet getDocumentSet() {
+        if (documentSet == null) {
+            final DefaultDocumentSet docs = new DefaultDocumentSet(documents.size());
+            final int[] ids = documents.keySet().toIntArray();
+            Arrays.sort(ids);
+            for (final int docId : ids) {
+                docs.add(documents.get(docId), false);
+            }
+            documentSet = docs;
+        }
+        return documentSet;
+    }
+
+    @Override
+    public void setSelfAsContext(final int contextId) throws XPathException {
+        for (int i = 0; i < size; i++) {
+            final NodeProxy node = nodeAt(i);
+            node.addContextNode(contextId, node);
+            writeBack(i, node);
+        }
+    }
+
+    @Override
+    public void clearContext(final int contextId) throws XPathException {
+        syncProxies();
+        if (contexts == null) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            if (contexts[i] != null) {
+                final NodeProxy node = nodeAt(i);
+                node.clearContext(contextId);
+                writeBack(i, node);
+            }
+        }
+    }
+
+    @Override
+    public void nodeMoved(final NodeId oldNodeId, final NodeHandle newNode) {
+        final int idx = indexOf(newNode.getOwnerDocument().getDocId(), oldNodeId);
+        if (idx < 0) {
+            return;
+        }
+        final NodeProxy node = nodeAt(idx);
+        node.nodeMoved(oldNodeId, newNode);
+        writeBack(idx, node);
+
+        // the old bytes of the node id are left behind until the set is sorted
+        final NodeId nodeId = node.getNodeId();
+        ensureNodeIdDataCapacity(nodeIdLength(nodeId.units()));
+        nodeIdUnits[idx] = nodeId.units();
+        nodeIdOffsets[idx] = nodeIdDataLen;
+        nodeIdDataLen += nodeIdLength(nodeId.units());
+        serializeNodeId(nodeId, idx);
+        isSorted = false;
+    }
+
+    @Override
+    public NodeSet selectParentChild(final NodeSet al, final int mode, final int contextId) {
+        if (al instanceof VirtualNodeSet) {
+            return super.selectParentChild(al, mode, contextId);
+        }
+        return getDescendantsInSet(al, true, false, mode, contextId, true);
+    }
+
+    @Override
+    public NodeSet selectAncestorDescendant(final NodeSet al, final int mode, final boolean includeSelf,
+            final int contextId, final boolean copyMatches) {
+        if (al instanceof VirtualNodeSet) {
+            return super.selectAncestorDescendant(al, mode, includeSelf, contextId, copyMatches);
+        }
+        return getDescendantsInSet(al, false, includeSelf, mode, contextId, copyMatches);
+    }
+
+    /**
+     * Find the nodes of this set which are children or descendants
+     * of the nodes of another set, see {@link NewArrayNodeSet}.
+     */
+    private NodeSet getDescendantsInSet(final NodeSet al, final boolean childOnly, final boolean includeSelf,
+            final int mode, final int contextId, final boolean copyMatches) {
+        sort();
+        syncProxies();
+        final NodeSet result = mode == NodeSet.DESCENDANT ? new PackedNodeSet() : new NewArrayNodeSet();
+        for (final NodeProxy parent : al) {
+            final int docIdx = findDoc(parent.getOwnerDocument().getDocId());
+            if (docIdx < 0) {
+                continue;
+            }
+
+            final NodeId parentId = parent.getNodeId();
+            final int end = documentNodesOffset[docIdx] + documentNodesCount[docIdx];
+            final int start = parentId == NodeId.DOCUMENT_NODE ? documentNodesOffset[docIdx] : lowerBound(docIdx, serialize(parentId));
+            for (int i = start; i < end; i++) {
+                final NodeId nodeId = nodeIdAt(i);
+                final int relation = parentId == NodeId.DOCUMENT_NODE ? documentRelation(nodeId) : nodeId.computeRelation(parentId);
+                if (relation < 0) {
+                    // the descendants of a node are next to it in document order
+                    break;
+                }
+
+                final boolean add;
+                if (childOnly) {
+                    add = relation == NodeId.IS_CHILD;
+                } else if (relation == NodeId.IS_SELF) {
+                    add = includeSelf;
+                } else {
+                    add = true;
+                }
+                if (!add) {
+                    continue;
+                }
+
+                if (mode == NodeSet.DESCENDANT) {
+                    addDescendant((PackedNodeSet) result, i, nodeId, parent, contextId, copyMatches);
+                } else {
+                    final NodeProxy node = nodeAt(i);
+                    if (Expression.NO_CONTEXT_ID != contextId) {
+                        parent.deepCopyContext(node, contextId);
+                    } else {
+                        parent.copyContext(node);
+                    }
+                    if (copyMatches) {
+                        parent.addMatches(node);
+                    }
+                    result.add(parent, 1);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int documentRelation(final NodeId nodeId) {
+        if (nodeId.equals(NodeId.DOCUMENT_NODE)) {
+            return NodeId.IS_SELF;
+        }
+        return nodeId.getTreeLevel() == 1 ? NodeId.IS_CHILD : NodeId.IS_DESCENDANT;
+    }
+
+    /**
+     * Add a node of this set, which is a descendant of a parent node, to a result set.
+     */
+    private void addDescendant(final PackedNodeSet result, final int idx, final NodeId nodeId, final NodeProxy parent,
+            final int contextId, final boolean copyMatches) {
+        final boolean nodeMatches = matches != null && matches[idx] != null;
+        if (Expression.NO_CONTEXT_ID == contextId && parent.getContext() == null
+                && (!copyMatches || parent.getMatches() == null) && !nodeMatches) {
+            // the node has no context or matches, so it is copied without creating a proxy
+            copyTo(result, idx);
+            return;
+        }
+
+        final NodeProxy node = new NodeProxy(documents.get(docIds[idx]), nodeId, nodeTypes[idx], addresses[idx]);
+        if (qnames[idx] != NO_QNAME) {
+            node.setQName(qnameTable.get(qnames[idx]));
+        }
+        if (nodeMatches) {
+            node.setMatches(matches[idx]);
+        }
+        if (contexts != null && contexts[idx] != null) {
+            node.setContext(contexts[idx]);
+        }
+        if (Expression.NO_CONTEXT_ID != contextId) {
+            node.deepCopyContext(parent, contextId);
+        } else {
+            node.copyContext(parent);
+        }
+        if (copyMatches) {
+            node.addMatches(parent);
+        }
+        result.add(node);
+    }
+
+    @Override
+    public NodeProxy hasDescendantsInSet(final DocumentImpl doc, final NodeId ancestorId, final boolean includeSelf,
+            final int contextId, final boolean copyMatches) {
+        sort();
+        final int docIdx = findDoc(doc.getDocId());
+        if (docIdx < 0) {
+            return null;
+        }
+        syncProxies();
+
+        final NodeProxy ancestor = new NodeProxy(doc, ancestorId, Node.ELEMENT_NODE);
+        final int end = documentNodesOffset[docIdx] + documentNodesCount[docIdx];
+        boolean foundOne = false;
+        for (int i = lowerBound(docIdx, serialize(ancestorId)); i < end; i++) {
+            final int relation = nodeIdAt(i).computeRelation(ancestorId);
+            if (relation < 0) {
+                break;
+            }
+            if (relation == NodeId.IS_SELF && !includeSelf) {
+                continue;
+            }
+            final NodeProxy node = nodeAt(i);
+            if (Expression.NO_CONTEXT_ID != contextId) {
+                ancestor.deepCopyContext(node, contextId);
+            } else {
+                ancestor.copyContext(node);
+            }
+            if (copyMatches) {
+                ancestor.addMatches(node);
+            }
+            foundOne = true;
+        }
+        return foundOne ? ancestor : null;
+    }
+
+    @Override
+    public boolean hasChanged(final int previousState) {
+        return state != previousState;
+    }
+
+    @Override
+    public int getState() {
+        return state;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "PackedNodeSet#" + super.toString();
+    }
+
+    /**
+     * Iterates over the nodes of the set, handing out the
+     * proxy of each node, see {@link #proxy(int)}.
+     */
+    private class PackedIterator implements NodeSetIterator, SequenceIterator {
+        private int pos = 0;
+
+        @Override
+        public boolean hasNext() {
+            return pos < size && pos > -1;
+        }
+
+        @Override
+        public NodeProxy next() {
+            if (pos == size || pos < 0) {
+                pos = -1;
+                throw new NoSuchElementException();
+            }
+            return proxy(pos++);
+        }
+
+        @Override
+        public long skippable() {
+            if (pos == -1) {
+                return 0;
+            }
+            return size - pos;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final long skip = Math.min(n, pos == -1 ? 0 : size - pos);
+            pos += skip;
+            return skip;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public NodeProxy peekNode() {
+            if (pos == size || pos < 0) {
+                pos = -1;
+                return null;
+            }
+            return proxy(pos);
+        }
+
+        @Override
+        public Item nextItem() {
+            if (pos == size || pos < 0) {
+                pos = -1;
+                return null;
+            }
+            return proxy(pos++);
+        }
+
+        @Override
+        public void setPosition(final NodeProxy proxy) {
+            final int idx = indexOf(proxy.getOwnerDocument().getDocId(), proxy.getNodeId());
+            pos = idx < 0 ? -1 : idx;
+        }
+    }
+}
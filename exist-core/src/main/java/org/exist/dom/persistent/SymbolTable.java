@@ -21,8 +21,6 @@
  */
 package org.exist.dom.persistent;
 
-import it.unimi.dsi.fastutil.objects.Object2IntMap;
-import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.EXistException;
@@ -42,6 +40,8 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Maintains a global symbol table shared by a database instance. The symbol
@@ -52,6 +52,10 @@ import java.nio.file.StandardOpenOption;
  * The global SymbolTable singleton can be retrieved from {@link org.exist.storage.BrokerPool#getSymbols()}.
  * It is saved into the database file "symbols.dbx".
  *
+ * Lookups of existing symbols do not take a lock, only the registration
+ * of a new symbol, which is appended to "symbols.dbx" before it is
+ * made visible to other threads, is synchronized on the symbol table.
+ *
  * @author <a href="mailto:wolfgang@exist-db.org">wolf</a>
  * @author Adam Retter
  */
@@ -98,14 +102,15 @@ public class SymbolTable implements BrokerPoolService, Closeable {
     protected final SymbolCollection mimeTypeSymbols = new SymbolCollection(SymbolType.MIMETYPE, 32);
 
     /**
-     * Temporary name pool to share QName instances during indexing.
+     * Temporary name pools to share QName instances during indexing.
+     * The pools are not thread-safe, so each thread has its own.
      */
-    private final QNamePool namePool = new QNamePool();
+    private final ThreadLocal<QNamePool> namePool = ThreadLocal.withInitial(QNamePool::new);
 
     /**
      * set to true if the symbol table needs to be saved
      */
-    private boolean changed = false;
+    private volatile boolean changed = false;
 
     /**
      * the underlying symbols.dbx file
@@ -147,20 +152,20 @@ public class SymbolTable implements BrokerPoolService, Closeable {
     }
 
     /**
-     * Retrieve a shared QName instance from the temporary pool.
+     * Retrieve a shared QName instance from the calling thread's temporary pool.
      *
-     * TODO: make the namePool thread-local to avoid synchronization.
      * @param type qname type
      * @param namespaceURI qname namespace uri
      * @param localName qname localname
      * @param prefix qname prefix
      * @return qname from pool
      */
-    public synchronized QName getQName(final short type, final String namespaceURI, final String localName, final String prefix) {
+    public QName getQName(final short type, final String namespaceURI, final String localName, final String prefix) {
         final byte itype = type == Node.ATTRIBUTE_NODE ? ElementValue.ATTRIBUTE : ElementValue.ELEMENT;
-        QName qn = namePool.get(itype, namespaceURI, localName, prefix);
+        final QNamePool pool = namePool.get();
+        QName qn = pool.get(itype, namespaceURI, localName, prefix);
         if(qn == null) {
-            qn = namePool.add(itype, namespaceURI, localName, prefix);
+            qn = pool.add(itype, namespaceURI, localName, prefix);
         }
         return qn;
     }
@@ -172,7 +177,7 @@ public class SymbolTable implements BrokerPoolService, Closeable {
      * @return unique id for the local node name of the specified element.
      */
     //TODO the (short) cast is nasty - should consider using either short or int end to end
-    public synchronized short getSymbol(final Element element) {
+    public short getSymbol(final Element element) {
         return (short) localNameSymbols.getId(element.getLocalName());
     }
 
@@ -183,7 +188,7 @@ public class SymbolTable implements BrokerPoolService, Closeable {
      * @return unique id for the local node name of the specified attribute.
      */
     //TODO the (short) cast is nasty - should consider using either short or int end to end
-    public synchronized short getSymbol(final Attr attr) {
+    public short getSymbol(final Attr attr) {
         final String key = ATTR_NAME_PREFIX + attr.getLocalName();
         return (short) localNameSymbols.getId(key);
     }
@@ -196,7 +201,7 @@ public class SymbolTable implements BrokerPoolService, Closeable {
      * @return unique id for local name
      */
     //TODO the (short) cast is nasty - should consider using either short or int end to end
-    public synchronized short getSymbol(final String name) {
+    public short getSymbol(final String name) {
         if(name.length() == 0) {
             throw new IllegalArgumentException("name is empty");
         }
@@ -210,14 +215,14 @@ public class SymbolTable implements BrokerPoolService, Closeable {
      * @return unique id for namespace uri
      */
     //TODO the (short) cast is nasty - should consider using either short or int end to end
-    public synchronized short getNSSymbol(final String ns) {
+    public short getNSSymbol(final String ns) {
         if(ns == null || ns.length() == 0) {
             return 0;
         }
         return (short) namespaceSymbols.getId(ns);
     }
 
-    public synchronized int getMimeTypeId(final String mimeType) {
+    public int getMimeTypeId(final String mimeType) {
         return mimeTypeSymbols.getId(mimeType);
     }
 
@@ -225,7 +230,7 @@ public class SymbolTable implements BrokerPoolService, Closeable {
      * @return true if the symbol table needs to be saved to persistent storage.
      *
      */
-    public synchronized boolean hasChanged() {
+    public boolean hasChanged() {
         return changed;
     }
 
@@ -236,11 +241,11 @@ public class SymbolTable implements BrokerPoolService, Closeable {
      * @param id identifier
      * @return the local name registered for the id or null if the name is not known.
      */
-    public synchronized String getName(final short id) {
+    public String getName(final short id) {
         return localNameSymbols.getSymbol(id);
     }
 
-    public synchronized String getMimeType(final int id) {
+    public String getMimeType(final int id) {
         return mimeTypeSymbols.getSymbol(id);
     }
 
@@ -252,7 +257,7 @@ public class SymbolTable implements BrokerPoolService, Closeable {
      * @param id identifier
      * @return  the namespace URI registered for the id or null
      */
-    public synchronized String getNamespace(final short id) {
+    public String getNamespace(final short id) {
         return namespaceSymbols.getSymbol(id);
     }
 
@@ -448,22 +453,21 @@ public class SymbolTable implements BrokerPoolService, Closeable {
         /**
          * Maps mimetype names to an integer id (persisted to disk)
          */
-        private final Object2IntMap<String> symbolsByName;
+        private final Map<String, Integer> symbolsByName;
 
         /**
          * Maps int ids to mimetype names (transient map for fast reverse lookup of symbolsByName)
          */
-        private String[] symbolsById;
+        private volatile String[] symbolsById;
 
         /**
          * contains the offset of the last symbol
          */
-        protected short offset = 0;
+        protected volatile short offset = 0;
 
         public SymbolCollection(final SymbolType symbolType, final int initialSize) {
             this.symbolType = symbolType;
-            symbolsByName = new Object2IntOpenHashMap<>(initialSize);
-            symbolsByName.defaultReturnValue(-1);
+            symbolsByName = new ConcurrentHashMap<>(initialSize);
             symbolsById = new String[initialSize];
         }
 
@@ -471,13 +475,20 @@ public class SymbolTable implements BrokerPoolService, Closeable {
             return symbolType;
         }
 
+        /**
+         * Add a symbol.
+         *
+         * The symbol is published by id before it is published by name, so that
+         * a reader which finds the id by name can always resolve the id to the name.
+         * Writers must be synchronized on the symbol table.
+         */
         private int add(final int id, final String name) {
             symbolsById = ensureCapacity(symbolsById, id);
             addSymbolById(id, name);
-            addSymbolByName(name, id);
             if(id > offset) {
                 offset = (short) id;
             }
+            addSymbolByName(name, id);
             return id;
         }
 
@@ -502,34 +513,46 @@ public class SymbolTable implements BrokerPoolService, Closeable {
             offset = 0;
         }
 
-        public synchronized String getSymbol(final int id) {
+        public String getSymbol(final int id) {
             if(id <= 0 || id > offset) {
                 return ""; //TODO : raise an exception ? -pb
             }
             return symbolsById[id];
         }
 
-        public synchronized int getId(final String name) {
-            int id = symbolsByName.getInt(name);
-            if(id != -1) {
-                return id;
-            }
-            // symbol space exceeded. return -1 to indicate.
-            if(offset == Short.MAX_VALUE) {
-                return -1;
+        public int getId(final String name) {
+            final Integer existingId = symbolsByName.get(name);
+            if(existingId != null) {
+                return existingId;
             }
 
-            id = add(++offset, name);
-            //we use "++offset" here instead of "offset++", 
-            //because the system expects id's to start at 1, not 0
-            write(id, name);
-            changed = true;
-            return id;
+            synchronized(SymbolTable.this) {
+                // another thread may have added the symbol in the meantime
+                final Integer addedId = symbolsByName.get(name);
+                if(addedId != null) {
+                    return addedId;
+                }
+
+                // symbol space exceeded. return -1 to indicate.
+                if(offset == Short.MAX_VALUE) {
+                    return -1;
+                }
+
+                //we use "offset + 1" here instead of "offset",
+                //because the system expects id's to start at 1, not 0
+                final int id = offset + 1;
+                // write the symbol to the .dbx file before it becomes visible to other threads
+                write(id, name);
+                add(id, name);
+                changed = true;
+                return id;
+            }
         }
 
         protected final void write(final VariableByteOutputStream os) throws IOException {
-            for (final String symbol : symbolsByName.keySet()) {
-                final int id = symbolsByName.getInt(symbol);
+            for (final Map.Entry<String, Integer> entry : symbolsByName.entrySet()) {
+                final String symbol = entry.getKey();
+                final int id = entry.getValue();
                 if (id < 0) {
                     LOG.error("Symbol Table: symbolTypeId={}, symbol='{}', id={}", getSymbolType(), symbol, id);
                     //TODO : raise exception ? -pb
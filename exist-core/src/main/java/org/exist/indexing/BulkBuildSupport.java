@@ -0,0 +1,40 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing;
+
+import org.exist.storage.btree.DBException;
+
+/**
+ * Interface to be implemented by an index if it can defer its
+ * updates while a large number of documents is being indexed, i.e.
+ * during the reindex of a repair, and then build its data files
+ * from the deferred updates in one go.
+ *
+ * Calls to {@link #startBulkBuild()} and {@link #finishBulkBuild()}
+ * are always paired and may be nested.
+ */
+public interface BulkBuildSupport {
+
+    void startBulkBuild() throws DBException;
+
+    void finishBulkBuild() throws DBException;
+}
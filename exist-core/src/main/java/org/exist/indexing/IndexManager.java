@@ -294,6 +294,49 @@ public class IndexManager implements BrokerPoolService {
         }
     }
 
+    /**
+     * Call the indexes which implement {@link BulkBuildSupport} to defer their
+     * updates until {@link #finishBulkBuild()} is called.
+     *
+     * @throws DBException in case of an eXist-db error
+     */
+    public void startBulkBuild() throws DBException {
+        for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
+            final Index index = i.next();
+            if (index instanceof BulkBuildSupport) {
+                ((BulkBuildSupport) index).startBulkBuild();
+            }
+        }
+    }
+
+    /**
+     * Call the indexes which implement {@link BulkBuildSupport} to
+     * apply the updates deferred since {@link #startBulkBuild()}.
+     *
+     * @throws DBException in case of an eXist-db error
+     */
+    public void finishBulkBuild() throws DBException {
+        DBException firstException = null;
+        for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
+            final Index index = i.next();
+            if (index instanceof BulkBuildSupport) {
+                try {
+                    ((BulkBuildSupport) index).finishBulkBuild();
+                } catch (final DBException e) {
+                    // finish the other indexes regardless
+                    if (firstException == null) {
+                        firstException = e;
+                    } else {
+                        firstException.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        if (firstException != null) {
+            throw firstException;
+        }
+    }
+
     public void backupToArchive(final RawDataBackup backup) throws IOException {
         for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
             final Index index = i.next();
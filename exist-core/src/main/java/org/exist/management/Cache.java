@@ -76,6 +76,17 @@ public class Cache implements CacheMXBean {
         return cache.getFails();
     }
 
+    @Override
+    public int getEvictions() {
+        return cache.getEvictions();
+    }
+
+    @Override
+    public double getHitRatio() {
+        final long requests = (long) cache.getHits() + cache.getFails();
+        return requests == 0 ? 0 : cache.getHits() / (double) requests;
+    }
+
     @Override
     public String getCacheName() {
         return cache.getName();
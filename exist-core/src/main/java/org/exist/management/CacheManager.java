@@ -21,6 +21,8 @@
  */
 package org.exist.management;
 
+import org.exist.storage.cache.OffHeapPagePool;
+
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
@@ -65,4 +67,52 @@ public class CacheManager implements CacheManagerMXBean {
     public long getCurrentSize() {
         return manager.getCurrentSize();
     }
+
+    @Override
+    public long getOffHeapMaxSize() {
+        final OffHeapPagePool pool = manager.getOffHeapPagePool();
+        return pool != null ? pool.getMaxSize() : 0;
+    }
+
+    @Override
+    public long getOffHeapAllocatedSize() {
+        final OffHeapPagePool pool = manager.getOffHeapPagePool();
+        return pool != null ? pool.getAllocatedSize() : 0;
+    }
+
+    @Override
+    public int getOffHeapUsedPages() {
+        final OffHeapPagePool pool = manager.getOffHeapPagePool();
+        return pool != null ? pool.getUsedPages() : 0;
+    }
+
+    @Override
+    public double getOffHeapUtilization() {
+        final OffHeapPagePool pool = manager.getOffHeapPagePool();
+        return pool != null ? pool.getUtilization() : 0.0;
+    }
+
+    @Override
+    public double getOffHeapFragmentation() {
+        final OffHeapPagePool pool = manager.getOffHeapPagePool();
+        return pool != null ? pool.getFragmentation() : 0.0;
+    }
+
+    @Override
+    public long getOffHeapHits() {
+        final OffHeapPagePool pool = manager.getOffHeapPagePool();
+        return pool != null ? pool.getHits() : 0;
+    }
+
+    @Override
+    public long getOffHeapMisses() {
+        final OffHeapPagePool pool = manager.getOffHeapPagePool();
+        return pool != null ? pool.getMisses() : 0;
+    }
+
+    @Override
+    public long getOffHeapEvictions() {
+        final OffHeapPagePool pool = manager.getOffHeapPagePool();
+        return pool != null ? pool.getEvictions() : 0;
+    }
 }
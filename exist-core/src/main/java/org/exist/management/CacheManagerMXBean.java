@@ -30,4 +30,20 @@ public interface CacheManagerMXBean extends PerInstanceMBean {
     long getMaxSingle();
 
     long getCurrentSize();
+
+    long getOffHeapMaxSize();
+
+    long getOffHeapAllocatedSize();
+
+    int getOffHeapUsedPages();
+
+    double getOffHeapUtilization();
+
+    double getOffHeapFragmentation();
+
+    long getOffHeapHits();
+
+    long getOffHeapMisses();
+
+    long getOffHeapEvictions();
 }
@@ -71,6 +71,7 @@ import org.exist.storage.txn.Txn;
 import org.exist.util.*;
 import org.exist.xmldb.ShutdownListener;
 import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.MorselWorkerPool;
 import org.exist.xquery.PerformanceStats;
 import org.exist.xquery.XQuery;
 
@@ -337,6 +338,16 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     private XQueryPool xQueryPool;
 
+    /**
+     * The cache in which the results of the database instance's XQueries are stored.
+     */
+    private XQueryResultCache xQueryResultCache;
+
+    /**
+     * The threads which evaluate the path steps of the database instance's XQueries in parallel.
+     */
+    private MorselWorkerPool morselWorkerPool;
+
     /**
      * The monitor in which the database instance's strong>running</strong> XQueries are managed.
      */
@@ -487,6 +498,9 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
 
         this.cacheManager = servicesManager.register(new DefaultCacheManager(this));
         this.xQueryPool = servicesManager.register(new XQueryPool());
+        servicesManager.register(new XQueryPoolWarmStart(xQueryPool));
+        this.xQueryResultCache = servicesManager.register(new XQueryResultCache());
+        this.morselWorkerPool = servicesManager.register(new MorselWorkerPool());
         this.processMonitor = servicesManager.register(new ProcessMonitor());
         this.xqueryStats = servicesManager.register(new PerformanceStats(this));
         final XMLReaderObjectFactory xmlReaderObjectFactory = servicesManager.register(new XMLReaderObjectFactory());
@@ -1063,6 +1077,24 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return xQueryPool;
     }
 
+    /**
+     * Returns the cache in which the results of the database instance's XQueries are stored.
+     *
+     * @return The cache
+     */
+    public XQueryResultCache getXQueryResultCache() {
+        return xQueryResultCache;
+    }
+
+    /**
+     * Returns the threads which evaluate the path steps of the database instance's XQueries in parallel.
+     *
+     * @return The pool of threads
+     */
+    public MorselWorkerPool getMorselWorkerPool() {
+        return morselWorkerPool;
+    }
+
     /**
      * Retuns the XQuery Service
      *
@@ -1752,6 +1784,8 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 transactionManager = null;
                 collectionCache = null;
                 xQueryPool = null;
+                xQueryResultCache = null;
+                morselWorkerPool = null;
                 processMonitor = null;
                 collectionConfigurationManager = null;
                 notificationService = null;
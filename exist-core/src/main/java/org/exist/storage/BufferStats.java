@@ -36,12 +36,18 @@ public class BufferStats {
 	private final int used;
 	private final int pageHits;
 	private final int pageFails;
+	private final int evictions;
 
 	public BufferStats(final int size, final int used, final int hits, final int fails) {
+		this(size, used, hits, fails, 0);
+	}
+
+	public BufferStats(final int size, final int used, final int hits, final int fails, final int evictions) {
 		this.size = size;
 		this.used = used;
 		this.pageHits = hits;
 		this.pageFails = fails;
+		this.evictions = evictions;
 	}
 
 	public int getPageFails() {
@@ -52,6 +58,21 @@ public class BufferStats {
 		return pageHits;
 	}
 
+	/**
+	 * @return the number of pages evicted from the buffer
+	 */
+	public int getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the ratio of page hits to page requests, or 0 if no pages have been requested
+	 */
+	public double getHitRatio() {
+		final long requests = (long) pageHits + pageFails;
+		return requests == 0 ? 0 : pageHits / (double) requests;
+	}
+
 	public int getSize() {
 		return size;
 	}
@@ -0,0 +1,198 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.start.CompatibleJavaVersionCheck;
+import org.exist.start.StartException;
+import org.exist.util.Configuration;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.util.SystemExitCodes;
+import org.exist.xmldb.XmldbURI;
+import se.softhouse.jargo.Argument;
+import se.softhouse.jargo.ArgumentException;
+import se.softhouse.jargo.CommandLineParser;
+import se.softhouse.jargo.ParsedArguments;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.exist.util.ArgumentUtil.getBool;
+import static org.exist.util.ArgumentUtil.getOpt;
+import static se.softhouse.jargo.Arguments.*;
+
+/**
+ * Command line tool which loads a directory or Zip archive of
+ * documents into an embedded database, see {@link BulkLoader}.
+ */
+public class BulkLoadMain {
+
+    /* general arguments */
+    private static final Argument<?> helpArg = helpArgument("-h", "--help");
+    private static final Argument<Boolean> verboseArg = optionArgument("-v", "--verbose")
+            .description("print the progress after each committed batch, and each failed document, to stdout")
+            .defaultValue(false)
+            .build();
+
+    /* load parameters */
+    private static final Argument<File> configArg = fileArgument("-c", "--config")
+            .description("the database configuration (conf.xml) file to use for launching the db.")
+            .build();
+    private static final Argument<String> collectionArg = stringArgument("-C", "--collection")
+            .description("the collection to load the documents into.")
+            .required()
+            .build();
+    private static final Argument<File> sourceArg = fileArgument("-s", "--source")
+            .description("the directory or Zip archive to load the documents from.")
+            .required()
+            .build();
+    private static final Argument<Integer> parallelismArg = integerArgument("-p", "--parallelism")
+            .description("the number of threads to parse documents on.")
+            .defaultValue(Runtime.getRuntime().availableProcessors())
+            .build();
+    private static final Argument<Integer> batchSizeArg = integerArgument("-b", "--batch-size")
+            .description("the number of documents to commit in a single transaction.")
+            .defaultValue(BulkLoader.DEFAULT_BATCH_SIZE)
+            .build();
+    private static final Argument<Boolean> resumeArg = optionArgument("-r", "--resume")
+            .description("skip documents which already exist in the database, i.e. resume an earlier load.")
+            .defaultValue(false)
+            .build();
+
+    private static @Nullable BrokerPool startDB(final Optional<Path> configFile) {
+        try {
+            final Configuration config;
+            if (configFile.isPresent()) {
+                config = new Configuration(configFile.get().toAbsolutePath().toString(), Optional.empty());
+            } else {
+                config = new Configuration();
+            }
+            BrokerPool.configure(1, 5, config);
+            return BrokerPool.getInstance();
+        } catch (final DatabaseConfigurationException | EXistException e) {
+            System.err.println("ERROR: Failed to open database: " + e.getMessage());
+        }
+        return null;
+    }
+
+    public static void main(final String[] args) {
+        try {
+            CompatibleJavaVersionCheck.checkForCompatibleJavaVersion();
+
+            final ParsedArguments arguments = CommandLineParser
+                    .withArguments(configArg, collectionArg, sourceArg, parallelismArg, batchSizeArg, resumeArg)
+                    .andArguments(helpArg, verboseArg)
+                    .parse(args);
+
+            process(arguments);
+        } catch (final StartException e) {
+            if (e.getMessage() != null && !e.getMessage().isEmpty()) {
+                System.err.println(e.getMessage());
+            }
+            System.exit(e.getErrorCode());
+        } catch (final ArgumentException e) {
+            System.out.println(e.getMessageAndUsage());
+            System.exit(SystemExitCodes.INVALID_ARGUMENT_EXIT_CODE);
+        }
+    }
+
+    private static void process(final ParsedArguments arguments) {
+        final boolean verbose = getBool(arguments, verboseArg);
+        final Optional<Path> dbConfig = getOpt(arguments, configArg).map(File::toPath);
+        final Path source = arguments.get(sourceArg).toPath();
+        final int parallelism = arguments.get(parallelismArg);
+        final int batchSize = arguments.get(batchSizeArg);
+        final boolean resume = getBool(arguments, resumeArg);
+
+        final XmldbURI collectionUri;
+        try {
+            collectionUri = XmldbURI.xmldbUriFor(arguments.get(collectionArg));
+        } catch (final URISyntaxException e) {
+            System.err.println("ERROR: Invalid collection URI: " + e.getMessage());
+            System.exit(SystemExitCodes.INVALID_ARGUMENT_EXIT_CODE);
+            return;
+        }
+
+        if (!Files.exists(source)) {
+            System.err.println("ERROR: Source does not exist: " + source.toAbsolutePath());
+            System.exit(SystemExitCodes.INVALID_ARGUMENT_EXIT_CODE);
+        }
+        if (parallelism < 1 || batchSize < 1) {
+            System.err.println("ERROR: --parallelism and --batch-size must be at least 1");
+            System.exit(SystemExitCodes.INVALID_ARGUMENT_EXIT_CODE);
+        }
+
+        final BrokerPool pool = startDB(dbConfig);
+        if (pool == null) {
+            System.exit(SystemExitCodes.CATCH_ALL_GENERAL_ERROR_EXIT_CODE);
+        }
+
+        int retval = 0; // return value
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final BulkLoader bulkLoader = new BulkLoader(broker, parallelism, batchSize, resume, new Listener(verbose));
+            final BulkLoader.Result result = bulkLoader.load(collectionUri, source);
+            System.out.println(result);
+            if (result.getFailed() > 0) {
+                retval = 1;
+            }
+        } catch (final EXistException e) {
+            System.err.println("ERROR: Failed to load documents: " + e.getMessage());
+            retval = SystemExitCodes.NO_BROKER_EXIT_CODE;
+        } catch (final PermissionDeniedException e) {
+            System.err.println("ERROR: Failed to load documents: " + e.getMessage());
+            retval = SystemExitCodes.PERMISSION_DENIED_EXIT_CODE;
+        } catch (final IOException | LockException e) {
+            System.err.println("ERROR: Failed to load documents: " + e.getMessage());
+            retval = SystemExitCodes.IO_ERROR_EXIT_CODE;
+        } finally {
+            BrokerPool.stopAll(false);
+        }
+        System.exit(retval);
+    }
+
+    private static class Listener implements BulkLoader.Listener {
+        private final boolean verbose;
+
+        Listener(final boolean verbose) {
+            this.verbose = verbose;
+        }
+
+        @Override
+        public void checkpoint(final BulkLoader.Result result, @Nullable final XmldbURI lastDocumentUri) {
+            if (verbose) {
+                System.out.println("Committed batch " + result.getBatches() + ", last document " + lastDocumentUri + " [" + result + ']');
+            }
+        }
+
+        @Override
+        public void failed(final XmldbURI documentUri, final Exception e) {
+            System.err.println("Failed to load " + documentUri + ": " + e.getMessage());
+        }
+    }
+}
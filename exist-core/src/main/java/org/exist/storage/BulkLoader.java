@@ -0,0 +1,597 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.Namespaces;
+import org.exist.collections.Collection;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.memtree.SAXAdapter;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Txn;
+import org.exist.util.FileInputSource;
+import org.exist.util.LockException;
+import org.exist.util.MimeTable;
+import org.exist.util.MimeType;
+import org.exist.util.NamedThreadFactory;
+import org.exist.util.XMLReaderPool;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.util.URIUtils;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Loads a large number of documents into the database.
+ *
+ * The documents are read from a directory, or from a Zip archive, where
+ * each sub-directory becomes a sub-collection. The XML documents are parsed
+ * in parallel on a pool of parser threads, whilst the parsed documents are
+ * stored in order by the broker of the calling thread.
+ *
+ * Rather than in a transaction per document, the documents are stored in
+ * batches of {@link #DEFAULT_BATCH_SIZE} documents, each of which is committed
+ * in a single transaction, and the write lock of a collection is held for as
+ * long as consecutive documents are stored into it. A committed batch is a
+ * checkpoint: should the load fail, or be stopped, then only the documents of
+ * the current batch are lost, and a load which is resumed skips the documents
+ * which were already stored.
+ *
+ * A document which cannot be parsed or stored is skipped, and is
+ * reported as failed, without failing the load. As a document which failed
+ * to store may have been partially written, and aborting a transaction does
+ * not roll back its writes, the document is removed again within the
+ * transaction of its batch, so that a resumed load does not skip it.
+ *
+ * The progress of the load is reported through the {@link ProcessMonitor}.
+ */
+public class BulkLoader {
+
+    private static final Logger LOG = LogManager.getLogger(BulkLoader.class);
+
+    /**
+     * The default number of documents to commit in a single transaction.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * The number of parsed documents which may be held in memory per parser thread.
+     */
+    private static final int IN_FLIGHT_PER_PARSER = 4;
+
+    private final DBBroker broker;
+    private final int parallelism;
+    private final int batchSize;
+    private final boolean resume;
+    @Nullable private final Listener listener;
+
+    /**
+     * @param broker the broker to store the documents with
+     */
+    public BulkLoader(final DBBroker broker) {
+        this(broker, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE, false, null);
+    }
+
+    /**
+     * @param broker the broker to store the documents with
+     * @param parallelism the number of threads to parse documents on
+     * @param batchSize the number of documents to commit in a single transaction
+     * @param resume true if documents which already exist in the database should be skipped
+     * @param listener an optional listener to be notified of the progress of the load
+     */
+    public BulkLoader(final DBBroker broker, final int parallelism, final int batchSize, final boolean resume,
+            @Nullable final Listener listener) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.broker = broker;
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+        this.resume = resume;
+        this.listener = listener;
+    }
+
+    /**
+     * Load the documents from a directory, a Zip archive, or a single file.
+     *
+     * @param collectionUri the collection to load the documents into
+     * @param source a directory, a file with a <i>.zip</i> extension, or any other file
+     *
+     * @return the result of the load
+     *
+     * @throws EXistException if the documents cannot be stored
+     * @throws PermissionDeniedException if the current user may not create a collection
+     * @throws LockException if a collection cannot be locked
+     * @throws IOException if the source cannot be read
+     */
+    public Result load(final XmldbURI collectionUri, final Path source) throws EXistException, PermissionDeniedException, LockException, IOException {
+        if (Files.isDirectory(source)) {
+            try (final Stream<Path> files = Files.walk(source)) {
+                final Iterator<Entry> entries = files
+                        .filter(Files::isRegularFile)
+                        .map(file -> new Entry(collectionUri, source.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"), file, null))
+                        .iterator();
+                return load(collectionUri, entries);
+            }
+        }
+
+        if (source.getFileName().toString().toLowerCase().endsWith(".zip")) {
+            try (final InputStream is = new BufferedInputStream(Files.newInputStream(source))) {
+                return load(collectionUri, is);
+            }
+        }
+
+        return load(collectionUri, Collections.singleton(new Entry(collectionUri, source.getFileName().toString(), source, null)).iterator());
+    }
+
+    /**
+     * Load the documents from a Zip archive.
+     *
+     * The archive is read as a stream, and is not closed by this method.
+     *
+     * @param collectionUri the collection to load the documents into
+     * @param archive the stream of a Zip archive
+     *
+     * @return the result of the load
+     *
+     * @throws EXistException if the documents cannot be stored
+     * @throws PermissionDeniedException if the current user may not create a collection
+     * @throws LockException if a collection cannot be locked
+     * @throws IOException if the archive cannot be read
+     */
+    public Result load(final XmldbURI collectionUri, final InputStream archive) throws EXistException, PermissionDeniedException, LockException, IOException {
+        return load(collectionUri, new ArchiveEntries(collectionUri, new ZipInputStream(archive)));
+    }
+
+    private Result load(final XmldbURI collectionUri, final Iterator<Entry> entries) throws EXistException, PermissionDeniedException, LockException, IOException {
+        final BrokerPool pool = broker.getBrokerPool();
+        final Result result = new Result(collectionUri);
+        final ProcessMonitor processMonitor = pool.getProcessMonitor();
+        final ProcessMonitor.Monitor monitor = new ProcessMonitor.Monitor();
+        processMonitor.startJob(ProcessMonitor.ACTION_BULK_LOAD, result, monitor);
+
+        final ExecutorService parsers = Executors.newFixedThreadPool(parallelism, new NamedThreadFactory(pool, "bulk-load"));
+        final Deque<Future<Parsed>> inFlight = new ArrayDeque<>();
+        try (final Batch batch = new Batch(pool, result)) {
+            while (monitor.proceed()) {
+                // keep the parsers busy, whilst bounding the number of parsed documents held in memory
+                while (inFlight.size() < parallelism * IN_FLIGHT_PER_PARSER && entries.hasNext()) {
+                    final Entry entry = entries.next();
+                    if (resume && exists(entry)) {
+                        result.skipped++;
+                        continue;
+                    }
+                    inFlight.addLast(parsers.submit(() -> parse(pool.getParserPool(), entry)));
+                }
+
+                final Future<Parsed> next = inFlight.pollFirst();
+                if (next == null) {
+                    break;
+                }
+
+                final Parsed parsed = next.get();
+                if (parsed.error != null) {
+                    failed(result, parsed.entry, parsed.error);
+                    continue;
+                }
+
+                batch.store(parsed);
+                if (batch.size == batchSize) {
+                    batch.commit();
+                }
+            }
+
+            batch.commit();
+
+            if (!monitor.proceed()) {
+                LOG.warn("Bulk load into {} was stopped: {}", collectionUri, result);
+            }
+            return result;
+
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        } catch (final ExecutionException e) {
+            throw new EXistException("Unable to parse document: " + e.getCause().getMessage(), e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EXistException("Interrupted whilst bulk loading into " + collectionUri, e);
+        } finally {
+            parsers.shutdownNow();
+            processMonitor.endJob();
+        }
+    }
+
+    private boolean exists(final Entry entry) throws PermissionDeniedException {
+        final Collection collection = broker.getCollection(entry.collectionUri);
+        return collection != null && collection.hasDocument(broker, entry.name);
+    }
+
+    private static Parsed parse(final XMLReaderPool parserPool, final Entry entry) {
+        if (!entry.mimeType.isXMLType()) {
+            return new Parsed(entry, null, null);
+        }
+
+        final XMLReader reader = parserPool.borrowXMLReader();
+        try (final InputStream is = entry.openStream()) {
+            final SAXAdapter adapter = new SAXAdapter();
+            reader.setContentHandler(adapter);
+            reader.setProperty(Namespaces.SAX_LEXICAL_HANDLER, adapter);
+
+            final InputSource src = new InputSource(is);
+            src.setSystemId(entry.getURI().toString());
+            reader.parse(src);
+            return new Parsed(entry, adapter.getDocument(), null);
+        } catch (final IOException | SAXException e) {
+            return new Parsed(entry, null, e);
+        } finally {
+            parserPool.returnXMLReader(reader);
+        }
+    }
+
+    private void failed(final Result result, final Entry entry, final Exception e) {
+        LOG.error("Unable to load document {}: {}", entry.getURI(), e.getMessage());
+        result.failed++;
+        if (listener != null) {
+            listener.failed(entry.getURI(), e);
+        }
+    }
+
+    /**
+     * The documents of the current batch, which are stored in a single transaction.
+     */
+    private final class Batch implements AutoCloseable {
+        private final BrokerPool pool;
+        private final Result result;
+        private int size = 0;
+        @Nullable private Txn transaction = null;
+        @Nullable private XmldbURI collectionUri = null;
+        @Nullable private Collection collection = null;
+        @Nullable private XmldbURI lastDocumentUri = null;
+
+        Batch(final BrokerPool pool, final Result result) {
+            this.pool = pool;
+            this.result = result;
+        }
+
+        void store(final Parsed parsed) throws EXistException, PermissionDeniedException, LockException {
+            if (transaction == null) {
+                transaction = pool.getTransactionManager().beginTransaction();
+            }
+
+            if (storeDocument(parsed)) {
+                result.stored++;
+                lastDocumentUri = parsed.entry.getURI();
+            }
+            size++;
+        }
+
+        /**
+         * @return true if the document was stored, or false if it failed to store
+         *
+         * @throws EXistException if a document which failed to store cannot be removed again
+         */
+        private boolean storeDocument(final Parsed parsed) throws EXistException, PermissionDeniedException, LockException {
+            final Entry entry = parsed.entry;
+            final Collection collection = getCollection(entry.collectionUri);
+            try {
+                if (parsed.document != null) {
+                    broker.storeDocument(transaction, entry.name, parsed.document, entry.mimeType, collection);
+                } else {
+                    broker.storeDocument(transaction, entry.name, entry.getInputSource(), entry.mimeType, collection);
+                }
+                return true;
+            } catch (final SAXException | PermissionDeniedException | IOException e) {
+                failed(result, entry, e);
+                remove(collection, entry.name);
+                return false;
+            }
+        }
+
+        /**
+         * Removes a document which failed to store, as it may have been partially written.
+         */
+        private void remove(final Collection collection, final XmldbURI name) throws EXistException {
+            try (final LockedDocument lockedDocument = collection.getDocumentWithLock(broker, name, LockMode.WRITE_LOCK)) {
+                if (lockedDocument != null) {
+                    broker.removeResource(transaction, lockedDocument.getDocument());
+                }
+            } catch (final PermissionDeniedException | LockException | IOException e) {
+                throw new EXistException("Unable to remove document which failed to store: " + collection.getURI().append(name), e);
+            }
+        }
+
+        /**
+         * Holds the write lock of the collection, until a document is stored
+         * into a different collection or the batch is committed.
+         */
+        private Collection getCollection(final XmldbURI uri) throws PermissionDeniedException, LockException, EXistException {
+            if (!uri.equals(collectionUri)) {
+                releaseCollection();
+
+                // NOTE: the collection is created before it is locked, as getOrCreateCollection takes its own locks
+                try {
+                    broker.getOrCreateCollection(transaction, uri);
+                } catch (final IOException | TriggerException e) {
+                    throw new EXistException("Unable to create collection: " + uri, e);
+                }
+
+                collection = broker.openCollection(uri, LockMode.WRITE_LOCK);
+                if (collection == null) {
+                    throw new EXistException("Unable to open collection: " + uri);
+                }
+                collectionUri = uri;
+            }
+            return collection;
+        }
+
+        private void releaseCollection() {
+            if (collection != null) {
+                collection.close();
+                collection = null;
+            }
+            collectionUri = null;
+        }
+
+        void commit() throws EXistException {
+            releaseCollection();
+            if (transaction == null) {
+                return;
+            }
+
+            try {
+                transaction.commit();
+            } finally {
+                transaction.close();
+                transaction = null;
+            }
+            size = 0;
+            result.batches++;
+
+            if (listener != null) {
+                listener.checkpoint(result, lastDocumentUri);
+            }
+        }
+
+        /**
+         * Aborts the batch, if it was not committed.
+         */
+        @Override
+        public void close() {
+            releaseCollection();
+            if (transaction != null) {
+                transaction.close();
+                transaction = null;
+            }
+        }
+    }
+
+    /**
+     * A document to load.
+     */
+    private static final class Entry {
+        private final XmldbURI collectionUri;
+        private final XmldbURI name;
+        private final MimeType mimeType;
+        @Nullable private final Path file;
+        @Nullable private final byte[] content;
+
+        /**
+         * @param baseCollectionUri the collection the documents are loaded into
+         * @param path the '/' separated path of the document, relative to the source
+         * @param file the file of the document, or null if the content is given
+         * @param content the content of the document, or null if the file is given
+         */
+        Entry(final XmldbURI baseCollectionUri, final String path, @Nullable final Path file, @Nullable final byte[] content) {
+            XmldbURI collectionUri = baseCollectionUri;
+            final String[] segments = path.split("/");
+            for (int i = 0; i < segments.length - 1; i++) {
+                if (!segments[i].isEmpty()) {
+                    collectionUri = collectionUri.append(URIUtils.urlEncodeUtf8(segments[i]));
+                }
+            }
+            final String fileName = segments[segments.length - 1];
+
+            this.collectionUri = collectionUri;
+            this.name = XmldbURI.create(URIUtils.urlEncodeUtf8(fileName));
+            final MimeType mimeType = MimeTable.getInstance().getContentTypeFor(fileName);
+            this.mimeType = mimeType != null ? mimeType : MimeType.BINARY_TYPE;
+            this.file = file;
+            this.content = content;
+        }
+
+        XmldbURI getURI() {
+            return collectionUri.append(name);
+        }
+
+        InputStream openStream() throws IOException {
+            return file != null ? new BufferedInputStream(Files.newInputStream(file)) : new ByteArrayInputStream(content);
+        }
+
+        InputSource getInputSource() {
+            return file != null ? new FileInputSource(file) : new InputSource(new ByteArrayInputStream(content));
+        }
+    }
+
+    /**
+     * A document which has been parsed, or failed to parse.
+     */
+    private static final class Parsed {
+        private final Entry entry;
+        @Nullable private final Document document;
+        @Nullable private final Exception error;
+
+        /**
+         * @param entry the document
+         * @param document the parsed XML document, or null for a binary document, or if parsing failed
+         * @param error the error which occurred whilst parsing, or null
+         */
+        Parsed(final Entry entry, @Nullable final Document document, @Nullable final Exception error) {
+            this.entry = entry;
+            this.document = document;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Reads the entries of a Zip archive as they are needed.
+     */
+    private static final class ArchiveEntries implements Iterator<Entry> {
+        private final XmldbURI collectionUri;
+        private final ZipInputStream zis;
+        @Nullable private Entry next = null;
+
+        ArchiveEntries(final XmldbURI collectionUri, final ZipInputStream zis) {
+            this.collectionUri = collectionUri;
+            this.zis = zis;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    ZipEntry zipEntry;
+                    while ((zipEntry = zis.getNextEntry()) != null) {
+                        if (!zipEntry.isDirectory()) {
+                            next = new Entry(collectionUri, zipEntry.getName(), null, IOUtils.toByteArray(zis));
+                            break;
+                        }
+                    }
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Entry entry = next;
+            next = null;
+            return entry;
+        }
+    }
+
+    /**
+     * Notified of the progress of a load.
+     */
+    public interface Listener {
+
+        /**
+         * Called after a batch of documents has been committed.
+         *
+         * @param result the result of the load so far
+         * @param lastDocumentUri the URI of the last document stored in the batch, or null
+         */
+        void checkpoint(Result result, @Nullable XmldbURI lastDocumentUri);
+
+        /**
+         * Called when a document cannot be loaded.
+         *
+         * @param documentUri the URI of the document
+         * @param e the reason the document cannot be loaded
+         */
+        void failed(XmldbURI documentUri, Exception e);
+    }
+
+    /**
+     * The result of a load, its {@link #toString()} is
+     * reported as the job info of the {@link ProcessMonitor}.
+     */
+    public static final class Result {
+        private final XmldbURI collectionUri;
+        private volatile int stored = 0;
+        private volatile int skipped = 0;
+        private volatile int failed = 0;
+        private volatile int batches = 0;
+
+        Result(final XmldbURI collectionUri) {
+            this.collectionUri = collectionUri;
+        }
+
+        /**
+         * @return the number of documents stored.
+         */
+        public int getStored() {
+            return stored;
+        }
+
+        /**
+         * @return the number of documents which were skipped, as they already existed.
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return the number of documents which could not be loaded.
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return the number of batches committed.
+         */
+        public int getBatches() {
+            return batches;
+        }
+
+        @Override
+        public String toString() {
+            return collectionUri + ": stored " + stored + " documents in " + batches + " batches ("
+                    + skipped + " skipped, " + failed + " failed)";
+        }
+    }
+}
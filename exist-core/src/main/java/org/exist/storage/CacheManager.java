@@ -22,6 +22,9 @@
 package org.exist.storage;
 
 import org.exist.storage.cache.Cache;
+import org.exist.storage.cache.OffHeapPagePool;
+
+import javax.annotation.Nullable;
 
 public interface CacheManager {
 
@@ -85,4 +88,12 @@ public interface CacheManager {
      * @return  Default initial size in bytes.
      */
     int getDefaultInitialSize();
+
+    /**
+     * Returns the off-heap pool of page images which
+     * is shared by the paged database files.
+     *
+     * @return the pool, or null if the pool is disabled.
+     */
+    @Nullable OffHeapPagePool getOffHeapPagePool();
 }
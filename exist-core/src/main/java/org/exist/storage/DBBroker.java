@@ -460,6 +460,52 @@ public abstract class DBBroker implements AutoCloseable {
      */
     public abstract void storeDocument(Txn transaction, XmldbURI name, Node node, @Nullable MimeType mimeType, @Nullable Date createdDate, @Nullable Date lastModifiedDate, @Nullable Permission permission, @Nullable DocumentType documentType, @Nullable XMLReader xmlReader, Collection collection) throws EXistException, PermissionDeniedException, TriggerException, SAXException, LockException, IOException;
 
+    /**
+     * Loads a large number of documents into a collection, see {@link BulkLoader}.
+     *
+     * The documents are parsed in parallel, and are committed in batches
+     * rather than in a transaction per document. The caller must not hold
+     * a transaction or any collection locks.
+     *
+     * @param collectionUri The URI of the collection to load the documents into
+     * @param source        A directory, a Zip archive, or a single file
+     * @param parallelism   The number of threads to parse the documents on
+     * @param batchSize     The number of documents to commit in a single transaction
+     * @param resume        true to skip documents which already exist, i.e. to resume an earlier load
+     *
+     * @return the result of the load
+     *
+     * @throws PermissionDeniedException if user has not sufficient rights
+     * @throws LockException if a collection cannot be locked
+     * @throws IOException if the source cannot be read
+     * @throws EXistException general eXist-db exception
+     */
+    public BulkLoader.Result bulkLoad(final XmldbURI collectionUri, final Path source, final int parallelism,
+            final int batchSize, final boolean resume) throws EXistException, PermissionDeniedException, LockException, IOException {
+        return new BulkLoader(this, parallelism, batchSize, resume, null).load(collectionUri, source);
+    }
+
+    /**
+     * Loads the documents of a Zip archive into a collection, see {@link BulkLoader}.
+     *
+     * @param collectionUri The URI of the collection to load the documents into
+     * @param archive       The stream of a Zip archive
+     * @param parallelism   The number of threads to parse the documents on
+     * @param batchSize     The number of documents to commit in a single transaction
+     * @param resume        true to skip documents which already exist, i.e. to resume an earlier load
+     *
+     * @return the result of the load
+     *
+     * @throws PermissionDeniedException if user has not sufficient rights
+     * @throws LockException if a collection cannot be locked
+     * @throws IOException if the archive cannot be read
+     * @throws EXistException general eXist-db exception
+     */
+    public BulkLoader.Result bulkLoad(final XmldbURI collectionUri, final InputStream archive, final int parallelism,
+            final int batchSize, final boolean resume) throws EXistException, PermissionDeniedException, LockException, IOException {
+        return new BulkLoader(this, parallelism, batchSize, resume, null).load(collectionUri, archive);
+    }
+
     /**
      * Returns the configuration object used to initialize the current database
      * instance.
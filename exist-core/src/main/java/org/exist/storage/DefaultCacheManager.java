@@ -27,9 +27,11 @@ import org.apache.logging.log4j.Logger;
 import org.exist.management.Agent;
 import org.exist.management.AgentFactory;
 import org.exist.storage.cache.Cache;
+import org.exist.storage.cache.OffHeapPagePool;
 import org.exist.util.Configuration;
 import org.exist.util.DatabaseConfigurationException;
 
+import javax.annotation.Nullable;
 import java.text.NumberFormat;
 
 import java.util.ArrayList;
@@ -77,6 +79,11 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     public static final String  SHRINK_THRESHOLD_ATTRIBUTE     		 	= "cacheShrinkThreshold";
     public static final String  SHRINK_THRESHOLD_PROPERTY      			= "db-connection.cache-shrink-threshold";
 
+    /** The size (in megabytes) of the off-heap page pool, 0 disables the pool. */
+    public static final int     DEFAULT_OFF_HEAP_CACHE_SIZE     			= 0;
+    public static final String  OFF_HEAP_CACHE_SIZE_ATTRIBUTE  			= "offHeapCacheSize";
+    public static final String  PROPERTY_OFF_HEAP_CACHE_SIZE   			= "db-connection.off-heap-cache-size";
+
     /** Caches maintained by this class. */
     private List<Cache>         caches                          = new ArrayList<>();
 
@@ -108,6 +115,9 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
     private String              instanceName;
 
+    /** The off-heap pool of page images beneath the caches, or null if disabled. */
+    @Nullable private final OffHeapPagePool offHeapPagePool;
+
     public DefaultCacheManager( BrokerPool pool )
     {
         this.instanceName = pool.getId();
@@ -151,6 +161,19 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
         LOG.info("Cache settings: {}k; totalPages: {}; maxCacheSize: {}; cacheShrinkThreshold: {}", nf.format(totalMem / 1024L), nf.format(totalPageCount), nf.format(maxCacheSize), nf.format(shrinkThreshold));
 
+        // NOTE: the off-heap pool is not held on the heap, so is not checked against the heap size
+        int offHeapCacheSize = configuration.getInteger( PROPERTY_OFF_HEAP_CACHE_SIZE );
+        if( offHeapCacheSize < 0 ) {
+            offHeapCacheSize = DEFAULT_OFF_HEAP_CACHE_SIZE;
+        }
+
+        if( offHeapCacheSize > 0 ) {
+            offHeapPagePool = new OffHeapPagePool( offHeapCacheSize * 1024L * 1024L, pageSize );
+            LOG.info("Off-heap page pool: {}k", nf.format(offHeapPagePool.getMaxSize() / 1024L));
+        } else {
+            offHeapPagePool = null;
+        }
+
         registerMBean();
     }
 
@@ -326,6 +349,20 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
         return( maxCacheSize );
     }
 
+    @Override
+    public @Nullable OffHeapPagePool getOffHeapPagePool()
+    {
+        return( offHeapPagePool );
+    }
+
+    @Override
+    public void shutdown()
+    {
+        if( offHeapPagePool != null ) {
+            offHeapPagePool.clear();
+        }
+    }
+
     public long getTotalMem()
     {
         return( totalMem );
@@ -93,7 +93,7 @@ import java.nio.file.Paths;
 import java.text.NumberFormat;
 import java.util.*;
 import java.util.function.Function;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -138,6 +138,10 @@ public class NativeBroker extends DBBroker {
     public static final String INDEX_DEPTH_ATTRIBUTE = "index-depth";
 
     public static final String PROPERTY_INDEX_DEPTH = "indexer.index-depth";
+
+    public static final String REINDEX_PARALLELISM_ATTRIBUTE = "reindex-parallelism";
+    public static final String PROPERTY_REINDEX_PARALLELISM = "indexer.reindex-parallelism";
+    public static final int DEFAULT_REINDEX_PARALLELISM = 1;
     private static final byte[] ALL_STORAGE_FILES = {
         COLLECTIONS_DBX_ID, VALUES_DBX_ID, DOM_DBX_ID
     };
@@ -173,6 +177,9 @@ public class NativeBroker extends DBBroker {
 
     private int defaultIndexDepth;
 
+    /** the number of threads which reindex the documents of a collection */
+    private final int reindexParallelism;
+
     private final XmlSerializerPool xmlSerializerPool;
 
     /** used to count the nodes inserted after the last memory check */
@@ -221,6 +228,9 @@ public class NativeBroker extends DBBroker {
             defaultIndexDepth = DEFAULT_INDEX_DEPTH;
         }
 
+        final int configuredReindexParallelism = config.getInteger(PROPERTY_REINDEX_PARALLELISM);
+        this.reindexParallelism = configuredReindexParallelism > 0 ? configuredReindexParallelism : DEFAULT_REINDEX_PARALLELISM;
+
         this.indexConfiguration = (IndexSpec) config.getProperty(Indexer.PROPERTY_INDEXER_CONFIG);
         this.xmlSerializerPool = new XmlSerializerPool(this, config, 5);
 
@@ -840,7 +850,7 @@ public class NativeBroker extends DBBroker {
     private @Nullable @EnsureLocked(mode=LockMode.READ_LOCK, type=LockType.COLLECTION) Collection loadCollection(
             @EnsureLocked(mode=LockMode.READ_LOCK, type=LockType.COLLECTION) final XmldbURI collectionUri)
             throws PermissionDeniedException, LockException, IOException {
-        try (final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+        try (final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.CollectionKey(collectionUri.toString());
             final VariableByteInput is = collectionsDb.getAsStream(key);
             return is == null ? null : MutableCollection.load(this, collectionUri, is);
@@ -994,7 +1004,7 @@ public class NativeBroker extends DBBroker {
         final Pattern p = Pattern.compile(regexp);
         final Matcher m = p.matcher("");
 
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
 
             //TODO write a regexp lookup for key data in BTree.query
             //final IndexQuery idxQuery = new IndexQuery(IndexQuery.REGEXP, regexp);
@@ -1033,7 +1043,7 @@ public class NativeBroker extends DBBroker {
         final CollectionCache collectionsCache = pool.getCollectionsCache();
         final Collection collection = collectionsCache.getIfPresent(uri);
         if(collection == null) {
-            try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
 
                 final Value key = new CollectionStore.CollectionKey(uri.toString());
                 final VariableByteInput is = collectionsDb.getAsStream(key);
@@ -1577,7 +1587,7 @@ public class NativeBroker extends DBBroker {
         collectionsCache.invalidate(sourceCollection.getURI());
 
         // remove source from disk
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.CollectionKey(sourceCollectionUri.toString());
             collectionsDb.remove(transaction, key);
         }
@@ -1665,7 +1675,7 @@ public class NativeBroker extends DBBroker {
 
             // 5) remove Collection from collections.dbx
             if(parentCollection != null) {
-                try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+                try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
                     final Value key = new CollectionStore.CollectionKey(collectionUri.getRawCollectionPath());
                     collectionsDb.remove(transaction, key);
 
@@ -1688,7 +1698,7 @@ public class NativeBroker extends DBBroker {
 
             //TODO(AR) this could possibly be executed asynchronously as a task, we don't need to know when it completes (this is because access to documents is through a Collection, and the Collection was removed above), however we cannot recycle the collectionId until all docs are gone
             // 6) unlink all documents from the Collection
-            try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
                 final Value docKey = new CollectionStore.DocumentKey(collection.getId());
                 final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, docKey);
                 collectionsDb.removeAll(transaction, query);
@@ -1851,7 +1861,7 @@ public class NativeBroker extends DBBroker {
         final CollectionCache collectionsCache = pool.getCollectionsCache();
         collectionsCache.put(collection);
 
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
             final Value name = new CollectionStore.CollectionKey(collection.getURI().toString());
             try(final VariableByteOutputStream os = new VariableByteOutputStream(256)) {
                 collection.serialize(os);
@@ -1878,7 +1888,7 @@ public class NativeBroker extends DBBroker {
             return nextCollectionId;
         }
 
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.CollectionKey(CollectionStore.NEXT_COLLECTION_ID_KEY);
             final Value data = collectionsDb.get(key);
             if(data != null) {
@@ -1909,8 +1919,12 @@ public class NativeBroker extends DBBroker {
             }
 
             LOG.info("Start indexing collection {}", collection.getURI().toString());
-            pool.getProcessMonitor().startJob(ProcessMonitor.ACTION_REINDEX_COLLECTION, collection.getURI());
-            reindexCollection(transaction, collection, IndexMode.STORE);
+            if (reindexParallelism > 1) {
+                reindexCollectionParallel(transaction, collection);
+            } else {
+                pool.getProcessMonitor().startJob(ProcessMonitor.ACTION_REINDEX_COLLECTION, collection.getURI());
+                reindexCollection(transaction, collection, IndexMode.STORE);
+            }
         } catch(final PermissionDeniedException | IOException e) {
             LOG.error("An error occurred during reindex: {}", e.getMessage(), e);
         } finally {
@@ -1959,6 +1973,73 @@ public class NativeBroker extends DBBroker {
         }
     }
 
+    /**
+     * Reindex the documents of a collection and its descendants on
+     * {@link #reindexParallelism} threads, see {@link ParallelReindex}.
+     *
+     * The collections are READ_LOCKed and their indexes dropped up front,
+     * and remain locked until all of the documents have been reindexed.
+     */
+    private void reindexCollectionParallel(final Txn transaction,
+            @EnsureLocked(mode=LockMode.READ_LOCK) final Collection collection)
+            throws PermissionDeniedException, IOException, LockException {
+        final ParallelReindex parallelReindex = new ParallelReindex(pool, getCurrentSubject(), reindexParallelism, collection.getURI());
+        pool.getProcessMonitor().startJob(ProcessMonitor.ACTION_REINDEX_COLLECTION, parallelReindex.getProgress(), parallelReindex.getMonitor());
+
+        final Deque<Collection> lockedDescendants = new ArrayDeque<>();
+        try {
+            final List<DocumentImpl> documents = new ArrayList<>();
+            prepareReindexCollection(transaction, collection, lockedDescendants, documents);
+            parallelReindex.reindex(documents);
+        } finally {
+            // release the collection locks in the reverse order to which they were acquired
+            while(!lockedDescendants.isEmpty()) {
+                lockedDescendants.pop().close();
+            }
+        }
+    }
+
+    /**
+     * Drop the indexes of a collection and its descendants, and gather their documents for reindexing.
+     *
+     * @param lockedDescendants the descendant collections, which are opened with a READ_LOCK,
+     *     and must be closed by the caller once the documents have been reindexed.
+     * @param documents the documents to be reindexed
+     */
+    private void prepareReindexCollection(final Txn transaction,
+            @EnsureLocked(mode=LockMode.READ_LOCK) final Collection collection, final Deque<Collection> lockedDescendants,
+            final List<DocumentImpl> documents) throws PermissionDeniedException, IOException, LockException {
+        if(!collection.getPermissionsNoLock().validate(getCurrentSubject(), Permission.WRITE)) {
+            throw new PermissionDeniedException("Account " + getCurrentSubject().getName() + " have insufficient privileges on collection " + collection.getURI());
+        }
+
+        LOG.debug("Reindexing collection {}", collection.getURI());
+        dropCollectionIndex(transaction, collection, true);
+
+        try {
+            for (final Iterator<DocumentImpl> i = collection.iterator(this); i.hasNext(); ) {
+                documents.add(i.next());
+            }
+        } catch(final LockException e) {
+            LOG.error("LockException while reindexing documents of collection '{}'. Skipping...", collection.getURI(), e);
+        }
+
+        try {
+            for (final Iterator<XmldbURI> i = collection.collectionIterator(this); i.hasNext(); ) {
+                final XmldbURI childName = i.next();
+                final XmldbURI childUri = collection.getURI().append(childName);
+                final Collection child = openCollection(childUri, LockMode.READ_LOCK);
+                if (child == null) {
+                    throw new IOException("Collection '" + childUri + "' not found");
+                }
+                lockedDescendants.push(child);
+                prepareReindexCollection(transaction, child, lockedDescendants, documents);
+            }
+        } catch(final LockException e) {
+            LOG.error("LockException while reindexing child collections of collection '{}'. Skipping...", collection.getURI(), e);
+        }
+    }
+
     private void dropCollectionIndex(final Txn transaction,
             @EnsureLocked(mode=LockMode.WRITE_LOCK) final Collection collection)
             throws PermissionDeniedException, IOException, LockException {
@@ -2095,7 +2176,7 @@ public class NativeBroker extends DBBroker {
     @Override
     public DocumentImpl getResourceById(final int collectionId, final byte resourceType, final int documentId) throws PermissionDeniedException {
         XmldbURI uri;
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
 
             //get the collection uri
             String collectionUri = null;
@@ -2170,7 +2251,7 @@ public class NativeBroker extends DBBroker {
     @Override
     public void storeXMLResource(final Txn transaction, final DocumentImpl doc) {
         try(final VariableByteOutputStream os = new VariableByteOutputStream(256);
-                final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+                final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
             doc.write(os);
             final Value key = new CollectionStore.DocumentKey(doc.getCollection().getId(), doc.getResourceType(), doc.getDocId());
             collectionsDb.put(transaction, key, os.data(), true);
@@ -2374,7 +2455,7 @@ public class NativeBroker extends DBBroker {
     //TODO : consider a better cooperation with Collection -pb
     @Override
     public void getCollectionResources(final Collection.InternalAccess collectionInternalAccess) {
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.DocumentKey(collectionInternalAccess.getId());
             final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, key);
 
@@ -2389,7 +2470,7 @@ public class NativeBroker extends DBBroker {
     @Override
     public void getResourcesFailsafe(final Txn transaction, final BTreeCallback callback, final boolean fullScan) throws TerminatedException {
         assert(transaction != null && transaction.getState() == Txn.State.STARTED);
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.DocumentKey();
             final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, key);
             if(fullScan) {
@@ -2407,7 +2488,7 @@ public class NativeBroker extends DBBroker {
     @Override
     public void getCollectionsFailsafe(final Txn transaction, final BTreeCallback callback) throws TerminatedException {
         assert(transaction != null && transaction.getState() == Txn.State.STARTED);
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeReadLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.CollectionKey();
             final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, key);
             collectionsDb.query(query, callback);
@@ -2918,7 +2999,7 @@ public class NativeBroker extends DBBroker {
     public void removeResourceMetadata(final Txn transaction,
             @EnsureLocked(mode=LockMode.WRITE_LOCK) final DocumentImpl document) {
         // remove document metadata
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
             if(LOG.isDebugEnabled()) {
                 LOG.debug("Removing resource metadata for {}", document.getDocId());
             }
@@ -2950,7 +3031,7 @@ public class NativeBroker extends DBBroker {
             return nextDocId;
         }
         nextDocId = 1;
-        try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
             final Value key = new CollectionStore.CollectionKey(CollectionStore.NEXT_DOC_ID_KEY);
             final Value data = collectionsDb.get(key);
             if(data != null) {
@@ -3691,7 +3772,67 @@ public class NativeBroker extends DBBroker {
         loadIndexModules();
         LOG.info("Reindexing database files ...");
         //Reindex from root collection
-        reindexCollection(null, getCollection(XmldbURI.ROOT_COLLECTION_URI), IndexMode.REPAIR);
+        //NOTE: the repair runs before the database is opened to other brokers, so their updates cannot be deferred
+        startBulkIndexBuild();
+        try {
+            reindexCollection(null, getCollection(XmldbURI.ROOT_COLLECTION_URI), IndexMode.REPAIR);
+        } finally {
+            finishBulkIndexBuild();
+        }
+    }
+
+    /**
+     * Defer the updates of the indexes which support it until the matching call
+     * to {@link #finishBulkIndexBuild()}, at which point their data files are built
+     * from sorted runs of the deferred updates.
+     *
+     * The index files are shared by all brokers, so whilst the build is in progress
+     * the updates of every broker are deferred, are not visible to queries, and are
+     * lost on a crash. It must therefore only be used whilst no other broker can
+     * update the database, i.e. by the {@link #repair()} during startup.
+     *
+     * @throws IOException If the bulk build cannot be started
+     */
+    private void startBulkIndexBuild() throws IOException {
+        try {
+            try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(valueIndex.dbValues.getLockName())) {
+                valueIndex.dbValues.startBulkLoad();
+            }
+            pool.getIndexManager().startBulkBuild();
+        } catch(final LockException | DBException e) {
+            throw new IOException("Failed to start the bulk build of the indexes: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Apply the index updates deferred since {@link #startBulkIndexBuild()}.
+     *
+     * @throws IOException If an error occurs whilst building the indexes
+     */
+    private void finishBulkIndexBuild() throws IOException {
+        IOException ioe = null;
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(valueIndex.dbValues.getLockName())) {
+            valueIndex.dbValues.finishBulkLoad(null);
+        } catch(final LockException | BTreeException e) {
+            ioe = new IOException("Failed to finish the bulk build of the value index: " + e.getMessage(), e);
+        } catch(final IOException e) {
+            ioe = e;
+        }
+
+        // finish the other indexes regardless
+        try {
+            pool.getIndexManager().finishBulkBuild();
+        } catch(final DBException e) {
+            if (ioe == null) {
+                ioe = new IOException("Failed to finish the bulk build of the indexes: " + e.getMessage(), e);
+            } else {
+                ioe.addSuppressed(e);
+            }
+        }
+
+        if (ioe != null) {
+            throw ioe;
+        }
     }
 
     @Override
@@ -3702,7 +3843,7 @@ public class NativeBroker extends DBBroker {
 
     protected void rebuildIndex(final byte indexId) {
         final BTree btree = getStorage(indexId);
-        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
             LOG.info("Rebuilding index {}", FileUtils.fileName(btree.getFile()));
             btree.rebuild();
             LOG.info("Index {} was rebuilt.", FileUtils.fileName(btree.getFile()));
@@ -3743,7 +3884,7 @@ public class NativeBroker extends DBBroker {
                 }
             }.run();
             if(syncEvent == Sync.MAJOR) {
-                try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+                try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
                     collectionsDb.flush();
                 } catch(final LockException e) {
                     LOG.error("Failed to acquire lock on {}", FileUtils.fileName(collectionsDb.getFile()), e);
@@ -3786,7 +3927,7 @@ public class NativeBroker extends DBBroker {
                 }
             }.run();
 
-            try(final ManagedLock<ReentrantLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> collectionsDbLock = lockManager.acquireBtreeWriteLock(collectionsDb.getLockName())) {
                 collectionsDb.close();
             }
 
@@ -65,7 +65,7 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Maintains an index on typed node values (optionally by QName).
@@ -190,6 +190,10 @@ public class NativeValueIndex implements ContentLoadingObserver {
             config.setProperty(getConfigKeyForFile(), nativeFile);
         }
         dbValues = nativeFile;
+        // the read path of the BFile is safe for concurrent readers, so queries may read it concurrently.
+        // NOTE: the READ_LOCK is only held around queries of the BFile, whose callbacks only collect
+        // the matches, so the WRITE_LOCK is never acquired whilst the READ_LOCK is held
+        lockManager.enableBtreeSharedReads(dbValues.getLockName());
         caseSensitive = Optional.ofNullable((Boolean) config.getProperty(NativeValueIndex.PROPERTY_INDEX_CASE_SENSITIVE)).orElse(false);
 
         broker.addContentLoadingObserver(getInstance());
@@ -347,7 +351,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
     @Override
     public void sync() {
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
             dbValues.flush();
         } catch (final LockException e) {
             LOG.warn("Failed to acquire lock for '{}'", FileUtils.fileName(dbValues.getFile()), e);
@@ -407,10 +411,13 @@ public class NativeValueIndex implements ContentLoadingObserver {
                 //TODO : throw exception?
             }
 
-            try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
                 final Value v = dbKeyFn.apply(key);
 
-                if (dbValues.append(v, os.data()) == BFile.UNKNOWN_ADDRESS) {
+                if (dbValues.isBulkLoading()) {
+                    // the keys are sorted and appended when the bulk load is finished
+                    dbValues.appendDeferred(null, v, os.data());
+                } else if (dbValues.append(v, os.data()) == BFile.UNKNOWN_ADDRESS) {
                     LOG.warn("Could not append index data for key '{}'", key);
                     //TODO : throw exception ?
                 }
@@ -451,7 +458,9 @@ public class NativeValueIndex implements ContentLoadingObserver {
             final List<NodeId> newGIDList = new ArrayList<>();
             os.clear();
 
-            try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+
+                flushBulkLoad();
 
                 //Compute a key for the value
                 final Value searchKey = dbKeyFn.apply(key);
@@ -552,15 +561,30 @@ public class NativeValueIndex implements ContentLoadingObserver {
         pending.changes.clear();
     }
 
+    /**
+     * Add the keys deferred by a bulk load of the index, before any keys are removed.
+     * The caller should hold a write lock on the index.
+     *
+     * @throws IOException if the deferred keys cannot be added
+     */
+    private void flushBulkLoad() throws IOException {
+        try {
+            dbValues.flushBulkLoad(null);
+        } catch (final BTreeException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
     private static boolean containsNode(final List<NodeId> list, final NodeId nodeId) {
         return list.stream().anyMatch(nodeId::equals);
     }
 
     @Override
     public void dropIndex(final Collection collection) {
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
 
             flush();
+            flushBulkLoad();
 
             // remove generic index
             Value ref = new SimpleValue(collection.getId());
@@ -579,7 +603,8 @@ public class NativeValueIndex implements ContentLoadingObserver {
     @Override
     public void dropIndex(final DocumentImpl document) {
         final int collectionId = document.getCollection().getId();
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+            flushBulkLoad();
             dropIndex(document.getDocId(), pendingGeneric, key -> new SimpleValue(collectionId, (Indexable) key));
             dropIndex(document.getDocId(), pendingQName, key -> new QNameValue(collectionId, key.qname, key.value, broker.getBrokerPool().getSymbols()));
         } catch (final LockException e) {
@@ -703,7 +728,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
             watchDog.proceed(null);
 
             if (qnames == null) {
-                try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
+                try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
                     final Value searchKey = new SimpleValue(collectionId, value);
                     final IndexQuery query = new IndexQuery(idxOp, searchKey);
 
@@ -720,7 +745,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
                 }
             } else {
                 for (final QName qname : qnames) {
-                    try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
+                    try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
 
                         //Compute a key for the value in the collection
                         final Value searchKey = new QNameValue(collectionId, qname, value, broker.getBrokerPool().getSymbols());
@@ -859,7 +884,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
             watchDog.proceed(null);
             if (qnames == null) {
-                try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
+                try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
 
                     final Value searchKey;
                     if (startTerm != null) {
@@ -878,7 +903,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
                 }
             } else {
                 for (final QName qname : qnames) {
-                    try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
+                    try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
 
                         final Value searchKey;
                         if (startTerm != null) {
@@ -907,7 +932,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
         for (final Iterator<Collection> i = docs.getCollectionIterator(); i.hasNext(); ) {
 
-            try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
                 final Collection c = i.next();
                 final int collectionId = c.getId();
 
@@ -957,7 +982,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
         for (final QName qname : qnames) {
 
             for (final Iterator<Collection> i = docs.getCollectionIterator(); i.hasNext(); ) {
-                try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
+                try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(dbValues.getLockName())) {
                     final int collectionId = i.next().getId();
 
                     //Compute a key for the start value in the collection
@@ -1063,7 +1088,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
     @Override
     public void closeAndRemove() throws DBException {
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
             config.setProperty(getConfigKeyForFile(), null);
             dbValues.closeAndRemove();
         } catch (final LockException e) {
@@ -1073,7 +1098,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
 
     @Override
     public void close() throws DBException {
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(dbValues.getLockName())) {
             config.setProperty(getConfigKeyForFile(), null);
             dbValues.close();
         } catch (final LockException e) {
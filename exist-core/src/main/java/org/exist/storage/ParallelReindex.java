@@ -0,0 +1,220 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.security.Subject;
+import org.exist.storage.txn.TransactionException;
+import org.exist.storage.txn.Txn;
+import org.exist.util.NamedThreadFactory;
+import org.exist.xmldb.XmldbURI;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reindexes documents on a pool of worker threads.
+ *
+ * Each worker borrows its own broker from the {@link BrokerPool}, and so has its
+ * own {@link org.exist.indexing.IndexWorker}s. The workers take the documents
+ * from a shared queue, so that a worker which is given small documents does
+ * not sit idle whilst another works through large ones. The index workers
+ * keep their pending changes for the current document only, so they are
+ * flushed to the index files after every document, as in a sequential reindex.
+ *
+ * Each worker reindexes its documents in a transaction of its own, as a
+ * {@link Txn} must not be shared between threads.
+ *
+ * Should a worker fail, e.g. as it cannot get a broker or commit its
+ * transaction, then the remaining workers still drain the queue, after which
+ * the failure of the reindex is reported to the caller.
+ *
+ * The progress of the reindex is reported through the {@link ProcessMonitor}.
+ */
+final class ParallelReindex {
+
+    private static final Logger LOG = LogManager.getLogger(ParallelReindex.class);
+
+    private final BrokerPool pool;
+    private final Subject subject;
+    private final int parallelism;
+    private final ProcessMonitor.Monitor monitor = new ProcessMonitor.Monitor();
+    private final Progress progress;
+
+    ParallelReindex(final BrokerPool pool, final Subject subject, final int parallelism, final XmldbURI collectionUri) {
+        this.pool = pool;
+        this.subject = subject;
+        this.parallelism = parallelism;
+        this.progress = new Progress(collectionUri);
+    }
+
+    ProcessMonitor.Monitor getMonitor() {
+        return monitor;
+    }
+
+    Progress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Reindex the documents, and wait for the reindex to complete.
+     *
+     * The indexes of the documents must have already been dropped.
+     *
+     * @param documents the documents to reindex
+     *
+     * @throws IOException if any of the workers failed
+     */
+    void reindex(final List<DocumentImpl> documents) throws IOException {
+        progress.setTotal(documents.size());
+        if (documents.isEmpty()) {
+            return;
+        }
+
+        // NOTE: the calling thread holds a broker, so at least one other broker must remain available to the workers
+        final int workers = Math.max(1, Math.min(Math.min(parallelism, documents.size()), pool.getMax() - 1));
+        final Queue<DocumentImpl> queue = new ConcurrentLinkedQueue<>(documents);
+
+        final List<Throwable> failures = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(workers, new NamedThreadFactory(pool, "reindex"));
+        try {
+            final List<Future<Void>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> {
+                    reindex(queue);
+                    return null;
+                }));
+            }
+
+            for (final Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (final ExecutionException e) {
+                    LOG.error("Reindex worker failed: {}", e.getCause().getMessage(), e.getCause());
+                    failures.add(e.getCause());
+                }
+            }
+        } catch (final InterruptedException e) {
+            LOG.warn("Interrupted whilst waiting for the reindex of {} to complete", progress.collectionUri);
+            monitor.stop();
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+
+        if (!failures.isEmpty()) {
+            final IOException e = new IOException("Reindex of " + progress.collectionUri + " failed, " + failures.size()
+                    + " of " + workers + " workers failed and " + progress.reindexed.get() + " of " + progress.total
+                    + " documents were reindexed: " + failures.get(0).getMessage(), failures.get(0));
+            for (int i = 1; i < failures.size(); i++) {
+                e.addSuppressed(failures.get(i));
+            }
+            throw e;
+        }
+
+        if (!monitor.proceed()) {
+            LOG.warn("Reindex of {} was stopped, {} of {} documents were reindexed", progress.collectionUri, progress.reindexed.get(), progress.total);
+        }
+    }
+
+    private void reindex(final Queue<DocumentImpl> queue) throws EXistException {
+        try (final DBBroker broker = pool.get(Optional.of(subject));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            DocumentImpl doc;
+            while (monitor.proceed() && (doc = queue.poll()) != null) {
+                try {
+                    broker.reindexXMLResource(transaction, doc, DBBroker.IndexMode.STORE);
+                } catch (final RuntimeException e) {
+                    LOG.error("An error occurred whilst reindexing document {}: {}", doc.getURI(), e.getMessage(), e);
+                    progress.failed.incrementAndGet();
+                }
+                progress.reindexed.incrementAndGet();
+            }
+
+            transaction.commit();
+        } catch (final TransactionException e) {
+            throw new EXistException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The progress of a reindex, its {@link #toString()}
+     * is reported as the job info of the {@link ProcessMonitor}.
+     */
+    static final class Progress {
+        private final XmldbURI collectionUri;
+        private volatile int total = -1;
+        private final AtomicInteger reindexed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        Progress(final XmldbURI collectionUri) {
+            this.collectionUri = collectionUri;
+        }
+
+        void setTotal(final int total) {
+            this.total = total;
+        }
+
+        /**
+         * @return the total number of documents to reindex, or -1 if not yet known.
+         */
+        int getTotal() {
+            return total;
+        }
+
+        int getReindexed() {
+            return reindexed.get();
+        }
+
+        int getFailed() {
+            return failed.get();
+        }
+
+        @Override
+        public String toString() {
+            if (total < 0) {
+                return collectionUri + ": dropping indexes";
+            }
+
+            final StringBuilder builder = new StringBuilder()
+                    .append(collectionUri).append(": reindexed ")
+                    .append(reindexed.get()).append(" of ").append(total).append(" documents");
+            final int failures = failed.get();
+            if (failures > 0) {
+                builder.append(" (").append(failures).append(" failed)");
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -61,6 +61,7 @@ public class ProcessMonitor implements BrokerPoolService {
     public static final String ACTION_REMOVE_BINARY = "remove binary resource";
     public static final String ACTION_REMOVE_COLLECTION = "remove collection";
     public static final String ACTION_REINDEX_COLLECTION = "reindex collection";
+    public static final String ACTION_BULK_LOAD = "bulk load";
     public static final String ACTION_COPY_COLLECTION = "copy collection";
     public static final String ACTION_MOVE_COLLECTION = "move collection";
     public static final String ACTION_BACKUP = "backup";
@@ -308,7 +309,7 @@ public class ProcessMonitor implements BrokerPoolService {
     }
 
     public final static class Monitor {
-        boolean stop = false;
+        volatile boolean stop = false;
 
         public boolean proceed() {
             return !stop;
@@ -34,7 +34,10 @@ package org.exist.storage;
 
 import java.text.NumberFormat;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
+import java.util.Map;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
@@ -108,6 +111,15 @@ public class XQueryPool implements BrokerPoolService {
         LOG.info("QueryPool: size = {}; maxQueryStackSize = {}", nf.format(maxPoolSize), nf.format(maxQueryStackSize));
     }
 
+    /**
+     * Get the maximum number of queries which are kept in the XQuery pool.
+     *
+     * @return the maximum number of queries
+     */
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
     /**
      * Returns a compiled XQuery to the XQuery pool.
      *
@@ -216,10 +228,69 @@ public class XQueryPool implements BrokerPoolService {
         return compiledXQuery.isValid();
     }
 
+    /**
+     * Get the most frequently used queries in the XQuery Pool.
+     *
+     * @param limit the maximum number of queries to return
+     *
+     * @return the queries, the most frequently used first
+     */
+    public List<PooledQuery> getHottest(final int limit) {
+        final Map<Source, Deque<CompiledXQuery>> hottest = cache.policy().eviction()
+                .map(eviction -> eviction.hottest(limit))
+                .orElseGet(cache::asMap);
+
+        final List<PooledQuery> pooledQueries = new ArrayList<>(hottest.size());
+        for (final Source source : hottest.keySet()) {
+            // read the deque whilst it cannot be modified
+            cache.asMap().computeIfPresent(source, (key, value) -> {
+                final CompiledXQuery first = value.peekFirst();
+                if (first != null && pooledQueries.size() < limit) {
+                    pooledQueries.add(new PooledQuery(key, first.getContext().getModuleLoadPath(), value.size()));
+                }
+                return value;
+            });
+        }
+        return pooledQueries;
+    }
+
     /**
      * Removes all entries from the XQuery Pool.
      */
     public void clear() {
         cache.invalidateAll();
     }
+
+    /**
+     * Describes the compiled copies of a query which are held in the XQuery Pool.
+     */
+    public static final class PooledQuery {
+        private final Source source;
+        private final String moduleLoadPath;
+        private final int copies;
+
+        PooledQuery(final Source source, final String moduleLoadPath, final int copies) {
+            this.source = source;
+            this.moduleLoadPath = moduleLoadPath;
+            this.copies = copies;
+        }
+
+        public Source getSource() {
+            return source;
+        }
+
+        /**
+         * @return the module load path that the query was compiled with
+         */
+        public String getModuleLoadPath() {
+            return moduleLoadPath;
+        }
+
+        /**
+         * @return the number of compiled copies of the query
+         */
+        public int getCopies() {
+            return copies;
+        }
+    }
 }
@@ -0,0 +1,313 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.DBSource;
+import org.exist.source.FileSource;
+import org.exist.source.Source;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.exist.util.ThreadUtils.newInstanceThread;
+
+/**
+ * Restores the most frequently used queries of the {@link XQueryPool}
+ * after the database is restarted.
+ *
+ * The sources of the hottest queries in the pool, together with the module load path
+ * they were compiled with and their number of compiled copies, are saved to a file in
+ * the data directory periodically and when the database is shut down. When the database
+ * is next started, the queries are compiled again by a background thread, which also
+ * loads the library modules they import, and are returned to the pool. The first requests
+ * after a restart then find compiled queries in the pool, as they would in steady state.
+ *
+ * Only queries which are stored in the database or in the file system are restored.
+ */
+@ThreadSafe
+public class XQueryPoolWarmStart implements BrokerPoolService {
+
+    private static final Logger LOG = LogManager.getLogger(XQueryPoolWarmStart.class);
+
+    public static final String WARM_START_ATTRIBUTE = "warm-start";
+    public static final String PROPERTY_WARM_START = "db-connection.query-pool.warm-start";
+
+    static final String FILE_NAME = "query-pool.warm";
+
+    /**
+     * Interval in minutes, at which the hottest queries are saved.
+     */
+    private static final long SAVE_INTERVAL = 5;
+
+    /**
+     * The maximum number of copies of a query to compile, more
+     * are unlikely to be used concurrently straight after startup.
+     */
+    private static final int MAX_COPIES = 8;
+
+    private static final String TYPE_DB = "db";
+    private static final String TYPE_FILE = "file";
+
+    private final XQueryPool xqueryPool;
+
+    private boolean enabled = false;
+    private Path file;
+    @Nullable private ScheduledExecutorService executor = null;
+
+    private volatile boolean stopping = false;
+
+    /**
+     * Set once the queries of the last run have been compiled, until
+     * then the file still holds them and must not be overwritten.
+     */
+    private volatile boolean restored = false;
+
+    XQueryPoolWarmStart(final XQueryPool xqueryPool) {
+        this.xqueryPool = xqueryPool;
+    }
+
+    @Override
+    public void configure(final Configuration configuration) {
+        final Boolean warmStart = (Boolean) configuration.getProperty(PROPERTY_WARM_START);
+        this.enabled = warmStart != null && warmStart;
+        final Path dataDir = (Path) configuration.getProperty(BrokerPool.PROPERTY_DATA_DIR);
+        this.file = dataDir.resolve(FILE_NAME);
+    }
+
+    @Override
+    public void startMultiUser(final BrokerPool brokerPool) {
+        if (!enabled) {
+            return;
+        }
+
+        final List<Entry> entries = load();
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = newInstanceThread(brokerPool, "query-pool.warm-start", runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (entries.isEmpty()) {
+            restored = true;
+        } else {
+            executor.execute(() -> compile(brokerPool, entries));
+        }
+        executor.scheduleWithFixedDelay(this::save, SAVE_INTERVAL, SAVE_INTERVAL, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void stopMultiUser(final BrokerPool brokerPool) {
+        if (executor == null) {
+            return;
+        }
+
+        stopping = true;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        save();
+    }
+
+    /**
+     * Compile the queries of the last run, and return them to the {@link XQueryPool}.
+     *
+     * @param brokerPool the database
+     * @param entries the queries, the most frequently used first
+     */
+    private void compile(final BrokerPool brokerPool, final List<Entry> entries) {
+        final long start = System.currentTimeMillis();
+        int compiled = 0;
+        try (final DBBroker broker = brokerPool.get(Optional.of(brokerPool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = brokerPool.getXQueryService();
+
+            // compile one copy of each query before the further copies, so that all of the hot queries are available soonest
+            boolean more = true;
+            for (int copy = 0; more; copy++) {
+                more = false;
+                for (final Entry entry : entries) {
+                    if (stopping || Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    if (entry.copies <= copy) {
+                        continue;
+                    }
+
+                    final Source source = getSource(broker, entry);
+                    if (source == null) {
+                        entry.copies = 0;
+                        continue;
+                    }
+
+                    final XQueryContext context = new XQueryContext(brokerPool);
+                    if (entry.moduleLoadPath != null) {
+                        context.setModuleLoadPath(entry.moduleLoadPath);
+                    }
+                    try {
+                        xqueryPool.returnCompiledXQuery(source, xquery.compile(broker, context, source));
+                        compiled++;
+                        more = true;
+                    } catch (final XPathException | IOException | PermissionDeniedException e) {
+                        LOG.debug("Unable to compile {} for the query pool: {}", entry.path, e.getMessage());
+                        entry.copies = 0;
+                    }
+                }
+            }
+        } catch (final EXistException e) {
+            LOG.warn("Unable to compile the queries for the query pool: {}", e.getMessage(), e);
+            return;
+        }
+
+        restored = true;
+        LOG.info("Compiled {} queries for the query pool in {} ms", compiled, System.currentTimeMillis() - start);
+    }
+
+    @Nullable
+    private static Source getSource(final DBBroker broker, final Entry entry) {
+        if (TYPE_DB.equals(entry.type)) {
+            try (final LockedDocument lockedDocument = broker.getXMLResource(XmldbURI.create(entry.path), LockMode.READ_LOCK)) {
+                if (lockedDocument != null && lockedDocument.getDocument().getResourceType() == DocumentImpl.BINARY_FILE) {
+                    return new DBSource(broker, (BinaryDocument) lockedDocument.getDocument(), true);
+                }
+            } catch (final PermissionDeniedException | IllegalArgumentException e) {
+                LOG.debug("Unable to read {} for the query pool: {}", entry.path, e.getMessage());
+            }
+        } else if (TYPE_FILE.equals(entry.type)) {
+            final Path path = Paths.get(entry.path);
+            if (Files.isReadable(path)) {
+                return new FileSource(path, true);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Save the hottest queries of the {@link XQueryPool} to the file.
+     */
+    private void save() {
+        if (!restored) {
+            return;
+        }
+
+        final List<String> lines = new ArrayList<>();
+        lines.add("# type\tcopies\tmodule load path\tpath");
+        for (final XQueryPool.PooledQuery pooledQuery : xqueryPool.getHottest(xqueryPool.getMaxPoolSize())) {
+            final Source source = pooledQuery.getSource();
+            final String type;
+            final String path;
+            if (source instanceof DBSource) {
+                type = TYPE_DB;
+                path = ((DBSource) source).getDocumentPath().toString();
+            } else if (source instanceof FileSource) {
+                type = TYPE_FILE;
+                path = ((FileSource) source).getPath().toString();
+            } else {
+                continue;
+            }
+            final String moduleLoadPath = pooledQuery.getModuleLoadPath() == null ? "" : pooledQuery.getModuleLoadPath();
+            lines.add(type + '\t' + pooledQuery.getCopies() + '\t' + moduleLoadPath + '\t' + path);
+        }
+
+        try {
+            final Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+            Files.write(tmp, lines, UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            LOG.warn("Unable to save the queries of the query pool to {}: {}", file, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Load the queries of the last run from the file.
+     *
+     * @return the queries, the most frequently used first
+     */
+    private List<Entry> load() {
+        final List<Entry> entries = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return entries;
+        }
+
+        try {
+            for (final String line : Files.readAllLines(file, UTF_8)) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                final String[] fields = line.split("\t", 4);
+                if (fields.length != 4) {
+                    LOG.warn("Ignoring invalid line in {}: {}", file, line);
+                    continue;
+                }
+                try {
+                    final int copies = Math.min(Integer.parseInt(fields[1]), MAX_COPIES);
+                    entries.add(new Entry(fields[0], copies, fields[2].isEmpty() ? null : fields[2], fields[3]));
+                } catch (final NumberFormatException e) {
+                    LOG.warn("Ignoring invalid line in {}: {}", file, line);
+                }
+            }
+        } catch (final IOException e) {
+            LOG.warn("Unable to load the queries for the query pool from {}: {}", file, e.getMessage(), e);
+        }
+        return entries;
+    }
+
+    private static final class Entry {
+        final String type;
+        int copies;
+        @Nullable final String moduleLoadPath;
+        final String path;
+
+        Entry(final String type, final int copies, @Nullable final String moduleLoadPath, final String path) {
+            this.type = type;
+            this.copies = copies;
+            this.moduleLoadPath = moduleLoadPath;
+            this.path = path;
+        }
+    }
+}
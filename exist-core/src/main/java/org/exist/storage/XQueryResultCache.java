@@ -0,0 +1,548 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeHandle;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.numbering.NodeId;
+import org.exist.security.Subject;
+import org.exist.source.Source;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.lock.Lock.LockType;
+import org.exist.storage.lock.LockTable;
+import org.exist.util.Configuration;
+import org.exist.xquery.ExternalModule;
+import org.exist.xquery.Module;
+import org.exist.xquery.Variable;
+import org.exist.xquery.VariableDeclaration;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.Type;
+import org.exist.xquery.value.ValueSequence;
+import org.exist.xmldb.XmldbURI;
+
+import javax.annotation.Nullable;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global cache for the results of XQueries.
+ *
+ * Only the results of queries which declare the option
+ * {@code declare option exist:result-cache "enable=yes";} are cached, as the
+ * cache cannot determine by itself whether a query is free of side effects,
+ * or depends on anything other than the database, e.g. the current time or
+ * the HTTP request.
+ *
+ * Results are cached by the source of the query, the values bound to its
+ * external variables, and the user executing the query. Only results which
+ * consist of atomic values and persistent nodes are cached.
+ *
+ * A cached result is only valid as long as none of the collections the query
+ * read from were modified. Whilst a query is executed, the collections it locks
+ * for reading, either directly or through one of their documents, are recorded.
+ * Each collection has a modification stamp, which is advanced whenever a
+ * WRITE_LOCK on the collection or one of its documents is acquired or released,
+ * as every modification (including of binary resources, collections and
+ * permissions) is made under such a lock, and whenever the
+ * {@link NotificationService} reports an update of one of its documents. A
+ * result is cached together with the stamps of the collections the query read,
+ * and is only returned whilst all of these stamps are unchanged. A modification
+ * of a collection removes the results which depend on it from the cache, and
+ * leaves the results of queries on other collections intact. A modification of
+ * the system collection, e.g. of an index configuration or of a user account,
+ * may change the result of any query, and so invalidates all of the results.
+ *
+ * The collections are recorded by listening to the {@link LockTable}, so the
+ * cache is disabled if the events of the lock table are disabled.
+ *
+ * The cache is bounded by the total number of items of the cached results.
+ */
+@ThreadSafe
+public class XQueryResultCache implements BrokerPoolService, UpdateListener, LockTable.LockEventListener {
+
+    private static final Logger LOG = LogManager.getLogger(XQueryResultCache.class);
+
+    public static final String CONFIGURATION_ELEMENT_NAME = "query-result-cache";
+    public static final String SIZE_ATTRIBUTE = "size";
+
+    public static final String PROPERTY_SIZE = "db-connection.query-result-cache.size";
+
+    private static final int DEFAULT_SIZE = 100_000;
+
+    /**
+     * The maximum number of collections whose stamps are tracked,
+     * before all the stamps are reset.
+     */
+    private static final int MAX_STAMPS = 65_536;
+
+    private static final String SYSTEM_COLLECTION_PREFIX = XmldbURI.SYSTEM_COLLECTION + "/";
+
+    /**
+     * The clock from which the modification stamps are taken
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * The stamp of the collections which were not modified since the stamps were last reset
+     */
+    private volatile long baseStamp = 0;
+
+    /**
+     * Collection path -> modification stamp
+     */
+    private final Map<String, Long> stamps = new ConcurrentHashMap<>();
+
+    /**
+     * Collection path -> the keys of the cached results which depend on the collection
+     */
+    private final Map<String, Set<Key>> dependents = new ConcurrentHashMap<>();
+
+    /**
+     * The recording of the query which is executed by the current thread
+     */
+    private final ThreadLocal<Recording> recording = new ThreadLocal<>();
+
+    private int size = DEFAULT_SIZE;
+
+    /**
+     * Key -> cached result, or null if the cache is disabled
+     */
+    @Nullable private Cache<Key, Entry> cache;
+
+    @Override
+    public void configure(final Configuration configuration) {
+        final Integer sz = (Integer) configuration.getProperty(PROPERTY_SIZE);
+        if (sz != null) {
+            this.size = sz;
+        } else {
+            this.size = DEFAULT_SIZE;
+        }
+
+        if (size > 0) {
+            this.cache = Caffeine.newBuilder()
+                    .maximumWeight(size)
+                    .weigher((Key key, Entry entry) -> entry.items.length + 1)
+                    // a replaced result depends on the collections of its replacement
+                    .removalListener((Key key, Entry entry, RemovalCause cause) -> {
+                        if (key != null && entry != null && cause != RemovalCause.REPLACED) {
+                            removeDependent(key, entry);
+                        }
+                    })
+                    .executor(Runnable::run)
+                    .build();
+        } else {
+            this.cache = null;
+        }
+
+        LOG.info("QueryResultCache: size = {}", NumberFormat.getNumberInstance().format(size));
+    }
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) {
+        if (cache == null) {
+            return;
+        }
+
+        final LockTable lockTable = brokerPool.getLockManager().getLockTable();
+        if (lockTable.isDisabled()) {
+            LOG.warn("QueryResultCache: disabled, as the events of the lock table are disabled");
+            cache = null;
+            return;
+        }
+        lockTable.registerListener(this);
+        brokerPool.getNotificationService().subscribe(this);
+    }
+
+    /**
+     * Creates the key for the result of a query.
+     *
+     * @param context the context of the compiled query, with its external variables bound
+     * @param subject the user executing the query
+     *
+     * @return the key, or null if the result of the query cannot be cached
+     *
+     * @throws XPathException if the values of the external variables cannot be read
+     */
+    @Nullable
+    public Key createKey(final XQueryContext context, final Subject subject) throws XPathException {
+        if (cache == null || !context.resultCacheEnabled() || context.getSource() == null) {
+            return null;
+        }
+
+        // variables of library modules are only known once evaluated, so external variables of these cannot be keyed
+        for (final Iterator<Module> i = context.getAllModules(); i.hasNext(); ) {
+            final Module module = i.next();
+            if (module instanceof ExternalModule) {
+                for (final VariableDeclaration declaration : ((ExternalModule) module).getVariableDeclarations()) {
+                    if (!declaration.getExpression().isPresent()) {
+                        return null;
+                    }
+                }
+            }
+        }
+
+        final List<Object> bindings = new ArrayList<>();
+        for (final Map.Entry<QName, Variable> variable : context.getGlobalVariables().entrySet()) {
+            bindings.add(variable.getKey());
+            final Sequence value = variable.getValue().getValue();
+            if (value == null) {
+                bindings.add(null);
+                continue;
+            }
+
+            bindings.add(value.getItemCount());
+            for (final SequenceIterator i = value.iterate(); i.hasNext(); ) {
+                final Item item = i.nextItem();
+                if (!Type.subTypeOf(item.getType(), Type.ATOMIC)) {
+                    return null;
+                }
+                bindings.add(item.getType());
+                bindings.add(item.getStringValue());
+            }
+        }
+
+        return new Key(context.getSource(), subject.getName(), bindings);
+    }
+
+    /**
+     * Starts recording the collections which are read by the current thread,
+     * which must be done before the query is executed. The recording is passed
+     * to {@link #put(Key, Recording, Sequence)}, and must be closed once the
+     * result was cached.
+     *
+     * @return the recording
+     */
+    public Recording startRecording() {
+        final Recording started = new Recording(recording.get(), clock.get());
+        recording.set(started);
+        return started;
+    }
+
+    /**
+     * Gets a cached result.
+     *
+     * @param key the key of the result
+     *
+     * @return a copy of the cached result, or null if there is no valid cached result
+     */
+    @Nullable
+    public Sequence get(final Key key) {
+        if (cache == null) {
+            return null;
+        }
+
+        final Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!isValid(entry)) {
+            cache.asMap().remove(key, entry);
+            return null;
+        }
+
+        // copy the nodes, as the nodes of a result may be modified by the caller
+        final Item[] items = new Item[entry.items.length];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = copy(entry.items[i]);
+        }
+
+        // a query executing this query depends on the same collections
+        final Recording current = recording.get();
+        if (current != null) {
+            current.collections.addAll(entry.stamps.keySet());
+        }
+        return new ValueSequence(items);
+    }
+
+    /**
+     * Caches the result of a query, if it is cacheable, and
+     * the collections it read were not modified whilst it was executed.
+     *
+     * @param key the key of the result
+     * @param recording the recording started before the query was executed
+     * @param result the result
+     *
+     * @throws XPathException if the result cannot be read
+     */
+    public void put(final Key key, final Recording recording, final Sequence result) throws XPathException {
+        if (cache == null || result.getItemCountLong() >= size) {
+            return;
+        }
+
+        // NOTE: the result is copied whilst still recording, in case evaluating its items reads further collections
+        final Item[] items = new Item[result.getItemCount()];
+        int j = 0;
+        for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+            final Item item = i.nextItem();
+            if (!(item instanceof NodeProxy || Type.subTypeOf(item.getType(), Type.ATOMIC))) {
+                // in-memory nodes and function items are not cached
+                return;
+            }
+            items[j++] = copy(item);
+        }
+
+        final Map<String, Long> entryStamps = new HashMap<>(recording.collections.size() * 2);
+        for (final String collection : recording.collections) {
+            final long stamp = getStamp(collection);
+            if (stamp > recording.start) {
+                // modified whilst the query was executed
+                return;
+            }
+            entryStamps.put(collection, stamp);
+        }
+
+        for (final String collection : entryStamps.keySet()) {
+            dependents.computeIfAbsent(collection, c -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+        cache.put(key, new Entry(entryStamps, items));
+    }
+
+    private long getStamp(final String collection) {
+        final Long stamp = stamps.get(collection);
+        return stamp != null ? stamp : baseStamp;
+    }
+
+    private boolean isValid(final Entry entry) {
+        for (final Map.Entry<String, Long> stamp : entry.stamps.entrySet()) {
+            if (getStamp(stamp.getKey()) != stamp.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void removeDependent(final Key key, final Entry entry) {
+        for (final String collection : entry.stamps.keySet()) {
+            final Set<Key> keys = dependents.get(collection);
+            if (keys != null) {
+                keys.remove(key);
+            }
+        }
+    }
+
+    private static Item copy(final Item item) {
+        if (item instanceof NodeProxy) {
+            final NodeProxy node = (NodeProxy) item;
+            return new NodeProxy(node.getOwnerDocument(), node.getNodeId(), node.getNodeType(), node.getInternalAddress());
+        }
+        return item;
+    }
+
+    /**
+     * Invalidates the cached results which depend on a collection.
+     *
+     * @param collection the path of the modified collection
+     */
+    public void invalidate(final String collection) {
+        if (cache == null) {
+            return;
+        }
+
+        if (collection.startsWith(SYSTEM_COLLECTION_PREFIX) || collection.equals(XmldbURI.SYSTEM_COLLECTION)) {
+            invalidate();
+            return;
+        }
+
+        if (stamps.size() >= MAX_STAMPS) {
+            invalidate();
+        }
+        stamps.put(collection, clock.incrementAndGet());
+
+        final Set<Key> keys = dependents.remove(collection);
+        if (keys != null) {
+            cache.invalidateAll(keys);
+        }
+    }
+
+    /**
+     * Invalidates all of the cached results.
+     */
+    public void invalidate() {
+        baseStamp = clock.incrementAndGet();
+        stamps.clear();
+        dependents.clear();
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void accept(final LockTable.LockEventType lockEventType, final long timestamp, final long groupId, final LockTable.Entry entry) {
+        final LockType lockType = entry.getLockType();
+        if (lockType != LockType.COLLECTION && lockType != LockType.DOCUMENT) {
+            return;
+        }
+
+        switch (lockEventType) {
+            case Acquired:
+                if (entry.getLockMode() == LockMode.READ_LOCK) {
+                    final Recording current = recording.get();
+                    if (current != null) {
+                        current.collections.add(toCollection(lockType, entry.getId()));
+                    }
+                } else if (entry.getLockMode() == LockMode.WRITE_LOCK) {
+                    invalidate(toCollection(lockType, entry.getId()));
+                }
+                break;
+
+            case Released:
+                // the modifications made under the lock are only visible once it is released
+                if (entry.getLockMode() == LockMode.WRITE_LOCK) {
+                    invalidate(toCollection(lockType, entry.getId()));
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private static String toCollection(final LockType lockType, final String path) {
+        if (lockType == LockType.DOCUMENT) {
+            final int last = path.lastIndexOf('/');
+            return last > 0 ? path.substring(0, last) : path;
+        }
+        return path;
+    }
+
+    @Override
+    public void documentUpdated(final DocumentImpl document, final int event) {
+        invalidate(toCollection(LockType.DOCUMENT, document.getURI().toString()));
+    }
+
+    @Override
+    public void nodeMoved(final NodeId oldNodeId, final NodeHandle newNode) {
+        invalidate(toCollection(LockType.DOCUMENT, newNode.getOwnerDocument().getURI().toString()));
+    }
+
+    @Override
+    public void unsubscribe() {
+        // no-op
+    }
+
+    @Override
+    public void debug() {
+        if (LOG.isDebugEnabled() && cache != null) {
+            LOG.debug("QueryResultCache: {} cached results, {} modified collections", cache.estimatedSize(), stamps.size());
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        invalidate();
+    }
+
+    /**
+     * Key of a cached result.
+     */
+    public static final class Key {
+        private final Source source;
+        private final String user;
+        private final List<Object> bindings;
+        private final int hashCode;
+
+        Key(final Source source, final String user, final List<Object> bindings) {
+            this.source = source;
+            this.user = user;
+            this.bindings = bindings;
+            this.hashCode = 31 * (31 * source.hashCode() + user.hashCode()) + bindings.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return hashCode == other.hashCode
+                    && source.equals(other.source)
+                    && user.equals(other.user)
+                    && bindings.equals(other.bindings);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * The collections read by a query whilst it is executed.
+     */
+    public final class Recording implements AutoCloseable {
+        @Nullable private final Recording outer;
+        private final long start;
+        private final Set<String> collections = new HashSet<>();
+
+        private Recording(@Nullable final Recording outer, final long start) {
+            this.outer = outer;
+            this.start = start;
+        }
+
+        /**
+         * Stops recording. A query which executed this query depends on the same collections.
+         */
+        @Override
+        public void close() {
+            recording.set(outer);
+            if (outer != null) {
+                outer.collections.addAll(collections);
+            }
+        }
+    }
+
+    private static final class Entry {
+        /**
+         * Collection path -> modification stamp when the result was computed
+         */
+        final Map<String, Long> stamps;
+        final Item[] items;
+
+        Entry(final Map<String, Long> stamps, final Item[] items) {
+            this.stamps = stamps;
+            this.items = items;
+        }
+    }
+}
@@ -72,6 +72,7 @@
  */
 package org.exist.storage.btree;
 
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -88,6 +89,7 @@ import org.exist.util.FileUtils;
 import org.exist.util.Lockable;
 import org.exist.xquery.TerminatedException;
 
+import javax.annotation.Nullable;
 import java.io.*;
 import java.nio.file.Path;
 import java.text.NumberFormat;
@@ -119,6 +121,9 @@ public class BTree extends Paged implements Lockable {
 
     protected final static int MIN_SPACE_PER_KEY = 32;
 
+    /** Flag of a compressed page, set if its pointers are stored as deltas */
+    private final static byte COMPRESSED_DELTA_POINTERS = 0x1;
+
     /** Log entry type for an insert value operation */
     public final static byte LOG_INSERT_VALUE = 0x20;
     /** Log entry type for creation of a new BTree node */
@@ -161,6 +166,13 @@ public class BTree extends Paged implements Lockable {
 
     private double splitFactor = -1;
 
+    /** are the pages written with compressed keys and pointers, see {@link #setKeyCompression(boolean)} */
+    private boolean keyCompression = false;
+
+    /** the keys deferred by the current bulk load, see {@link #startBulkLoad()} */
+    @Nullable private volatile SortedRunBuilder bulkLoad = null;
+    private int bulkLoads = 0;
+
     protected BTree(final BrokerPool pool, final byte fileId, final short fileVersion, final boolean recoveryEnabled,
             final DefaultCacheManager cacheManager) throws DBException {
         super(pool, fileVersion);
@@ -218,13 +230,23 @@ public class BTree extends Paged implements Lockable {
         }
     }
 
+    @Override
+    public boolean open(final short expectedVersion, final short legacyVersion) throws DBException {
+        if (super.open(expectedVersion, legacyVersion)) {
+            initCache();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
     @Override
     public String getLockName() {
         return null;
     }
 
     protected void initCache() {
-        this.cache = new BTreeCache<>(FileUtils.fileName(getFile()), cacheManager.getDefaultInitialSize(), 1.5,
+        this.cache = new BTreeTwoQueueCache<>(FileUtils.fileName(getFile()), cacheManager.getDefaultInitialSize(), 1.5,
             0, Cache.CacheType.BTREE);
         cacheManager.registerCache(cache);
     }
@@ -236,6 +258,31 @@ public class BTree extends Paged implements Lockable {
         this.splitFactor = factor;
     }
 
+    /**
+     * Enable or disable the compression of the keys and pointers of the pages.
+     *
+     * A compressed page stores each key as the length of the prefix it shares with
+     * the previous key and the remaining suffix, both lengths as variable length integers,
+     * and stores its pointers as variable length deltas from the previous pointer.
+     * Pages are read according to their own format, so a file can hold both formats,
+     * and the existing pages of a file are converted as they are next written.
+     *
+     * Compression is only supported for trees which are not journaled, as
+     * overwriting a pointer may then cause the page to be split.
+     *
+     * @param keyCompression true to write compressed pages
+     */
+    public void setKeyCompression(final boolean keyCompression) {
+        if (keyCompression && isRecoveryEnabled()) {
+            throw new IllegalStateException("Key compression is not supported for the journaled B+-tree: " + FileUtils.fileName(getFile()));
+        }
+        this.keyCompression = keyCompression;
+    }
+
+    public boolean isKeyCompression() {
+        return keyCompression;
+    }
+
     /**
      * addValue adds a Value to the BTree and associates a pointer with it. The
      * pointer can be used for referencing any type of data, it just so happens
@@ -449,21 +496,59 @@ public class BTree extends Paged implements Lockable {
      */
     private BTreeNode getBTreeNode(final long pageNum) {
         try {
-            BTreeNode node = cache.get(pageNum);
-            if (node == null) {
-                final Page page = getPage(pageNum);
-                node = new BTreeNode(page, false);
-                node.read();
-            }
-            final int increment = node.pageHeader.getStatus() == BRANCH ? 2 : 1;
-            cache.add(node, increment);
-            return node;
+            return getCachedBTreeNode(pageNum, -1);
         } catch (final IOException e) {
             LOG.error("Failed to get BTree node on page {}", pageNum, e);
             return null;
         }
     }
 
+    /**
+     * Get a node from the cache, or read it from the given page
+     * and add it to the cache.
+     *
+     * Concurrent readers may share the tree (see
+     * {@link org.exist.storage.lock.LockManager#enableBtreeSharedReads(String)}),
+     * so access to the cache is synchronized on the cache. A node which is
+     * not cached is read outside of the monitor, so that a reader which misses
+     * the cache does not hold up the others whilst it waits for the page. Should
+     * another reader have cached the node in the meantime, then its copy is used.
+     *
+     * @param pageNum the page number
+     * @param increment the reference count increment for the node in the cache,
+     *     or -1 to increment by the type of the node.
+     *
+     * @return The BTree node
+     * @throws IOException if an I/O error occurs
+     */
+    private BTreeNode getCachedBTreeNode(final long pageNum, final int increment) throws IOException {
+        BTreeNode node;
+        synchronized (cache) {
+            node = cache.get(pageNum);
+            if (node != null) {
+                cache.add(node, increment == -1 ? nodeIncrement(node) : increment);
+                return node;
+            }
+        }
+
+        final Page page = getPage(pageNum);
+        final BTreeNode loaded = new BTreeNode(page, false);
+        loaded.read();
+
+        synchronized (cache) {
+            node = cache.get(pageNum);
+            if (node == null) {
+                node = loaded;
+            }
+            cache.add(node, increment == -1 ? nodeIncrement(node) : increment);
+            return node;
+        }
+    }
+
+    private static int nodeIncrement(final BTreeNode node) {
+        return node.pageHeader.getStatus() == BRANCH ? 2 : 1;
+    }
+
     /**
      * Set the root node of the tree.
      * 
@@ -494,14 +579,7 @@ public class BTree extends Paged implements Lockable {
      */
     protected BTreeNode getRootNode() {
         try {
-            BTreeNode node = cache.get(fileHeader.getRootPage());
-            if (node == null) {
-                final Page page = getPage(fileHeader.getRootPage());
-                node = new BTreeNode(page, false);
-                node.read();
-            }
-            cache.add(node, 2);
-            return node;
+            return getCachedBTreeNode(fileHeader.getRootPage(), 2);
         } catch (final IOException e) {
             LOG.warn("Failed to get root btree node", e);
             return null;
@@ -736,6 +814,401 @@ public class BTree extends Paged implements Lockable {
         return last;
     }
 
+    /**
+     * Start a bulk load of the tree.
+     *
+     * Until the matching call to {@link #finishBulkLoad(Txn)}, keys added through
+     * {@link #addValueDeferred(Value, long)} are collected in sorted runs instead of
+     * being inserted, and so are not visible to lookups. Bulk loads may be nested,
+     * the keys are added to the tree when the outermost bulk load is finished.
+     *
+     * The caller should hold a write lock on the tree.
+     */
+    public synchronized void startBulkLoad() {
+        if (bulkLoads++ == 0) {
+            bulkLoad = new SortedRunBuilder();
+        }
+    }
+
+    /**
+     * @return true if a bulk load of the tree is in progress
+     */
+    public boolean isBulkLoading() {
+        return bulkLoad != null;
+    }
+
+    /**
+     * @return the keys deferred by the current bulk load, or null if no bulk load is in progress
+     */
+    protected @Nullable SortedRunBuilder getBulkLoad() {
+        return bulkLoad;
+    }
+
+    /**
+     * Add a value to the tree, which is deferred until the end of
+     * the current bulk load. If no bulk load is in progress, the value is
+     * added straight away.
+     *
+     * @param value the value
+     * @param pointer the pointer to associate with the value
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws BTreeException if an error occurs with the tree
+     */
+    public void addValueDeferred(final Value value, final long pointer) throws IOException, BTreeException {
+        final SortedRunBuilder runs = getBulkLoad();
+        if (runs == null) {
+            addValue(value, pointer);
+        } else {
+            runs.add(value, pointer);
+        }
+    }
+
+    /**
+     * Add the values which have been deferred so far by the current bulk load
+     * to the tree. This should be called before values are removed from the tree
+     * during a bulk load.
+     *
+     * The caller should hold a write lock on the tree.
+     *
+     * @param transaction the database transaction
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws BTreeException if an error occurs with the tree
+     */
+    public synchronized void flushBulkLoad(final Txn transaction) throws IOException, BTreeException {
+        final SortedRunBuilder runs = bulkLoad;
+        if (runs == null || runs.isEmpty()) {
+            return;
+        }
+        try (final SortedRunBuilder.Cursor cursor = runs.sort()) {
+            addSortedValues(transaction, cursor);
+        }
+    }
+
+    /**
+     * Finish a bulk load of the tree, see {@link #startBulkLoad()}.
+     *
+     * The caller should hold a write lock on the tree.
+     *
+     * @param transaction the database transaction
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws BTreeException if an error occurs with the tree
+     */
+    public synchronized void finishBulkLoad(final Txn transaction) throws IOException, BTreeException {
+        if (bulkLoads == 0 || --bulkLoads > 0) {
+            return;
+        }
+        final SortedRunBuilder runs = bulkLoad;
+        try {
+            flushBulkLoad(transaction);
+        } finally {
+            bulkLoad = null;
+            runs.close();
+        }
+    }
+
+    /**
+     * Add the keys of a sorted run to the tree.
+     *
+     * If the tree is empty and is not journaled, the tree is built bottom-up
+     * by a {@link BulkBuilder}. Otherwise the keys are added one at a time,
+     * which in key order at least visits each page once.
+     *
+     * @param transaction the database transaction
+     * @param cursor the keys in ascending order, each key is added with
+     *     its {@link SortedRunBuilder.Cursor#getPointer()}
+     *
+     * @return the number of keys added
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws BTreeException if an error occurs with the tree
+     */
+    public long addSortedValues(final Txn transaction, final SortedRunBuilder.Cursor cursor) throws IOException, BTreeException {
+        long count = 0;
+        if (canBuildBottomUp()) {
+            final BulkBuilder builder = new BulkBuilder();
+            while (cursor.next()) {
+                builder.add(cursor.getKey(), cursor.getPointer());
+                count++;
+            }
+            builder.finish();
+        } else {
+            while (cursor.next()) {
+                addValue(transaction, cursor.getKey(), cursor.getPointer());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Determine if the tree can be built bottom-up by a {@link BulkBuilder},
+     * i.e. the tree is empty and changes to it are not journaled.
+     *
+     * @return true if the tree can be built bottom-up
+     */
+    protected boolean canBuildBottomUp() {
+        if (isRecoveryEnabled()) {
+            return false;
+        }
+        final BTreeNode root = getRootNode();
+        return root != null && root.pageHeader.getStatus() == LEAF && root.nKeys == 0;
+    }
+
+    /**
+     * Builds an empty tree bottom-up from keys which are added in ascending order.
+     *
+     * Each leaf page is filled until the next key would no longer fit, the
+     * empty root page becomes the first leaf. The first key of each page is
+     * added to the branch page on the level above as the separator, and the
+     * branch pages are filled in the same way, so no page is ever split.
+     * Branch pages are completed before they are written, their parent
+     * is therefore always known when they are written.
+     *
+     * Changes made by the builder are not journaled, see {@link #canBuildBottomUp()}.
+     */
+    protected final class BulkBuilder {
+        private final List<BranchLevel> levels = new ArrayList<>();
+        private final List<Value> leafKeys = new ArrayList<>();
+        private final LongArrayList leafPtrs = new LongArrayList();
+        private BTreeNode leaf;
+        private int leafKeysLen = 0;
+        private int leafPointersLen = 0;
+        private Value lastKey = null;
+        private long lastPointer = 0;
+
+        public BulkBuilder() {
+            this.leaf = getRootNode();
+        }
+
+        /**
+         * Add a key to the tree.
+         *
+         * @param key the key, which must be greater than the previously added key
+         * @param pointer the pointer to associate with the key
+         *
+         * @throws IOException if an I/O error occurs
+         * @throws BTreeException if the keys are not added in ascending order
+         */
+        public void add(final Value key, final long pointer) throws IOException, BTreeException {
+            if (lastKey != null && key.compareTo(lastKey) <= 0) {
+                throw new BTreeException("Keys must be added to a bulk build in ascending order");
+            }
+
+            if (!leafKeys.isEmpty()) {
+                final int keysLen = leafKeysLen + keyLen(key, lastKey);
+                final int pointersLen = leafPointersLen + pointerLen(pointer, lastPointer);
+                if (leafDataLen(leafKeys.size() + 1, keysLen, pointersLen) > fileHeader.getWorkSize()) {
+                    final BTreeNode next = createBTreeNode(null, LEAF, null, true);
+                    if (next == null) {
+                        throw new IOException("Failed to create a leaf page for the bulk build of: " + FileUtils.fileName(getFile()));
+                    }
+                    leaf.pageHeader.setNextPage(next.page.getPageNum());
+                    writeLeaf(true);
+                    leaf = next;
+                }
+            }
+
+            final boolean first = leafKeys.isEmpty();
+            leafKeysLen += keyLen(key, first ? null : lastKey);
+            leafPointersLen += pointerLen(pointer, first ? 0 : lastPointer);
+            leafKeys.add(key);
+            leafPtrs.add(pointer);
+            lastKey = key;
+            lastPointer = pointer;
+        }
+
+        /**
+         * Get the number of bytes a key takes up in a leaf page,
+         * as written by {@link BTreeNode#write()}.
+         *
+         * @param key the key
+         * @param previous the previous key in the page, or null for the first key
+         *
+         * @return the number of bytes
+         */
+        private int keyLen(final Value key, @Nullable final Value previous) {
+            final boolean varKeyLen = fileHeader.getFixedKeyLen() < 0;
+            if (keyCompression) {
+                final int prefixLen = previous == null ? 0 : key.commonPrefix(previous);
+                final int suffixLen = key.getLength() - prefixLen;
+                return (previous == null ? 0 : varLongLen(prefixLen)) + (varKeyLen ? varLongLen(suffixLen) : 0) + suffixLen;
+            }
+
+            int len = key.getLength() + (varKeyLen ? 2 : 0);
+            if (previous != null) {
+                int prefixLen = key.commonPrefix(previous);
+                if (prefixLen > Byte.MAX_VALUE) {
+                    prefixLen = 0;
+                }
+                len += 1 - prefixLen;
+            }
+            return len;
+        }
+
+        private int pointerLen(final long pointer, final long previous) {
+            return keyCompression ? varLongLen(zigZag(pointer - previous)) : 8;
+        }
+
+        private int leafDataLen(final int count, final int keysLen, final int pointersLen) {
+            return keyCompression ? 1 + keysLen + Math.min(pointersLen, count * 8) : keysLen + pointersLen;
+        }
+
+        /**
+         * Write the remaining pages, and make the top page the root of the tree.
+         *
+         * @throws IOException if an I/O error occurs
+         * @throws BTreeException if an error occurs with the tree
+         */
+        public void finish() throws IOException, BTreeException {
+            writeLeaf(!levels.isEmpty());
+            if (levels.isEmpty()) {
+                // all keys fit into the root page
+                return;
+            }
+
+            for (int i = 0; i < levels.size(); i++) {
+                final BranchLevel level = levels.get(i);
+                final BTreeNode branch = level.node;
+                branch.recalculateDataLen();
+                if (i == levels.size() - 1 && level.count == 1) {
+                    // the only page on the top level becomes the root
+                    branch.write();
+                    setRootNode(branch);
+                } else {
+                    addChild(i + 1, branch, level.minKey);
+                    branch.write();
+                    cache.add(branch);
+                }
+            }
+        }
+
+        private void writeLeaf(final boolean hasParent) throws IOException, BTreeException {
+            leaf.setValues(leafKeys.toArray(new Value[0]));
+            leaf.setPointers(leafPtrs.toLongArray());
+            leaf.recalculateDataLen();
+            if (hasParent && !leafKeys.isEmpty()) {
+                addChild(0, leaf, leafKeys.get(0));
+            }
+            leaf.write();
+            cache.add(leaf);
+
+            leafKeys.clear();
+            leafPtrs.clear();
+            leafKeysLen = 0;
+            leafPointersLen = 0;
+        }
+
+        /**
+         * Add a child page to the current branch page of a level.
+         * If the branch page is full, it is completed and
+         * the child becomes the first page of a new branch page.
+         *
+         * @param levelIdx the level of the branch page, 0 being the level above the leaves
+         * @param child the child page
+         * @param minKey the smallest key in the subtree of the child
+         */
+        private void addChild(final int levelIdx, final BTreeNode child, final Value minKey) throws IOException, BTreeException {
+            if (levelIdx == levels.size()) {
+                final BTreeNode branch = newBranch(child);
+                levels.add(new BranchLevel(branch, minKey));
+                return;
+            }
+
+            final BranchLevel level = levels.get(levelIdx);
+            final BTreeNode branch = level.node;
+            branch.insertKey(minKey, branch.nKeys);
+            branch.insertPointer(child.page.getPageNum(), branch.nPtrs);
+            if (branch.recalculateDataLen() <= fileHeader.getWorkSize()) {
+                child.setParent(branch);
+                return;
+            }
+
+            // the branch page is full, complete it without the child
+            branch.removeKey(branch.nKeys - 1);
+            branch.removePointer(branch.nPtrs - 1);
+            branch.recalculateDataLen();
+            final Value branchMinKey = level.minKey;
+
+            level.node = newBranch(child);
+            level.minKey = minKey;
+            level.count++;
+
+            addChild(levelIdx + 1, branch, branchMinKey);
+            branch.write();
+            cache.add(branch);
+        }
+
+        private BTreeNode newBranch(final BTreeNode firstChild) throws IOException {
+            final BTreeNode branch = createBTreeNode(null, BRANCH, null, true);
+            if (branch == null) {
+                throw new IOException("Failed to create a branch page for the bulk build of: " + FileUtils.fileName(getFile()));
+            }
+            branch.insertPointer(firstChild.page.getPageNum(), 0);
+            firstChild.setParent(branch);
+            return branch;
+        }
+    }
+
+    /**
+     * The branch page of a level of the tree which is being
+     * filled by a {@link BulkBuilder}.
+     */
+    private static final class BranchLevel {
+        BTreeNode node;
+        Value minKey;
+        int count = 1;
+
+        BranchLevel(final BTreeNode node, final Value minKey) {
+            this.node = node;
+            this.minKey = minKey;
+        }
+    }
+
+    /* -------------------------------------------------------------------------
+     * Variable length integers of compressed pages
+     * ---------------------------------------------------------------------- */
+
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varLongLen(long value) {
+        int len = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            len++;
+        }
+        return len;
+    }
+
+    private static int writeVarLong(long value, final byte[] data, int offset) {
+        while ((value & ~0x7FL) != 0) {
+            data[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static long readVarLong(final byte[] data, final int[] offset) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[offset[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
     /* -------------------------------------------------------------------------
      * Methods used by recovery and transaction management
      * ---------------------------------------------------------------------- */
@@ -931,6 +1404,10 @@ public class BTree extends Paged implements Lockable {
         /** the computed raw data size required by this node */
         private int currentDataLen = -1;
 
+        /** the size of the keys and of the pointer deltas of a compressed node, valid whilst {@link #currentDataLen} is */
+        private int compressedKeysLen = 0;
+        private int pointerDeltasLen = 0;
+
         private boolean allowUnload = true;
 
         public BTreeNode(final Page page, final boolean newPage) {
@@ -940,6 +1417,7 @@ public class BTree extends Paged implements Lockable {
                 keys = new Value[DEFAULT_INITIAL_ENTRIES];
                 ptrs = new long[DEFAULT_INITIAL_ENTRIES + 1];
                 pageHeader.setValueCount((short) 0);
+                pageHeader.setCompressed(false);
                 saved = false;
             }
         }
@@ -1079,6 +1557,12 @@ public class BTree extends Paged implements Lockable {
          * @return the data length
          */
         private int recalculateDataLen() {
+            if (keyCompression) {
+                compressedKeysLen = compressedKeysLen();
+                pointerDeltasLen = pointerDeltasLen();
+                currentDataLen = compressedDataLen(compressedKeysLen, pointerDeltasLen);
+                return currentDataLen;
+            }
             currentDataLen = ptrs == null ? 0 : nPtrs * 8;
             if(fileHeader.getFixedKeyLen() < 0) {
                 currentDataLen += 2 * nKeys;
@@ -1116,6 +1600,21 @@ public class BTree extends Paged implements Lockable {
                 recalculateDataLen();
                 return;
             }
+            if (keyCompression) {
+                // the key and the pointer were inserted at idx, so only the entries next to them are affected
+                if (idx + 1 < nKeys) {
+                    compressedKeysLen -= compressedKeyLen(idx + 1, idx - 1);
+                    compressedKeysLen += compressedKeyLen(idx + 1, idx);
+                }
+                compressedKeysLen += compressedKeyLen(idx, idx - 1);
+                if (idx + 1 < nPtrs) {
+                    pointerDeltasLen -= pointerDeltaLen(ptrs[idx + 1], idx > 0 ? ptrs[idx - 1] : 0);
+                    pointerDeltasLen += pointerDeltaLen(ptrs[idx + 1], ptrs[idx]);
+                }
+                pointerDeltasLen += pointerDeltaLen(ptrs[idx], idx > 0 ? ptrs[idx - 1] : 0);
+                currentDataLen = compressedDataLen(compressedKeysLen, pointerDeltasLen);
+                return;
+            }
             if (pageHeader.getStatus() == LEAF && idx > 0) {
                 // if this is a leaf page, we use prefix compression to store the keys,
                 // so subtract the size of the prefix
@@ -1217,6 +1716,10 @@ public class BTree extends Paged implements Lockable {
          */
         private void read() throws IOException {
             final byte[] data = page.read();
+            if (pageHeader.isCompressed()) {
+                readCompressed(data);
+                return;
+            }
             final short keyLen = fileHeader.getFixedKeyLen();
             short valSize = keyLen;
             int p = 0;
@@ -1283,6 +1786,12 @@ public class BTree extends Paged implements Lockable {
                 throw new RuntimeException("nkeys: " + nKeys + " valueCount: " + pageHeader.getValueCount());
             }
 
+            if (keyCompression && writeCompressed()) {
+                saved = true;
+                return;
+            }
+            pageHeader.setCompressed(false);
+
             final byte[] temp = new byte[fileHeader.getWorkSize()];
             int p = 0;
 
@@ -1332,6 +1841,192 @@ public class BTree extends Paged implements Lockable {
             saved = true;
         }
 
+        /**
+         * Adjust the raw data size of a compressed node after
+         * the pointer at idx was overwritten.
+         *
+         * @param idx the index of the pointer
+         * @param oldPtr the previous value of the pointer
+         */
+        private void adjustPointerDataLen(final int idx, final long oldPtr) {
+            if (currentDataLen < 0) {
+                recalculateDataLen();
+                return;
+            }
+            final long previous = idx > 0 ? ptrs[idx - 1] : 0;
+            pointerDeltasLen += pointerDeltaLen(ptrs[idx], previous) - pointerDeltaLen(oldPtr, previous);
+            if (idx + 1 < nPtrs) {
+                pointerDeltasLen += pointerDeltaLen(ptrs[idx + 1], ptrs[idx]) - pointerDeltaLen(ptrs[idx + 1], oldPtr);
+            }
+            currentDataLen = compressedDataLen(compressedKeysLen, pointerDeltasLen);
+        }
+
+        /**
+         * Returns the raw data size (in bytes) required by this node
+         * when it is written with compressed keys and pointers.
+         *
+         * @return the data length
+         */
+        private int compressedDataLen() {
+            return compressedDataLen(compressedKeysLen(), pointerDeltasLen());
+        }
+
+        private int compressedDataLen(final int keysLen, final int deltasLen) {
+            int len = 1;
+            if (pageHeader.getStatus() == BRANCH) {
+                len += varLongLen(prefix.getLength()) + prefix.getLength();
+            }
+            return len + keysLen + Math.min(deltasLen, nPtrs * 8);
+        }
+
+        private int compressedKeysLen() {
+            int len = 0;
+            for (int i = 0; i < nKeys; i++) {
+                len += compressedKeyLen(i, i - 1);
+            }
+            return len;
+        }
+
+        /**
+         * Returns the size of a compressed key.
+         *
+         * @param idx the index of the key
+         * @param previousIdx the index of the key it shares its prefix with, or -1 if it is the first key
+         *
+         * @return the size of the key
+         */
+        private int compressedKeyLen(final int idx, final int previousIdx) {
+            int len = 0;
+            int prefixLen = 0;
+            if (previousIdx >= 0) {
+                prefixLen = keys[idx].commonPrefix(keys[previousIdx]);
+                len += varLongLen(prefixLen);
+            }
+            final int suffixLen = keys[idx].getLength() - prefixLen;
+            if (fileHeader.getFixedKeyLen() < 0) {
+                len += varLongLen(suffixLen);
+            }
+            return len + suffixLen;
+        }
+
+        private int pointerDeltasLen() {
+            int len = 0;
+            long last = 0;
+            for (int i = 0; i < nPtrs; i++) {
+                len += pointerDeltaLen(ptrs[i], last);
+                last = ptrs[i];
+            }
+            return len;
+        }
+
+        private static int pointerDeltaLen(final long pointer, final long previous) {
+            return varLongLen(zigZag(pointer - previous));
+        }
+
+        /**
+         * Write the node to the underlying page with compressed keys and pointers.
+         *
+         * A compressed page is laid out as: [flags], [prefixLen, prefix] for branch pages only,
+         * then for each key [sharedLen, suffixLen, suffix] where sharedLen is the number of leading
+         * bytes the key has in common with the previous key (omitted for the first key) and
+         * suffixLen is omitted for fixed length keys, and finally the pointers, either as
+         * variable length deltas or with 8 bytes each, whichever is shorter.
+         *
+         * @return true if the node was written, false if it does not fit into the page
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        private boolean writeCompressed() throws IOException {
+            final int len = compressedDataLen();
+            if (len > fileHeader.getWorkSize()) {
+                return false;
+            }
+
+            final byte[] temp = new byte[len];
+            final boolean deltaPointers = pointerDeltasLen() < nPtrs * 8;
+            int p = 0;
+            temp[p++] = deltaPointers ? COMPRESSED_DELTA_POINTERS : 0;
+            if (pageHeader.getStatus() == BRANCH) {
+                p = writeVarLong(prefix.getLength(), temp, p);
+                System.arraycopy(prefix.data(), prefix.start(), temp, p, prefix.getLength());
+                p += prefix.getLength();
+            }
+            final boolean varKeyLen = fileHeader.getFixedKeyLen() < 0;
+            for (int i = 0; i < nKeys; i++) {
+                int prefixLen = 0;
+                if (i > 0) {
+                    prefixLen = keys[i].commonPrefix(keys[i - 1]);
+                    p = writeVarLong(prefixLen, temp, p);
+                }
+                final int suffixLen = keys[i].getLength() - prefixLen;
+                if (varKeyLen) {
+                    p = writeVarLong(suffixLen, temp, p);
+                }
+                System.arraycopy(keys[i].data(), keys[i].start() + prefixLen, temp, p, suffixLen);
+                p += suffixLen;
+            }
+            long last = 0;
+            for (int i = 0; i < nPtrs; i++) {
+                if (deltaPointers) {
+                    p = writeVarLong(zigZag(ptrs[i] - last), temp, p);
+                    last = ptrs[i];
+                } else {
+                    ByteConversion.longToByte(ptrs[i], temp, p);
+                    p += 8;
+                }
+            }
+
+            pageHeader.setCompressed(true);
+            writeValue(page, new Value(temp));
+            return true;
+        }
+
+        /**
+         * Read the node from a page which was written by {@link #writeCompressed()}.
+         *
+         * @param data the data of the page
+         */
+        private void readCompressed(final byte[] data) {
+            final int[] pos = { 0 };
+            final boolean deltaPointers = (data[pos[0]++] & COMPRESSED_DELTA_POINTERS) != 0;
+            if (pageHeader.getStatus() == BRANCH) {
+                final int prefixSize = (int) readVarLong(data, pos);
+                if (prefixSize == 0) {
+                    prefix = Value.EMPTY_VALUE;
+                } else {
+                    prefix = new Value(data, pos[0], prefixSize);
+                    pos[0] += prefixSize;
+                }
+            }
+            final short fixedKeyLen = fileHeader.getFixedKeyLen();
+            nKeys = pageHeader.getValueCount();
+            keys = new Value[(nKeys * 3) / 2 + 1];
+            for (int i = 0; i < nKeys; i++) {
+                final int prefixLen = i > 0 ? (int) readVarLong(data, pos) : 0;
+                final int suffixLen = fixedKeyLen < 0 ? (int) readVarLong(data, pos) : fixedKeyLen - prefixLen;
+                final byte[] t = new byte[prefixLen + suffixLen];
+                if (prefixLen > 0) {
+                    // copy prefixLen leading bytes from the previous key
+                    System.arraycopy(keys[i - 1].data(), keys[i - 1].start(), t, 0, prefixLen);
+                }
+                System.arraycopy(data, pos[0], t, prefixLen, suffixLen);
+                pos[0] += suffixLen;
+                keys[i] = new Value(t);
+            }
+            nPtrs = pageHeader.getPointerCount();
+            ptrs = new long[(nPtrs * 3) / 2 + 1];
+            long last = 0;
+            for (int i = 0; i < nPtrs; i++) {
+                if (deltaPointers) {
+                    last += unZigZag(readVarLong(data, pos));
+                    ptrs[i] = last;
+                } else {
+                    ptrs[i] = ByteConversion.byteToLong(data, pos[0]);
+                    pos[0] += 8;
+                }
+            }
+        }
+
         /**
          * Retrieve the child node at guven index.
          * 
@@ -1424,6 +2119,14 @@ public class BTree extends Paged implements Lockable {
                             }
                             ptrs[idx] = pointer;
                             saved = false;
+                            if (keyCompression) {
+                                // the delta to the new pointer may be longer, so the page may no longer fit.
+                                // NOTE: the pages are split until the left page fits, the right pages split themselves
+                                adjustPointerDataLen(idx, oldPtr);
+                                while (mustSplit()) {
+                                    split(transaction);
+                                }
+                            }
                             return oldPtr;
                         } else {
                             // Value was not found
@@ -2637,7 +3340,8 @@ public class BTree extends Paged implements Lockable {
             cache.getBuffers(),
             cache.getUsedBuffers(),
             cache.getHits(),
-            cache.getFails());
+            cache.getFails(),
+            cache.getEvictions());
     }
 
     public void printStatistics() {
@@ -2728,7 +3432,11 @@ public class BTree extends Paged implements Lockable {
 
     protected static class BTreePageHeader extends PageHeader {
 
+        /** marks a page written with compressed keys, stored in the (otherwise unused) sign bit of the value count */
+        private static final short COMPRESSED_FLAG = (short) 0x8000;
+
         private short valueCount = 0;
+        private boolean compressed = false;
         private long parentPage = Page.NO_PAGE;
 
         public BTreePageHeader() {
@@ -2744,7 +3452,9 @@ public class BTree extends Paged implements Lockable {
             offset = super.read(data, offset);
             parentPage = ByteConversion.byteToLong(data, offset);
             offset += 8;
-            valueCount = ByteConversion.byteToShort(data, offset);
+            final short count = ByteConversion.byteToShort(data, offset);
+            compressed = (count & COMPRESSED_FLAG) != 0;
+            valueCount = (short) (count & ~COMPRESSED_FLAG);
             return offset + 2;
         }
 
@@ -2753,7 +3463,7 @@ public class BTree extends Paged implements Lockable {
             offset = super.write(data, offset);
             ByteConversion.longToByte(parentPage, data, offset);
             offset += 8;
-            ByteConversion.shortToByte(valueCount, data, offset);
+            ByteConversion.shortToByte(compressed ? (short) (valueCount | COMPRESSED_FLAG) : valueCount, data, offset);
             return offset + 2;
         }
 
@@ -2771,6 +3481,21 @@ public class BTree extends Paged implements Lockable {
             return valueCount;
         }
 
+        public final void setCompressed(final boolean compressed) {
+            this.compressed = compressed;
+            setDirty(true);
+        }
+
+        /**
+         * Whether the keys and pointers of this page are compressed,
+         * see {@link BTree#setKeyCompression(boolean)}.
+         *
+         * @return true if the page is compressed
+         */
+        public final boolean isCompressed() {
+            return compressed;
+        }
+
         /**
          * The number of pointers stored by this page
          *
@@ -0,0 +1,154 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Read-only memory mapped view of a paged file.
+ *
+ * The file is mapped in fixed size segments, each of which is mapped
+ * lazily when it is first read from. Pages are copied straight out
+ * of the mapping, which avoids a seek and read system call per page miss.
+ *
+ * Writes are never made through the mapping, they continue to be made
+ * through the file's channel, and so are visible through the mapping
+ * via the operating system's page cache. Segments which do not yet cover
+ * the end of a growing file are re-mapped on demand.
+ *
+ * A read which cannot be served from the mapping, i.e. beyond the
+ * end of the file or across a segment boundary, returns false and
+ * should be served by the caller from the file channel instead.
+ */
+@ThreadSafe
+final class MappedSegments {
+
+    /**
+     * Default size of a mapped segment: 256 MB
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 256 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int segmentSize;
+
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    MappedSegments(final FileChannel channel) {
+        this(channel, DEFAULT_SEGMENT_SIZE);
+    }
+
+    MappedSegments(final FileChannel channel, final int segmentSize) {
+        this.channel = channel;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Read bytes from the mapped file.
+     *
+     * @param offset the offset in the file to read from
+     * @param dst the buffer to read into
+     * @param dstOffset the offset in {@code dst} to read into
+     * @param len the number of bytes to read
+     *
+     * @return true if the bytes were read, false if the read cannot be served from the mapping
+     *
+     * @throws IOException if the file cannot be mapped
+     */
+    boolean read(final long offset, final byte[] dst, final int dstOffset, final int len) throws IOException {
+        final int segmentIdx = (int) (offset / segmentSize);
+        final int segmentOffset = (int) (offset % segmentSize);
+        if (segmentOffset + len > segmentSize) {
+            // straddles two segments
+            return false;
+        }
+
+        final ByteBuffer segment = getSegment(segmentIdx, segmentOffset + len);
+        if (segment == null) {
+            // beyond the end of the file
+            return false;
+        }
+
+        final ByteBuffer view = segment.duplicate();
+        view.position(segmentOffset);
+        view.get(dst, dstOffset, len);
+        return true;
+    }
+
+    /**
+     * Get a mapped segment which covers at least {@code minLength} bytes.
+     *
+     * @param segmentIdx the index of the segment
+     * @param minLength the minimum number of bytes the segment must cover
+     *
+     * @return the segment, or null if the file is not large enough
+     */
+    private MappedByteBuffer getSegment(final int segmentIdx, final int minLength) throws IOException {
+        MappedByteBuffer[] current = segments;
+        if (segmentIdx < current.length) {
+            final MappedByteBuffer segment = current[segmentIdx];
+            if (segment != null && segment.capacity() >= minLength) {
+                return segment;
+            }
+        }
+
+        synchronized (this) {
+            current = segments;
+            if (segmentIdx < current.length) {
+                final MappedByteBuffer segment = current[segmentIdx];
+                if (segment != null && segment.capacity() >= minLength) {
+                    return segment;
+                }
+            }
+
+            final long segmentStart = (long) segmentIdx * segmentSize;
+            final long available = channel.size() - segmentStart;
+            if (available < minLength) {
+                return null;
+            }
+
+            // NOTE: the mapping is never larger than the file, as mapping past the end of a writable channel would grow the file
+            final int mappedLength = (int) Math.min(segmentSize, available);
+            final MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, mappedLength);
+
+            final MappedByteBuffer[] updated = segmentIdx < current.length ? current.clone() : Arrays.copyOf(current, segmentIdx + 1);
+            updated[segmentIdx] = segment;
+            segments = updated;
+            return segment;
+        }
+    }
+
+    /**
+     * Release the mapped segments.
+     *
+     * The mappings themselves are unmapped by the JVM
+     * once the segments have been garbage collected.
+     */
+    synchronized void close() {
+        segments = new MappedByteBuffer[0];
+    }
+}
@@ -75,8 +75,11 @@ package org.exist.storage.btree;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.storage.BrokerPool;
+import org.exist.storage.CacheManager;
+import org.exist.storage.cache.OffHeapPagePool;
 import org.exist.storage.journal.Lsn;
 import org.exist.util.ByteConversion;
+import org.exist.util.Configuration;
 import org.exist.util.FileUtils;
 import org.exist.xquery.Constants;
 
@@ -91,6 +94,10 @@ import java.nio.channels.NonWritableChannelException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import javax.annotation.Nullable;
 
 /**
  *  Paged is a paged file foundation that is used by the BTree class and
@@ -123,6 +130,13 @@ public abstract class Paged implements AutoCloseable {
 
     protected final static Logger LOG = LogManager.getLogger(Paged.class);
 
+    /**
+     * The names of the files (e.g. {@code dom.dbx}) whose pages should be read through a memory mapping,
+     * rather than by seeking and reading the file. Value is a {@code Set<String>}.
+     */
+    public static final String PROPERTY_MEMORY_MAPPED_FILES = "db-connection.memory-mapped-files";
+    public static final String MEMORY_MAPPED_FILES_ATTRIBUTE = "memory-mapped-files";
+
     protected final static byte DELETED = 127;
     protected final static byte OVERFLOW = 126;
     protected final static byte UNUSED = 0;
@@ -134,16 +148,29 @@ public abstract class Paged implements AutoCloseable {
     private final byte[] tempPageData;
     private final byte[] tempHeaderData;
 
+    private final Set<String> memoryMappedFiles;
+
     private RandomAccessFile raf;
+    @Nullable private MappedSegments mappedSegments;
+    @Nullable private final OffHeapPagePool offHeapPagePool;
+    private int offHeapPagePoolFileId = OffHeapPagePool.NO_FILE;
     private Path file;
     private boolean readOnly = false;
     private boolean fileIsNew = false;
 	
+    @SuppressWarnings("unchecked")
     public Paged(final BrokerPool pool, final short fileVersion) {
         this.fileVersion = fileVersion;
         this.fileHeader = createFileHeader(pool.getPageSize());
         this.tempPageData = new byte[fileHeader.pageSize];
         this.tempHeaderData = new byte[fileHeader.pageHeaderSize];
+
+        final Configuration configuration = pool.getConfiguration();
+        final Set<String> configuredMemoryMappedFiles = configuration != null ? (Set<String>) configuration.getProperty(PROPERTY_MEMORY_MAPPED_FILES) : null;
+        this.memoryMappedFiles = configuredMemoryMappedFiles != null ? configuredMemoryMappedFiles : Collections.emptySet();
+
+        final CacheManager cacheManager = pool.getCacheManager();
+        this.offHeapPagePool = cacheManager != null ? cacheManager.getOffHeapPagePool() : null;
     }
 
     public final static void setPageSize(final int pageSize) {
@@ -166,6 +193,14 @@ public abstract class Paged implements AutoCloseable {
     @Override
     public void close() throws DBException {
         try {
+            if (mappedSegments != null) {
+                mappedSegments.close();
+                mappedSegments = null;
+            }
+            if (offHeapPagePoolFileId != OffHeapPagePool.NO_FILE) {
+                offHeapPagePool.deregisterFile(offHeapPagePoolFileId);
+                offHeapPagePoolFileId = OffHeapPagePool.NO_FILE;
+            }
             raf.close();
         } catch (final IOException e) {
             throw new DBException("An error occurred whilst closing the database file '"
@@ -343,10 +378,34 @@ public abstract class Paged implements AutoCloseable {
      * @throws DBException if the paged file cannot be opened
      */
     public boolean open(final short requiredVersion) throws DBException {
+        return openFile(requiredVersion, requiredVersion);
+    }
+
+    /**
+     * Open a file which may still be in a legacy version of its storage format.
+     *
+     * A file in the legacy version is upgraded to the required version,
+     * so the caller must be able to read both formats.
+     *
+     * @param requiredVersion The required version of the file
+     * @param legacyVersion The legacy version of the file, which is upgraded on open
+     * @return true if opened
+     * @throws DBException if the paged file cannot be opened
+     */
+    public boolean open(final short requiredVersion, final short legacyVersion) throws DBException {
+        return openFile(requiredVersion, legacyVersion);
+    }
+
+    private boolean openFile(final short requiredVersion, final short legacyVersion) throws DBException {
         try {
             if (exists()) {
                 fileHeader.read();
-                if(fileHeader.getVersion() != requiredVersion) {
+                if (fileHeader.getVersion() == legacyVersion && legacyVersion != requiredVersion) {
+                    LOG.info("Upgrading database file {} from version {} to version {}",
+                            FileUtils.fileName(getFile()), legacyVersion, requiredVersion);
+                    fileHeader.setVersion(requiredVersion);
+                    fileHeader.write();
+                } else if(fileHeader.getVersion() != requiredVersion) {
                     throw new DBException("Database file " +
                         FileUtils.fileName(getFile()) + " has a storage format incompatible with this " +
                         "version of eXist. You need to upgrade your database by creating a backup, " +
@@ -420,6 +479,34 @@ public abstract class Paged implements AutoCloseable {
         } catch (final IOException e) {
             LOG.warn("An exception occurred while opening database file {}: {}", file.toAbsolutePath().toString(), e.getMessage(), e);
         }
+
+        if (raf != null && memoryMappedFiles.contains(FileUtils.fileName(file))) {
+            LOG.info("Pages of database file {} will be read through a memory mapping", FileUtils.fileName(file));
+            mappedSegments = new MappedSegments(raf.getChannel());
+        }
+
+        // NOTE: memory mapped files are already read from outside of the heap
+        if (raf != null && mappedSegments == null && offHeapPagePool != null && offHeapPagePoolFileId == OffHeapPagePool.NO_FILE) {
+            offHeapPagePoolFileId = offHeapPagePool.registerFile();
+        }
+    }
+
+    /**
+     * Determine if the pages of this file are read through a memory mapping.
+     *
+     * @return true if pages are read through a memory mapping
+     */
+    public boolean isMemoryMapped() {
+        return mappedSegments != null;
+    }
+
+    /**
+     * Determine if the pages of this file are kept in the off-heap page pool.
+     *
+     * @return true if pages are kept in the off-heap page pool
+     */
+    public boolean isOffHeapPooled() {
+        return offHeapPagePoolFileId != OffHeapPagePool.NO_FILE;
     }
 
     /**
@@ -692,6 +779,11 @@ public abstract class Paged implements AutoCloseable {
         public final short getVersion() {
             return version;
         }
+
+        public final void setVersion(final short version) {
+            this.version = version;
+            dirty = true;
+        }
         
         /**
          * Increment the number of records being managed by the file
@@ -943,18 +1035,68 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public byte[] read() throws IOException {
+            if (mappedSegments != null) {
+                final byte[] workData = readMapped();
+                if (workData != null) {
+                    return workData;
+                }
+            }
+
+            // NOTE: the file is shared by concurrent readers, so the seek and read must be atomic
             try {
-                if (raf.getFilePointer() != offset) {
-                    raf.seek(offset);
+                synchronized (fileHeader) {
+                    if (offHeapPagePoolFileId != OffHeapPagePool.NO_FILE) {
+                        final byte[] workData = offHeapPagePool.get(offHeapPagePoolFileId, pageNum, tempHeaderData);
+                        if (workData != null) {
+                            header.read(tempHeaderData, 0);
+                            return workData;
+                        }
+                    }
+
+                    if (raf.getFilePointer() != offset) {
+                        raf.seek(offset);
+                    }
+                    Arrays.fill(tempHeaderData, (byte)0);
+                    raf.read(tempHeaderData);
+                    // Read in the header
+                    header.read(tempHeaderData, 0);
+                    // Read the working data
+                    final byte[] workData = new byte[header.dataLen];
+                    raf.read(workData);
+
+                    if (offHeapPagePoolFileId != OffHeapPagePool.NO_FILE) {
+                        offHeapPagePool.put(offHeapPagePoolFileId, pageNum, tempHeaderData, workData);
+                    }
+                    return workData;
+                }
+            } catch(final Exception e) {
+                LOG.warn("error while reading page: {}", getPageInfo(), e);
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        /**
+         * Read the page through the memory mapping of the file.
+         *
+         * @return the data of the page, or null if the page could
+         *     not be read from the mapping and must be read from the file instead.
+         */
+        private @Nullable byte[] readMapped() throws IOException {
+            try {
+                final byte[] headerData = new byte[fileHeader.pageHeaderSize];
+                if (!mappedSegments.read(offset, headerData, 0, headerData.length)) {
+                    return null;
                 }
-                Arrays.fill(tempHeaderData, (byte)0);
-                raf.read(tempHeaderData);
-                // Read in the header
-                header.read(tempHeaderData, 0);
-                // Read the working data
+                header.read(headerData, 0);
+
                 final byte[] workData = new byte[header.dataLen];
-                raf.read(workData);
+                if (!mappedSegments.read(offset + headerData.length, workData, 0, workData.length)) {
+                    return null;
+                }
                 return workData;
+            } catch(final IOException e) {
+                LOG.warn("error while reading page: {}", getPageInfo(), e);
+                throw e;
             } catch(final Exception e) {
                 LOG.warn("error while reading page: {}", getPageInfo(), e);
                 throw new IOException(e.getMessage());
@@ -971,25 +1113,37 @@ public abstract class Paged implements AutoCloseable {
         }
 
         private final void write(final byte[] data) throws IOException {
-            if(data == null) {
-                // Removed page: fill with 0
-                Arrays.fill(tempPageData, (byte)0);
-                header.setLsn(Lsn.LSN_INVALID);
-            }
-            // Write out the header
-            header.write(tempPageData, 0);
-            header.dirty = false;
-            if (data != null) {
-                if (data.length > fileHeader.workSize) {
-                    throw new IOException("page: " + getPageInfo() + ": data length too large: " + data.length);
-                } else {
-                    System.arraycopy(data, 0, tempPageData, fileHeader.pageHeaderSize, data.length);
+            // NOTE: pages may be written back by eviction from a concurrent reader's cache access
+            synchronized (fileHeader) {
+                if(data == null) {
+                    // Removed page: fill with 0
+                    Arrays.fill(tempPageData, (byte)0);
+                    header.setLsn(Lsn.LSN_INVALID);
+                }
+                // Write out the header
+                header.write(tempPageData, 0);
+                header.dirty = false;
+                if (data != null) {
+                    if (data.length > fileHeader.workSize) {
+                        throw new IOException("page: " + getPageInfo() + ": data length too large: " + data.length);
+                    } else {
+                        System.arraycopy(data, 0, tempPageData, fileHeader.pageHeaderSize, data.length);
+                    }
+                }
+                if (raf.getFilePointer() != offset) {
+                    raf.seek(offset);
+                }
+                raf.write(tempPageData);
+
+                // NOTE: the pool is updated whilst holding the lock, so that a concurrent read cannot put a stale page
+                if (offHeapPagePoolFileId != OffHeapPagePool.NO_FILE) {
+                    if (data == null) {
+                        offHeapPagePool.invalidate(offHeapPagePoolFileId, pageNum);
+                    } else {
+                        offHeapPagePool.put(offHeapPagePoolFileId, pageNum, tempPageData, fileHeader.pageHeaderSize + data.length);
+                    }
                 }
             }
-            if (raf.getFilePointer() != offset) {
-                raf.seek(offset);
-            }
-            raf.write(tempPageData);
         }
 
         @Override
@@ -0,0 +1,371 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+import org.exist.util.ByteConversion;
+import org.exist.util.io.TemporaryFileManager;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects key/payload pairs in any order, and returns them
+ * in key order for building a {@link BTree} bottom-up.
+ *
+ * Entries are buffered in memory until the buffer exceeds the
+ * configured size, at which point the buffer is sorted and spilled
+ * to a temporary file as a sorted run. A {@link Cursor} then merges
+ * the spilled runs with the remaining buffer.
+ *
+ * The payloads of equal keys are kept together, in the order in which
+ * they were added.
+ */
+@ThreadSafe
+public class SortedRunBuilder implements Closeable {
+
+    /**
+     * Default size of the in-memory buffer: 32 MB
+     */
+    public static final long DEFAULT_MAX_MEMORY = 32 * 1024 * 1024;
+
+    /**
+     * Estimated heap overhead of a buffered entry, in addition to its key and payload.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static final Comparator<Entry> ENTRY_COMPARATOR = (e1, e2) -> e1.key.compareTo(e2.key);
+
+    private final long maxMemory;
+
+    @GuardedBy("this") private List<Entry> entries = new ArrayList<>();
+    @GuardedBy("this") private long memory = 0;
+    @GuardedBy("this") private final List<Path> runs = new ArrayList<>();
+    @GuardedBy("this") private long size = 0;
+
+    public SortedRunBuilder() {
+        this(DEFAULT_MAX_MEMORY);
+    }
+
+    /**
+     * @param maxMemory the size in bytes of the in-memory buffer,
+     *     before the entries are spilled to disk.
+     */
+    public SortedRunBuilder(final long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Add an entry.
+     *
+     * @param key the key
+     * @param payload the payload
+     *
+     * @throws IOException if the entries cannot be spilled to disk
+     */
+    public synchronized void add(final Value key, final byte[] payload) throws IOException {
+        final Entry entry = new Entry(new Value(Arrays.copyOfRange(key.data(), key.start(), key.start() + key.getLength())), payload);
+        entries.add(entry);
+        size++;
+        memory += key.getLength() + payload.length + ENTRY_OVERHEAD;
+        if (memory > maxMemory) {
+            spill();
+        }
+    }
+
+    /**
+     * Add an entry whose payload is a pointer.
+     *
+     * @param key the key
+     * @param pointer the pointer
+     *
+     * @throws IOException if the entries cannot be spilled to disk
+     */
+    public void add(final Value key, final long pointer) throws IOException {
+        final byte[] payload = new byte[8];
+        ByteConversion.longToByte(pointer, payload, 0);
+        add(key, payload);
+    }
+
+    /**
+     * @return the number of entries added since the last call to {@link #sort()}.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Sort the entries added so far, and reset the builder.
+     *
+     * @return a cursor over the entries in key order, which
+     *     takes ownership of any spilled runs.
+     *
+     * @throws IOException if a spilled run cannot be read
+     */
+    public synchronized Cursor sort() throws IOException {
+        final List<Entry> buffered = entries;
+        buffered.sort(ENTRY_COMPARATOR);
+        final List<Path> sortedRuns = new ArrayList<>(runs);
+
+        entries = new ArrayList<>();
+        memory = 0;
+        size = 0;
+        runs.clear();
+
+        return new Cursor(sortedRuns, buffered);
+    }
+
+    /**
+     * Sort the buffered entries and write them to a temporary file.
+     */
+    @GuardedBy("this")
+    private void spill() throws IOException {
+        entries.sort(ENTRY_COMPARATOR);
+        final Path run = TemporaryFileManager.getInstance().getTemporaryFile();
+        runs.add(run);
+        try (final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 65536))) {
+            for (final Entry entry : entries) {
+                os.writeInt(entry.key.getLength());
+                os.write(entry.key.data(), entry.key.start(), entry.key.getLength());
+                os.writeInt(entry.payload.length);
+                os.write(entry.payload);
+            }
+        }
+        entries = new ArrayList<>();
+        memory = 0;
+    }
+
+    /**
+     * Discard any entries which have not been sorted yet.
+     */
+    @Override
+    public synchronized void close() {
+        for (final Path run : runs) {
+            TemporaryFileManager.getInstance().returnTemporaryFile(run);
+        }
+        runs.clear();
+        entries = new ArrayList<>();
+        memory = 0;
+        size = 0;
+    }
+
+    private static final class Entry {
+        final Value key;
+        final byte[] payload;
+
+        Entry(final Value key, final byte[] payload) {
+            this.key = key;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Iterates over the distinct keys in key order, by merging
+     * the sorted runs.
+     */
+    @NotThreadSafe
+    public static final class Cursor implements Closeable {
+        private final List<Path> files;
+        private final List<Run> open = new ArrayList<>();
+        private final PriorityQueue<Run> queue;
+
+        private Value key = null;
+        private final List<byte[]> payloads = new ArrayList<>();
+
+        private Cursor(final List<Path> files, final List<Entry> buffered) throws IOException {
+            this.files = files;
+            this.queue = new PriorityQueue<>(files.size() + 1, (r1, r2) -> {
+                final int cmp = r1.current.key.compareTo(r2.current.key);
+                // equal keys are returned in the order of the runs, i.e. the order in which they were added
+                return cmp != 0 ? cmp : Integer.compare(r1.idx, r2.idx);
+            });
+
+            try {
+                for (final Path file : files) {
+                    open.add(new FileRun(open.size(), file));
+                }
+                open.add(new BufferedRun(open.size(), buffered.iterator()));
+                for (final Run run : open) {
+                    if (run.advance()) {
+                        queue.add(run);
+                    }
+                }
+            } catch (final IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Move to the next distinct key.
+         *
+         * @return true if there is a next key, false otherwise
+         *
+         * @throws IOException if a spilled run cannot be read
+         */
+        public boolean next() throws IOException {
+            payloads.clear();
+            Run run = queue.poll();
+            if (run == null) {
+                key = null;
+                return false;
+            }
+            key = run.current.key;
+            payloads.add(run.current.payload);
+            if (run.advance()) {
+                queue.add(run);
+            }
+
+            while ((run = queue.peek()) != null && run.current.key.compareTo(key) == 0) {
+                queue.poll();
+                payloads.add(run.current.payload);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the current key.
+         */
+        public Value getKey() {
+            return key;
+        }
+
+        /**
+         * @return the payloads of the current key, in the order in which they were added.
+         */
+        public List<byte[]> getPayloads() {
+            return payloads;
+        }
+
+        /**
+         * @return the pointer of the current key, i.e. the last pointer
+         *     that was added for the key.
+         */
+        public long getPointer() {
+            return ByteConversion.byteToLong(payloads.get(payloads.size() - 1), 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            queue.clear();
+            IOException ioe = null;
+            for (final Run run : open) {
+                try {
+                    run.close();
+                } catch (final IOException e) {
+                    ioe = e;
+                }
+            }
+            open.clear();
+            for (final Path file : files) {
+                TemporaryFileManager.getInstance().returnTemporaryFile(file);
+            }
+            if (ioe != null) {
+                throw ioe;
+            }
+        }
+    }
+
+    private abstract static class Run implements Closeable {
+        final int idx;
+        Entry current;
+
+        Run(final int idx) {
+            this.idx = idx;
+        }
+
+        /**
+         * Move to the next entry of the run.
+         *
+         * @return false if the run is exhausted
+         */
+        abstract boolean advance() throws IOException;
+    }
+
+    private static final class BufferedRun extends Run {
+        private final Iterator<Entry> entries;
+
+        BufferedRun(final int idx, final Iterator<Entry> entries) {
+            super(idx);
+            this.entries = entries;
+        }
+
+        @Override
+        boolean advance() {
+            current = entries.hasNext() ? entries.next() : null;
+            return current != null;
+        }
+
+        @Override
+        public void close() {
+            current = null;
+        }
+    }
+
+    private static final class FileRun extends Run {
+        private final DataInputStream is;
+
+        FileRun(final int idx, final Path file) throws IOException {
+            super(idx);
+            this.is = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 65536));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            final int keyLen;
+            try {
+                keyLen = is.readInt();
+            } catch (final EOFException e) {
+                current = null;
+                return false;
+            }
+            final byte[] key = new byte[keyLen];
+            is.readFully(key);
+            final byte[] payload = new byte[is.readInt()];
+            is.readFully(payload);
+            current = new Entry(new Value(key), payload);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            current = null;
+            is.close();
+        }
+    }
+}
@@ -166,6 +166,14 @@ public interface Cache<T extends Cacheable> {
      */
     int getFails();
 
+    /**
+     * Get the number of items which have been evicted
+     * from the cache to make room for other items.
+     *
+     * @return number of evicted items
+     */
+    int getEvictions();
+
     /**
      * Get the load factor if the cache
      *
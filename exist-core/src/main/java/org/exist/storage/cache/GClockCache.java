@@ -237,6 +237,11 @@ public class GClockCache<T extends Cacheable> implements Cache<T> {
 		return accounting.getMisses();
 	}
 
+    @Override
+    public int getEvictions() {
+        return accounting.getReplaced();
+    }
+
     public int getThrashing() {
         return accounting.getThrashing();
     }
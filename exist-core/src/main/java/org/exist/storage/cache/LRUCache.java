@@ -160,6 +160,11 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
 		return accounting.getMisses();
 	}
  
+    @Override
+    public int getEvictions() {
+        return accounting.getReplaced();
+    }
+
     public int getThrashing() {
         return accounting.getThrashing();
     }
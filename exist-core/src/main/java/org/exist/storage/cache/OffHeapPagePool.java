@@ -0,0 +1,385 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of page images held in memory outside of the Java heap.
+ *
+ * The pool is a second level cache beneath the page caches of the paged
+ * database files: pages which are read from, or written to, a file are also
+ * kept in the pool, so that a page which has been evicted from a (heap based)
+ * page cache can be re-loaded without reading the file. As the pool is not
+ * scanned by the garbage collector, it can be much larger than the page caches
+ * without causing long GC pauses, and its size is configured independently of
+ * the heap (see {@link org.exist.storage.DefaultCacheManager#PROPERTY_OFF_HEAP_CACHE_SIZE}).
+ *
+ * The memory is allocated in slabs of direct memory as the pool fills up,
+ * each of which is divided into slots of one page. Once all slabs have been
+ * allocated, slots are re-used in CLOCK order. Note that the amount of direct
+ * memory may also be limited by the JVM (-XX:MaxDirectMemorySize).
+ */
+@ThreadSafe
+public class OffHeapPagePool {
+
+    private final static Logger LOG = LogManager.getLogger(OffHeapPagePool.class);
+
+    /**
+     * Default size of a slab: 8 MB
+     */
+    public static final int DEFAULT_SLAB_SIZE = 8 * 1024 * 1024;
+
+    public static final int NO_FILE = -1;
+    private static final int NO_SLOT = -1;
+
+    private final long maxSize;
+    private final int pageSize;
+    private final int slotsPerSlab;
+    private final int maxSlots;
+
+    @GuardedBy("this") private final ByteBuffer[] slabs;
+    @GuardedBy("this") private final int[] slotFile;
+    @GuardedBy("this") private final long[] slotPage;
+    @GuardedBy("this") private final int[] slotLength;
+    @GuardedBy("this") private final boolean[] referenced;
+
+    /**
+     * The slots of each file, by page number.
+     */
+    @GuardedBy("this") private final Int2ObjectMap<Long2IntMap> files = new Int2ObjectOpenHashMap<>();
+
+    /**
+     * Slots below {@link #nextUnusedSlot} which have been freed.
+     */
+    @GuardedBy("this") private final IntArrayList freeSlots = new IntArrayList();
+
+    @GuardedBy("this") private int allocatedSlots = 0;
+    @GuardedBy("this") private int nextUnusedSlot = 0;
+    @GuardedBy("this") private int clockHand = 0;
+    @GuardedBy("this") private long usedBytes = 0;
+    @GuardedBy("this") private boolean allocationFailed = false;
+
+    private final AtomicInteger nextFileId = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public OffHeapPagePool(final long maxSize, final int pageSize) {
+        this(maxSize, pageSize, DEFAULT_SLAB_SIZE);
+    }
+
+    public OffHeapPagePool(final long maxSize, final int pageSize, final int slabSize) {
+        this.maxSize = maxSize;
+        this.pageSize = pageSize;
+        this.slotsPerSlab = Math.max(1, slabSize / pageSize);
+        this.maxSlots = (int) Math.min(Integer.MAX_VALUE, maxSize / pageSize);
+        this.slabs = new ByteBuffer[(maxSlots + slotsPerSlab - 1) / slotsPerSlab];
+        this.slotFile = new int[maxSlots];
+        this.slotPage = new long[maxSlots];
+        this.slotLength = new int[maxSlots];
+        this.referenced = new boolean[maxSlots];
+    }
+
+    /**
+     * Register a file whose pages are to be kept in the pool.
+     *
+     * @return the id by which the pages of the file are identified in the pool
+     */
+    public int registerFile() {
+        return nextFileId.getAndIncrement();
+    }
+
+    /**
+     * Deregister a file, and release all of its pages from the pool.
+     *
+     * @param fileId the id of the file
+     */
+    public synchronized void deregisterFile(final int fileId) {
+        final Long2IntMap pages = files.remove(fileId);
+        if (pages != null) {
+            for (final int slot : pages.values()) {
+                freeSlot(slot);
+            }
+        }
+    }
+
+    /**
+     * Get a page from the pool.
+     *
+     * @param fileId the id of the file
+     * @param pageNum the number of the page
+     * @param headerData a buffer into which the header of the page is copied
+     *
+     * @return the data of the page following its header, or null if the page is not in the pool
+     */
+    public synchronized @Nullable byte[] get(final int fileId, final long pageNum, final byte[] headerData) {
+        final Long2IntMap pages = files.get(fileId);
+        final int slot = pages != null ? pages.get(pageNum) : NO_SLOT;
+        if (slot == NO_SLOT) {
+            misses.increment();
+            return null;
+        }
+
+        final ByteBuffer slab = slabs[slot / slotsPerSlab];
+        slab.position((slot % slotsPerSlab) * pageSize);
+        slab.get(headerData, 0, headerData.length);
+        final byte[] data = new byte[slotLength[slot] - headerData.length];
+        slab.get(data, 0, data.length);
+
+        referenced[slot] = true;
+        hits.increment();
+        return data;
+    }
+
+    /**
+     * Put a page into the pool, replacing any previous image of the page.
+     *
+     * @param fileId the id of the file
+     * @param pageNum the number of the page
+     * @param headerData the header of the page
+     * @param data the data of the page following its header
+     */
+    public synchronized void put(final int fileId, final long pageNum, final byte[] headerData, final byte[] data) {
+        final int slot = slotFor(fileId, pageNum, headerData.length + data.length);
+        if (slot != NO_SLOT) {
+            final ByteBuffer slab = slabs[slot / slotsPerSlab];
+            slab.position((slot % slotsPerSlab) * pageSize);
+            slab.put(headerData);
+            slab.put(data);
+        }
+    }
+
+    /**
+     * Put a page into the pool, replacing any previous image of the page.
+     *
+     * @param fileId the id of the file
+     * @param pageNum the number of the page
+     * @param pageData the header and data of the page
+     * @param length the number of bytes of {@code pageData} to put
+     */
+    public synchronized void put(final int fileId, final long pageNum, final byte[] pageData, final int length) {
+        final int slot = slotFor(fileId, pageNum, length);
+        if (slot != NO_SLOT) {
+            final ByteBuffer slab = slabs[slot / slotsPerSlab];
+            slab.position((slot % slotsPerSlab) * pageSize);
+            slab.put(pageData, 0, length);
+        }
+    }
+
+    /**
+     * Remove a page from the pool.
+     *
+     * @param fileId the id of the file
+     * @param pageNum the number of the page
+     */
+    public synchronized void invalidate(final int fileId, final long pageNum) {
+        final Long2IntMap pages = files.get(fileId);
+        if (pages != null) {
+            final int slot = pages.remove(pageNum);
+            if (slot != NO_SLOT) {
+                freeSlot(slot);
+            }
+        }
+    }
+
+    /**
+     * Find or allocate the slot for a page.
+     *
+     * @return the slot, or {@link #NO_SLOT} if the page cannot be held by the pool
+     */
+    @GuardedBy("this")
+    private int slotFor(final int fileId, final long pageNum, final int length) {
+        if (length > pageSize) {
+            return NO_SLOT;
+        }
+
+        Long2IntMap pages = files.get(fileId);
+        if (pages == null) {
+            pages = new Long2IntOpenHashMap();
+            pages.defaultReturnValue(NO_SLOT);
+            files.put(fileId, pages);
+        }
+
+        int slot = pages.get(pageNum);
+        if (slot == NO_SLOT) {
+            slot = allocateSlot();
+            if (slot == NO_SLOT) {
+                return NO_SLOT;
+            }
+            pages.put(pageNum, slot);
+            slotFile[slot] = fileId;
+            slotPage[slot] = pageNum;
+        } else {
+            usedBytes -= slotLength[slot];
+        }
+
+        slotLength[slot] = length;
+        usedBytes += length;
+        referenced[slot] = true;
+        return slot;
+    }
+
+    @GuardedBy("this")
+    private int allocateSlot() {
+        if (!freeSlots.isEmpty()) {
+            return freeSlots.popInt();
+        }
+
+        if (nextUnusedSlot < allocatedSlots) {
+            return nextUnusedSlot++;
+        }
+
+        if (allocatedSlots < maxSlots && !allocationFailed) {
+            final int slots = Math.min(slotsPerSlab, maxSlots - allocatedSlots);
+            try {
+                slabs[allocatedSlots / slotsPerSlab] = ByteBuffer.allocateDirect(slots * pageSize);
+                allocatedSlots += slots;
+                return nextUnusedSlot++;
+            } catch (final OutOfMemoryError e) {
+                // NOTE: the pool stays at its current size
+                allocationFailed = true;
+                LOG.warn("Unable to allocate more off-heap memory for the page pool, it will be limited to {} bytes: {}", (long) allocatedSlots * pageSize, e.getMessage());
+            }
+        }
+
+        if (nextUnusedSlot == 0) {
+            return NO_SLOT;
+        }
+
+        return evictSlot();
+    }
+
+    @GuardedBy("this")
+    private int evictSlot() {
+        while (true) {
+            final int slot = clockHand;
+            clockHand = (clockHand + 1) % nextUnusedSlot;
+            if (referenced[slot]) {
+                referenced[slot] = false;
+                continue;
+            }
+
+            final Long2IntMap pages = files.get(slotFile[slot]);
+            if (pages != null) {
+                pages.remove(slotPage[slot]);
+            }
+            usedBytes -= slotLength[slot];
+            evictions.increment();
+            return slot;
+        }
+    }
+
+    @GuardedBy("this")
+    private void freeSlot(final int slot) {
+        usedBytes -= slotLength[slot];
+        slotFile[slot] = NO_FILE;
+        slotLength[slot] = 0;
+        referenced[slot] = false;
+        freeSlots.add(slot);
+    }
+
+    /**
+     * Release all pages, and the memory of the pool.
+     *
+     * The direct memory of the slabs is freed by the JVM
+     * once they have been garbage collected.
+     */
+    public synchronized void clear() {
+        files.clear();
+        freeSlots.clear();
+        for (int i = 0; i < slabs.length; i++) {
+            slabs[i] = null;
+        }
+        allocatedSlots = 0;
+        nextUnusedSlot = 0;
+        clockHand = 0;
+        usedBytes = 0;
+    }
+
+    /**
+     * @return the maximum size of the pool in bytes
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the off-heap memory allocated by the pool in bytes
+     */
+    public synchronized long getAllocatedSize() {
+        return (long) allocatedSlots * pageSize;
+    }
+
+    /**
+     * @return the number of pages held by the pool
+     */
+    public synchronized int getUsedPages() {
+        return nextUnusedSlot - freeSlots.size();
+    }
+
+    /**
+     * @return the share of the maximum number of pages which is held by the pool, between 0 and 1
+     */
+    public double getUtilization() {
+        return maxSlots == 0 ? 0.0 : (double) getUsedPages() / maxSlots;
+    }
+
+    /**
+     * The share of the slots in use, or freed, which do not hold page data,
+     * i.e. the free slots left behind by removed pages, and the unused space
+     * in slots of pages which are shorter than a full page.
+     *
+     * @return the fragmentation of the pool, between 0 and 1
+     */
+    public synchronized double getFragmentation() {
+        if (nextUnusedSlot == 0) {
+            return 0.0;
+        }
+        return 1.0 - (double) usedBytes / ((long) nextUnusedSlot * pageSize);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
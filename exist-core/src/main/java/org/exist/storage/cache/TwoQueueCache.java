@@ -0,0 +1,537 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.CacheManager;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A scan resistant cache based on the 2Q replacement policy.
+ *
+ * New pages are admitted to a small probation queue, which is evicted in
+ * FIFO order, regardless of whether a page was referenced again whilst on
+ * probation. Only a page which is re-loaded shortly after it was evicted from
+ * probation (tracked by a queue of "ghost" keys) is admitted to the main queue.
+ * The main queue is evicted in CLOCK order, i.e. a referenced page is given a
+ * second chance. A scan, which may well read each of its pages several times in
+ * short succession, therefore only cycles through the probation queue, and
+ * leaves the hot pages in the main queue in place.
+ *
+ * Lookups by {@link #get(long)} read the map optimistically, and only take its
+ * read lock if the map was modified concurrently. They only mark the page as
+ * referenced, which is only taken into account for the pages of the main queue.
+ * Adding, removing and evicting pages is synchronized on the cache.
+ *
+ * An evicted dirty page is written after the cache has been unlocked. It stays
+ * in the map until it has been written, so that a reader which misses it reads
+ * the current page from disk.
+ *
+ * Contrary to {@link GClockCache}, the reference counts of the items are ignored.
+ *
+ * @param <T> The type that implements {@link Cacheable}
+ */
+@ThreadSafe
+public class TwoQueueCache<T extends Cacheable> implements Cache<T> {
+    private final static Logger LOG = LogManager.getLogger(TwoQueueCache.class);
+
+    /**
+     * The share of the cache for pages on probation.
+     */
+    private static final double PROBATION_SHARE = 0.25;
+
+    /**
+     * The number of ghost keys to remember, relative to the cache size.
+     */
+    private static final double GHOST_SHARE = 0.5;
+
+    private static final long NO_KEY = -1;
+
+    private final String name;
+    private final CacheType type;
+    protected final double growthFactor;
+
+    @GuardedBy("this") private final Accounting accounting;
+    /**
+     * Modified whilst synchronized on the cache and holding the write lock
+     * of {@link #mapLock}, so that it may be read whilst holding either.
+     */
+    @GuardedBy("mapLock") private final Long2ObjectOpenHashMap<Entry<T>> map;
+    private final StampedLock mapLock = new StampedLock();
+    @GuardedBy("this") private final ArrayDeque<Entry<T>> probation = new ArrayDeque<>();
+    @GuardedBy("this") private final ArrayDeque<Entry<T>> main = new ArrayDeque<>();
+    @GuardedBy("this") private final LongLinkedOpenHashSet ghosts = new LongLinkedOpenHashSet();
+    @GuardedBy("this") private int probationCount = 0;
+    @GuardedBy("this") private int mainCount = 0;
+    private volatile int max;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private int hitsOld = -1;
+
+    protected volatile CacheManager cacheManager = null;
+
+    public TwoQueueCache(final String name, final int size, final double growthFactor, final double growthThreshold, final CacheType type) {
+        this.name = name;
+        this.max = size;
+        this.growthFactor = growthFactor;
+        this.accounting = new Accounting(growthThreshold);
+        this.accounting.setTotalSize(max);
+        this.map = new Long2ObjectOpenHashMap<>(size * 2);
+        this.type = type;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public CacheType getType() {
+        return type;
+    }
+
+    @Override
+    public void add(final T item) {
+        add(item, 1);
+    }
+
+    @Override
+    public void add(final T item, final int initialRefCount) {
+        boolean resizeNeeded = false;
+        Entry<T> unloaded = null;
+        synchronized (this) {
+            final long key = item.getKey();
+            final Entry<T> existing = map.get(key);
+            if (existing != null && !existing.removed) {
+                existing.item = item;
+                existing.referenced = true;
+                return;
+            }
+
+            final Entry<T> entry;
+            if (existing != null) {
+                // the entry is still being unloaded, re-admit it
+                entry = existing;
+                entry.item = item;
+                entry.referenced = false;
+                entry.removed = false;
+                entry.syncPending = false;
+            } else {
+                entry = new Entry<>(key, item);
+                putInMap(key, entry);
+            }
+            entry.inMain = ghosts.remove(key) || isPreferred(item);
+            if (entry.inMain) {
+                main.addLast(entry);
+                mainCount++;
+            } else {
+                probation.addLast(entry);
+                probationCount++;
+            }
+
+            if (probationCount + mainCount > max) {
+                final Entry<T> evicted = evictOne(key);
+                if (evicted != null) {
+                    if (evicted.syncPending) {
+                        unloaded = evicted;
+                    }
+                    accounting.replacedPage(item);
+                    resizeNeeded = growthFactor > 1.0 && accounting.resizeNeeded();
+                } else if (LOG.isDebugEnabled()) {
+                    LOG.debug("Unable to remove entry from cache: {}", name);
+                }
+            }
+            purgeRemoved();
+        }
+
+        if (unloaded != null) {
+            syncUnloaded(unloaded);
+        }
+
+        if (resizeNeeded && cacheManager != null) {
+            cacheManager.requestMem(this);
+        }
+    }
+
+    /**
+     * Determines if an item should be admitted straight
+     * to the main queue, and should be evicted from there only
+     * once no other item can be evicted.
+     *
+     * @param item the item
+     *
+     * @return true if the item is preferred
+     */
+    protected boolean isPreferred(final T item) {
+        return false;
+    }
+
+    @Override
+    public T get(final T item) {
+        return get(item.getKey());
+    }
+
+    @Override
+    public T get(final long key) {
+        final Entry<T> entry = getEntry(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        entry.referenced = true;
+        hits.increment();
+        return entry.item;
+    }
+
+    private @Nullable Entry<T> getEntry(final long key) {
+        // optimistic read
+        final long stamp = mapLock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                final Entry<T> entry = map.get(key);
+                if (mapLock.validate(stamp)) {
+                    return entry;
+                }
+            } catch (final ArrayIndexOutOfBoundsException e) {
+                // this can occur as we don't hold a lock, we just have a stamp for an optimistic read,
+                // so `map` might be concurrently modified
+            }
+        }
+
+        final long readStamp = mapLock.readLock();
+        try {
+            return map.get(key);
+        } finally {
+            mapLock.unlockRead(readStamp);
+        }
+    }
+
+    @GuardedBy("this")
+    private void putInMap(final long key, final Entry<T> entry) {
+        final long stamp = mapLock.writeLock();
+        try {
+            map.put(key, entry);
+        } finally {
+            mapLock.unlockWrite(stamp);
+        }
+    }
+
+    @GuardedBy("this")
+    private void removeFromMap(final long key) {
+        final long stamp = mapLock.writeLock();
+        try {
+            map.remove(key);
+        } finally {
+            mapLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public synchronized void remove(final T item) {
+        final Entry<T> entry = map.get(item.getKey());
+        if (entry == null) {
+            return;
+        }
+
+        removeFromMap(entry.key);
+        // if the entry is still being unloaded, its page is not written unless that has already begun
+        entry.dropped = true;
+        if (!entry.removed) {
+            // the entry is removed from its queue lazily
+            entry.removed = true;
+            if (entry.inMain) {
+                mainCount--;
+            } else {
+                probationCount--;
+            }
+        }
+    }
+
+    /**
+     * Evict a single entry from the cache.
+     *
+     * @param addedKey the key of the item being added, which must not be evicted
+     *
+     * @return the evicted entry, or null if no entry could be evicted
+     */
+    @GuardedBy("this")
+    private @Nullable Entry<T> evictOne(final long addedKey) {
+        final int probationMax = Math.max(1, (int) (max * PROBATION_SHARE));
+        if (probationCount > probationMax || mainCount == 0) {
+            final Entry<T> evicted = evictFromProbation(addedKey);
+            if (evicted != null) {
+                return evicted;
+            }
+        }
+        final Entry<T> evicted = evictFromMain(addedKey);
+        return evicted != null ? evicted : evictFromProbation(addedKey);
+    }
+
+    @GuardedBy("this")
+    private @Nullable Entry<T> evictFromProbation(final long addedKey) {
+        for (int i = probation.size(); i > 0; i--) {
+            final Entry<T> entry = probation.pollFirst();
+            if (entry.removed) {
+                continue;
+            }
+
+            // NOTE: a reference whilst on probation is not a reason to promote, as the page may be re-read by a scan
+            if (entry.key == addedKey || !entry.item.allowUnload()) {
+                probation.addLast(entry);
+                continue;
+            }
+
+            probationCount--;
+            unload(entry);
+
+            // remember the key, so that it is promoted to main if it is soon re-loaded
+            ghosts.add(entry.key);
+            final int maxGhosts = Math.max(1, (int) (max * GHOST_SHARE));
+            while (ghosts.size() > maxGhosts) {
+                ghosts.removeFirstLong();
+            }
+            return entry;
+        }
+        return null;
+    }
+
+    @GuardedBy("this")
+    private @Nullable Entry<T> evictFromMain(final long addedKey) {
+        // the first pass clears the references, the second evicts an unreferenced
+        // item, and only the third pass may also evict a preferred item
+        for (int pass = 0; pass < 3; pass++) {
+            for (int i = main.size(); i > 0; i--) {
+                final Entry<T> entry = main.pollFirst();
+                if (entry.removed) {
+                    continue;
+                }
+
+                if (entry.referenced) {
+                    entry.referenced = false;
+                    main.addLast(entry);
+                    continue;
+                }
+
+                if (entry.key == addedKey || !entry.item.allowUnload() || (pass < 2 && isPreferred(entry.item))) {
+                    main.addLast(entry);
+                    continue;
+                }
+
+                mainCount--;
+                unload(entry);
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Unload an entry. A dirty entry is left in the map, and
+     * has to be passed to {@link #syncUnloaded(Entry)} once
+     * the cache has been unlocked.
+     */
+    @GuardedBy("this")
+    private void unload(final Entry<T> entry) {
+        entry.removed = true;
+        evictions.increment();
+        if (entry.item.isDirty()) {
+            entry.syncPending = true;
+        } else {
+            removeFromMap(entry.key);
+        }
+    }
+
+    /**
+     * Write the page of an unloaded dirty entry, and then remove it from the
+     * map, unless it has been re-admitted in the meantime.
+     *
+     * Must not be called whilst synchronized on the cache.
+     */
+    private void syncUnloaded(final Entry<T> entry) {
+        synchronized (entry) {
+            if (!entry.dropped) {
+                entry.item.sync(true);
+            }
+        }
+        synchronized (this) {
+            if (entry.removed && entry.syncPending && !entry.item.isDirty() && map.get(entry.key) == entry) {
+                entry.syncPending = false;
+                removeFromMap(entry.key);
+            }
+        }
+    }
+
+    /**
+     * Drop the removed entries from the queues, if they are
+     * taking up more space than the cache entries themselves.
+     */
+    @GuardedBy("this")
+    private void purgeRemoved() {
+        if (probation.size() + main.size() > 2 * Math.max(max, map.size())) {
+            probation.removeIf(entry -> entry.removed);
+            main.removeIf(entry -> entry.removed);
+        }
+    }
+
+    @Override
+    public synchronized boolean flush() {
+        boolean flushed = false;
+        for (final Entry<T> entry : map.values()) {
+            final T cacheable = entry.item;
+            if (cacheable.isDirty()) {
+                // NOTE: an entry which is being unloaded may be written concurrently by #syncUnloaded(Entry)
+                synchronized (entry) {
+                    flushed = flushed | cacheable.sync(false);
+                }
+            }
+        }
+        return flushed;
+    }
+
+    @Override
+    public boolean hasDirtyItems() {
+        final long stamp = mapLock.readLock();
+        try {
+            for (final Entry<T> entry : map.values()) {
+                if (entry.item.isDirty()) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            mapLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int getBuffers() {
+        return max;
+    }
+
+    @Override
+    public synchronized int getUsedBuffers() {
+        return probationCount + mainCount;
+    }
+
+    @Override
+    public int getHits() {
+        return hits.intValue();
+    }
+
+    @Override
+    public int getFails() {
+        return misses.intValue();
+    }
+
+    @Override
+    public int getEvictions() {
+        return evictions.intValue();
+    }
+
+    @Override
+    public double getGrowthFactor() {
+        return growthFactor;
+    }
+
+    @Override
+    public void setCacheManager(final CacheManager manager) {
+        this.cacheManager = manager;
+    }
+
+    @Override
+    public void resize(final int newSize) {
+        final List<Entry<T>> unloaded = new ArrayList<>();
+        synchronized (this) {
+            max = newSize;
+            // evict until the cache fits
+            while (probationCount + mainCount > max) {
+                final Entry<T> evicted = evictOne(NO_KEY);
+                if (evicted == null) {
+                    break;
+                }
+                if (evicted.syncPending) {
+                    unloaded.add(evicted);
+                }
+            }
+            final int maxGhosts = Math.max(1, (int) (max * GHOST_SHARE));
+            while (ghosts.size() > maxGhosts) {
+                ghosts.removeFirstLong();
+            }
+            purgeRemoved();
+            accounting.reset();
+            accounting.setTotalSize(max);
+        }
+
+        for (final Entry<T> entry : unloaded) {
+            syncUnloaded(entry);
+        }
+    }
+
+    @Override
+    public int getLoad() {
+        final int hits = getHits();
+        if (hitsOld == 0) {
+            hitsOld = hits;
+            return Integer.MAX_VALUE;
+        }
+        final int load = hits - hitsOld;
+        hitsOld = hits;
+        return load;
+    }
+
+    private static final class Entry<T extends Cacheable> {
+        final long key;
+        volatile T item;
+        volatile boolean referenced;
+        boolean inMain;
+        boolean removed;
+
+        /**
+         * Set when a dirty entry has been unloaded, but its page has still to be written.
+         */
+        boolean syncPending;
+
+        /**
+         * Set when an entry has been removed whilst it was being unloaded,
+         * so its page must no longer be written.
+         */
+        volatile boolean dropped;
+
+        Entry(final long key, final T item) {
+            this.key = key;
+            this.item = item;
+        }
+    }
+}
@@ -64,7 +64,7 @@ import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.cache.Cache;
 import org.exist.storage.cache.Cacheable;
-import org.exist.storage.cache.LRUCache;
+import org.exist.storage.cache.TwoQueueCache;
 import org.exist.storage.journal.JournalException;
 import org.exist.storage.journal.LogEntryTypes;
 import org.exist.storage.journal.Loggable;
@@ -196,7 +196,7 @@ public class DOMFile extends BTree implements Lockable {
         fileHeader = (BTreeFileHeader)getFileHeader();
         fileHeader.setPageCount(0);
         fileHeader.setTotalCount(0);
-        dataCache = new LRUCache<>(getFileName(), 256, 0.0, 1.0, Cache.CacheType.DATA);
+        dataCache = new TwoQueueCache<>(getFileName(), 256, 0.0, 1.0, Cache.CacheType.DATA);
         cacheManager.registerCache(dataCache);
         final Path file = dataDir.resolve(getFileName());
         setFile(file);
@@ -1416,7 +1416,7 @@ public class DOMFile extends BTree implements Lockable {
 
     public BufferStats getDataBufferStats() {
         return new BufferStats(dataCache.getBuffers(), dataCache.getUsedBuffers(), 
-            dataCache.getHits(), dataCache.getFails());
+            dataCache.getHits(), dataCache.getFails(), dataCache.getEvictions());
     }
 
 
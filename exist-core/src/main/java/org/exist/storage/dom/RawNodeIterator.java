@@ -39,7 +39,7 @@ import org.exist.util.LockException;
 import org.exist.util.sanity.SanityCheck;
 
 import java.io.IOException;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * An iterator that walks through the raw node data items in a document. The class
@@ -78,7 +78,7 @@ public class RawNodeIterator implements IRawNodeIterator {
 
     @Override
     public final void seek(final NodeHandle node) throws IOException {
-        try(final ManagedLock<ReentrantLock> domFileLock = lockManager.acquireBtreeReadLock(db.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> domFileLock = lockManager.acquireBtreeReadLock(db.getLockName())) {
             RecordPos rec = null;
             if (StorageAddress.hasAddress(node.getInternalAddress()))
                 {rec = db.findRecord(node.getInternalAddress());}
@@ -104,7 +104,7 @@ public class RawNodeIterator implements IRawNodeIterator {
     @Override
     public Value next() {
         Value nextValue = null;
-        try(final ManagedLock<ReentrantLock> domFileLock = lockManager.acquireBtreeReadLock(db.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> domFileLock = lockManager.acquireBtreeReadLock(db.getLockName())) {
 
             db.setOwnerObject(broker);
             long backLink = 0;
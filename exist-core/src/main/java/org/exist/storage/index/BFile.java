@@ -34,10 +34,11 @@ import org.exist.storage.btree.BTreeCallback;
 import org.exist.storage.btree.BTreeException;
 import org.exist.storage.btree.DBException;
 import org.exist.storage.btree.IndexQuery;
+import org.exist.storage.btree.SortedRunBuilder;
 import org.exist.storage.btree.Value;
 import org.exist.storage.cache.Cache;
 import org.exist.storage.cache.Cacheable;
-import org.exist.storage.cache.LRUCache;
+import org.exist.storage.cache.TwoQueueCache;
 import org.exist.storage.io.VariableByteArrayInput;
 import org.exist.storage.io.VariableByteInput;
 import org.exist.storage.io.VariableByteOutputStream;
@@ -60,7 +61,8 @@ import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -79,6 +81,13 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  * 
  * Data pages are buffered.
  * 
+ * The read path is safe for concurrent readers (see
+ * {@link org.exist.storage.lock.LockManager#enableBtreeSharedReads(String)}):
+ * the data page cache is thread-safe, and a page which is not cached is read
+ * into a new data page, which the reader only shares by adding it to the
+ * cache. As readers exclude writers, a page which two readers read at the same
+ * time holds the same data, whichever of them ends up in the cache.
+ * 
  * @author <a href="mailto:wolfgang@exist-db.org">Wolfgang Meier</a>
  */
 public class BFile extends BTree {
@@ -146,7 +155,7 @@ public class BFile extends BTree {
         super(pool, fileId, fileVersion, recoveryEnabled, cacheManager, file);
         lockManager = pool.getLockManager();
         fileHeader = (BFileHeader) getFileHeader();
-        dataCache = new LRUCache<>(FileUtils.fileName(file), 64, cacheGrowth, thresholdData, Cache.CacheType.DATA);
+        dataCache = new TwoQueueCache<>(FileUtils.fileName(file), 64, cacheGrowth, thresholdData, Cache.CacheType.DATA);
         cacheManager.registerCache(dataCache);
         minFree = PAGE_MIN_FREE;
         maxValueSize = fileHeader.getWorkSize() / 2;
@@ -249,6 +258,81 @@ public class BFile extends BTree {
         return UNKNOWN_ADDRESS;
     }
 
+    /**
+     * Append the given value to the data stored under the key, which is
+     * deferred until the end of the current bulk load, see {@link #startBulkLoad()}.
+     * If no bulk load is in progress, the value is appended straight away.
+     *
+     * @param transaction the database transaction
+     * @param key the key
+     * @param value the value
+     *
+     * @throws IOException if an I/O error occurs whilst writing to the BFile
+     */
+    public void appendDeferred(final Txn transaction, final Value key, final ByteArray value) throws IOException {
+        final SortedRunBuilder runs = getBulkLoad();
+        if (runs == null) {
+            append(transaction, key, value);
+            return;
+        }
+
+        if (key.getLength() > fileHeader.getMaxKeySize()) {
+            LOG.warn("Key length exceeds page size! Skipping key ...");
+            return;
+        }
+        final byte[] data = new byte[value.size()];
+        value.copyTo(data, 0);
+        runs.add(key, data);
+    }
+
+    /**
+     * Add the keys of a sorted run to the BFile. The payloads of each key
+     * are the data to append to the key, see {@link #appendDeferred(Txn, Value, ByteArray)}.
+     *
+     * @param transaction the database transaction
+     * @param cursor the keys in ascending order
+     *
+     * @return the number of keys added
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws BTreeException if an error occurs with the tree
+     */
+    @Override
+    public long addSortedValues(final Txn transaction, final SortedRunBuilder.Cursor cursor) throws IOException, BTreeException {
+        long count = 0;
+        if (canBuildBottomUp()) {
+            final BulkBuilder builder = new BulkBuilder();
+            while (cursor.next()) {
+                builder.add(cursor.getKey(), storeValue(transaction, concat(cursor.getPayloads())));
+                count++;
+            }
+            builder.finish();
+        } else {
+            while (cursor.next()) {
+                append(transaction, cursor.getKey(), concat(cursor.getPayloads()));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static ByteArray concat(final List<byte[]> payloads) {
+        if (payloads.size() == 1) {
+            return new FixedByteArray(payloads.get(0));
+        }
+        int len = 0;
+        for (final byte[] payload : payloads) {
+            len += payload.length;
+        }
+        final byte[] data = new byte[len];
+        int offset = 0;
+        for (final byte[] payload : payloads) {
+            System.arraycopy(payload, 0, data, offset, payload.length);
+            offset += payload.length;
+        }
+        return new FixedByteArray(data);
+    }
+
     /**
      * Check, if key is contained in BFile.
      * 
@@ -377,7 +461,7 @@ public class BFile extends BTree {
             return null;
         }
         return new BufferStats(dataCache.getBuffers(), dataCache.getUsedBuffers(), 
-            dataCache.getHits(), dataCache.getFails());
+            dataCache.getHits(), dataCache.getFails(), dataCache.getEvictions());
     }
 
     @Override
@@ -2322,7 +2406,7 @@ public class BFile extends BTree {
             }
 
 
-            try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeReadLock(getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(getLockName())) {
                 nextPage = (SinglePage) getDataPage(next, false);
                 pageLen = nextPage.ph.getDataLength();
                 offset = 0;
@@ -2440,7 +2524,7 @@ public class BFile extends BTree {
         public void seek(final long position) throws IOException {
             final int newPage = StorageAddress.pageFromPointer(position);
             final short newOffset = StorageAddress.tidFromPointer(position);
-            try(final ManagedLock<ReentrantLock> bfileLock =  lockManager.acquireBtreeReadLock(getLockName())) {
+            try(final ManagedLock<ReentrantReadWriteLock> bfileLock =  lockManager.acquireBtreeReadLock(getLockName())) {
                 nextPage = getSinglePage(newPage);
                 pageLen = nextPage.ph.getDataLength();
                 if (pageLen > fileHeader.getWorkSize()) {
@@ -32,10 +32,25 @@ import java.nio.file.Path;
 public class BTreeStore extends BTree {
 
     public BTreeStore(final BrokerPool pool, final byte fileId, final short fileVersion, final boolean recoverEnabled, final Path file, final DefaultCacheManager cacheManager) throws DBException {
+        this(pool, fileId, fileVersion, fileVersion, recoverEnabled, file, cacheManager);
+    }
+
+    /**
+     * @param pool the broker pool
+     * @param fileId the id of the file
+     * @param fileVersion the version of the file format
+     * @param legacyFileVersion a previous version of the file format, which is upgraded to {@code fileVersion} on open
+     * @param recoverEnabled true if the file is journaled
+     * @param file the path of the file
+     * @param cacheManager the cache manager
+     *
+     * @throws DBException if the file cannot be opened or created
+     */
+    public BTreeStore(final BrokerPool pool, final byte fileId, final short fileVersion, final short legacyFileVersion, final boolean recoverEnabled, final Path file, final DefaultCacheManager cacheManager) throws DBException {
         super(pool, fileId, fileVersion, recoverEnabled, cacheManager, file);
 
         if(exists()) {
-            open(fileVersion);
+            open(fileVersion, legacyFileVersion);
         } else {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Creating data file: {}", FileUtils.fileName(getFile()));
@@ -24,6 +24,7 @@ package org.exist.storage.journal;
 import java.io.*;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
@@ -31,6 +32,8 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Stream;
 
 import net.jcip.annotations.GuardedBy;
@@ -66,6 +69,9 @@ import static org.exist.util.ThreadUtils.newInstanceThread;
  * A buffer is used to temporarily buffer journal entries. To guarantee consistency, the buffer will be flushed
  * and the journal is synced after every commit or whenever a db page is written to disk.
  *
+ * When group commit is enabled (see {@link #writeToLogAndSync(Loggable)}), the commit records of concurrent
+ * transactions are batched together and made durable by a single sync of the journal file.
+ *
  * Each journal file has the following format:
  *
  * <pre>{@code
@@ -128,6 +134,12 @@ public final class Journal implements Closeable {
     public static final String PROPERTY_RECOVERY_JOURNAL_DIR = "db-connection.recovery.journal-dir";
     public static final String PROPERTY_RECOVERY_SYNC_ON_COMMIT = "db-connection.recovery.sync-on-commit";
 
+    public static final String RECOVERY_GROUP_COMMIT_WINDOW_ATTRIBUTE = "group-commit-window";
+    public static final String RECOVERY_GROUP_COMMIT_SIZE_ATTRIBUTE = "group-commit-size";
+
+    public static final String PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW = "db-connection.recovery.group-commit-window";
+    public static final String PROPERTY_RECOVERY_GROUP_COMMIT_SIZE = "db-connection.recovery.group-commit-size";
+
     public static final String LOG_FILE_SUFFIX = "log";
     public static final String BAK_FILE_SUFFIX = ".bak";
 
@@ -168,6 +180,17 @@ public final class Journal implements Closeable {
      */
     static final int DEFAULT_MIN_SIZE = 1;  // MB
 
+    /**
+     * default group commit window: 0 microseconds, i.e. the leader of a group does not wait,
+     * only those committers which arrive whilst a previous group is being synced are batched together.
+     */
+    public static final int DEFAULT_GROUP_COMMIT_WINDOW = 0;  // microseconds
+
+    /**
+     * default group commit size: 32 KB
+     */
+    public static final int DEFAULT_GROUP_COMMIT_SIZE = 32 * 1024;  // bytes
+
     /**
      * We use a 1 megabyte buffer.
      */
@@ -213,6 +236,24 @@ public final class Journal implements Closeable {
     //TODO: conf.xml refactoring <recovery size=""> => <journal size="">
     private final long journalSizeLimit;
 
+    /**
+     * The maximum time in nanoseconds that the leader of a group commit
+     * waits for further committers to join the group before syncing.
+     */
+    private final long groupCommitWindow;
+
+    /**
+     * The number of buffered bytes after which the leader of a group commit
+     * stops waiting for further committers and syncs.
+     */
+    private final int groupCommitSize;
+
+    /**
+     * Held by the leader of a group commit whilst it syncs the journal,
+     * committers who wish to join the next group queue on this lock.
+     */
+    private final ReentrantLock groupCommitLock = new ReentrantLock();
+
     private final FileLock fileLock;
 
     private final XXHash64 xxHash64 = XXHashFactory.fastestInstance().hash64();
@@ -248,6 +289,11 @@ public final class Journal implements Closeable {
      */
     @GuardedBy("this") private Lsn lastSyncLsn = Lsn.LSN_INVALID;
 
+    /**
+     * set to true while the leader of a group commit is waiting for further committers
+     */
+    @GuardedBy("this") private boolean groupCommitLeaderWaiting = false;
+
     /**
      * set to true while recovery is in progress
      */
@@ -261,7 +307,22 @@ public final class Journal implements Closeable {
 
     // NOTE(AR) called from BrokerPool.prepare -- single thread!
     public Journal(final BrokerPool pool, final Path directory) throws EXistException {
+        this(pool, directory, DEFAULT_GROUP_COMMIT_WINDOW, DEFAULT_GROUP_COMMIT_SIZE);
+    }
+
+    /**
+     * @param pool the broker pool
+     * @param directory the default directory for the journal files
+     * @param groupCommitWindow the maximum time in microseconds that the leader of a group commit waits for further committers
+     * @param groupCommitSize the number of buffered bytes after which the leader of a group commit stops waiting
+     *
+     * @throws EXistException if the journal directory cannot be used
+     */
+    // NOTE(AR) called from BrokerPool.prepare -- single thread!
+    public Journal(final BrokerPool pool, final Path directory, final int groupCommitWindow, final int groupCommitSize) throws EXistException {
         this.pool = pool;
+        this.groupCommitWindow = TimeUnit.MICROSECONDS.toNanos(Math.max(0, groupCommitWindow));
+        this.groupCommitSize = groupCommitSize > 0 ? groupCommitSize : DEFAULT_GROUP_COMMIT_SIZE;
 
         final Configuration configuration = pool.getConfiguration();
 
@@ -382,6 +443,121 @@ public final class Journal implements Closeable {
         if (!(entry instanceof TxnStart || entry instanceof Checkpoint)) {
             pool.getTransactionManager().trackOperation(entry.getTransactionId());
         }
+
+        // wake the leader of a group commit if enough entries have been buffered for the group
+        if (groupCommitLeaderWaiting && currentBuffer.position() >= groupCommitSize) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Write a log entry to the journal, and wait until the entry has been flushed
+     * (and synced if sync-on-commit is enabled) to disk. Concurrent callers are
+     * grouped together so that a single sync makes the entries of all of them durable.
+     *
+     * The first caller whose entry is not yet durable becomes the leader of a group. It
+     * waits for up to {@link #groupCommitWindow} (or until {@link #groupCommitSize} bytes
+     * are buffered) for others to join, and then flushes and syncs the journal on behalf of
+     * the whole group. The sync itself happens outside of the Journal's monitor, so entries
+     * may still be written whilst it is in progress; their callers queue up behind the leader
+     * and will form the next group.
+     *
+     * @param entry the journal entry to write, typically a transaction commit
+     * @throws JournalException if the entry could not be written
+     */
+    public void writeToLogAndSync(final Loggable entry) throws JournalException {
+        final Lsn lsn;
+        synchronized (this) {
+            writeToLog(entry);
+            lsn = entry.getLsn();
+        }
+
+        groupCommitLock.lock();
+        try {
+            if (isDurable(lsn)) {
+                // the leader of a previous group has already covered our entry
+                return;
+            }
+
+            final FileChannel syncChannel;
+            final Lsn flushedLsn;
+            synchronized (this) {
+                if (inRecovery) {
+                    return;
+                }
+
+                awaitGroup();
+                flushBuffer();
+                syncChannel = channel;
+                flushedLsn = lastLsnWritten;
+            }
+
+            boolean synced = false;
+            if (syncOnCommit && syncChannel != null) {
+                try {
+                    syncChannel.force(true);
+                    synced = true;
+                } catch (final ClosedChannelException e) {
+                    // the journal file was concurrently closed by a switch of files, which either syncs it or follows a checkpoint
+                    synced = true;
+                } catch (final IOException e) {
+                    LOG.error("Could not sync Journal to disk: {}", e.getMessage(), e);
+                }
+            }
+
+            synchronized (this) {
+                if (synced && flushedLsn.compareTo(lastSyncLsn) > 0) {
+                    lastSyncLsn = flushedLsn;
+                }
+                checkSizeLimit();
+            }
+        } finally {
+            groupCommitLock.unlock();
+        }
+    }
+
+    /**
+     * Determine if a log entry has already been made durable.
+     *
+     * @param lsn the LSN of the log entry
+     *
+     * @return true if the entry has been flushed, and if sync-on-commit is enabled also synced, to disk.
+     */
+    private synchronized boolean isDurable(final Lsn lsn) {
+        if (syncOnCommit) {
+            return lsn.compareTo(lastSyncLsn) <= 0;
+        } else {
+            return lsn.compareTo(lastLsnWritten) <= 0;
+        }
+    }
+
+    /**
+     * Called by the leader of a group commit to give further
+     * committers the opportunity to join the group.
+     *
+     * Waits until either the {@link #groupCommitWindow} has elapsed,
+     * or at least {@link #groupCommitSize} bytes have been buffered.
+     */
+    @GuardedBy("this")
+    private void awaitGroup() {
+        if (groupCommitWindow <= 0) {
+            return;
+        }
+
+        groupCommitLeaderWaiting = true;
+        try {
+            final long deadline = System.nanoTime() + groupCommitWindow;
+            long remaining = groupCommitWindow;
+            while (remaining > 0 && currentBuffer != null && currentBuffer.position() < groupCommitSize) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        } catch (final InterruptedException e) {
+            // restore the interrupted status, and sync the group straight away
+            Thread.currentThread().interrupt();
+        } finally {
+            groupCommitLeaderWaiting = false;
+        }
     }
 
     /**
@@ -426,6 +602,14 @@ public final class Journal implements Closeable {
             LOG.error("Could not sync Journal to disk: {}", e.getMessage(), e);
         }
 
+        checkSizeLimit();
+    }
+
+    /**
+     * Trigger a checkpoint if the current journal file has exceeded the {@link #journalSizeLimit}.
+     */
+    @GuardedBy("this")
+    private void checkSizeLimit() {
         try {
             if (channel != null && channel.size() >= journalSizeLimit) {
                 pool.triggerCheckpoint();
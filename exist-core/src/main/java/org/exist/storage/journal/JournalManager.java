@@ -61,6 +61,8 @@ public class JournalManager implements BrokerPoolService {
 
     @GuardedBy("this") private Path journalDir;
     @GuardedBy("this") private boolean groupCommits;
+    @GuardedBy("this") private int groupCommitWindow;
+    @GuardedBy("this") private int groupCommitSize;
     @GuardedBy("this") private Journal journal;
     @GuardedBy("this") private boolean journallingDisabled = false;
     @GuardedBy("this") private boolean initialized = false;
@@ -72,8 +74,10 @@ public class JournalManager implements BrokerPoolService {
         this.journalDir = (Path) Optional.ofNullable(configuration.getProperty(Journal.PROPERTY_RECOVERY_JOURNAL_DIR))
                 .orElse(configuration.getProperty(BrokerPool.PROPERTY_DATA_DIR));
         this.groupCommits = configuration.getProperty(BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT, false);
+        this.groupCommitWindow = configuration.getProperty(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW, Journal.DEFAULT_GROUP_COMMIT_WINDOW);
+        this.groupCommitSize = configuration.getProperty(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_SIZE, Journal.DEFAULT_GROUP_COMMIT_SIZE);
         if (LOG.isDebugEnabled()) {
-            LOG.debug("GroupCommits = {}", groupCommits);
+            LOG.debug("GroupCommits = {}, GroupCommitWindow = {} microseconds, GroupCommitSize = {} bytes", groupCommits, groupCommitWindow, groupCommitSize);
         }
     }
 
@@ -81,7 +85,7 @@ public class JournalManager implements BrokerPoolService {
     public synchronized void prepare(final BrokerPool pool) throws BrokerPoolServiceException {
         if (!journallingDisabled) {
             try {
-                this.journal = new Journal(pool, journalDir);
+                this.journal = new Journal(pool, journalDir, groupCommitWindow, groupCommitSize);
                 this.journal.initialize();
                 this.initialized = true;
             } catch(final EXistException | ReadOnlyException e) {
@@ -94,6 +98,10 @@ public class JournalManager implements BrokerPoolService {
         this.journallingDisabled = true;
     }
 
+    public synchronized boolean isJournallingDisabled() {
+        return journallingDisabled;
+    }
+
     /**
      * Write a single entry to the journal
      *
@@ -112,20 +120,35 @@ public class JournalManager implements BrokerPoolService {
     /**
      * Write a group of entrys to the journal
      *
+     * When group commits are enabled, the calling thread does not hold the
+     * monitor of the Journal Manager whilst it waits for its entry to become
+     * durable, so that concurrent committers may be synced together.
+     *
      * @see Journal#writeToLog(Loggable)
      * @see Journal#flushToLog(boolean)
+     * @see Journal#writeToLogAndSync(Loggable)
      *
      * @param loggable The entry to write in the journalGroup
      *
      * @throws JournalException of the journal group cannot be written
      */
-    public synchronized void journalGroup(final Loggable loggable) throws JournalException {
-        if (!journallingDisabled) {
-            journal.writeToLog(loggable);
+    public void journalGroup(final Loggable loggable) throws JournalException {
+        final Journal groupJournal;
+        synchronized (this) {
+            if (journallingDisabled) {
+                return;
+            }
+
             if (!groupCommits) {
+                journal.writeToLog(loggable);
                 journal.flushToLog(true);
+                return;
             }
+
+            groupJournal = journal;
         }
+
+        groupJournal.writeToLogAndSync(loggable);
     }
 
     /**
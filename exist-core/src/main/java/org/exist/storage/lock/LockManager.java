@@ -43,7 +43,9 @@ import org.exist.xmldb.XmldbURI;
 import uk.ac.ic.doc.slurp.multilock.MultiLock;
 
 import java.util.Arrays;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 
 /**
@@ -116,7 +118,13 @@ public class LockManager {
     private final LockTable lockTable;
     private final WeakLazyStripes<String, MultiLock> pathLocks;
     private final WeakLazyStripes<String, MultiLock> documentLocks;
-    private final WeakLazyStripes<String, ReentrantLock> btreeLocks;
+    private final WeakLazyStripes<String, ReentrantReadWriteLock> btreeLocks;
+
+    /**
+     * The file names of the BTrees whose read path is safe for
+     * concurrent readers, see {@link #enableBtreeSharedReads(String)}.
+     */
+    private final Set<String> sharedReadBtrees = ConcurrentHashMap.newKeySet();
 
     /**
      * @param configuration database configuration
@@ -187,8 +195,8 @@ public class LockManager {
      * Creates a new lock for a {@link org.exist.storage.btree.BTree}
      * will be Striped by the btreeFileName
      */
-    private static ReentrantLock createBtreeLock(final String btreeFileName) {
-        return new ReentrantLock();
+    private static ReentrantReadWriteLock createBtreeLock(final String btreeFileName) {
+        return new ReentrantReadWriteLock();
     }
 
     /**
@@ -656,12 +664,46 @@ public class LockManager {
      *
      * @return A lock for the DOMFile
      */
-    ReentrantLock getBTreeLock(final String domFileName) {
+    ReentrantReadWriteLock getBTreeLock(final String domFileName) {
         return btreeLocks.get(domFileName);
     }
 
     /**
-     * Acquire a WRITE_LOCK on a {@link org.exist.storage.btree.BTree}
+     * Allow concurrent readers on a {@link org.exist.storage.btree.BTree}.
+     *
+     * By default a READ_LOCK on a BTree is exclusive, i.e. it is the same as a
+     * WRITE_LOCK, as the read path of most of the paged files mutates shared
+     * state such as their page caches. Once shared reads are enabled, a READ_LOCK
+     * is shared between readers and only excludes writers.
+     *
+     * Shared reads should only be enabled for a plain {@link org.exist.storage.btree.BTree},
+     * or a {@link org.exist.storage.index.BFile}, whose read path is safe for concurrent readers.
+     * As a shared READ_LOCK cannot be upgraded, see {@link #acquireBtreeWriteLock(String)},
+     * the callers must also never acquire the WRITE_LOCK of the file whilst they hold its READ_LOCK.
+     *
+     * @param btreeFileName the filename of the BTree
+     */
+    public void enableBtreeSharedReads(final String btreeFileName) {
+        sharedReadBtrees.add(btreeFileName);
+    }
+
+    /**
+     * Determine if concurrent readers are allowed on a {@link org.exist.storage.btree.BTree}.
+     *
+     * @param btreeFileName the filename of the BTree
+     *
+     * @return true if a READ_LOCK on the BTree is shared between readers
+     */
+    public boolean isBtreeSharedReads(final String btreeFileName) {
+        return sharedReadBtrees.contains(btreeFileName);
+    }
+
+    /**
+     * Acquire a READ_LOCK on a {@link org.exist.storage.btree.BTree}
+     *
+     * The READ_LOCK is only shared with other readers if shared reads have been
+     * enabled for the BTree, see {@link #enableBtreeSharedReads(String)},
+     * otherwise it is exclusive.
      *
      * @param btreeFileName the filename of the BTree
      *
@@ -669,14 +711,15 @@ public class LockManager {
      *
      * @throws LockException if the lock could not be acquired
      */
-    public ManagedLock<ReentrantLock> acquireBtreeReadLock(final String btreeFileName) throws LockException {
+    public ManagedLock<ReentrantReadWriteLock> acquireBtreeReadLock(final String btreeFileName) throws LockException {
         final long groupId = System.nanoTime();
 
-        final ReentrantLock lock = getBTreeLock(btreeFileName);
+        final ReentrantReadWriteLock lock = getBTreeLock(btreeFileName);
+        final java.util.concurrent.locks.Lock modeLock = sharedReadBtrees.contains(btreeFileName) ? lock.readLock() : lock.writeLock();
         try {
             lockTable.attempt(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.READ_LOCK);
 
-            lock.lockInterruptibly();
+            modeLock.lockInterruptibly();
 
             lockTable.acquired(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.READ_LOCK);
         } catch(final InterruptedException e) {
@@ -684,8 +727,8 @@ public class LockManager {
             throw new LockException("Unable to acquire READ_LOCK for: " + btreeFileName, e);
         }
 
-        return new ManagedLock(lock, () -> {
-            lock.unlock();
+        return new ManagedLock<>(lock, () -> {
+            modeLock.unlock();
             lockTable.released(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.READ_LOCK);
         });
     }
@@ -697,16 +740,23 @@ public class LockManager {
      *
      * @return the lock for the BTree
      *
-     * @throws LockException if the lock could not be acquired
+     * @throws LockException if the lock could not be acquired, or if the
+     *     calling thread holds a shared READ_LOCK on the BTree, as a
+     *     READ_LOCK cannot be upgraded to a WRITE_LOCK
      */
-    public ManagedLock<ReentrantLock> acquireBtreeWriteLock(final String btreeFileName) throws LockException {
+    public ManagedLock<ReentrantReadWriteLock> acquireBtreeWriteLock(final String btreeFileName) throws LockException {
         final long groupId = System.nanoTime();
 
-        final ReentrantLock lock = getBTreeLock(btreeFileName);
+        final ReentrantReadWriteLock lock = getBTreeLock(btreeFileName);
+        if (lock.getReadHoldCount() > 0) {
+            // would otherwise deadlock
+            throw new LockException("Unable to upgrade READ_LOCK to WRITE_LOCK for: " + btreeFileName);
+        }
+
         try {
             lockTable.attempt(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.WRITE_LOCK);
 
-            lock.lockInterruptibly();
+            lock.writeLock().lockInterruptibly();
 
             lockTable.acquired(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.WRITE_LOCK);
         } catch(final InterruptedException e) {
@@ -714,8 +764,8 @@ public class LockManager {
             throw new LockException("Unable to acquire WRITE_LOCK for: " + btreeFileName, e);
         }
 
-        return new ManagedLock(lock, () -> {
-            lock.unlock();
+        return new ManagedLock<>(lock, () -> {
+            lock.writeLock().unlock();
             lockTable.released(groupId, btreeFileName, LockType.BTREE, Lock.LockMode.WRITE_LOCK);
         });
     }
@@ -726,13 +776,10 @@ public class LockManager {
      * @param btreeFileName The name of the .dbx file.
      *
      * @return true if the Btree is locked.
-     *
-     * @deprecated Just a place holder until we can make the BTree reader/writer safe
      */
-    @Deprecated
     public boolean isBtreeLocked(final String btreeFileName) {
-        final ReentrantLock lock = getBTreeLock(btreeFileName);
-        return lock.isLocked();
+        final ReentrantReadWriteLock lock = getBTreeLock(btreeFileName);
+        return lock.isWriteLocked() || lock.getReadLockCount() > 0;
     }
 
     /**
@@ -743,7 +790,8 @@ public class LockManager {
      * @return true if the Btree is locked for writes.
      */
     public boolean isBtreeLockedForWrite(final String btreeFileName) {
-        return isBtreeLocked(btreeFileName);
+        final ReentrantReadWriteLock lock = getBTreeLock(btreeFileName);
+        return lock.isWriteLocked();
     }
 
     /**
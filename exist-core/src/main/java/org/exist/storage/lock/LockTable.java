@@ -124,6 +124,15 @@ public class LockTable {
     public void shutdown() {
     }
 
+    /**
+     * Determine if lock events are reported.
+     *
+     * @return true if no lock events are reported to the listeners
+     */
+    public boolean isDisabled() {
+        return disableEvents;
+    }
+
     /**
      * Set the depth at which we should trace lock events through the stack
      *
@@ -24,13 +24,15 @@ package org.exist.storage.structural;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.backup.RawDataBackup;
 import org.exist.dom.persistent.SymbolTable;
 import org.exist.indexing.AbstractIndex;
+import org.exist.indexing.BulkBuildSupport;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.RawBackupSupport;
 import org.exist.storage.BrokerPool;
@@ -44,21 +46,36 @@ import org.exist.util.FileUtils;
 import org.exist.util.LockException;
 import org.w3c.dom.Element;
 
-public class NativeStructuralIndex extends AbstractIndex implements RawBackupSupport {
+public class NativeStructuralIndex extends AbstractIndex implements RawBackupSupport, BulkBuildSupport {
 
     protected static final Logger LOG = LogManager.getLogger(NativeStructuralIndex.class);
 
     public final static String ID = NativeStructuralIndex.class.getName();
     public static final String FILE_NAME = "structure.dbx";
-    public final static short FILE_FORMAT_VERSION_ID = 3;
+    public final static short FILE_FORMAT_VERSION_ID = 4;
+
+    /**
+     * Files of the legacy version have no compressed pages, they are upgraded on open
+     * and their pages are compressed as they are written, or all at once by a reindex.
+     */
+    public final static short LEGACY_FILE_FORMAT_VERSION_ID = 3;
 
     public static final byte STRUCTURAL_INDEX_ID = 1;
 
+    /**
+     * Should elements and attributes which are looked up by name be returned in a
+     * {@link org.exist.dom.persistent.PackedNodeSet}, rather than in a
+     * {@link org.exist.dom.persistent.NewArrayNodeSet}.
+     */
+    public static final String PACKED_NODE_SETS_ATTRIBUTE = "packed-node-sets";
+    public static final String PROPERTY_PACKED_NODE_SETS = "indexer.packed-node-sets";
+
     /** The datastore for this node index */
     protected BTreeStore btree;
 
     protected LockManager lockManager;
     protected SymbolTable symbols;
+    protected boolean packedNodeSets = false;
 
     public NativeStructuralIndex() {
         //Nothing to do
@@ -69,6 +86,7 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
         super.configure(pool, dataDir, config);
         lockManager = pool.getLockManager();
         symbols = pool.getSymbols();
+        packedNodeSets = Optional.ofNullable((Boolean) pool.getConfiguration().getProperty(PROPERTY_PACKED_NODE_SETS)).orElse(false);
     }
 
     @Override
@@ -76,8 +94,14 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
         final Path file = getDataDir().resolve(FILE_NAME);
         LOG.debug("Creating '{}'...", FileUtils.fileName(file));
         try {
-            btree = new BTreeStore(pool, STRUCTURAL_INDEX_ID, FILE_FORMAT_VERSION_ID, false,
+            btree = new BTreeStore(pool, STRUCTURAL_INDEX_ID, FILE_FORMAT_VERSION_ID, LEGACY_FILE_FORMAT_VERSION_ID, false,
                     file, pool.getCacheManager());
+            // the keys of a document share long prefixes, and the pointers of neighbouring nodes are close
+            btree.setKeyCompression(true);
+            // the structural index is a plain BTree, so queries may read it concurrently.
+            // NOTE: the READ_LOCK is only held around queries of the BTree, whose callbacks only collect
+            // the matches, so the WRITE_LOCK is never acquired whilst the READ_LOCK is held
+            lockManager.enableBtreeSharedReads(btree.getLockName());
         } catch (final DBException e) {
             LOG.error("Failed to initialize structural index: {}", e.getMessage(), e);
             throw new DatabaseConfigurationException(e.getMessage(), e);
@@ -95,7 +119,7 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
         if (btree == null) {
             return;
         }
-        try(final ManagedLock<ReentrantLock> bfileLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
             btree.flush();
         } catch (final LockException e) {
             LOG.warn("Failed to acquire lock for '{}'", FileUtils.fileName(btree.getFile()), e);
@@ -106,6 +130,26 @@ public class NativeStructuralIndex extends AbstractIndex implements RawBackupSup
         }
     }
 
+    @Override
+    public void startBulkBuild() throws DBException {
+        try (final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
+            btree.startBulkLoad();
+        } catch (final LockException e) {
+            throw new DBException("Failed to acquire lock for '" + FileUtils.fileName(btree.getFile()) + "': " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void finishBulkBuild() throws DBException {
+        try (final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
+            btree.finishBulkLoad(null);
+        } catch (final LockException e) {
+            throw new DBException("Failed to acquire lock for '" + FileUtils.fileName(btree.getFile()) + "': " + e.getMessage());
+        } catch (final IOException e) {
+            throw new DBException("Failed to build '" + FileUtils.fileName(btree.getFile()) + "': " + e.getMessage());
+        }
+    }
+
     @Override
     public void remove() throws DBException {
         btree.closeAndRemove();
@@ -45,9 +45,11 @@ import org.exist.util.LockException;
 import org.exist.xmldb.XmldbURI;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -101,6 +103,11 @@ public class TransactionManager implements BrokerPoolService {
      */
     private final ConcurrentHashMap<Long, TxnCounter> transactions = new ConcurrentHashMap<>();
 
+    /**
+     * Listeners which are notified when a transaction which modified the database ends.
+     */
+    private final List<TxnListener> listeners = new CopyOnWriteArrayList<>();
+
     /**
      * State for when the Transaction Manager has been shutdown.
      */
@@ -148,6 +155,17 @@ public class TransactionManager implements BrokerPoolService {
         this.systemTaskManager = systemTaskManager;
     }
 
+    /**
+     * Register a listener which is notified when any transaction which
+     * modified the database is committed or aborted. Transactions which
+     * only read from the database are not notified.
+     *
+     * @param listener the listener
+     */
+    public void registerListener(final TxnListener listener) {
+        listeners.add(listener);
+    }
+
     private static void throwShutdownException() {
         //TODO(AR) API should be revised in future so that this is a TransactionException
         throw new RuntimeException("Transaction Manager is shutdown");
@@ -306,6 +324,8 @@ public class TransactionManager implements BrokerPoolService {
     }
 
     private void doCommitTransaction(final Txn txn) throws TransactionException {
+        // NOTE: must be determined before the commit record is journalled, as that is tracked as an operation
+        final boolean modified = isModifying(txn);
         if (journalManager.isPresent()) {
             try {
                 journalManager.get().journalGroup(new TxnCommit(txn.getId()));
@@ -319,6 +339,12 @@ public class TransactionManager implements BrokerPoolService {
 
         transactions.remove(txn.getId());
 
+        if (modified) {
+            for (final TxnListener listener : listeners) {
+                listener.commit();
+            }
+        }
+
         if (LOG.isDebugEnabled()) {
             LOG.debug("Committed transaction: {}", txn.getId());
         }
@@ -382,6 +408,8 @@ public class TransactionManager implements BrokerPoolService {
     }
 
     private void doAbortTransaction(final Txn txn) {
+        // NOTE: must be determined before the abort record is journalled, as that is tracked as an operation
+        final boolean modified = isModifying(txn);
         if (journalManager.isPresent()) {
             try {
                 journalManager.get().journalGroup(new TxnAbort(txn.getId()));
@@ -396,6 +424,13 @@ public class TransactionManager implements BrokerPoolService {
 
         transactions.remove(txn.getId());
 
+        // the changes of an aborted transaction may have already been applied to the cached pages
+        if (modified) {
+            for (final TxnListener listener : listeners) {
+                listener.abort();
+            }
+        }
+
         if (LOG.isDebugEnabled()) {
             LOG.debug("Aborted transaction: {}", txn.getId());
         }
@@ -437,6 +472,24 @@ public class TransactionManager implements BrokerPoolService {
         processSystemTasks();
     }
 
+    /**
+     * Determine whether a transaction has modified the database, i.e. whether
+     * any operation other than its start was journalled. Without a journal, or
+     * whilst journalling is disabled, the operations are not tracked, and so any
+     * transaction is assumed to have modified the database.
+     *
+     * @param txn the transaction
+     *
+     * @return true if the transaction may have modified the database
+     */
+    private boolean isModifying(final Txn txn) {
+        if (!journalManager.isPresent() || journalManager.get().isJournallingDisabled()) {
+            return true;
+        }
+        final TxnCounter counter = transactions.get(txn.getId());
+        return counter == null || counter.getCount() > 1;
+    }
+
     /**
      * Keep track of a new operation within the given transaction.
      *
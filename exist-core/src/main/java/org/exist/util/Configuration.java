@@ -57,11 +57,16 @@ import org.exist.storage.IndexSpec;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NativeValueIndex;
 import org.exist.storage.XQueryPool;
+import org.exist.storage.XQueryPoolWarmStart;
+import org.exist.storage.XQueryResultCache;
+import org.exist.storage.btree.Paged;
 import org.exist.storage.journal.Journal;
 import org.exist.storage.serializers.CustomMatchListenerFactory;
 import org.exist.storage.serializers.Serializer;
+import org.exist.storage.structural.NativeStructuralIndex;
 import org.exist.validation.GrammarPool;
 import org.exist.xmldb.DatabaseImpl;
+import org.exist.xquery.GroupByClause;
 import org.exist.xquery.FunctionFactory;
 import org.exist.xquery.PerformanceStats;
 import org.exist.xquery.XQueryContext;
@@ -386,6 +391,32 @@ public class Configuration implements ErrorHandler
         config.put( XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL, Configuration.parseBoolean( raiseErrorOnFailedRetrieval, XQueryContext.XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT ) );
         LOG.debug(XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL + ": {}", config.get(XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL));
 
+        final String groupBySpillThreshold = getConfigAttributeValue( xquery, GroupByClause.GROUP_BY_SPILL_THRESHOLD_ATTRIBUTE );
+
+        if( groupBySpillThreshold != null ) {
+
+            try {
+                config.put( GroupByClause.PROPERTY_GROUP_BY_SPILL_THRESHOLD, Integer.valueOf(groupBySpillThreshold) );
+                LOG.debug(GroupByClause.PROPERTY_GROUP_BY_SPILL_THRESHOLD + ": {}", config.get(GroupByClause.PROPERTY_GROUP_BY_SPILL_THRESHOLD));
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn("Cannot convert " + GroupByClause.PROPERTY_GROUP_BY_SPILL_THRESHOLD + " value to integer: {}", groupBySpillThreshold, nfe);
+            }
+        }
+
+        final String degreeOfParallelism = getConfigAttributeValue( xquery, XQueryContext.DEGREE_OF_PARALLELISM_ATTRIBUTE );
+
+        if( degreeOfParallelism != null ) {
+
+            try {
+                config.put( XQueryContext.PROPERTY_DEGREE_OF_PARALLELISM, Integer.valueOf(degreeOfParallelism) );
+                LOG.debug(XQueryContext.PROPERTY_DEGREE_OF_PARALLELISM + ": {}", config.get(XQueryContext.PROPERTY_DEGREE_OF_PARALLELISM));
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn("Cannot convert " + XQueryContext.PROPERTY_DEGREE_OF_PARALLELISM + " value to integer: {}", degreeOfParallelism, nfe);
+            }
+        }
+
         final String trace = getConfigAttributeValue( xquery, PerformanceStats.CONFIG_ATTR_TRACE );
         config.put( PerformanceStats.CONFIG_PROPERTY_TRACE, trace );
 
@@ -883,6 +914,23 @@ public class Configuration implements ErrorHandler
             }
         }
         
+        String offHeapCacheMem = getConfigAttributeValue( con, DefaultCacheManager.OFF_HEAP_CACHE_SIZE_ATTRIBUTE );
+
+        if( offHeapCacheMem != null ) {
+
+            if( offHeapCacheMem.endsWith( "M" ) || offHeapCacheMem.endsWith( "m" ) ) {
+                offHeapCacheMem = offHeapCacheMem.substring( 0, offHeapCacheMem.length() - 1 );
+            }
+
+            try {
+                config.put( DefaultCacheManager.PROPERTY_OFF_HEAP_CACHE_SIZE, Integer.valueOf(offHeapCacheMem) );
+                LOG.debug(DefaultCacheManager.PROPERTY_OFF_HEAP_CACHE_SIZE + ": {}m", config.get(DefaultCacheManager.PROPERTY_OFF_HEAP_CACHE_SIZE));
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn("Cannot convert " + DefaultCacheManager.PROPERTY_OFF_HEAP_CACHE_SIZE + " value to integer: {}", offHeapCacheMem, nfe);
+            }
+        }
+
         // Process the Check Max Cache value
         
         String checkMaxCache = getConfigAttributeValue( con, DefaultCacheManager.CACHE_CHECK_MAX_SIZE_ATTRIBUTE );
@@ -953,6 +1001,19 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        final String memoryMappedFiles = getConfigAttributeValue( con, Paged.MEMORY_MAPPED_FILES_ATTRIBUTE );
+
+        if( memoryMappedFiles != null ) {
+            final Set<String> memoryMappedFileNames = new HashSet<>();
+            for( final String memoryMappedFileName : memoryMappedFiles.split( "[\\s,]+" ) ) {
+                if( !memoryMappedFileName.isEmpty() ) {
+                    memoryMappedFileNames.add( memoryMappedFileName );
+                }
+            }
+            config.put( Paged.PROPERTY_MEMORY_MAPPED_FILES, memoryMappedFileNames );
+            LOG.debug(Paged.PROPERTY_MEMORY_MAPPED_FILES + ": {}", config.get(Paged.PROPERTY_MEMORY_MAPPED_FILES));
+        }
+
         //Not clear : rather looks like a buffers count
         final String collCacheSize = getConfigAttributeValue( con, BrokerPool.COLLECTION_CACHE_SIZE_ATTRIBUTE );
 
@@ -1046,6 +1107,12 @@ public class Configuration implements ErrorHandler
             configureXQueryPool( (Element)queryPoolConf.item( 0 ) );
         }
 
+        final NodeList queryResultCacheConf = con.getElementsByTagName( XQueryResultCache.CONFIGURATION_ELEMENT_NAME );
+
+        if( queryResultCacheConf.getLength() > 0 ) {
+            configureXQueryResultCache( (Element)queryResultCacheConf.item( 0 ) );
+        }
+
         final NodeList watchConf = con.getElementsByTagName( XQueryWatchDog.CONFIGURATION_ELEMENT_NAME );
 
         if( watchConf.getLength() > 0 ) {
@@ -1074,6 +1141,14 @@ public class Configuration implements ErrorHandler
         setProperty( BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT, parseBoolean( option, false ) );
         LOG.debug(BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT + ": {}", config.get(BrokerPool.PROPERTY_RECOVERY_GROUP_COMMIT));
 
+        option = getConfigAttributeValue( recovery, Journal.RECOVERY_GROUP_COMMIT_WINDOW_ATTRIBUTE );
+        setProperty( Journal.PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW, parseInt( option, Journal.DEFAULT_GROUP_COMMIT_WINDOW ) );
+        LOG.debug(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW + ": {}", config.get(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_WINDOW));
+
+        option = getConfigAttributeValue( recovery, Journal.RECOVERY_GROUP_COMMIT_SIZE_ATTRIBUTE );
+        setProperty( Journal.PROPERTY_RECOVERY_GROUP_COMMIT_SIZE, parseInt( option, Journal.DEFAULT_GROUP_COMMIT_SIZE ) );
+        LOG.debug(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_SIZE + ": {}", config.get(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_SIZE));
+
         option = getConfigAttributeValue( recovery, Journal.RECOVERY_JOURNAL_DIR_ATTRIBUTE );
 
         if(option != null) {
@@ -1191,8 +1266,28 @@ public class Configuration implements ErrorHandler
                 LOG.warn( e );
             }
         }
+
+        final String warmStart = getConfigAttributeValue( queryPool, XQueryPoolWarmStart.WARM_START_ATTRIBUTE );
+        config.put( XQueryPoolWarmStart.PROPERTY_WARM_START, parseBoolean( warmStart, false ) );
+        LOG.debug(XQueryPoolWarmStart.PROPERTY_WARM_START + ": {}", config.get(XQueryPoolWarmStart.PROPERTY_WARM_START));
     }
     
+    private void configureXQueryResultCache( final Element queryResultCache )
+    {
+        final String size = getConfigAttributeValue( queryResultCache, XQueryResultCache.SIZE_ATTRIBUTE );
+
+        if( size != null ) {
+
+            try {
+                config.put( XQueryResultCache.PROPERTY_SIZE, Integer.valueOf(size) );
+                LOG.debug(XQueryResultCache.PROPERTY_SIZE + ": {}", config.get(XQueryResultCache.PROPERTY_SIZE));
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+    }
+
     public static class StartupTriggerConfig {
         private final String clazz;
         private final Map<String, List<? extends Object>> params;
@@ -1367,6 +1462,26 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        final String reindexParallelism = getConfigAttributeValue( indexer, NativeBroker.REINDEX_PARALLELISM_ATTRIBUTE );
+
+        if( reindexParallelism != null ) {
+
+            try {
+                config.put( NativeBroker.PROPERTY_REINDEX_PARALLELISM, Integer.valueOf(reindexParallelism) );
+                LOG.debug(NativeBroker.PROPERTY_REINDEX_PARALLELISM + ": {}", config.get(NativeBroker.PROPERTY_REINDEX_PARALLELISM));
+            }
+            catch( final NumberFormatException nfe ) {
+                LOG.warn("Cannot convert " + NativeBroker.PROPERTY_REINDEX_PARALLELISM + " value to integer: {}", reindexParallelism, nfe);
+            }
+        }
+
+        final String packedNodeSets = getConfigAttributeValue( indexer, NativeStructuralIndex.PACKED_NODE_SETS_ATTRIBUTE );
+
+        if( packedNodeSets != null ) {
+            config.put( NativeStructuralIndex.PROPERTY_PACKED_NODE_SETS, parseBoolean( packedNodeSets, false ) );
+            LOG.debug(NativeStructuralIndex.PROPERTY_PACKED_NODE_SETS + ": {}", config.get(NativeStructuralIndex.PROPERTY_PACKED_NODE_SETS));
+        }
+
         final String suppressWS = getConfigAttributeValue( indexer, Indexer.SUPPRESS_WHITESPACE_ATTRIBUTE );
 
         if( suppressWS != null ) {
@@ -24,7 +24,9 @@ package org.exist.xquery;
 import org.exist.dom.persistent.DocumentSet;
 import org.exist.xquery.functions.array.ArrayType;
 import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.DoubleSequence;
 import org.exist.xquery.value.Item;
+import org.exist.xquery.value.LongSequence;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceIterator;
 import org.exist.xquery.value.Type;
@@ -74,6 +76,10 @@ public class Atomize extends AbstractExpression {
     public static Sequence atomize(Sequence input) throws XPathException {
         if (input.isEmpty())
             {return Sequence.EMPTY_SEQUENCE;}
+        if (input instanceof LongSequence || input instanceof DoubleSequence) {
+            // already atomic, keep the primitive values
+            return input;
+        }
         input = ArrayType.flatten(input);
         if (input.hasOne()) {return
             input.itemAt(0).atomize();
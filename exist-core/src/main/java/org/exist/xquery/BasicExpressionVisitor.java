@@ -173,6 +173,11 @@ public class BasicExpressionVisitor implements ExpressionVisitor {
         //Nothing to do
     }
 
+    @Override
+    public void visitWindowExpression(WindowExpr windowExpr) {
+        // Nothing to do
+    }
+
     @Override
     public void visitOrderByClause(OrderByClause orderBy) {
         // Nothing to do
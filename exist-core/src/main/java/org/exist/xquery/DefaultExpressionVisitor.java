@@ -69,6 +69,16 @@ public class DefaultExpressionVisitor extends BasicExpressionVisitor {
         letExpr.getReturnExpression().accept(this);
     }
 
+    @Override
+    public void visitWindowExpression(WindowExpr windowExpr) {
+        windowExpr.getInputSequence().accept(this);
+        windowExpr.getStartCondition().getWhenExpression().accept(this);
+        if (windowExpr.getEndCondition() != null) {
+            windowExpr.getEndCondition().getWhenExpression().accept(this);
+        }
+        windowExpr.getReturnExpression().accept(this);
+    }
+
     @Override
     public void visitOrderByClause(OrderByClause orderBy) {
         for (OrderSpec spec: orderBy.getOrderSpecs()) {
@@ -41,6 +41,10 @@ public class DynamicTypeCheck extends AbstractExpression {
 		this.requiredType = requiredType;
 		this.expression = expr;
 	}
+
+	public Expression getExpression() {
+		return expression;
+	}
 	
     /* (non-Javadoc)
      * @see org.exist.xquery.Expression#analyze(org.exist.xquery.AnalyzeContextInfo)
@@ -58,6 +62,10 @@ public class DynamicTypeCheck extends AbstractExpression {
 		Item contextItem)
 		throws XPathException {
 		final Sequence seq = expression.eval(contextSequence, contextItem);
+        if ((seq instanceof LongSequence || seq instanceof DoubleSequence) && Type.subTypeOf(seq.getItemType(), requiredType)) {
+            // all of the primitive values are of the same type, no need to check each of them
+            return seq;
+        }
         Sequence result = null;
         if (Type.subTypeOf(requiredType, Type.ATOMIC) && !Type.subTypeOf(seq.getItemType(), requiredType)) {
             result = new ValueSequence();
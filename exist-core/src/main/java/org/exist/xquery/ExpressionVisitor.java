@@ -74,6 +74,8 @@ public interface ExpressionVisitor {
 
     void visitLetExpression(LetExpr letExpr);
 
+    void visitWindowExpression(WindowExpr windowExpr);
+
     void visitOrderByClause(OrderByClause orderBy);
 
     void visitGroupByClause(GroupByClause groupBy);
@@ -31,7 +31,7 @@ import org.exist.xquery.value.Sequence;
 public interface FLWORClause extends Expression {
 
     enum ClauseType {
-        FOR, LET, GROUPBY, ORDERBY, WHERE, SOME, EVERY
+        FOR, LET, WINDOW, GROUPBY, ORDERBY, WHERE, SOME, EVERY
     }
 
     /**
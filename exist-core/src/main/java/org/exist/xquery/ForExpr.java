@@ -26,6 +26,8 @@ import org.exist.dom.persistent.NodeSet;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.*;
 
+import javax.annotation.Nullable;
+
 /**
  * Represents an XQuery "for" expression.
  * 
@@ -37,6 +39,12 @@ public class ForExpr extends BindingExpression {
     private boolean allowEmpty = false;
     private boolean isOuterFor = true;
 
+    /**
+     * The number of leading items of the result which are actually consumed,
+     * if known. Set by the {@link Optimizer}.
+     */
+    private int resultLimit = OrderedValueSequence.NO_LIMIT;
+
     public ForExpr(XQueryContext context, boolean allowingEmpty) {
         super(context);
         this.allowEmpty = allowingEmpty;
@@ -57,6 +65,25 @@ public class ForExpr extends BindingExpression {
         positionalVariable = var;
     }
 
+    public @Nullable String getPositionalVariable() {
+        return positionalVariable;
+    }
+
+    /**
+     * Stop iterating over the input sequence once the result has the
+     * given number of items, because the consumer of the FLWOR expression
+     * does not use the remaining items.
+     *
+     * @param resultLimit the number of items to produce
+     */
+    public void setResultLimit(final int resultLimit) {
+        this.resultLimit = resultLimit;
+    }
+
+    public int getResultLimit() {
+        return resultLimit;
+    }
+
 	/* (non-Javadoc)
      * @see org.exist.xquery.Expression#analyze(org.exist.xquery.Expression)
      */
@@ -183,8 +210,17 @@ public class ForExpr extends BindingExpression {
             if (in.isEmpty() && allowEmpty) {
                 processItem(var, AtomicValue.EMPTY_VALUE, Sequence.EMPTY_SEQUENCE, resultSequence, at, p);
             } else {
+                // in ordered mode the result items are never removed again, so we can stop once there are enough
+                final boolean limited = resultLimit > 0 && !unordered;
                 for (final SequenceIterator i = in.iterate(); i.hasNext(); p++) {
                     processItem(var, i.nextItem(), in, resultSequence, at, p);
+                    if (limited && resultSequence.getItemCount() >= resultLimit) {
+                        if (context.getProfiler().isEnabled()) {
+                            context.getProfiler().message(this, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
+                                    "Early exit: processed " + (p + 1) + " of " + in.getItemCount() + " items");
+                        }
+                        break;
+                    }
                 }
             }
         } catch (final QName.IllegalQNameException e) {
@@ -257,6 +293,7 @@ public class ForExpr extends BindingExpression {
             switch (prev.getType()) {
                 case LET:
                 case FOR:
+                case WINDOW:
                     return false;
                 case ORDERBY:
                 case GROUPBY:
@@ -291,6 +328,9 @@ public class ForExpr extends BindingExpression {
             {dumper.display(" at ").display(positionalVariable);}
         dumper.display(" in ");
         inputSequence.dump(dumper);
+        if (resultLimit > 0) {
+            dumper.display(" (: first ").display(resultLimit).display(" :)");
+        }
         dumper.endIndent().nl();
         //TODO : QuantifiedExpr
         if (returnExpr instanceof LetExpr)
@@ -21,21 +21,35 @@
  */
 package org.exist.xquery;
 
-import com.ibm.icu.text.Collator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.exist.dom.QName;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.*;
 
+import javax.annotation.Nullable;
 import java.util.*;
 import java.util.stream.Stream;
 
 /**
  * Implements a "group by" clause inside a FLWOR.
  *
+ * The tuples are grouped in a hash map. When a collation other than the codepoint
+ * collation is in effect, the grouping keys are wrapped as {@link AtomicValueKey}s,
+ * which hash on the collation keys of strings.
+ *
+ * If the number of groups exceeds the spill threshold ({@link #PROPERTY_GROUP_BY_SPILL_THRESHOLD}),
+ * the tuples are written to disk by a {@link GroupBySpill}, and are grouped one partition at a time.
+ *
  * @author wolf
  */
 public class GroupByClause extends AbstractFLWORClause {
 
+    public static final String GROUP_BY_SPILL_THRESHOLD_ATTRIBUTE = "group-by-spill-threshold";
+    public static final String PROPERTY_GROUP_BY_SPILL_THRESHOLD = "xquery.group-by.spill-threshold";
+
+    private static final Logger LOG = LogManager.getLogger(GroupByClause.class);
+
     protected FLWORClause rootClause = null;
     private GroupSpec[] groupSpecs;
     private final Deque<GroupByData> stack = new ArrayDeque<>();
@@ -48,22 +62,25 @@ public class GroupByClause extends AbstractFLWORClause {
      */
     private class GroupByData {
 
-        private Map<List<AtomicValue>, Tuple> groupedMap = null;
+        private Map<List<?>, Tuple> groupedMap = null;
         private Map<QName, LocalVariable> variables = null;
         private List<LocalVariable> groupingVars = null;
 
+        /**
+         * The names of the non-grouping variables, in the
+         * order in which their values are spilled.
+         */
+        private final List<QName> variableNames = new ArrayList<>();
+        private final int spillThreshold;
+        @Nullable private GroupBySpill spill = null;
+
         private boolean initialized = false;
 
         public GroupByData() {
-            // check if we can use a hash map
-            if (usesDefaultCollator()) {
-                groupedMap = new HashMap<>();
-            } else {
-                // non-default collation: must use tree map
-                groupedMap = new TreeMap<>(GroupByClause.this::compareKeys);
-            }
+            groupedMap = newGroupedMap();
             variables = new HashMap<>();
             groupingVars = new ArrayList<>();
+            spillThreshold = getSpillThreshold();
         }
     }
 
@@ -107,8 +124,19 @@ public class GroupByClause extends AbstractFLWORClause {
             groupingKeys.add(groupingValue);
         }
 
+        final List<?> key = groupingKey(groupingKeys);
+        if (data.spill != null) {
+            // collect the values of the in-scope variables into a tuple on disk
+            final List<Sequence> values = new ArrayList<>(data.variableNames.size());
+            for (LocalVariable nextVar = rootClause.getStartVariable(); nextVar != null; nextVar = nextVar.after) {
+                values.add(nextVar.getValue());
+            }
+            data.spill.write(key.hashCode(), new GroupBySpill.Row(groupingValues, values));
+            return contextSequence;
+        }
+
         // collect the current tuples into the grouping map
-        final Tuple tuple = data.groupedMap.computeIfAbsent(groupingKeys, ks -> new Tuple(groupingValues));
+        final Tuple tuple = data.groupedMap.computeIfAbsent(key, ks -> new Tuple(groupingValues));
 
         // scan in-scope variables to collect tuples
         LocalVariable nextVar = rootClause.getStartVariable();
@@ -122,14 +150,39 @@ public class GroupByClause extends AbstractFLWORClause {
                 var.setStaticType(nextVar.getStaticType());
                 var.setContextDocs(nextVar.getContextDocs());
                 data.variables.put(var.getQName(), var);
+                data.variableNames.add(var.getQName());
             }
             nextVar = nextVar.after;
         }
 
         data.initialized = true;
+
+        if (data.spillThreshold > 0 && data.groupedMap.size() > data.spillThreshold) {
+            spill(data);
+        }
         return contextSequence;
     }
 
+    /**
+     * Move the groups collected so far to disk, and
+     * spill all further tuples to disk too.
+     */
+    private void spill(final GroupByData data) throws XPathException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Spilling the tuples of group by clause at line {} to disk after {} groups", getLine(), data.groupedMap.size());
+        }
+        data.spill = new GroupBySpill();
+        for (final Map.Entry<List<?>, Tuple> entry : data.groupedMap.entrySet()) {
+            final Tuple tuple = entry.getValue();
+            final List<Sequence> values = new ArrayList<>(data.variableNames.size());
+            for (final QName name : data.variableNames) {
+                values.add(tuple.getOrDefault(name, Sequence.EMPTY_SEQUENCE));
+            }
+            data.spill.write(entry.getKey().hashCode(), new GroupBySpill.Row(tuple.groupingValues, values));
+        }
+        data.groupedMap = null;
+    }
+
     @Override
     public Sequence postEval(final Sequence seq) throws XPathException {
         if (!stack.isEmpty()) {
@@ -145,29 +198,30 @@ public class GroupByClause extends AbstractFLWORClause {
                 for (LocalVariable var : data.groupingVars) {
                     context.declareVariableBinding(var);
                 }
-                // iterate over each group
-                for (Tuple tuple : data.groupedMap.values()) {
-                    context.proceed();
-
-                    // set grouping variable values
-                    final Iterator<Sequence> siter = tuple.groupingValues.iterator();
-                    for (LocalVariable var : data.groupingVars) {
-                        if (siter.hasNext()) {
-                            Sequence val = siter.next();
-                            var.setValue(val);
-                        } else {
-                            throw new XPathException(this, "Internal error: missing grouping value");
-                        }
+                if (data.spill == null) {
+                    // iterate over each group
+                    for (Tuple tuple : data.groupedMap.values()) {
+                        evalGroup(data, tuple, result);
                     }
-                    // set values of non-grouping variables
-                    for (Map.Entry<QName, Sequence> entry : tuple.entrySet()) {
-                        final LocalVariable var = data.variables.get(entry.getKey());
-                        var.setValue(entry.getValue());
+                } else {
+                    // group the tuples of each partition on disk on their own
+                    for (int partition = 0; partition < GroupBySpill.PARTITIONS; partition++) {
+                        final Map<List<?>, Tuple> groupedMap = newGroupedMap();
+                        for (final GroupBySpill.Row row : data.spill.read(partition)) {
+                            final Tuple tuple = groupedMap.computeIfAbsent(groupingKey(atomize(row.groupingValues)), ks -> new Tuple(row.groupingValues));
+                            for (int i = 0; i < row.values.size(); i++) {
+                                tuple.add(data.variableNames.get(i), row.values.get(i));
+                            }
+                        }
+                        for (Tuple tuple : groupedMap.values()) {
+                            evalGroup(data, tuple, result);
+                        }
                     }
-                    final Sequence r = returnExpr.eval(null);
-                    result.addAll(r);
                 }
             } finally {
+                if (data.spill != null) {
+                    data.spill.close();
+                }
                 stack.pop();
                 context.popLocalVariables(mark, result);
             }
@@ -181,6 +235,28 @@ public class GroupByClause extends AbstractFLWORClause {
         return seq;
     }
 
+    private void evalGroup(final GroupByData data, final Tuple tuple, final Sequence result) throws XPathException {
+        context.proceed();
+
+        // set grouping variable values
+        final Iterator<Sequence> siter = tuple.groupingValues.iterator();
+        for (LocalVariable var : data.groupingVars) {
+            if (siter.hasNext()) {
+                Sequence val = siter.next();
+                var.setValue(val);
+            } else {
+                throw new XPathException(this, "Internal error: missing grouping value");
+            }
+        }
+        // set values of non-grouping variables
+        for (Map.Entry<QName, Sequence> entry : tuple.entrySet()) {
+            final LocalVariable var = data.variables.get(entry.getKey());
+            var.setValue(entry.getValue());
+        }
+        final Sequence r = returnExpr.eval(null);
+        result.addAll(r);
+    }
+
     @Override
     public void analyze(AnalyzeContextInfo contextInfo) throws XPathException {
         contextInfo.setParent(this);
@@ -252,6 +328,11 @@ public class GroupByClause extends AbstractFLWORClause {
     @Override
     public void resetState(boolean postOptimization) {
         super.resetState(postOptimization);
+        for (final GroupByData data : stack) {
+            if (data.spill != null) {
+                data.spill.close();
+            }
+        }
         stack.clear();
         returnExpr.resetState(postOptimization);
         for (GroupSpec spec: groupSpecs) {
@@ -264,30 +345,48 @@ public class GroupByClause extends AbstractFLWORClause {
         visitor.visitGroupByClause(this);
     }
 
+    private Map<List<?>, Tuple> newGroupedMap() {
+        if (usesDefaultCollator()) {
+            return new HashMap<>();
+        }
+        // keep the groups in the order in which they were found
+        return new LinkedHashMap<>();
+    }
+
     /**
-     * Compare keys using the collator given in the group spec. Used to
-     * sort keys into the grouping map.
+     * Get the key of a group in the grouping map.
+     *
+     * @param groupingKeys the atomized values of the grouping variables
+     *
+     * @return the values themselves for the codepoint collation, otherwise
+     *     the values wrapped so that they hash and compare with regards to the
+     *     collations of the group specs
      */
-    private int compareKeys(List<AtomicValue> s1, List<AtomicValue> s2) {
-        final int c1 = s1.size();
-        final int c2 = s2.size();
-        if (c1 == c2) {
-            try {
-                for (int i = 0; i < c1; i++) {
-                    final AtomicValue v1 = s1.get(i);
-                    final AtomicValue v2 = s2.get(i);
-                    final Collator collator = groupSpecs[i].getCollator();
-                    final int r = v1.compareTo(collator, v2);
-                    if (r != Constants.EQUAL) {
-                        return r;
-                    }
-                }
-                return Constants.EQUAL;
-            } catch (XPathException e) {
-                return Constants.INFERIOR;
-            }
+    private List<?> groupingKey(final List<AtomicValue> groupingKeys) {
+        if (usesDefaultCollator()) {
+            return groupingKeys;
+        }
+        final List<AtomicValueKey> keys = new ArrayList<>(groupingKeys.size());
+        for (int i = 0; i < groupingKeys.size(); i++) {
+            keys.add(new AtomicValueKey(groupSpecs[i].getCollator(), groupingKeys.get(i)));
+        }
+        return keys;
+    }
+
+    private static List<AtomicValue> atomize(final List<Sequence> groupingValues) throws XPathException {
+        final List<AtomicValue> groupingKeys = new ArrayList<>(groupingValues.size());
+        for (final Sequence groupingSeq : groupingValues) {
+            groupingKeys.add(groupingSeq.isEmpty() ? AtomicValue.EMPTY_VALUE : groupingSeq.itemAt(0).atomize());
+        }
+        return groupingKeys;
+    }
+
+    private int getSpillThreshold() {
+        if (context.getBroker() == null) {
+            return 0;
         }
-        return c1 < c2 ? Constants.INFERIOR : Constants.SUPERIOR;
+        final Object threshold = context.getBroker().getConfiguration().getProperty(PROPERTY_GROUP_BY_SPILL_THRESHOLD);
+        return threshold instanceof Integer ? (Integer) threshold : 0;
     }
 
     private boolean usesDefaultCollator() {
@@ -0,0 +1,338 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.jcip.annotations.NotThreadSafe;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.numbering.NodeId;
+import org.exist.util.io.TemporaryFileManager;
+import org.exist.xquery.value.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spills the tuples collected by a {@link GroupByClause} to temporary files,
+ * when there are too many groups to be kept in memory.
+ *
+ * The tuples are hash partitioned on their grouping keys, so that all the tuples
+ * of a group end up in the same partition. Each partition is then read back and grouped
+ * in memory on its own, so that only the tuples of one partition are in memory at a time.
+ *
+ * Atomic values and persistent nodes are written to the files. A tuple which holds
+ * any other item, e.g. an in-memory node or a function, is kept in memory, and a
+ * reference to it is written instead, so that the order of the tuples is kept.
+ */
+@NotThreadSafe
+final class GroupBySpill implements AutoCloseable {
+
+    static final int PARTITIONS = 16;
+
+    private static final byte ROW = 0;
+    private static final byte RETAINED_ROW = 1;
+
+    private static final byte ITEM_NODE = 0;
+    private static final byte ITEM_STRING = 1;
+    private static final byte ITEM_UNTYPED_ATOMIC = 2;
+    private static final byte ITEM_ANY_URI = 3;
+    private static final byte ITEM_BOOLEAN = 4;
+    private static final byte ITEM_INTEGER = 5;
+    private static final byte ITEM_DECIMAL = 6;
+    private static final byte ITEM_DOUBLE = 7;
+    private static final byte ITEM_FLOAT = 8;
+    private static final byte ITEM_LEXICAL = 9;
+
+    private final Path[] files = new Path[PARTITIONS];
+    private final DataOutputStream[] outputs = new DataOutputStream[PARTITIONS];
+    private final List<Row> retained = new ArrayList<>();
+    private final Int2ObjectMap<DocumentImpl> documents = new Int2ObjectOpenHashMap<>();
+    private final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
+
+    /**
+     * A tuple of the values of the grouping variables,
+     * and of the values of the other variables in scope.
+     */
+    static final class Row {
+        final List<Sequence> groupingValues;
+        final List<Sequence> values;
+
+        Row(final List<Sequence> groupingValues, final List<Sequence> values) {
+            this.groupingValues = groupingValues;
+            this.values = values;
+        }
+    }
+
+    static int partition(final int hash) {
+        return (hash ^ (hash >>> 16)) & (PARTITIONS - 1);
+    }
+
+    /**
+     * Write a tuple to its partition.
+     *
+     * @param hash the hash code of the grouping keys of the tuple
+     * @param row the tuple
+     *
+     * @throws XPathException if the tuple cannot be written
+     */
+    void write(final int hash, final Row row) throws XPathException {
+        final int partition = partition(hash);
+        try {
+            final DataOutputStream os = output(partition);
+            if (isWritable(row.groupingValues) && isWritable(row.values)) {
+                os.writeByte(ROW);
+                writeSequences(os, row.groupingValues);
+                writeSequences(os, row.values);
+            } else {
+                os.writeByte(RETAINED_ROW);
+                os.writeInt(retained.size());
+                retained.add(row);
+            }
+        } catch (final IOException e) {
+            throw new XPathException("Unable to write the tuples of a group by clause to disk: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Read the tuples of a partition, in the order in which they were written.
+     * The file of the partition is deleted once it has been read.
+     *
+     * @param partition the partition
+     *
+     * @return the tuples of the partition
+     *
+     * @throws XPathException if the tuples cannot be read
+     */
+    List<Row> read(final int partition) throws XPathException {
+        final List<Row> rows = new ArrayList<>();
+        if (files[partition] == null) {
+            return rows;
+        }
+
+        try {
+            outputs[partition].close();
+            outputs[partition] = null;
+            try (final DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(files[partition])))) {
+                int type;
+                while ((type = is.read()) != -1) {
+                    if (type == RETAINED_ROW) {
+                        final int idx = is.readInt();
+                        rows.add(retained.get(idx));
+                        retained.set(idx, null);
+                    } else {
+                        final List<Sequence> groupingValues = readSequences(is);
+                        final List<Sequence> values = readSequences(is);
+                        rows.add(new Row(groupingValues, values));
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            throw new XPathException("Unable to read the tuples of a group by clause from disk: " + e.getMessage(), e);
+        } finally {
+            temporaryFileManager.returnTemporaryFile(files[partition]);
+            files[partition] = null;
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < PARTITIONS; i++) {
+            if (outputs[i] != null) {
+                try {
+                    outputs[i].close();
+                } catch (final IOException e) {
+                    // the file is deleted regardless
+                }
+                outputs[i] = null;
+            }
+            if (files[i] != null) {
+                temporaryFileManager.returnTemporaryFile(files[i]);
+                files[i] = null;
+            }
+        }
+        retained.clear();
+        documents.clear();
+    }
+
+    private DataOutputStream output(final int partition) throws IOException {
+        if (outputs[partition] == null) {
+            files[partition] = temporaryFileManager.getTemporaryFile();
+            outputs[partition] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(files[partition])));
+        }
+        return outputs[partition];
+    }
+
+    private static boolean isWritable(final List<Sequence> sequences) throws XPathException {
+        for (final Sequence sequence : sequences) {
+            for (final SequenceIterator i = sequence.iterate(); i.hasNext(); ) {
+                final Item item = i.nextItem();
+                if (!(item instanceof NodeProxy || isWritable(item))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWritable(final Item item) {
+        final int type = item.getType();
+        return Type.subTypeOf(type, Type.STRING) || type == Type.UNTYPED_ATOMIC || type == Type.ANY_URI
+                || type == Type.BOOLEAN || Type.subTypeOfUnion(type, Type.NUMBER)
+                || item instanceof AbstractDateTimeValue || item instanceof DurationValue;
+    }
+
+    private void writeSequences(final DataOutputStream os, final List<Sequence> sequences) throws IOException, XPathException {
+        os.writeInt(sequences.size());
+        for (final Sequence sequence : sequences) {
+            os.writeInt(sequence.getItemCount());
+            for (final SequenceIterator i = sequence.iterate(); i.hasNext(); ) {
+                writeItem(os, i.nextItem());
+            }
+        }
+    }
+
+    private void writeItem(final DataOutputStream os, final Item item) throws IOException, XPathException {
+        if (item instanceof NodeProxy) {
+            final NodeProxy node = (NodeProxy) item;
+            final DocumentImpl doc = node.getOwnerDocument();
+            documents.putIfAbsent(doc.getDocId(), doc);
+            final NodeId nodeId = node.getNodeId();
+            final byte[] data = new byte[nodeId.size()];
+            nodeId.serialize(data, 0);
+            os.writeByte(ITEM_NODE);
+            os.writeInt(doc.getDocId());
+            os.writeInt(nodeId.units());
+            os.writeInt(data.length);
+            os.write(data);
+            os.writeShort(node.getNodeType());
+            os.writeLong(node.getInternalAddress());
+            return;
+        }
+
+        final int type = item.getType();
+        if (type == Type.STRING) {
+            os.writeByte(ITEM_STRING);
+            writeString(os, item.getStringValue());
+        } else if (type == Type.UNTYPED_ATOMIC) {
+            os.writeByte(ITEM_UNTYPED_ATOMIC);
+            writeString(os, item.getStringValue());
+        } else if (type == Type.ANY_URI) {
+            os.writeByte(ITEM_ANY_URI);
+            writeString(os, item.getStringValue());
+        } else if (type == Type.BOOLEAN) {
+            os.writeByte(ITEM_BOOLEAN);
+            os.writeBoolean(((BooleanValue) item).getValue());
+        } else if (Type.subTypeOf(type, Type.INTEGER)) {
+            os.writeByte(ITEM_INTEGER);
+            os.writeInt(type);
+            writeString(os, item.getStringValue());
+        } else if (type == Type.DECIMAL) {
+            os.writeByte(ITEM_DECIMAL);
+            writeString(os, item.getStringValue());
+        } else if (type == Type.DOUBLE) {
+            os.writeByte(ITEM_DOUBLE);
+            os.writeDouble(((NumericValue) item).getDouble());
+        } else if (type == Type.FLOAT) {
+            os.writeByte(ITEM_FLOAT);
+            os.writeFloat((float) ((NumericValue) item).getDouble());
+        } else {
+            // subtypes of xs:string, dates, times and durations, whose lexical form is lossless
+            os.writeByte(ITEM_LEXICAL);
+            os.writeInt(type);
+            writeString(os, item.getStringValue());
+        }
+    }
+
+    private List<Sequence> readSequences(final DataInputStream is) throws IOException, XPathException {
+        final int count = is.readInt();
+        final List<Sequence> sequences = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int itemCount = is.readInt();
+            if (itemCount == 0) {
+                sequences.add(Sequence.EMPTY_SEQUENCE);
+            } else if (itemCount == 1) {
+                sequences.add(readItem(is).toSequence());
+            } else {
+                final ValueSequence sequence = new ValueSequence(itemCount);
+                for (int j = 0; j < itemCount; j++) {
+                    sequence.add(readItem(is));
+                }
+                sequences.add(sequence);
+            }
+        }
+        return sequences;
+    }
+
+    private Item readItem(final DataInputStream is) throws IOException, XPathException {
+        final byte itemType = is.readByte();
+        switch (itemType) {
+            case ITEM_NODE:
+                final DocumentImpl doc = documents.get(is.readInt());
+                final int units = is.readInt();
+                final byte[] data = new byte[is.readInt()];
+                is.readFully(data);
+                final NodeId nodeId = doc.getBrokerPool().getNodeFactory().createFromData(units, data, 0);
+                return new NodeProxy(doc, nodeId, is.readShort(), is.readLong());
+            case ITEM_STRING:
+                return new StringValue(readString(is));
+            case ITEM_UNTYPED_ATOMIC:
+                return new UntypedAtomicValue(readString(is));
+            case ITEM_ANY_URI:
+                return new AnyURIValue(readString(is));
+            case ITEM_BOOLEAN:
+                return BooleanValue.valueOf(is.readBoolean());
+            case ITEM_INTEGER:
+                final int type = is.readInt();
+                return new IntegerValue(readString(is), type);
+            case ITEM_DECIMAL:
+                return new DecimalValue(readString(is));
+            case ITEM_DOUBLE:
+                return new DoubleValue(is.readDouble());
+            case ITEM_FLOAT:
+                return new FloatValue(is.readFloat());
+            case ITEM_LEXICAL:
+                final int lexicalType = is.readInt();
+                return new StringValue(readString(is)).convertTo(lexicalType);
+            default:
+                throw new IOException("Unknown item type in group by spill file: " + itemType);
+        }
+    }
+
+    private static void writeString(final DataOutputStream os, final String s) throws IOException {
+        final byte[] data = s.getBytes(StandardCharsets.UTF_8);
+        os.writeInt(data.length);
+        os.write(data);
+    }
+
+    private static String readString(final DataInputStream is) throws IOException {
+        final byte[] data = new byte[is.readInt()];
+        is.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
@@ -38,6 +38,8 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * Processes all location path steps (like descendant::*, ancestor::XXX).
@@ -619,21 +621,24 @@ public class LocationStep extends Step {
                         "Using structural index '" + index.toString() + "'");
             }
             if (!contextSet.getProcessInReverseOrder()) {
-                return index.findDescendantsByTagName(ElementValue.ATTRIBUTE, test.getName(), axis, docs, contextSet,
-                        contextId, this);
+                return findByTagName(contextSet, docs, (stepDocs, stepContextSet) ->
+                        index.findDescendantsByTagName(ElementValue.ATTRIBUTE, test.getName(), axis, stepDocs,
+                                stepContextSet, contextId, this));
             } else {
-                final NodeSelector selector;
+                final Function<NodeSet, NodeSelector> selector;
                 switch (axis) {
                     case Constants.ATTRIBUTE_AXIS:
-                        selector = new ChildSelector(contextSet, contextId);
+                        selector = stepContextSet -> new ChildSelector(stepContextSet, contextId);
                         break;
                     case Constants.DESCENDANT_ATTRIBUTE_AXIS:
-                        selector = new DescendantSelector(contextSet, contextId);
+                        selector = stepContextSet -> new DescendantSelector(stepContextSet, contextId);
                         break;
                     default:
                         throw new IllegalArgumentException("Unsupported axis specified");
                 }
-                return index.findElementsByTagName(ElementValue.ATTRIBUTE, docs, test.getName(), selector, this);
+                return findByTagName(contextSet, docs, (stepDocs, stepContextSet) ->
+                        index.findElementsByTagName(ElementValue.ATTRIBUTE, stepDocs, test.getName(),
+                                selector.apply(stepContextSet), this));
             }
         }
     }
@@ -701,14 +706,16 @@ public class LocationStep extends Step {
             }
             if (!contextSet.getProcessInReverseOrder() && !(contextSet instanceof VirtualNodeSet) &&
                     contextSet.getLength() < INDEX_SCAN_THRESHOLD) {
-                return index.findDescendantsByTagName(ElementValue.ELEMENT,
-                        test.getName(), axis, docs, contextSet,
-                        contextId, parent);
+                return findByTagName(contextSet, docs, (stepDocs, stepContextSet) ->
+                        index.findDescendantsByTagName(ElementValue.ELEMENT,
+                                test.getName(), axis, stepDocs, stepContextSet,
+                                contextId, parent));
             } else {
                 // if (contextSet instanceof VirtualNodeSet)
                 // ((VirtualNodeSet)contextSet).realize();
-                final NodeSelector selector = new ChildSelector(contextSet, contextId);
-                return index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), selector, this);
+                return findByTagName(contextSet, docs, (stepDocs, stepContextSet) ->
+                        index.findElementsByTagName(ElementValue.ELEMENT, stepDocs, test.getName(),
+                                new ChildSelector(stepContextSet, contextId), this));
             }
         }
     }
@@ -774,26 +781,53 @@ public class LocationStep extends Step {
             }
             if (!contextSet.getProcessInReverseOrder()
                     && (contextSet instanceof VirtualNodeSet || contextSet.getLength() < INDEX_SCAN_THRESHOLD)) {
-                return index.findDescendantsByTagName(ElementValue.ELEMENT, test.getName(), axis, docs, contextSet,
-                        contextId, this);
+                return findByTagName(contextSet, docs, (stepDocs, stepContextSet) ->
+                        index.findDescendantsByTagName(ElementValue.ELEMENT, test.getName(), axis, stepDocs,
+                                stepContextSet, contextId, this));
             } else {
-                final NodeSelector selector;
+                final Function<NodeSet, NodeSelector> selector;
                 switch (axis) {
                     case Constants.DESCENDANT_SELF_AXIS:
-                        selector = new DescendantOrSelfSelector(contextSet, contextId);
+                        selector = stepContextSet -> new DescendantOrSelfSelector(stepContextSet, contextId);
                         break;
                     case Constants.DESCENDANT_AXIS:
-                        selector = new DescendantSelector(contextSet, contextId);
+                        selector = stepContextSet -> new DescendantSelector(stepContextSet, contextId);
                         break;
                     default:
                         throw new IllegalArgumentException("Unsupported axis specified");
                 }
-                return index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), selector, this);
+                return findByTagName(contextSet, docs, (stepDocs, stepContextSet) ->
+                        index.findElementsByTagName(ElementValue.ELEMENT, stepDocs, test.getName(),
+                                selector.apply(stepContextSet), this));
             }
 
         }
     }
 
+    /**
+     * Finds the nodes selected by the step in the structural index. If the query permits, and
+     * the context set spans enough documents, morsels of the documents are searched in parallel,
+     * see {@link MorselEvaluator}.
+     *
+     * @param contextSet the context set
+     * @param docs the documents of the context set
+     * @param find searches the structural index for the given documents and context set
+     * @return the selected nodes
+     * @throws XPathException if the query was terminated
+     */
+    private NodeSet findByTagName(final NodeSet contextSet, final DocumentSet docs,
+            final BiFunction<DocumentSet, NodeSet, NodeSet> find) throws XPathException {
+        final NodeSet result = MorselEvaluator.evaluate(context, this, contextSet, find);
+        if (result != null) {
+            if (context.getProfiler().isEnabled()) {
+                context.getProfiler().message(this, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
+                        "Searched the structural index in parallel");
+            }
+            return result;
+        }
+        return find.apply(docs, contextSet);
+    }
+
     /**
      * Get's the sibling nodes of the context set
      *
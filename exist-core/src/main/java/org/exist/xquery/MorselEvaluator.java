@@ -0,0 +1,194 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.persistent.DefaultDocumentSet;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.NewArrayNodeSet;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.dom.persistent.VirtualNodeSet;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Evaluates a path step across the documents of its context set in parallel.
+ *
+ * The context set is split into morsels of {@link #MORSEL_DOCUMENTS} documents
+ * each. Up to {@link XQueryContext#getDegreeOfParallelism()} threads, i.e. the
+ * calling thread and threads of the {@link MorselWorkerPool} of the database,
+ * take the next unevaluated morsel until all morsels have been evaluated. The
+ * results of the morsels are then merged back in document order into a new
+ * node set.
+ *
+ * Every morsel has a context set of its own, which holds the context nodes of
+ * its documents, so the workers do not share a node set, which may be sorted
+ * or otherwise modified when it is read. The context nodes themselves are shared
+ * with the context set of the path step, so the function which evaluates a morsel
+ * must only read them. It must not use the profiler or the broker of the calling
+ * thread either; the structural index may be read by any thread.
+ */
+final class MorselEvaluator {
+
+    /**
+     * The number of documents in a morsel.
+     */
+    static final int MORSEL_DOCUMENTS = 64;
+
+    private MorselEvaluator() {
+    }
+
+    /**
+     * Evaluates a path step in parallel.
+     *
+     * @param context the context of the query
+     * @param expr the expression being evaluated
+     * @param contextSet the context set of the path step
+     * @param step evaluates the path step for the documents and context nodes of a morsel
+     *
+     * @return the result, or null if the path step should be evaluated by the calling thread
+     *
+     * @throws XPathException if the query was terminated whilst the morsels were evaluated
+     */
+    static @Nullable NodeSet evaluate(final XQueryContext context, final Expression expr, final NodeSet contextSet,
+            final BiFunction<DocumentSet, NodeSet, NodeSet> step) throws XPathException {
+        final int degree = context.getDegreeOfParallelism();
+        // NOTE: a virtual node set would have to be realized to be split
+        if (degree <= 1 || contextSet instanceof VirtualNodeSet
+                || contextSet.getDocumentSet().getDocumentCount() < 2 * MORSEL_DOCUMENTS) {
+            return null;
+        }
+
+        final List<Morsel> morsels = split(contextSet);
+        if (morsels == null) {
+            return null;
+        }
+
+        final NodeSet[] results = new NodeSet[morsels.size()];
+        final AtomicInteger next = new AtomicInteger();
+        final Runnable worker = () -> {
+            try {
+                for (int i = next.getAndIncrement(); i < results.length; i = next.getAndIncrement()) {
+                    final Morsel morsel = morsels.get(i);
+                    results[i] = step.apply(morsel.docs, morsel.contextSet);
+                }
+            } catch (final RuntimeException e) {
+                // stop the other workers
+                next.set(results.length);
+                throw e;
+            }
+        };
+
+        // the calling thread is one of the workers
+        final MorselWorkerPool workerPool = context.getBroker().getBrokerPool().getMorselWorkerPool();
+        final int forked = Math.min(degree, results.length) - 1;
+        final List<Future<?>> tasks = new ArrayList<>(forked);
+        for (int i = 0; i < forked; i++) {
+            final Future<?> task = workerPool.submit(worker);
+            if (task != null) {
+                tasks.add(task);
+            }
+        }
+
+        RuntimeException failure = null;
+        try {
+            worker.run();
+        } catch (final RuntimeException e) {
+            failure = e;
+        }
+        for (final Future<?> task : tasks) {
+            // a worker which has not started yet would find no morsels left
+            if (task.cancel(false)) {
+                continue;
+            }
+            try {
+                task.get();
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                if (failure == null) {
+                    failure = (RuntimeException) e.getCause();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                next.set(results.length);
+                throw new XPathException(expr, "Interrupted whilst evaluating a path step in parallel", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        // the workers stop when the watchdog terminates the query, make sure that the query does not continue
+        context.proceed(expr);
+
+        // NOTE: the results of the morsels are not modified, as they may be held on to by the step
+        final NodeSet result = new NewArrayNodeSet();
+        for (final NodeSet morselResult : results) {
+            result.addAll(morselResult);
+        }
+        return result;
+    }
+
+    /**
+     * Splits the context set into morsels of consecutive documents.
+     *
+     * @return the morsels, or null if the context set is not in document order
+     */
+    private static @Nullable List<Morsel> split(final NodeSet contextSet) {
+        final List<Morsel> morsels = new ArrayList<>();
+        Morsel morsel = new Morsel();
+        DocumentImpl lastDoc = null;
+        for (final NodeProxy node : contextSet) {
+            final DocumentImpl doc = node.getOwnerDocument();
+            if (lastDoc == null || doc.getDocId() != lastDoc.getDocId()) {
+                if (lastDoc != null && doc.getDocId() < lastDoc.getDocId()) {
+                    return null;
+                }
+                if (morsel.docs.getDocumentCount() == MORSEL_DOCUMENTS) {
+                    morsels.add(morsel);
+                    morsel = new Morsel();
+                }
+                morsel.docs.add(doc, false);
+                lastDoc = doc;
+            }
+            morsel.contextSet.add(node);
+        }
+        if (morsel.docs.getDocumentCount() > 0) {
+            morsels.add(morsel);
+        }
+        return morsels;
+    }
+
+    private static final class Morsel {
+        final DefaultDocumentSet docs = new DefaultDocumentSet(MORSEL_DOCUMENTS);
+        final NodeSet contextSet = new NewArrayNodeSet();
+    }
+}
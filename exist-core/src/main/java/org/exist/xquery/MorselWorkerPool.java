@@ -0,0 +1,90 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import net.jcip.annotations.ThreadSafe;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerPoolService;
+import org.exist.util.NamedThreadFactory;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The threads of a database instance which evaluate the morsels of path steps
+ * in parallel, see {@link MorselEvaluator}.
+ *
+ * As the morsels are read from the structural index, which may block on I/O,
+ * they are not evaluated by the common fork/join pool. The pool has as many
+ * threads as there are processors, which are shared by all of the queries,
+ * and are stopped when they have been idle for a while.
+ */
+@ThreadSafe
+public final class MorselWorkerPool implements BrokerPoolService {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    @Nullable private volatile ExecutorService executor = null;
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory(brokerPool, "morsel-worker"));
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    /**
+     * Submit a worker.
+     *
+     * @param worker the worker
+     *
+     * @return the future of the worker, or null if the pool is not running
+     */
+    @Nullable Future<?> submit(final Runnable worker) {
+        final ExecutorService executor = this.executor;
+        if (executor == null) {
+            return null;
+        }
+        try {
+            return executor.submit(worker);
+        } catch (final RejectedExecutionException e) {
+            // the pool is shutting down
+            return null;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        final ExecutorService executor = this.executor;
+        if (executor != null) {
+            executor.shutdownNow();
+            this.executor = null;
+        }
+    }
+}
@@ -23,9 +23,9 @@ package org.exist.xquery;
 
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.Item;
+import org.exist.xquery.value.NumericSequenceBuilder;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceIterator;
-import org.exist.xquery.value.ValueSequence;
 
 /**
  * Implements the XQuery 3.0 simple map operator "!".
@@ -55,14 +55,15 @@ public class OpSimpleMap extends AbstractExpression {
         if (leftSeq.isEmpty())
             {return Sequence.EMPTY_SEQUENCE;}
 
-        final ValueSequence result = new ValueSequence();
+        // numeric results, e.g. of (1 to 1000) ! (. * 2), are kept in a primitive array
+        final NumericSequenceBuilder result = new NumericSequenceBuilder();
         int pos = 0;
         for (final SequenceIterator i = leftSeq.iterate(); i.hasNext(); pos++) {
             context.setContextSequencePosition(pos, leftSeq);
             final Sequence rightSeq = right.eval(i.nextItem().toSequence());
             result.addAll(rightSeq);
         }
-        return result;
+        return result.toSequence();
     }
 
     @Override
@@ -23,12 +23,28 @@ package org.exist.xquery;
 
 import org.exist.dom.QName;
 import org.exist.storage.DBBroker;
+import org.exist.xquery.Constants.Comparison;
 import org.exist.xquery.functions.array.ArrayConstructor;
+import org.exist.xquery.functions.fn.FunAvg;
+import org.exist.xquery.functions.fn.FunCount;
+import org.exist.xquery.functions.fn.FunEmpty;
+import org.exist.xquery.functions.fn.FunExists;
+import org.exist.xquery.functions.fn.FunHeadTail;
+import org.exist.xquery.functions.fn.FunMax;
+import org.exist.xquery.functions.fn.FunMin;
+import org.exist.xquery.functions.fn.FunPosition;
+import org.exist.xquery.functions.fn.FunSubSequence;
+import org.exist.xquery.functions.fn.FunSum;
+import org.exist.xquery.functions.util.UtilModule;
+import org.exist.xquery.functions.xmldb.XMLDBModule;
 import org.exist.xquery.pragmas.Optimize;
+import org.exist.xquery.update.Modification;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.NumericValue;
+import org.exist.xquery.value.OrderedValueSequence;
 import org.exist.xquery.value.Type;
 
 import javax.annotation.Nullable;
@@ -58,6 +74,11 @@ public class Optimizer extends DefaultExpressionVisitor {
 
     private static final Logger LOG = LogManager.getLogger(Optimizer.class);
 
+    /**
+     * The namespace of the file module, which is an extension module.
+     */
+    private static final String FILE_MODULE_NAMESPACE_URI = "http://exist-db.org/xquery/file";
+
     private XQueryContext context;
 
     private int predicates = 0;
@@ -155,9 +176,80 @@ public class Optimizer extends DefaultExpressionVisitor {
         }
     }
 
+    @Override
+    public void visitPathExpr(final PathExpr expression) {
+        // check query rewriters if they can compute an aggregate from an index. This needs to be done
+        // before the argument of the aggregate function is visited, as it may be rewritten
+        for (int i = 0; i < expression.getLength(); i++) {
+            final Expression next = expression.getExpression(i);
+            if (isAggregate(next)) {
+                for (final QueryRewriter rewriter : rewriters) {
+                    try {
+                        final Expression rewritten = rewriter.rewriteAggregate((Function) next);
+                        if (rewritten != null) {
+                            expression.replace(next, rewritten);
+                            hasOptimized = true;
+                            if (context.getProfiler().isEnabled()) {
+                                context.getProfiler().message(expression, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
+                                        "Computing " + ExpressionDumper.dump(next) + " from index");
+                            }
+                            break;
+                        }
+                    } catch (final XPathException e) {
+                        LOG.warn("Exception called while rewriting aggregate function: {}", e.getMessage(), e);
+                    }
+                }
+            }
+        }
+        super.visitPathExpr(expression);
+    }
+
+    /**
+     * Check if the expression is a call to a function which aggregates over a
+     * sequence, using the single argument version of the function.
+     */
+    private static boolean isAggregate(final Expression expression) {
+        if (expression instanceof FunCount) {
+            return true;
+        }
+        if (expression instanceof FunSum || expression instanceof FunAvg || expression instanceof FunMin || expression instanceof FunMax) {
+            return ((Function) expression).getArgumentCount() == 1;
+        }
+        return false;
+    }
+
+    @Override
+    public void visitOrderByClause(final OrderByClause orderBy) {
+        super.visitOrderByClause(orderBy);
+
+        // check query rewriters if they want to read the sort keys from an index
+        for (final OrderSpec spec : orderBy.getOrderSpecs()) {
+            final Expression sortExpr = spec.getSortExpression();
+            for (final QueryRewriter rewriter : rewriters) {
+                try {
+                    final Expression rewritten = rewriter.rewriteOrderSpec(orderBy, spec);
+                    if (rewritten != null) {
+                        spec.replace(sortExpr, rewritten);
+                        hasOptimized = true;
+                        if (context.getProfiler().isEnabled()) {
+                            context.getProfiler().message(orderBy, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
+                                    "Reading sort keys of " + ExpressionDumper.dump(sortExpr) + " from index");
+                        }
+                        break;
+                    }
+                } catch (final XPathException e) {
+                    LOG.warn("Exception called while rewriting order spec: {}", e.getMessage(), e);
+                }
+            }
+        }
+    }
+
     public void visitFilteredExpr(FilteredExpression filtered) {
         super.visitFilteredExpr(filtered);
 
+        // handles expressions like (for ... order by ... return ...)[position() le 20]
+        limitResult(filtered.getExpression(), getPositionalLimit(filtered.getPredicates()));
+
         // check if filtered expression can be simplified:
         // handles expressions like //foo/(baz)[...]
         if (filtered.getExpression() instanceof LocationStep) {
@@ -211,6 +303,267 @@ public class Optimizer extends DefaultExpressionVisitor {
         }
     }
 
+    @Override
+    public void visitBuiltinFunction(final Function function) {
+        super.visitBuiltinFunction(function);
+
+        // handles expressions like subsequence(for ... order by ... return ..., 1, 20)
+        if (function instanceof FunHeadTail && function.isCalledAs("head")) {
+            limitResult(function.getArgument(0), 1);
+        } else if (function instanceof FunExists || function instanceof FunEmpty) {
+            // only need to know if there is a first item
+            limitResult(function.getArgument(0), 1);
+        } else if (function instanceof FunSubSequence && function.getArgumentCount() == 3) {
+            final Double start = getNumericLiteral(function.getArgument(1));
+            final Double length = getNumericLiteral(function.getArgument(2));
+            if (start != null && length != null) {
+                limitResult(function.getArgument(0), Math.round(start) + Math.round(length) - 1);
+            }
+        }
+    }
+
+    /**
+     * Tell an expression that only the first items of its result are consumed,
+     * so that FLWOR expressions and sequence constructors can stop evaluating
+     * once they have produced enough items, and "order by" clauses can do a
+     * top-k sort.
+     *
+     * The limit is pushed down into the operands of a sequence constructor, and
+     * into the return expression of a FLWOR expression, as each of those
+     * also only needs to produce at most the same number of items.
+     *
+     * An expression which may have side effects, see {@link SideEffectsVisitor},
+     * is not limited, as all of its items must be evaluated.
+     *
+     * @param expression the expression whose result is consumed
+     * @param limit the number of leading items which are consumed, or {@link OrderedValueSequence#NO_LIMIT}
+     */
+    private void limitResult(final Expression expression, final long limit) {
+        if (limit <= 0 || limit > Integer.MAX_VALUE) {
+            return;
+        }
+        if (hasSideEffects(expression)) {
+            // the items which are not consumed must still be evaluated for their side effects
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("line {}: not limiting an expression with side effects", expression.getLine());
+            }
+            return;
+        }
+        limitOrderBy(expression, limit);
+
+        final Expression unwrapped = unwrap(expression);
+        if (unwrapped instanceof SequenceConstructor) {
+            final SequenceConstructor sequence = (SequenceConstructor) unwrapped;
+            sequence.setResultLimit((int) limit);
+            for (int i = 0; i < sequence.getLength(); i++) {
+                limitResult(sequence.getExpression(i), limit);
+            }
+        } else if (unwrapped instanceof FLWORClause && ((FLWORClause) unwrapped).getPreviousClause() == null) {
+            final List<ForExpr> forClauses = new ArrayList<>();
+            Expression next = unwrapped;
+            for (; next instanceof FLWORClause; next = ((FLWORClause) next).getReturnExpression()) {
+                switch (((FLWORClause) next).getType()) {
+                    case FOR:
+                        forClauses.add((ForExpr) next);
+                        break;
+                    case ORDERBY:
+                    case GROUPBY:
+                        // all of the tuples are needed to sort or group them
+                        return;
+                    default:
+                        break;
+                }
+            }
+            for (final ForExpr forClause : forClauses) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("{} line {}: limiting for to the first {} items", forClause.getSource().toString(), forClause.getLine(), limit);
+                }
+                forClause.setResultLimit((int) limit);
+            }
+            // "next" is the expression of the return clause
+            limitResult(next, limit);
+        }
+    }
+
+    private static boolean hasSideEffects(final Expression expression) {
+        final SideEffectsVisitor visitor = new SideEffectsVisitor();
+        expression.accept(visitor);
+        return visitor.hasSideEffects();
+    }
+
+    /**
+     * If the expression is a FLWOR expression whose result is ordered by an
+     * "order by" clause, tell the clause that only the first items of the result are consumed,
+     * so that it can do a top-k sort instead of sorting the whole result.
+     *
+     * @param expression the expression whose result is consumed
+     * @param limit the number of leading items which are consumed, or {@link OrderedValueSequence#NO_LIMIT}
+     */
+    private void limitOrderBy(final Expression expression, final long limit) {
+        if (limit <= 0 || limit > Integer.MAX_VALUE) {
+            return;
+        }
+        final OrderByClause orderBy = findOrderBy(unwrap(expression));
+        if (orderBy != null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("{} line {}: limiting order by to the first {} items", orderBy.getSource().toString(), orderBy.getLine(), limit);
+            }
+            orderBy.setLimit((int) limit);
+
+            // check query rewriters if they can restrict an index lookup to the first tuples
+            for (final QueryRewriter rewriter : rewriters) {
+                try {
+                    if (rewriter.limitOrderBy(orderBy, (int) limit)) {
+                        hasOptimized = true;
+                        if (context.getProfiler().isEnabled()) {
+                            context.getProfiler().message(orderBy, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
+                                    "Index returns only the matches for the first " + limit + " items");
+                        }
+                    }
+                } catch (final XPathException e) {
+                    LOG.warn("Exception called while limiting order by: {}", e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the "order by" clause which determines the order of the result of a FLWOR expression.
+     *
+     * @param expression the expression
+     *
+     * @return the "order by" clause, or null if the expression is not a FLWOR expression,
+     *     or its result is not simply the ordered sequence of tuples
+     */
+    @Nullable
+    private static OrderByClause findOrderBy(final Expression expression) {
+        if (!(expression instanceof FLWORClause) || ((FLWORClause) expression).getPreviousClause() != null) {
+            return null;
+        }
+        OrderByClause orderBy = null;
+        for (Expression next = expression; next instanceof FLWORClause; next = ((FLWORClause) next).getReturnExpression()) {
+            switch (((FLWORClause) next).getType()) {
+                case ORDERBY:
+                    orderBy = (OrderByClause) next;
+                    break;
+                case FOR:
+                case LET:
+                case WHERE:
+                    break;
+                default:
+                    // a group by or window clause following the order by consumes all of the ordered tuples
+                    if (orderBy != null) {
+                        return null;
+                    }
+            }
+        }
+        return orderBy;
+    }
+
+    /**
+     * Get the number of leading items which are selected by
+     * the positional predicates of a filter expression.
+     *
+     * @param predicates the predicates
+     *
+     * @return the number of items, or {@link OrderedValueSequence#NO_LIMIT} if not known
+     */
+    private static long getPositionalLimit(final List<Predicate> predicates) {
+        if (predicates.isEmpty()) {
+            return OrderedValueSequence.NO_LIMIT;
+        }
+        // only the first predicate is applied to the whole sequence
+        final Expression expression = unwrap(predicates.get(0));
+        if (expression instanceof LiteralValue) {
+            // [n]
+            return getPositionalLimit(Comparison.EQ, getNumericLiteral(expression));
+        } else if (expression instanceof GeneralComparison) {
+            // [position() le n], and also [n ge position()]
+            final GeneralComparison comparison = (GeneralComparison) expression;
+            if (unwrap(comparison.getLeft()) instanceof FunPosition) {
+                return getPositionalLimit(comparison.getRelation(), getNumericLiteral(comparison.getRight()));
+            } else if (unwrap(comparison.getRight()) instanceof FunPosition) {
+                return getPositionalLimit(mirror(comparison.getRelation()), getNumericLiteral(comparison.getLeft()));
+            }
+        }
+        return OrderedValueSequence.NO_LIMIT;
+    }
+
+    private static long getPositionalLimit(final Comparison relation, @Nullable final Double value) {
+        if (value == null) {
+            return OrderedValueSequence.NO_LIMIT;
+        }
+        switch (relation) {
+            case EQ:
+                return value == Math.floor(value) ? value.longValue() : OrderedValueSequence.NO_LIMIT;
+            case LTEQ:
+                return (long) Math.floor(value);
+            case LT:
+                return (long) Math.ceil(value) - 1;
+            default:
+                return OrderedValueSequence.NO_LIMIT;
+        }
+    }
+
+    private static Comparison mirror(final Comparison relation) {
+        switch (relation) {
+            case LT:
+                return Comparison.GT;
+            case LTEQ:
+                return Comparison.GTEQ;
+            case GT:
+                return Comparison.LT;
+            case GTEQ:
+                return Comparison.LTEQ;
+            default:
+                return relation;
+        }
+    }
+
+    @Nullable
+    private static Double getNumericLiteral(final Expression expression) {
+        final Expression unwrapped = unwrap(expression);
+        if (unwrapped instanceof LiteralValue) {
+            final AtomicValue value = ((LiteralValue) unwrapped).getValue();
+            try {
+                if (value instanceof NumericValue && !((NumericValue) value).isNaN()) {
+                    return ((NumericValue) value).getDouble();
+                }
+            } catch (final XPathException e) {
+                LOG.debug("Unable to convert literal to a double: {}", value, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Strip the enclosing parentheses, and the checks added to function arguments.
+     *
+     * @param expression the expression
+     *
+     * @return the unwrapped expression
+     */
+    private static Expression unwrap(Expression expression) {
+        while (true) {
+            if ((expression.getClass() == PathExpr.class || expression instanceof Predicate)
+                    && ((PathExpr) expression).getLength() == 1) {
+                expression = ((PathExpr) expression).getExpression(0);
+            } else if (expression instanceof DynamicCardinalityCheck) {
+                expression = ((DynamicCardinalityCheck) expression).getExpression();
+            } else if (expression instanceof DynamicTypeCheck) {
+                expression = ((DynamicTypeCheck) expression).getExpression();
+            } else if (expression instanceof DynamicNameCheck) {
+                expression = ((DynamicNameCheck) expression).getExpression();
+            } else if (expression instanceof UntypedValueCheck) {
+                expression = ((UntypedValueCheck) expression).getExpression();
+            } else if (expression instanceof Atomize) {
+                expression = ((Atomize) expression).getExpression();
+            } else {
+                return expression;
+            }
+        }
+    }
+
     private boolean hasOptimizable(List<Predicate> preds) {
         // walk through the predicates attached to the current location step.
         // try to find a predicate containing an expression which is an instance
@@ -476,6 +829,11 @@ public class Optimizer extends DefaultExpressionVisitor {
             inlineable = false;
         }
 
+        @Override
+        public void visitWindowExpression(WindowExpr windowExpr) {
+            inlineable = false;
+        }
+
         @Override
         public void visitOrderByClause(OrderByClause orderBy) {
             inlineable = false;
@@ -580,4 +938,100 @@ public class Optimizer extends DefaultExpressionVisitor {
             inlineable = false;
         }
     }
+
+    /**
+     * Traverses an expression subtree, including the bodies of the user-defined
+     * functions it calls, to check if it may have side effects: an update
+     * expression, or a call to a function which changes the database or the
+     * file system, or which writes to the log. A dynamic function call may
+     * call any function, so it is assumed to have side effects.
+     */
+    static class SideEffectsVisitor extends DefaultExpressionVisitor {
+
+        private final Set<UserDefinedFunction> visitedFunctions = Collections.newSetFromMap(new IdentityHashMap<>());
+        @Nullable private Expression dispatched = null;
+        private boolean sideEffects = false;
+
+        public boolean hasSideEffects() {
+            return sideEffects;
+        }
+
+        private static boolean isSideEffecting(final Function function) {
+            final QName name = function.getSignature().getName();
+            if (name.getNamespaceURI() == null) {
+                return false;
+            }
+            switch (name.getNamespaceURI()) {
+                case XMLDBModule.NAMESPACE_URI:
+                case FILE_MODULE_NAMESPACE_URI:
+                    return true;
+                case UtilModule.NAMESPACE_URI:
+                    return name.getLocalPart().startsWith("log") || name.getLocalPart().startsWith("eval");
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public void visit(final Expression expr) {
+            if (expr instanceof Modification || expr instanceof DynamicFunctionCall) {
+                sideEffects = true;
+            } else if (expr != dispatched) {
+                // an expression without a method of its own in the visitor passes itself back to visit()
+                dispatched = expr;
+                expr.accept(this);
+            }
+        }
+
+        @Override
+        public void visitBuiltinFunction(final Function function) {
+            if (isSideEffecting(function)) {
+                sideEffects = true;
+            } else {
+                super.visitBuiltinFunction(function);
+            }
+        }
+
+        @Override
+        public void visitFunctionCall(final FunctionCall call) {
+            for (int i = 0; i < call.getArgumentCount(); i++) {
+                call.getArgument(i).accept(this);
+            }
+            final UserDefinedFunction function = call.getFunction();
+            if (function == null) {
+                sideEffects = true;
+            } else if (visitedFunctions.add(function)) {
+                // NOTE: UserDefinedFunction#accept visits a function only once, whichever the visitor
+                function.getFunctionBody().accept(this);
+            }
+        }
+
+        @Override
+        public void visitGeneralComparison(final GeneralComparison comparison) {
+            visitPathExpr(comparison);
+        }
+
+        @Override
+        public void visitAndExpr(final OpAnd and) {
+            visitPathExpr(and);
+        }
+
+        @Override
+        public void visitOrExpr(final OpOr or) {
+            visitPathExpr(or);
+        }
+
+        @Override
+        public void visitCastExpr(final CastExpression expression) {
+            expression.getInnerExpression().accept(this);
+        }
+
+        @Override
+        public void visitFilteredExpr(final FilteredExpression filtered) {
+            filtered.getExpression().accept(this);
+            for (final Predicate pred : filtered.getPredicates()) {
+                pred.accept(this);
+            }
+        }
+    }
 }
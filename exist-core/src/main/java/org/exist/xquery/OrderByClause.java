@@ -38,6 +38,12 @@ public class OrderByClause extends AbstractFLWORClause {
 
     protected OrderSpec[] orderSpecs = null;
 
+    /**
+     * The number of leading items of the ordered result which are actually consumed,
+     * if known. Set by the {@link Optimizer}.
+     */
+    private int limit = OrderedValueSequence.NO_LIMIT;
+
     /*  OrderByClause needs to keep state between calls to eval and postEval. We thus need
         to track state in a stack to avoid overwrites if we're called recursively. */
     private final Deque<OrderedValueSequence> stack = new ArrayDeque<>();
@@ -51,6 +57,20 @@ public class OrderByClause extends AbstractFLWORClause {
         return orderSpecs;
     }
 
+    /**
+     * Only retain the first items of the ordered result, because
+     * the consumer of the FLWOR expression does not use the remaining items.
+     *
+     * @param limit the number of items to retain
+     */
+    public void setLimit(final int limit) {
+        this.limit = limit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
     @Override
     public ClauseType getType() {
         return ClauseType.ORDERBY;
@@ -74,7 +94,7 @@ public class OrderByClause extends AbstractFLWORClause {
     public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
         final OrderedValueSequence orderedResult;
         if (stack.isEmpty()) {
-            orderedResult = new OrderedValueSequence(orderSpecs, 100);
+            orderedResult = new OrderedValueSequence(orderSpecs, 100, limit);
         } else {
             orderedResult = stack.pop();
         }
@@ -93,6 +113,10 @@ public class OrderByClause extends AbstractFLWORClause {
         }
         final OrderedValueSequence orderedResult = stack.pop();
         orderedResult.sort();
+        if (limit > 0 && context.getProfiler().isEnabled()) {
+            context.getProfiler().message(this, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
+                    "Top-k sort: retained " + orderedResult.getItemCount() + " of " + orderedResult.getAddedCount() + " items");
+        }
         Sequence result = orderedResult;
 
         if (getReturnExpression() instanceof FLWORClause) {
@@ -109,6 +133,9 @@ public class OrderByClause extends AbstractFLWORClause {
             {dumper.display(", ");}
             dumper.display(orderSpecs[i]);
         }
+        if (limit > 0) {
+            dumper.display(" (: top ").display(limit).display(" :)");
+        }
         dumper.nl();
     }
 
@@ -48,6 +48,49 @@ public class QueryRewriter {
         return null;
     }
 
+    /**
+     * Rewrite the sort expression of an order by clause to read its sort keys from an index,
+     * instead of atomizing and comparing the value of every tuple. The returned expression is
+     * evaluated in place of the sort expression and must return keys which sort in the same
+     * order as the values returned by the original sort expression.
+     *
+     * @param orderBy the order by clause
+     * @param orderSpec the order spec to rewrite, which belongs to the order by clause
+     * @return an expression to replace the sort expression or null if not applicable
+     * @throws XPathException in case of a static error
+     */
+    public Expression rewriteOrderSpec(OrderByClause orderBy, OrderSpec orderSpec) throws XPathException {
+        return null;
+    }
+
+    /**
+     * Tell the index that only the first tuples in the order of an order by clause are consumed.
+     * If the tuples are ordered by a value which is computed by the index, such as a score,
+     * the index may then only return the matches which can end up in those first tuples.
+     *
+     * @param orderBy the order by clause
+     * @param limit the number of leading tuples which are consumed
+     * @return true if the index has restricted an expression to the first tuples
+     * @throws XPathException in case of a static error
+     */
+    public boolean limitOrderBy(OrderByClause orderBy, int limit) throws XPathException {
+        return false;
+    }
+
+    /**
+     * Rewrite a call to one of the aggregate functions fn:count, fn:sum, fn:avg, fn:min or fn:max
+     * to compute the aggregate from an index, instead of evaluating and atomizing the nodes it is applied to.
+     * The method is called before the argument of the function is optimized, so the argument is passed
+     * as written in the query.
+     *
+     * @param function the function call
+     * @return an expression to replace the function call or null if not applicable
+     * @throws XPathException in case of a static error
+     */
+    public Expression rewriteAggregate(Function function) throws XPathException {
+        return null;
+    }
+
     protected XQueryContext getContext() {
         return context;
     }
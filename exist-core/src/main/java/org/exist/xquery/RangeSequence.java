@@ -27,6 +27,7 @@ import org.exist.dom.persistent.NodeSet;
 import org.exist.xquery.value.AbstractSequence;
 import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.Item;
+import org.exist.xquery.value.LongSequence;
 import org.exist.xquery.value.MemoryNodeSet;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceIterator;
@@ -34,7 +35,13 @@ import org.exist.xquery.value.Type;
 
 import java.math.BigInteger;
 
-public class RangeSequence extends AbstractSequence {
+/**
+ * The lazily evaluated sequence of integers of a range expression, like "1 to 10".
+ *
+ * The items are only created as the sequence is iterated, and
+ * the sum, smallest and largest value are computed directly.
+ */
+public class RangeSequence extends AbstractSequence implements LongSequence {
 
     private final static Logger LOG = LogManager.getLogger(AbstractSequence.class);
 
@@ -194,6 +201,33 @@ public class RangeSequence extends AbstractSequence {
         return null;
     }
 
+    @Override
+    public long getLong(final int pos) {
+        return start.getLong() + pos;
+    }
+
+    @Override
+    public BigInteger sum() {
+        if (isEmpty()) {
+            return BigInteger.ZERO;
+        }
+        // (start + end) * count / 2, which is always a whole number
+        final BigInteger first = BigInteger.valueOf(start.getLong());
+        final BigInteger last = BigInteger.valueOf(end.getLong());
+        final BigInteger count = last.subtract(first).add(BigInteger.ONE);
+        return first.add(last).multiply(count).shiftRight(1);
+    }
+
+    @Override
+    public long min() {
+        return start.getLong();
+    }
+
+    @Override
+    public long max() {
+        return end.getLong();
+    }
+
     @Override
     public NodeSet toNodeSet() throws XPathException {
         throw new XPathException("Type error: the sequence cannot be converted into" +
@@ -23,6 +23,7 @@ package org.exist.xquery;
 
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.Item;
+import org.exist.xquery.value.OrderedValueSequence;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.Type;
 import org.exist.xquery.value.ValueSequence;
@@ -35,10 +36,31 @@ import org.exist.xquery.value.ValueSequence;
  */
 public class SequenceConstructor extends PathExpr {
 
+    /**
+     * The number of leading items of the result which are actually consumed,
+     * if known. Set by the {@link Optimizer}.
+     */
+    private int resultLimit = OrderedValueSequence.NO_LIMIT;
+
     public SequenceConstructor(final XQueryContext context) {
         super(context);
     }
 
+    /**
+     * Stop evaluating the operands once the result has the given number
+     * of items, because the consumer of the sequence does not use the
+     * remaining items.
+     *
+     * @param resultLimit the number of items to produce
+     */
+    public void setResultLimit(final int resultLimit) {
+        this.resultLimit = resultLimit;
+    }
+
+    public int getResultLimit() {
+        return resultLimit;
+    }
+
     @Override
     public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
         contextInfo.setParent(this);
@@ -86,6 +108,9 @@ public class SequenceConstructor extends PathExpr {
             } finally {
                 context.popDocumentContext();
             }
+            if (resultLimit > 0 && !unordered && result.getItemCount() >= resultLimit) {
+                break;
+            }
         }
         if (context.getProfiler().isEnabled()) {
             context.getProfiler().end(this, "", result);
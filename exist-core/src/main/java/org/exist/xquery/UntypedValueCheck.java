@@ -56,6 +56,10 @@ public class UntypedValueCheck extends AbstractExpression {
         }
         this.error = error;
 	}
+
+	public Expression getExpression() {
+		return expression;
+	}
 	
     /* (non-Javadoc)
      * @see org.exist.xquery.Expression#analyze(org.exist.xquery.AnalyzeContextInfo)
@@ -0,0 +1,233 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.Type;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * The start or end condition of a "window" clause, i.e.
+ * {@code start $s at $s-pos previous $s-prev next $s-next when ...}.
+ *
+ * Used by {@link WindowExpr}.
+ */
+public class WindowCondition {
+
+    private static final SequenceType CURRENT_ITEM_TYPE = new SequenceType(Type.ITEM, Cardinality.EXACTLY_ONE);
+    private static final SequenceType ADJACENT_ITEM_TYPE = new SequenceType(Type.ITEM, Cardinality.ZERO_OR_ONE);
+    private static final SequenceType POSITIONAL_VAR_TYPE = new SequenceType(Type.INTEGER, Cardinality.EXACTLY_ONE);
+
+    private final XQueryContext context;
+    private final Expression whenExpr;
+    private final boolean only;
+    @Nullable private final String currentItem;
+    @Nullable private final String positionalVariable;
+    @Nullable private final String previousItem;
+    @Nullable private final String nextItem;
+
+    public WindowCondition(final XQueryContext context, final Expression whenExpr, final boolean only,
+            @Nullable final String currentItem, @Nullable final String positionalVariable,
+            @Nullable final String previousItem, @Nullable final String nextItem) {
+        this.context = context;
+        this.whenExpr = whenExpr;
+        this.only = only;
+        this.currentItem = currentItem;
+        this.positionalVariable = positionalVariable;
+        this.previousItem = previousItem;
+        this.nextItem = nextItem;
+    }
+
+    public Expression getWhenExpression() {
+        return whenExpr;
+    }
+
+    /**
+     * Returns true if this is an "only end" condition, i.e. a window
+     * whose end condition is never satisfied is discarded.
+     *
+     * @return true if windows which are not explicitly ended are discarded
+     */
+    public boolean isOnly() {
+        return only;
+    }
+
+    /**
+     * Add the names of the variables bound by this condition to the list.
+     *
+     * @param names the list to add the names to
+     */
+    void collectVariableNames(final List<String> names) {
+        if (currentItem != null) {
+            names.add(currentItem);
+        }
+        if (positionalVariable != null) {
+            names.add(positionalVariable);
+        }
+        if (previousItem != null) {
+            names.add(previousItem);
+        }
+        if (nextItem != null) {
+            names.add(nextItem);
+        }
+    }
+
+    /**
+     * Declare the variables bound by this condition in the current
+     * local variable scope.
+     *
+     * @param staticType the static type of the items of the input sequence
+     *
+     * @return the declared variables
+     *
+     * @throws XPathException if a variable name cannot be resolved
+     */
+    Variables declareVariables(final int staticType) throws XPathException {
+        final Variables variables = new Variables();
+        variables.current = declare(currentItem, CURRENT_ITEM_TYPE, staticType);
+        variables.position = declare(positionalVariable, POSITIONAL_VAR_TYPE, Type.INTEGER);
+        variables.previous = declare(previousItem, ADJACENT_ITEM_TYPE, staticType);
+        variables.next = declare(nextItem, ADJACENT_ITEM_TYPE, staticType);
+        return variables;
+    }
+
+    @Nullable
+    private LocalVariable declare(@Nullable final String name, final SequenceType type, final int staticType)
+            throws XPathException {
+        if (name == null) {
+            return null;
+        }
+        final LocalVariable var;
+        try {
+            var = new LocalVariable(QName.parse(context, name, null));
+        } catch (final QName.IllegalQNameException e) {
+            throw new XPathException(ErrorCodes.XPST0081, "No namespace defined for prefix " + name);
+        }
+        var.setSequenceType(type);
+        var.setStaticType(staticType);
+        context.declareVariableBinding(var);
+        return var;
+    }
+
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        whenExpr.analyze(contextInfo);
+    }
+
+    /**
+     * Bind the variables of this condition to the given item and
+     * evaluate the "when" expression.
+     *
+     * @param variables the variables declared by {@link #declareVariables(int)}
+     * @param binding the item to test
+     *
+     * @return the effective boolean value of the "when" expression
+     *
+     * @throws XPathException if the "when" expression cannot be evaluated
+     */
+    boolean matches(final Variables variables, final Binding binding) throws XPathException {
+        variables.bind(binding);
+        return whenExpr.eval(null, null).effectiveBooleanValue();
+    }
+
+    public void resetState(final boolean postOptimization) {
+        whenExpr.resetState(postOptimization);
+    }
+
+    public void dump(final ExpressionDumper dumper) {
+        dumper.display(toVariablesString());
+        dumper.display(" when ");
+        whenExpr.dump(dumper);
+    }
+
+    @Override
+    public String toString() {
+        return toVariablesString() + " when " + whenExpr.toString();
+    }
+
+    private String toVariablesString() {
+        final StringBuilder result = new StringBuilder();
+        if (currentItem != null) {
+            result.append(" $").append(currentItem);
+        }
+        if (positionalVariable != null) {
+            result.append(" at $").append(positionalVariable);
+        }
+        if (previousItem != null) {
+            result.append(" previous $").append(previousItem);
+        }
+        if (nextItem != null) {
+            result.append(" next $").append(nextItem);
+        }
+        return result.toString();
+    }
+
+    /**
+     * An item of the input sequence together with its position
+     * and its neighbours, as seen by a start or end condition.
+     */
+    static final class Binding {
+        final Item item;
+        final int position;
+        @Nullable final Item previous;
+        @Nullable final Item next;
+
+        Binding(final Item item, final int position, @Nullable final Item previous, @Nullable final Item next) {
+            this.item = item;
+            this.position = position;
+            this.previous = previous;
+            this.next = next;
+        }
+    }
+
+    /**
+     * The variables declared by a condition for a single
+     * evaluation of the window clause.
+     */
+    static final class Variables {
+        @Nullable private LocalVariable current;
+        @Nullable private LocalVariable position;
+        @Nullable private LocalVariable previous;
+        @Nullable private LocalVariable next;
+
+        void bind(final Binding binding) throws XPathException {
+            if (current != null) {
+                current.setValue(binding.item.toSequence());
+            }
+            if (position != null) {
+                position.setValue(new IntegerValue(binding.position));
+            }
+            if (previous != null) {
+                previous.setValue(binding.previous == null ? Sequence.EMPTY_SEQUENCE : binding.previous.toSequence());
+            }
+            if (next != null) {
+                next.setValue(binding.next == null ? Sequence.EMPTY_SEQUENCE : binding.next.toSequence());
+            }
+        }
+    }
+}
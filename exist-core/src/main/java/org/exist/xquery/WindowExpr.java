@@ -0,0 +1,455 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.ValueSequence;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Represents an XQuery 3.0 "window" clause, i.e. a "for tumbling window"
+ * or a "for sliding window" expression.
+ *
+ * Windows are formed incrementally whilst iterating over the input sequence.
+ * Only the items of the windows which are currently open are kept, and a window
+ * is passed on to the return expression as soon as it, and every window which
+ * started before it, has been closed.
+ */
+public class WindowExpr extends BindingExpression {
+
+    public enum WindowType {
+        TUMBLING, SLIDING
+    }
+
+    private final WindowType windowType;
+    private final WindowCondition startCondition;
+    @Nullable private final WindowCondition endCondition;
+    private boolean isOuterFor = true;
+
+    public WindowExpr(final XQueryContext context, final WindowType windowType,
+            final WindowCondition startCondition, @Nullable final WindowCondition endCondition) {
+        super(context);
+        this.windowType = windowType;
+        this.startCondition = startCondition;
+        this.endCondition = endCondition;
+    }
+
+    @Override
+    public ClauseType getType() {
+        return ClauseType.WINDOW;
+    }
+
+    public WindowType getWindowType() {
+        return windowType;
+    }
+
+    public WindowCondition getStartCondition() {
+        return startCondition;
+    }
+
+    @Nullable
+    public WindowCondition getEndCondition() {
+        return endCondition;
+    }
+
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        super.analyze(contextInfo);
+        checkVariableNames();
+        // Save the local variable stack
+        final LocalVariable mark = context.markLocalVariables(false);
+        try {
+            contextInfo.setParent(this);
+            final AnalyzeContextInfo varContextInfo = new AnalyzeContextInfo(contextInfo);
+            inputSequence.analyze(varContextInfo);
+            final int staticType = varContextInfo.getStaticReturnType();
+
+            // the start variables are in scope in both conditions, the end variables only in the end condition
+            startCondition.declareVariables(staticType);
+            startCondition.analyze(new AnalyzeContextInfo(contextInfo));
+            if (endCondition != null) {
+                endCondition.declareVariables(staticType);
+                endCondition.analyze(new AnalyzeContextInfo(contextInfo));
+            }
+
+            // Declare the window variable
+            final LocalVariable windowVar = new LocalVariable(QName.parse(context, varName, null));
+            windowVar.setSequenceType(sequenceType);
+            windowVar.setStaticType(staticType);
+            context.declareVariableBinding(windowVar);
+
+            final AnalyzeContextInfo newContextInfo = new AnalyzeContextInfo(contextInfo);
+            newContextInfo.addFlag(SINGLE_STEP_EXECUTION);
+            returnExpr.analyze(newContextInfo);
+        } catch (final QName.IllegalQNameException e) {
+            throw new XPathException(ErrorCodes.XPST0081, "No namespace defined for prefix " + varName);
+        } finally {
+            // restore the local variable stack
+            context.popLocalVariables(mark);
+        }
+    }
+
+    private void checkVariableNames() throws XPathException {
+        final List<String> names = new ArrayList<>();
+        names.add(varName);
+        startCondition.collectVariableNames(names);
+        if (endCondition != null) {
+            endCondition.collectVariableNames(names);
+        }
+        final Set<String> distinct = new HashSet<>();
+        for (final String name : names) {
+            if (!distinct.add(name)) {
+                throw new XPathException(this, ErrorCodes.XQST0103,
+                        "Variable $" + name + " is bound more than once by the window clause");
+            }
+        }
+    }
+
+    @Override
+    public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+        if (context.getProfiler().isEnabled()) {
+            context.getProfiler().start(this);
+            context.getProfiler().message(this, Profiler.DEPENDENCIES,
+                "DEPENDENCIES", Dependency.getDependenciesName(this.getDependencies()));
+            if (contextSequence != null)
+                {context.getProfiler().message(this, Profiler.START_SEQUENCES,
+                "CONTEXT SEQUENCE", contextSequence);}
+            if (contextItem != null)
+                {context.getProfiler().message(this, Profiler.START_SEQUENCES,
+                "CONTEXT ITEM", contextItem.toSequence());}
+        }
+        context.expressionStart(this);
+        final Sequence in;
+        // Save the local variable stack
+        final LocalVariable mark = context.markLocalVariables(false);
+        Sequence resultSequence = new ValueSequence(unordered);
+        try {
+            // Evaluate the "in" expression
+            in = inputSequence.eval(contextSequence, null);
+            clearContext(getExpressionId(), in);
+            registerUpdateListener(in);
+            // Declare the window variable, followed by the variables of the conditions
+            final LocalVariable var = createVariable(varName);
+            var.setSequenceType(sequenceType);
+            context.declareVariableBinding(var);
+            final WindowCondition.Variables startVars = startCondition.declareVariables(in.getItemType());
+            final WindowCondition.Variables endVars = endCondition == null ? null : endCondition.declareVariables(in.getItemType());
+
+            if (isOuterFor) {
+                preEvalFollowingClauses();
+            }
+
+            final Windows windows = new Windows(var, startVars, endVars, resultSequence);
+            final SequenceIterator i = in.iterate();
+            Item previous = null;
+            Item current = i.hasNext() ? i.nextItem() : null;
+            for (int position = 1; current != null; position++) {
+                // look ahead by one item, for the "next" variables
+                final Item next = i.hasNext() ? i.nextItem() : null;
+                windows.process(new WindowCondition.Binding(current, position, previous, next));
+                previous = current;
+                current = next;
+            }
+            windows.finish();
+        } finally {
+            // restore the local variable stack
+            context.popLocalVariables(mark, resultSequence);
+        }
+
+        clearContext(getExpressionId(), in);
+        setActualReturnType(resultSequence.getItemType());
+
+        if (callPostEval()) {
+            resultSequence = postEval(resultSequence);
+        }
+
+        context.expressionEnd(this);
+        if (context.getProfiler().isEnabled())
+            {context.getProfiler().end(this, "", resultSequence);}
+        return resultSequence;
+    }
+
+    /**
+     * The clauses following a window clause operate on windows rather
+     * than on the items of the input sequence, so the input sequence must not be
+     * filtered in advance. The clauses are still notified, so that they can
+     * set up their state.
+     */
+    private void preEvalFollowingClauses() throws XPathException {
+        if (returnExpr instanceof FLWORClause) {
+            ((FLWORClause) returnExpr).preEval(null);
+        }
+    }
+
+    private boolean callPostEval() {
+        FLWORClause prev = getPreviousClause();
+        while (prev != null) {
+            switch (prev.getType()) {
+                case LET:
+                case FOR:
+                case WINDOW:
+                    return false;
+                case ORDERBY:
+                case GROUPBY:
+                    return true;
+            }
+            prev = prev.getPreviousClause();
+        }
+        return true;
+    }
+
+    @Override
+    public Sequence preEval(final Sequence seq) throws XPathException {
+        // if preEval gets called, we know we're inside another FOR
+        isOuterFor = false;
+        preEvalFollowingClauses();
+        return seq;
+    }
+
+    /**
+     * Tracks the open windows during a single evaluation of the clause.
+     */
+    private class Windows {
+        private final LocalVariable var;
+        private final WindowCondition.Variables startVars;
+        @Nullable private final WindowCondition.Variables endVars;
+        private final Sequence resultSequence;
+
+        /**
+         * The open windows, in the order of their start items, followed by the
+         * windows which have been closed, but started after an open window.
+         */
+        private final Deque<Window> windows = new ArrayDeque<>();
+
+        /**
+         * The items from the start of the first window in {@link #windows} up to the current item.
+         */
+        private final List<Item> items = new ArrayList<>();
+        private int firstPosition = 1;
+        @Nullable private WindowCondition.Binding last = null;
+
+        Windows(final LocalVariable var, final WindowCondition.Variables startVars,
+                @Nullable final WindowCondition.Variables endVars, final Sequence resultSequence) {
+            this.var = var;
+            this.startVars = startVars;
+            this.endVars = endVars;
+            this.resultSequence = resultSequence;
+        }
+
+        void process(final WindowCondition.Binding binding) throws XPathException {
+            context.proceed(WindowExpr.this);
+            last = binding;
+
+            if (startsWindow(binding)) {
+                if (windowType == WindowType.TUMBLING && !windows.isEmpty()) {
+                    // without an end condition, a tumbling window ends just before the next window starts
+                    windows.peekFirst().close(null, binding.position - 1);
+                    emitClosed();
+                }
+                if (windows.isEmpty()) {
+                    firstPosition = binding.position;
+                }
+                windows.addLast(new Window(binding));
+            }
+
+            if (windows.isEmpty()) {
+                return;
+            }
+            items.add(binding.item);
+
+            if (endCondition != null) {
+                for (final Window window : windows) {
+                    if (!window.isClosed()) {
+                        startVars.bind(window.start);
+                        if (endCondition.matches(endVars, binding)) {
+                            window.close(binding, binding.position);
+                        }
+                    }
+                }
+                emitClosed();
+            }
+        }
+
+        private boolean startsWindow(final WindowCondition.Binding binding) throws XPathException {
+            if (windowType == WindowType.TUMBLING && endCondition != null && !windows.isEmpty()) {
+                // tumbling windows do not overlap
+                return false;
+            }
+            return startCondition.matches(startVars, binding);
+        }
+
+        /**
+         * Called once all items of the input sequence have been processed.
+         *
+         * @throws XPathException if the return expression cannot be evaluated
+         */
+        void finish() throws XPathException {
+            for (final Window window : windows) {
+                if (!window.isClosed()) {
+                    if (endCondition != null && endCondition.isOnly()) {
+                        window.discarded = true;
+                    } else {
+                        window.close(last, last.position);
+                    }
+                }
+            }
+            while (!windows.isEmpty()) {
+                final Window window = windows.removeFirst();
+                if (!window.discarded) {
+                    emit(window);
+                }
+            }
+            items.clear();
+        }
+
+        private void emitClosed() throws XPathException {
+            while (!windows.isEmpty() && windows.peekFirst().isClosed()) {
+                emit(windows.removeFirst());
+            }
+
+            // drop the items which are no longer part of any window
+            if (windows.isEmpty()) {
+                items.clear();
+            } else {
+                final int start = windows.peekFirst().start.position;
+                if (start > firstPosition) {
+                    items.subList(0, start - firstPosition).clear();
+                    firstPosition = start;
+                }
+            }
+        }
+
+        private void emit(final Window window) throws XPathException {
+            final ValueSequence windowSequence = new ValueSequence(window.endPosition - window.start.position + 1);
+            for (int position = window.start.position; position <= window.endPosition; position++) {
+                windowSequence.add(items.get(position - firstPosition));
+            }
+
+            var.setValue(windowSequence);
+            var.checkType();
+            startVars.bind(window.start);
+            if (endVars != null) {
+                endVars.bind(window.end);
+            }
+
+            resultSequence.addAll(returnExpr.eval(null));
+
+            // free resources
+            var.destroy(context, resultSequence);
+        }
+    }
+
+    private static final class Window {
+        private final WindowCondition.Binding start;
+        @Nullable private WindowCondition.Binding end = null;
+        private int endPosition = -1;
+        private boolean discarded = false;
+
+        Window(final WindowCondition.Binding start) {
+            this.start = start;
+        }
+
+        void close(@Nullable final WindowCondition.Binding end, final int endPosition) {
+            this.end = end;
+            this.endPosition = endPosition;
+        }
+
+        boolean isClosed() {
+            return endPosition >= 0;
+        }
+    }
+
+    @Override
+    public void dump(final ExpressionDumper dumper) {
+        dumper.display("for ", line);
+        dumper.startIndent();
+        dumper.display(windowType == WindowType.TUMBLING ? "tumbling" : "sliding").display(" window ");
+        dumper.display("$").display(varName);
+        if (sequenceType != null) {
+            dumper.display(" as ").display(sequenceType);
+        }
+        dumper.display(" in ");
+        inputSequence.dump(dumper);
+        dumper.nl().display("start");
+        startCondition.dump(dumper);
+        if (endCondition != null) {
+            dumper.nl().display(endCondition.isOnly() ? "only end" : "end");
+            endCondition.dump(dumper);
+        }
+        dumper.endIndent().nl();
+        if (returnExpr instanceof LetExpr)
+            {dumper.display(" ", returnExpr.getLine());}
+        else
+            {dumper.display("return", returnExpr.getLine());}
+        dumper.startIndent();
+        returnExpr.dump(dumper);
+        dumper.endIndent().nl();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder result = new StringBuilder();
+        result.append("for ");
+        result.append(windowType == WindowType.TUMBLING ? "tumbling" : "sliding").append(" window ");
+        result.append("$").append(varName);
+        if (sequenceType != null)
+            {result.append(" as ").append(sequenceType);}
+        result.append(" in ");
+        result.append(inputSequence.toString());
+        result.append(" start").append(startCondition.toString());
+        if (endCondition != null) {
+            result.append(endCondition.isOnly() ? " only end" : " end").append(endCondition.toString());
+        }
+        result.append(" ");
+        if (returnExpr instanceof LetExpr)
+            {result.append(" ");}
+        else
+            {result.append("return ");}
+        result.append(returnExpr.toString());
+        return result.toString();
+    }
+
+    @Override
+    public void resetState(final boolean postOptimization) {
+        super.resetState(postOptimization);
+        startCondition.resetState(postOptimization);
+        if (endCondition != null) {
+            endCondition.resetState(postOptimization);
+        }
+    }
+
+    @Override
+    public void accept(final ExpressionVisitor visitor) {
+        visitor.visitWindowExpression(this);
+    }
+}
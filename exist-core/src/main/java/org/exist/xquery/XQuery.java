@@ -45,6 +45,7 @@ import org.exist.source.FileSource;
 import org.exist.source.Source;
 import org.exist.source.StringSource;
 import org.exist.storage.DBBroker;
+import org.exist.storage.XQueryResultCache;
 import org.exist.xquery.parser.XQueryLexer;
 import org.exist.xquery.parser.XQueryParser;
 import org.exist.xquery.parser.XQueryTreeParser;
@@ -409,6 +410,10 @@ public class XQuery {
             FunctionCall call = null;
             try {
 
+                // the result of a query may only be cached if it does not depend on a context sequence
+                final XQueryResultCache resultCache = broker.getBrokerPool().getXQueryResultCache();
+                final XQueryResultCache.Key resultKey = functionCall == null && contextSequence == null ? resultCache.createKey(context, callingUser) : null;
+
                 // support for XQuery 3.0 - declare context item :=
                 if(contextSequence == null) {
                     if(context.getContextItemDeclartion() != null) {
@@ -437,6 +442,21 @@ public class XQuery {
 
                     result = call.eval(contextSequence);
 
+                } else if (resultKey != null) {
+                    final Sequence cachedResult = resultCache.get(resultKey);
+                    if (cachedResult != null) {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Using cached result of query: {}", context.getSource().pathOrShortIdentifier());
+                        }
+                        result = cachedResult;
+                    } else {
+                        // record the collections the query reads, on which its cached result depends
+                        try (final XQueryResultCache.Recording recording = resultCache.startRecording()) {
+                            result = expression.eval(contextSequence);
+                            resultCache.put(resultKey, recording, result);
+                        }
+                    }
+
                 } else {
                     result = expression.eval(contextSequence);
                 }
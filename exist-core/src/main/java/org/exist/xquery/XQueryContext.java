@@ -117,6 +117,7 @@ public class XQueryContext implements BinaryValueManager, Context {
     public static final String XQUERY_BACKWARD_COMPATIBLE_ATTRIBUTE = "backwardCompatible";
     public static final String XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_ATTRIBUTE = "raise-error-on-failed-retrieval";
     public static final String ENFORCE_INDEX_USE_ATTRIBUTE = "enforce-index-use";
+    public static final String DEGREE_OF_PARALLELISM_ATTRIBUTE = "degree-of-parallelism";
 
     //TODO : move elsewhere ?
     public static final String BUILT_IN_MODULE_URI_ATTRIBUTE = "uri";
@@ -128,6 +129,8 @@ public class XQueryContext implements BinaryValueManager, Context {
     public static final String PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL = "xquery.raise-error-on-failed-retrieval";
     public static final boolean XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT = false;
     public static final String PROPERTY_ENFORCE_INDEX_USE = "xquery.enforce-index-use";
+    public static final String PROPERTY_DEGREE_OF_PARALLELISM = "xquery.degree-of-parallelism";
+    public static final int DEGREE_OF_PARALLELISM_DEFAULT = 1;
 
     //TODO : move elsewhere ?
     public static final String PROPERTY_BUILT_IN_MODULES = "xquery.modules";
@@ -378,8 +381,18 @@ public class XQueryContext implements BinaryValueManager, Context {
 
     private boolean enableOptimizer = true;
 
+    /**
+     * Whether the results of the query may be kept by the {@link org.exist.storage.XQueryResultCache}.
+     */
+    private boolean enableResultCache = false;
+
     private boolean raiseErrorOnFailedRetrieval = XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT;
 
+    /**
+     * The maximum number of threads which may evaluate a path step, see {@link MorselEvaluator}.
+     */
+    private int degreeOfParallelism = DEGREE_OF_PARALLELISM_DEFAULT;
+
     private boolean isShared = false;
 
     private Source source = null;
@@ -598,6 +611,8 @@ public class XQueryContext implements BinaryValueManager, Context {
         ctx.defaultCollator = this.defaultCollator;
         ctx.backwardsCompatible = this.backwardsCompatible;
         ctx.enableOptimizer = this.enableOptimizer;
+        ctx.enableResultCache = this.enableResultCache;
+        ctx.degreeOfParallelism = this.degreeOfParallelism;
         ctx.stripWhitespace = this.stripWhitespace;
         ctx.preserveNamespaces = this.preserveNamespaces;
         ctx.inheritNamespaces = this.inheritNamespaces;
@@ -2848,6 +2863,36 @@ public class XQueryContext implements BinaryValueManager, Context {
         return enableOptimizer;
     }
 
+    /**
+     * Returns the maximum number of threads which may evaluate a path step
+     * across the documents of its context.
+     *
+     * @return the degree of parallelism, 1 if path steps are evaluated by the calling thread only
+     */
+    public int getDegreeOfParallelism() {
+        return degreeOfParallelism;
+    }
+
+    /**
+     * Sets the maximum number of threads which may evaluate a path step
+     * across the documents of its context.
+     *
+     * @param degreeOfParallelism the degree of parallelism, 1 to evaluate path steps by the calling thread only
+     */
+    public void setDegreeOfParallelism(final int degreeOfParallelism) {
+        this.degreeOfParallelism = degreeOfParallelism;
+    }
+
+    /**
+     * Returns true if the query has declared, by the option {@link Option#RESULT_CACHE_QNAME},
+     * that its results may be cached.
+     *
+     * @return true if the results of the query may be cached
+     */
+    public boolean resultCacheEnabled() {
+        return enableResultCache;
+    }
+
     @Override
     public void addOption(final String name, final String value) throws XPathException {
         if (staticOptions == null) {
@@ -2904,6 +2949,15 @@ public class XQueryContext implements BinaryValueManager, Context {
                     enableOptimizer = "yes".equals(param[1]);
                 }
             }
+
+        } else if (Option.RESULT_CACHE_QNAME.compareTo(qn) == 0) {
+            final String[] params = option.tokenizeContents();
+            if (params.length > 0) {
+                final String[] param = Option.parseKeyValuePair(params[0]);
+                if (param != null && "enable".equals(param[0])) {
+                    enableResultCache = "yes".equals(param[1]);
+                }
+            }
         }
         //TODO : not sure how these 2 options might/have to be related
         else if (Option.OPTIMIZE_IMPLICIT_TIMEZONE.compareTo(qn) == 0) {
@@ -2972,6 +3026,10 @@ public class XQueryContext implements BinaryValueManager, Context {
             if (NoIndexPragma.NO_INDEX_PRAGMA.equals(qname)) {
                 return new NoIndexPragma(qname, contents);
             }
+
+            if (ParallelPragma.PARALLEL_PRAGMA.equals(qname)) {
+                return new ParallelPragma(qname, contents);
+            }
         }
 
         return null;
@@ -3038,6 +3096,10 @@ public class XQueryContext implements BinaryValueManager, Context {
         final Boolean option = ((Boolean) config.getProperty(PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL));
         raiseErrorOnFailedRetrieval = (option != null) && option;
 
+        // Switch: degree of parallelism
+        final Integer degree = (Integer) config.getProperty(PROPERTY_DEGREE_OF_PARALLELISM);
+        degreeOfParallelism = degree != null ? degree : DEGREE_OF_PARALLELISM_DEFAULT;
+
         // Get map of built-in modules
         final Map<String, Class<Module>> builtInModules = (Map) config.getProperty(PROPERTY_BUILT_IN_MODULES);
 
@@ -35,11 +35,13 @@ import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.AtomicValue;
 import org.exist.xquery.value.ComputableValue;
+import org.exist.xquery.value.DoubleSequence;
 import org.exist.xquery.value.DoubleValue;
 import org.exist.xquery.value.FunctionReturnSequenceType;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.Item;
+import org.exist.xquery.value.LongSequence;
 import org.exist.xquery.value.NumericValue;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceIterator;
@@ -89,6 +91,11 @@ public class FunAvg extends Function {
         final Sequence inner = getArgument(0).eval(contextSequence, contextItem);
         if (inner.isEmpty()) {
             result = Sequence.EMPTY_SEQUENCE;
+        } else if (inner instanceof LongSequence) {
+            // add up the primitive values, without creating an item for each of them
+            result = new IntegerValue(((LongSequence) inner).sum()).div(new IntegerValue(inner.getItemCount()));
+        } else if (inner instanceof DoubleSequence) {
+            result = new DoubleValue(((DoubleSequence) inner).sum()).div(new IntegerValue(inner.getItemCount()));
         } else {
             final SequenceIterator iter = inner.iterate();
             Item item = iter.nextItem();
@@ -34,12 +34,15 @@ import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.AtomicValue;
 import org.exist.xquery.value.ComputableValue;
+import org.exist.xquery.value.DoubleSequence;
 import org.exist.xquery.value.DoubleValue;
 import org.exist.xquery.value.DurationValue;
 import org.exist.xquery.value.FloatValue;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.Item;
+import org.exist.xquery.value.LongSequence;
 import org.exist.xquery.value.NumericValue;
 import org.exist.xquery.value.QNameValue;
 import org.exist.xquery.value.Sequence;
@@ -136,7 +139,12 @@ public class FunMin extends CollatingFunction {
 		final Sequence arg = getArgument(0).eval(contextSequence, contextItem);
 		if (arg.isEmpty())
 			{result = Sequence.EMPTY_SEQUENCE;}
-        else {
+        else if (arg instanceof LongSequence) {
+            // compare the primitive values, without creating an item for each of them
+            result = new IntegerValue(((LongSequence) arg).min());
+        } else if (arg instanceof DoubleSequence) {
+            result = new DoubleValue(((DoubleSequence) arg).min());
+        } else {
         	//TODO : test if a range index is defined *iff* it is compatible with the collator
     		final Collator collator = getCollator(contextSequence, contextItem, 2);
     		final SequenceIterator iter = arg.unorderedIterator();
@@ -32,12 +32,14 @@ import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.AtomicValue;
 import org.exist.xquery.value.ComputableValue;
+import org.exist.xquery.value.DoubleSequence;
 import org.exist.xquery.value.DoubleValue;
 import org.exist.xquery.value.DurationValue;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.FunctionReturnSequenceType;
 import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.Item;
+import org.exist.xquery.value.LongSequence;
 import org.exist.xquery.value.NumericValue;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceIterator;
@@ -97,6 +99,11 @@ public class FunSum extends Function {
 			if(getSignature().getArgumentCount() == 2)
 				{zero = getArgument(1).eval(contextSequence, contextItem);}
 			result = zero;
+		} else if (inner instanceof LongSequence) {
+			// add up the primitive values, without creating an item for each of them
+			result = new IntegerValue(((LongSequence) inner).sum());
+		} else if (inner instanceof DoubleSequence) {
+			result = new DoubleValue(((DoubleSequence) inner).sum());
 		} else {
     		final SequenceIterator iter = inner.iterate();
     		Item item = iter.nextItem();
@@ -43,6 +43,7 @@ import org.exist.xquery.value.*;
 
 import javax.annotation.Nullable;
 import java.util.Iterator;
+import java.util.function.BiPredicate;
 import java.util.function.ToLongFunction;
 
 /**
@@ -53,7 +54,12 @@ import java.util.function.ToLongFunction;
  */
 public class MapType extends AbstractMapType {
 
-    private static final ToLongFunction<AtomicValue> KEY_HASH_FN = AtomicValue::hashCode;
+    /**
+     * The hash and equality functions of maps without a collation. They are shared by all such maps,
+     * as Bifurcan only merges the hash tries of two maps whose functions are the same.
+     */
+    private static final ToLongFunction<AtomicValue> KEY_HASH_FN = key -> AtomicValueKey.hash(null, key);
+    private static final BiPredicate<AtomicValue, AtomicValue> KEY_EQUALS_FN = (k1, k2) -> keysEqual(null, k1, k2);
 
     // TODO(AR) future potential optimisation... could the class member `map` remain `linear` ?
     private IMap<AtomicValue, Sequence> map;
@@ -68,7 +74,10 @@ public class MapType extends AbstractMapType {
     private int keyType = UNKNOWN_KEY_TYPE;
 
     private static IMap<AtomicValue, Sequence> newMap(@Nullable final Collator collator) {
-        return new Map<>(KEY_HASH_FN, (k1, k2) -> keysEqual(collator, k1, k2));
+        if (collator == null) {
+            return new Map<>(KEY_HASH_FN, KEY_EQUALS_FN);
+        }
+        return new Map<>(key -> AtomicValueKey.hash(collator, key), (k1, k2) -> keysEqual(collator, k1, k2));
     }
 
     /**
@@ -83,7 +92,10 @@ public class MapType extends AbstractMapType {
      * @return A mutable-map on which {@link IMap#forked()} can be called to produce an immutable map. 
      */
     public static <V> IMap<AtomicValue, V> newLinearMap(@Nullable final Collator collator) {
-        return new LinearMap<>(KEY_HASH_FN, (k1, k2) -> keysEqual(collator, k1, k2));
+        if (collator == null) {
+            return new LinearMap<>(KEY_HASH_FN, KEY_EQUALS_FN);
+        }
+        return new LinearMap<>(key -> AtomicValueKey.hash(collator, key), (k1, k2) -> keysEqual(collator, k1, k2));
     }
 
     public MapType(final XQueryContext context) {
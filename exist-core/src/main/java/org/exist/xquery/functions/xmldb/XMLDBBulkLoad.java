@@ -0,0 +1,116 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.functions.xmldb;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.dom.QName;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BulkLoader;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.BasicFunction;
+import org.exist.xquery.Cardinality;
+import org.exist.xquery.FunctionSignature;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.FunctionParameterSequenceType;
+import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceType;
+import org.exist.xquery.value.Type;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Implements the xmldb:bulk-load() function, see {@link BulkLoader}.
+ */
+public class XMLDBBulkLoad extends BasicFunction {
+    private static final Logger logger = LogManager.getLogger(XMLDBBulkLoad.class);
+
+    private static final QName FUNCTION_NAME = new QName("bulk-load", XMLDBModule.NAMESPACE_URI, XMLDBModule.PREFIX);
+    private static final String FUNCTION_DESCRIPTION = "Loads a large number of resources from the server's file system " +
+            "into the collection $collection-uri. $source may be a directory, whose sub-directories are stored as " +
+            "sub-collections, or a Zip archive. The XML documents are parsed in parallel, and the resources are " +
+            "committed in batches rather than one at a time. Resources which cannot be parsed or stored are skipped " +
+            "and logged. " + XMLDBModule.NEED_PRIV_USER;
+
+    private static final FunctionParameterSequenceType PARAM_COLLECTION = new FunctionParameterSequenceType("collection-uri", Type.STRING, Cardinality.EXACTLY_ONE, "The collection-uri where the resources should be stored. " + XMLDBModule.COLLECTION_URI);
+    private static final FunctionParameterSequenceType PARAM_SOURCE = new FunctionParameterSequenceType("source", Type.STRING, Cardinality.EXACTLY_ONE, "The directory or Zip archive in the file system from where the resources are read.");
+    private static final FunctionParameterSequenceType PARAM_RESUME = new FunctionParameterSequenceType("resume", Type.BOOLEAN, Cardinality.EXACTLY_ONE, "If true(), resources which already exist in the database are skipped, so that an earlier load which failed or was stopped can be resumed.");
+    private static final FunctionReturnSequenceType RETURN_TYPE = new FunctionReturnSequenceType(Type.INTEGER, Cardinality.EXACTLY_ONE, "the number of resources stored");
+
+    public final static FunctionSignature[] signatures = {
+            new FunctionSignature(
+                    FUNCTION_NAME,
+                    FUNCTION_DESCRIPTION,
+                    new SequenceType[]{PARAM_COLLECTION, PARAM_SOURCE},
+                    RETURN_TYPE
+            ),
+            new FunctionSignature(
+                    FUNCTION_NAME,
+                    FUNCTION_DESCRIPTION,
+                    new SequenceType[]{PARAM_COLLECTION, PARAM_SOURCE, PARAM_RESUME},
+                    RETURN_TYPE
+            )
+    };
+
+    public XMLDBBulkLoad(final XQueryContext context, final FunctionSignature signature) {
+        super(context, signature);
+    }
+
+    @Override
+    public Sequence eval(final Sequence[] args, final Sequence contextSequence) throws XPathException {
+        if (!context.getSubject().hasDbaRole()) {
+            throw new XPathException(this, "Permission denied, user '" + context.getSubject().getName() + "' must be a DBA to bulk load resources");
+        }
+
+        final XmldbURI collectionUri;
+        try {
+            collectionUri = XmldbURI.xmldbUriFor(args[0].getStringValue());
+        } catch (final URISyntaxException e) {
+            throw new XPathException(this, "Invalid collection URI: " + args[0].getStringValue(), e);
+        }
+
+        final Path source = Paths.get(args[1].getStringValue()).normalize();
+        if (!Files.exists(source)) {
+            throw new XPathException(this, "Cannot read path: " + source);
+        }
+
+        final boolean resume = args.length > 2 && args[2].effectiveBooleanValue();
+
+        try {
+            final BulkLoader.Result result = context.getBroker().bulkLoad(collectionUri, source,
+                    Runtime.getRuntime().availableProcessors(), BulkLoader.DEFAULT_BATCH_SIZE, resume);
+            logger.info("Bulk loaded {}", result);
+            return new IntegerValue(result.getStored());
+        } catch (final EXistException | PermissionDeniedException | LockException | IOException e) {
+            throw new XPathException(this, "An error occurred whilst bulk loading resources: " + e.getMessage(), e);
+        }
+    }
+}
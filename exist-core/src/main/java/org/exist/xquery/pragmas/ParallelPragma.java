@@ -0,0 +1,79 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.xquery.*;
+import org.exist.xquery.value.Sequence;
+
+/**
+ * Sets the degree of parallelism with which the path steps of
+ * the enclosed expression are evaluated across documents, e.g.
+ * {@code (# exist:parallel degree=4 #) { collection('/db/data')//item }}.
+ *
+ * If no degree is given, the number of available processors is used.
+ */
+public class ParallelPragma extends Pragma {
+
+    public  final static QName PARALLEL_PRAGMA = new QName("parallel", Namespaces.EXIST_NS, "exist");
+
+    private final int degree;
+    private int previousDegree;
+
+    public ParallelPragma(final QName qname, final String contents) throws XPathException {
+        super(qname, contents);
+        int degree = Runtime.getRuntime().availableProcessors();
+        if (contents != null && contents.length() > 0) {
+            final String[] options = Option.tokenize(contents);
+            for (final String option : options) {
+                final String[] param = Option.parseKeyValuePair(option);
+                if (param == null || !"degree".equals(param[0])) {
+                    throw new XPathException("Invalid content found for pragma " + PARALLEL_PRAGMA.getStringValue() +
+                            ": " + contents);
+                }
+                try {
+                    degree = Integer.parseInt(param[1]);
+                } catch (final NumberFormatException e) {
+                    throw new XPathException("Invalid degree found for pragma " + PARALLEL_PRAGMA.getStringValue() +
+                            ": " + param[1]);
+                }
+                if (degree < 1) {
+                    throw new XPathException("Invalid degree found for pragma " + PARALLEL_PRAGMA.getStringValue() +
+                            ": " + param[1]);
+                }
+            }
+        }
+        this.degree = degree;
+    }
+
+    @Override
+    public void before(final XQueryContext context, final Expression expression, final Sequence contextSequence) throws XPathException {
+        previousDegree = context.getDegreeOfParallelism();
+        context.setDegreeOfParallelism(degree);
+    }
+
+    @Override
+    public void after(final XQueryContext context, final Expression expression) throws XPathException {
+        context.setDegreeOfParallelism(previousDegree);
+    }
+}
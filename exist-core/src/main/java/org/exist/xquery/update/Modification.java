@@ -111,6 +111,8 @@ public abstract class Modification extends AbstractExpression
 
     @Override
     public void accept(ExpressionVisitor visitor) {
+        // report the modification itself, e.g. to a visitor which looks for side effects
+        visitor.visit(this);
         select.accept(visitor);
         if (value != null) {
             value.accept(visitor);
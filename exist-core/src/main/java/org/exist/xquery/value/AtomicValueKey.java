@@ -0,0 +1,155 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+import com.ibm.icu.text.Collator;
+import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.Constants.StringTruncationOperator;
+import org.exist.xquery.ValueComparison;
+import org.exist.xquery.XPathException;
+
+import javax.annotation.Nullable;
+
+/**
+ * Wraps an {@link AtomicValue} so that it can be used as the key of a hash map or set,
+ * where two keys are equal if their values are equal by the {@code eq} operator with
+ * regards to a collation, e.g. for {@code fn:distinct-values} or {@code group by}.
+ *
+ * The hash code of a key is consistent with that equality: numeric values hash on their
+ * value as a float, so that e.g. 1, 1.0 and 1e0 hash alike, and strings, untyped atomic
+ * values and URIs hash on the collation key of their string value, or on the string value
+ * itself when no collation is given.
+ *
+ * Contrary to the {@code eq} operator, NaN is equal to NaN, and values which cannot be
+ * compared are not equal.
+ */
+public final class AtomicValueKey {
+
+    private final AtomicValue value;
+    @Nullable private final Collator collator;
+    private final int hash;
+
+    public AtomicValueKey(@Nullable final Collator collator, final AtomicValue value) {
+        this.value = value;
+        this.collator = collator;
+        this.hash = hash(collator, value);
+    }
+
+    public AtomicValue getValue() {
+        return value;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof AtomicValueKey)) {
+            return false;
+        }
+        final AtomicValueKey other = (AtomicValueKey) obj;
+        return hash == other.hash && equal(collator, value, other.value);
+    }
+
+    @Override
+    public String toString() {
+        return value.toString();
+    }
+
+    /**
+     * Compute a hash code for an atomic value, which is the same
+     * for any two values which are equal by the {@code eq} operator.
+     *
+     * @param collator the collation to compare strings with, or null for the codepoint collation
+     * @param value the value
+     *
+     * @return the hash code
+     */
+    public static int hash(@Nullable final Collator collator, final AtomicValue value) {
+        if (value.isEmpty()) {
+            return 0;
+        }
+
+        final int type = value.getType();
+        try {
+            if (Type.subTypeOfUnion(type, Type.NUMBER)) {
+                // NOTE: a decimal and a float are compared as floats, so a coarser hash is needed than the double value
+                final float f = (float) ((NumericValue) value).getDouble();
+                return f == 0.0f ? 0 : Float.hashCode(f);
+            }
+
+            if (Type.subTypeOf(type, Type.STRING) || type == Type.UNTYPED_ATOMIC || type == Type.ANY_URI) {
+                final String s = value.getStringValue();
+                return collator == null ? s.hashCode() : collator.getCollationKey(s).hashCode();
+            }
+
+            if (type == Type.BOOLEAN) {
+                return Boolean.hashCode(((BooleanValue) value).getValue());
+            }
+
+            if (value instanceof AbstractDateTimeValue) {
+                // the values are compared as instants, with the implicit timezone
+                return Long.hashCode(((AbstractDateTimeValue) value).getTimeInMillis());
+            }
+
+            if (value instanceof QNameValue) {
+                return value.hashCode();
+            }
+        } catch (final XPathException | RuntimeException e) {
+            // fall through to the hash of the type
+        }
+
+        // durations, binary values, etc.: which are rarely used as keys
+        return type;
+    }
+
+    /**
+     * Determine if two atomic values are equal by the {@code eq} operator,
+     * except that NaN is equal to NaN, and that values which cannot be compared
+     * are not equal.
+     *
+     * @param collator the collation to compare strings with, or null for the codepoint collation
+     * @param v1 the first value
+     * @param v2 the second value
+     *
+     * @return true if the values are equal
+     */
+    public static boolean equal(@Nullable final Collator collator, final AtomicValue v1, final AtomicValue v2) {
+        if (v1.isEmpty() || v2.isEmpty()) {
+            return v1.isEmpty() && v2.isEmpty();
+        }
+        if (v1 instanceof NumericValue && v2 instanceof NumericValue
+                && ((NumericValue) v1).isNaN() && ((NumericValue) v2).isNaN()) {
+            return true;
+        }
+        try {
+            return ValueComparison.compareAtomic(collator, v1, v2, StringTruncationOperator.NONE, Comparison.EQ);
+        } catch (final XPathException e) {
+            return false;
+        }
+    }
+}
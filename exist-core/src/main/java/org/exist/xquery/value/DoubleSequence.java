@@ -0,0 +1,86 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+/**
+ * A sequence of xs:double values.
+ *
+ * The values can be read, and aggregated, without creating
+ * a {@link DoubleValue} for each of them.
+ */
+public interface DoubleSequence extends Sequence {
+
+    /**
+     * Get the value at a position in the sequence.
+     *
+     * @param pos the position, starting from 0
+     *
+     * @return the value
+     */
+    double getDouble(int pos);
+
+    /**
+     * Add together all of the values of the sequence, in sequence order.
+     *
+     * @return the sum
+     */
+    default double sum() {
+        final int count = getItemCount();
+        if (count == 0) {
+            return 0;
+        }
+        // start from the first value, so that the sum of -0.0 is -0.0
+        double sum = getDouble(0);
+        for (int i = 1; i < count; i++) {
+            sum += getDouble(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Get the smallest value of the sequence, which must not be empty.
+     *
+     * @return the smallest value, or NaN if any of the values is NaN
+     */
+    default double min() {
+        final int count = getItemCount();
+        double min = getDouble(0);
+        for (int i = 1; i < count; i++) {
+            min = Math.min(min, getDouble(i));
+        }
+        return min;
+    }
+
+    /**
+     * Get the largest value of the sequence, which must not be empty.
+     *
+     * @return the largest value, or NaN if any of the values is NaN
+     */
+    default double max() {
+        final int count = getItemCount();
+        double max = getDouble(0);
+        for (int i = 1; i < count; i++) {
+            max = Math.max(max, getDouble(i));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+import org.exist.dom.persistent.NodeSet;
+import org.exist.xquery.XPathException;
+
+/**
+ * An immutable sequence of xs:integer values, which are stored in a long[].
+ *
+ * An {@link IntegerValue} is only created when an item of the sequence is requested.
+ */
+public class LongArraySequence extends AbstractSequence implements LongSequence {
+
+    private final long[] values;
+    private final int size;
+
+    /**
+     * @param values the values, which must not be modified afterwards
+     * @param size the number of values to use from the start of the array
+     */
+    public LongArraySequence(final long[] values, final int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    @Override
+    public long getLong(final int pos) {
+        return values[pos];
+    }
+
+    @Override
+    public void add(final Item item) throws XPathException {
+        throw new XPathException("Internal error: adding to an immutable sequence");
+    }
+
+    @Override
+    public void addAll(final Sequence other) throws XPathException {
+        throw new XPathException("Internal error: adding to an immutable sequence");
+    }
+
+    @Override
+    public int getItemType() {
+        return Type.INTEGER;
+    }
+
+    @Override
+    public SequenceIterator iterate() {
+        return new LongArraySequenceIterator();
+    }
+
+    @Override
+    public SequenceIterator unorderedIterator() {
+        return new LongArraySequenceIterator();
+    }
+
+    @Override
+    public long getItemCountLong() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean hasOne() {
+        return size == 1;
+    }
+
+    @Override
+    public boolean hasMany() {
+        return size > 1;
+    }
+
+    @Override
+    public Item itemAt(final int pos) {
+        if (pos >= 0 && pos < size) {
+            return new IntegerValue(values[pos]);
+        }
+        return null;
+    }
+
+    @Override
+    public NodeSet toNodeSet() throws XPathException {
+        throw new XPathException("Type error: the sequence cannot be converted into" +
+                " a node set. Item type is xs:integer");
+    }
+
+    @Override
+    public MemoryNodeSet toMemNodeSet() throws XPathException {
+        throw new XPathException("Type error: the sequence cannot be converted into" +
+                " a memory node set. Item type is xs:integer");
+    }
+
+    @Override
+    public void removeDuplicates() {
+    }
+
+    @Override
+    public boolean containsReference(final Item item) {
+        // the items are created on demand
+        return false;
+    }
+
+    @Override
+    public boolean contains(final Item item) {
+        if (item instanceof IntegerValue && ((IntegerValue) item).value.bitLength() < Long.SIZE) {
+            final long other = ((IntegerValue) item).getLong();
+            for (int i = 0; i < size; i++) {
+                if (values[i] == other) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private class LongArraySequenceIterator implements SequenceIterator {
+        private int current = 0;
+
+        @Override
+        public Item nextItem() {
+            if (current < size) {
+                return new IntegerValue(values[current++]);
+            } else {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return current < size;
+        }
+
+        @Override
+        public long skippable() {
+            return size - current;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final long skip = Math.min(n, size - current);
+            current += skip;
+            return skip;
+        }
+    }
+}
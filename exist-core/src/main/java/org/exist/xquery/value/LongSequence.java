@@ -0,0 +1,99 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+import java.math.BigInteger;
+
+/**
+ * A sequence of xs:integer values, each of which fits into a long.
+ *
+ * The values can be read, and aggregated, without creating
+ * an {@link IntegerValue} for each of them.
+ */
+public interface LongSequence extends Sequence {
+
+    /**
+     * Get the value at a position in the sequence.
+     *
+     * @param pos the position, starting from 0
+     *
+     * @return the value
+     */
+    long getLong(int pos);
+
+    /**
+     * Add together all of the values of the sequence.
+     *
+     * @return the sum, which may not fit into a long
+     */
+    default BigInteger sum() {
+        final int count = getItemCount();
+        long sum = 0;
+        int i = 0;
+        for (; i < count; i++) {
+            final long value = getLong(i);
+            final long next = sum + value;
+            if (((sum ^ next) & (value ^ next)) < 0) {
+                // overflow, continue with a BigInteger
+                break;
+            }
+            sum = next;
+        }
+
+        if (i == count) {
+            return BigInteger.valueOf(sum);
+        }
+        BigInteger bigSum = BigInteger.valueOf(sum);
+        for (; i < count; i++) {
+            bigSum = bigSum.add(BigInteger.valueOf(getLong(i)));
+        }
+        return bigSum;
+    }
+
+    /**
+     * Get the smallest value of the sequence, which must not be empty.
+     *
+     * @return the smallest value
+     */
+    default long min() {
+        final int count = getItemCount();
+        long min = getLong(0);
+        for (int i = 1; i < count; i++) {
+            min = Math.min(min, getLong(i));
+        }
+        return min;
+    }
+
+    /**
+     * Get the largest value of the sequence, which must not be empty.
+     *
+     * @return the largest value
+     */
+    default long max() {
+        final int count = getItemCount();
+        long max = getLong(0);
+        for (int i = 1; i < count; i++) {
+            max = Math.max(max, getLong(i));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+import org.exist.xquery.XPathException;
+
+import java.util.Arrays;
+
+/**
+ * Collects the items of a sequence which is constructed item by item.
+ *
+ * For as long as all of the items are xs:integer values which fit into a long,
+ * or are all xs:double values, the values are stored in a primitive array, and
+ * the result is a {@link LongArraySequence} or {@link DoubleArraySequence}.
+ * Otherwise the items are collected in a {@link ValueSequence}.
+ */
+public class NumericSequenceBuilder {
+
+    private static final int INITIAL_SIZE = 16;
+
+    /**
+     * The type of the values in the primitive array, or {@link Type#EMPTY} if there are none yet.
+     */
+    private int type = Type.EMPTY;
+    private long[] longs = null;
+    private double[] doubles = null;
+    private int size = 0;
+
+    /**
+     * The items, once they cannot be stored in a primitive array.
+     */
+    private ValueSequence items = null;
+
+    public void add(final Item item) throws XPathException {
+        if (items == null) {
+            final int itemType = item.getType();
+            if (itemType == Type.INTEGER && (type == Type.EMPTY || type == Type.INTEGER)
+                    && ((IntegerValue) item).value.bitLength() < Long.SIZE) {
+                if (longs == null) {
+                    longs = new long[INITIAL_SIZE];
+                } else if (size == longs.length) {
+                    longs = Arrays.copyOf(longs, size * 2);
+                }
+                longs[size++] = ((IntegerValue) item).getLong();
+                type = Type.INTEGER;
+                return;
+            } else if (itemType == Type.DOUBLE && (type == Type.EMPTY || type == Type.DOUBLE)) {
+                if (doubles == null) {
+                    doubles = new double[INITIAL_SIZE];
+                } else if (size == doubles.length) {
+                    doubles = Arrays.copyOf(doubles, size * 2);
+                }
+                doubles[size++] = ((DoubleValue) item).getValue();
+                type = Type.DOUBLE;
+                return;
+            }
+            spill();
+        }
+        items.add(item);
+    }
+
+    public void addAll(final Sequence other) throws XPathException {
+        if (other == null) {
+            return;
+        }
+        if (items != null) {
+            items.addAll(other);
+            return;
+        }
+        if (other instanceof Item) {
+            add((Item) other);
+            return;
+        }
+        for (final SequenceIterator i = other.iterate(); i.hasNext(); ) {
+            add(i.nextItem());
+        }
+    }
+
+    /**
+     * Move the values from the primitive array into a {@link ValueSequence}.
+     */
+    private void spill() throws XPathException {
+        items = new ValueSequence(Math.max(INITIAL_SIZE, size * 2));
+        switch (type) {
+            case Type.INTEGER:
+                items.addAll(new LongArraySequence(longs, size));
+                break;
+            case Type.DOUBLE:
+                items.addAll(new DoubleArraySequence(doubles, size));
+                break;
+            default:
+                break;
+        }
+        longs = null;
+        doubles = null;
+    }
+
+    /**
+     * Get the sequence of the items which have been added.
+     *
+     * @return the sequence, which must not be modified
+     */
+    public Sequence toSequence() {
+        if (items != null) {
+            return items;
+        }
+        switch (type) {
+            case Type.INTEGER:
+                return new LongArraySequence(longs, size);
+            case Type.DOUBLE:
+                return new DoubleArraySequence(doubles, size);
+            default:
+                return Sequence.EMPTY_SEQUENCE;
+        }
+    }
+}
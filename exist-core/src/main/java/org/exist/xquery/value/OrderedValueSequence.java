@@ -46,21 +46,64 @@ import java.util.stream.Stream;
  * all order expressions are evaluated once for each item in the sequence
  * <b>while</b> items are added.
  *
+ * If a limit is set, the sequence only retains the first items in the sort
+ * order, i.e. it performs a top-k sort. The retained items are kept in a bounded
+ * heap, so that an item which sorts after all the retained items is discarded
+ * as soon as it is added.
+ *
  * @author wolf
  */
 public class OrderedValueSequence extends AbstractSequence {
 
+    /**
+     * Limit value for a sequence which retains all of its items.
+     */
+    public static final int NO_LIMIT = -1;
+
     private final OrderSpec[] orderSpecs;
+    private final int limit;
     private Entry[] items;
     private int count = 0;
+    private int added = 0;
     private int state = 0;
 
     // used to keep track of the type of added items.
     private int itemType = Type.ANY_TYPE;
 
     public OrderedValueSequence(final OrderSpec orderSpecs[], final int size) {
+        this(orderSpecs, size, NO_LIMIT);
+    }
+
+    /**
+     * @param orderSpecs the order specs of the "order by" clause
+     * @param size the initial capacity
+     * @param limit the number of items to retain, i.e. the first {@code limit}
+     *     items in the sort order, or {@link #NO_LIMIT} to retain all items
+     */
+    public OrderedValueSequence(final OrderSpec orderSpecs[], final int size, final int limit) {
         this.orderSpecs = orderSpecs;
-        this.items = new Entry[size == 0 ? 1 : size];
+        this.limit = limit;
+        final int capacity = limit > 0 ? Math.min(size, limit) : size;
+        this.items = new Entry[capacity == 0 ? 1 : capacity];
+    }
+
+    /**
+     * Get the number of items which are retained.
+     *
+     * @return the limit, or {@link #NO_LIMIT}
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Get the number of items which have been added, including
+     * those which were discarded because of the limit.
+     *
+     * @return the number of items added
+     */
+    public int getAddedCount() {
+        return added;
     }
 
     @Override
@@ -90,25 +133,62 @@ public class OrderedValueSequence extends AbstractSequence {
 
     @Override
     public void add(final Item item) throws XPathException {
-        if (hasOne) {
-            hasOne = false;
-        }
-        if (isEmpty) {
-            hasOne = true;
+        final Entry entry = new Entry(item, added++);
+        if (limit > 0 && count == limit) {
+            // only keep the entry if it sorts before the last of the retained entries
+            if (entry.compareTo(items[0]) >= 0) {
+                return;
+            }
+            items[0] = entry;
+            siftDown(0);
+        } else {
+            if (count == 0 && items.length == 1) {
+                items = new Entry[2];
+            } else if (count == items.length) {
+                final Entry newItems[] = new Entry[limit > 0 ? Math.min(count * 2, limit) : count * 2];
+                System.arraycopy(items, 0, newItems, 0, count);
+                items = newItems;
+            }
+            items[count++] = entry;
+            if (count == limit) {
+                heapify();
+            }
         }
         isEmpty = false;
-        if (count == 0 && items.length == 1) {
-            items = new Entry[2];
-        } else if (count == items.length) {
-            final Entry newItems[] = new Entry[count * 2];
-            System.arraycopy(items, 0, newItems, 0, count);
-            items = newItems;
-        }
-        items[count] = new Entry(item, count++);
+        hasOne = count == 1;
         checkItemType(item.getType());
         setHasChanged();
     }
 
+    /**
+     * Arrange the retained entries into a heap, with
+     * the entry which sorts last at the top.
+     */
+    private void heapify() {
+        for (int i = count / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private void siftDown(int i) {
+        final Entry entry = items[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= count) {
+                break;
+            }
+            if (child + 1 < count && items[child + 1].compareTo(items[child]) > 0) {
+                child++;
+            }
+            if (items[child].compareTo(entry) <= 0) {
+                break;
+            }
+            items[i] = items[child];
+            i = child;
+        }
+        items[i] = entry;
+    }
+
     @Override
     public void addAll(final Sequence other) throws XPathException {
         if (other.hasOne()) {
@@ -0,0 +1,426 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.dom.persistent;
+
+import org.exist.numbering.DLN;
+import org.exist.numbering.DLNFactory;
+import org.exist.numbering.NodeId;
+import org.exist.storage.BrokerPool;
+import org.exist.xquery.Expression;
+import org.exist.xquery.value.SequenceIterator;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class PackedNodeSetTest {
+
+    @Test
+    public void sortAndRemoveDuplicates() {
+        final DocumentImpl doc1 = mockDocument(1);
+        final DocumentImpl doc2 = mockDocument(2);
+
+        final PackedNodeSet set = new PackedNodeSet(2);
+        set.add(new NodeProxy(doc2, new DLN("1.2"), Node.ELEMENT_NODE, 22));
+        set.add(new NodeProxy(doc1, new DLN("1.3"), Node.ELEMENT_NODE, 13));
+        set.add(new NodeProxy(doc1, new DLN("1.2.1"), Node.ELEMENT_NODE, 121));
+        set.add(new NodeProxy(doc1, new DLN("1.3"), Node.ELEMENT_NODE, 13));
+        set.add(new NodeProxy(doc1, new DLN("1.10"), Node.ELEMENT_NODE, 110));
+
+        assertEquals(4, set.getLength());
+        assertEquals(
+                "1:1.2.1 1:1.3 1:1.10 2:1.2",
+                ids(set));
+        assertEquals(121, set.get(0).getInternalAddress());
+        assertEquals(22, set.get(3).getInternalAddress());
+        assertEquals(3, set.getSizeHint(doc1));
+        assertEquals(2, set.getDocumentSet().getDocumentCount());
+    }
+
+    @Test
+    public void addFromBytes() {
+        final DocumentImpl doc = mockDocument(1);
+        final DLN nodeId = new DLN("1.5.300");
+        final byte[] data = new byte[nodeId.size() + 3];
+        nodeId.serialize(data, 3);
+
+        final PackedNodeSet set = new PackedNodeSet();
+        set.add(doc, nodeId.units(), data, 3, Node.ATTRIBUTE_NODE, 42, null);
+
+        final NodeProxy node = set.get(0);
+        assertEquals(nodeId, node.getNodeId());
+        assertEquals(Node.ATTRIBUTE_NODE, node.getNodeType());
+        assertEquals(42, node.getInternalAddress());
+        assertTrue(set.contains(new NodeProxy(doc, new DLN("1.5.300"))));
+        assertFalse(set.contains(new NodeProxy(doc, new DLN("1.5.3"))));
+    }
+
+    @Test
+    public void contextIsWrittenBack() throws Exception {
+        final DocumentImpl doc = mockDocument(1);
+        final PackedNodeSet set = new PackedNodeSet();
+        set.add(new NodeProxy(doc, new DLN("1.1"), Node.ELEMENT_NODE, 1));
+        set.add(new NodeProxy(doc, new DLN("1.2"), Node.ELEMENT_NODE, 2));
+
+        for (final NodeProxy node : set) {
+            node.addContextNode(7, node);
+        }
+
+        for (final NodeProxy node : set) {
+            assertNotNull(node.getContext());
+            assertEquals(7, node.getContext().getContextId());
+            assertEquals(node.getNodeId(), node.getContext().getNode().getNodeId());
+        }
+
+        set.clearContext(7);
+        assertNull(set.get(0).getContext());
+    }
+
+    @Test
+    public void mutateAfterIteration() throws Exception {
+        final DocumentImpl doc = mockDocument(1);
+        final PackedNodeSet set = new PackedNodeSet();
+        addFromBytes(set, doc, new DLN("1.1"), 1);
+        addFromBytes(set, doc, new DLN("1.2"), 2);
+        addFromBytes(set, doc, new DLN("1.3"), 3);
+
+        // the proxies are collected first, and only changed once the iteration is over
+        final List<NodeProxy> collected = new ArrayList<>();
+        for (final NodeProxy node : set) {
+            collected.add(node);
+        }
+        for (final NodeProxy node : collected) {
+            node.addContextNode(5, node);
+        }
+
+        for (int i = 0; i < collected.size(); i++) {
+            assertSame(collected.get(i), set.get(i));
+            assertNotNull(set.get(i).getContext());
+            assertEquals(5, set.get(i).getContext().getContextId());
+        }
+
+        // the join reads the context from the columns
+        final NewArrayNodeSet parents = new NewArrayNodeSet();
+        parents.add(new NodeProxy(doc, new DLN("1")));
+        final NodeSet children = set.selectParentChild(parents, NodeSet.DESCENDANT, Expression.NO_CONTEXT_ID);
+        assertEquals(3, children.getLength());
+        for (final NodeProxy node : children) {
+            assertNotNull(node.getContext());
+            assertEquals(5, node.getContext().getContextId());
+        }
+    }
+
+    @Test
+    public void getDuringIteration() throws Exception {
+        final DocumentImpl doc = mockDocument(1);
+        final PackedNodeSet set = new PackedNodeSet();
+        set.add(new NodeProxy(doc, new DLN("1.1"), Node.ELEMENT_NODE, 1));
+        set.add(new NodeProxy(doc, new DLN("1.2"), Node.ELEMENT_NODE, 2));
+
+        for (final NodeProxy node : set) {
+            final NodeProxy got = set.get(node);
+            assertSame(node, got);
+            node.addContextNode(1, node);
+            got.addContextNode(2, got);
+        }
+
+        for (final NodeProxy node : set) {
+            final ContextItem context = node.getContext();
+            assertNotNull(context);
+            assertEquals(1, context.getContextId());
+            assertNotNull(context.getNextDirect());
+            assertEquals(2, context.getNextDirect().getContextId());
+        }
+    }
+
+    @Test
+    public void containsReference() {
+        final DocumentImpl doc = mockDocument(1);
+        final NodeProxy added = new NodeProxy(doc, new DLN("1.1"), Node.ELEMENT_NODE, 1);
+        final PackedNodeSet set = new PackedNodeSet();
+        set.add(added);
+        addFromBytes(set, doc, new DLN("1.2"), 2);
+
+        assertTrue(set.containsReference(added));
+        assertFalse(set.containsReference(new NodeProxy(doc, new DLN("1.1"), Node.ELEMENT_NODE, 1)));
+
+        final NodeProxy second = new NodeProxy(doc, new DLN("1.2"), Node.ELEMENT_NODE, 2);
+        assertTrue(set.contains(second));
+        assertFalse(set.containsReference(second));
+        assertTrue(set.containsReference(set.get(1)));
+    }
+
+    @Test
+    public void selectParentChild() {
+        final DocumentImpl doc = mockDocument(1);
+        final PackedNodeSet children = new PackedNodeSet();
+        children.add(new NodeProxy(doc, new DLN("1.1.1"), Node.ELEMENT_NODE, 1));
+        children.add(new NodeProxy(doc, new DLN("1.1.2.1"), Node.ELEMENT_NODE, 2));
+        children.add(new NodeProxy(doc, new DLN("1.2"), Node.ELEMENT_NODE, 3));
+        children.add(new NodeProxy(doc, new DLN("1.2.1"), Node.ELEMENT_NODE, 4));
+
+        final NewArrayNodeSet parents = new NewArrayNodeSet();
+        parents.add(new NodeProxy(doc, new DLN("1.1")));
+
+        final NodeSet result = children.selectParentChild(parents, NodeSet.DESCENDANT, Expression.NO_CONTEXT_ID);
+        assertTrue(result instanceof PackedNodeSet);
+        assertEquals("1:1.1.1", ids(result));
+
+        final NodeSet descendants = children.selectAncestorDescendant(parents, NodeSet.DESCENDANT, false, Expression.NO_CONTEXT_ID, true);
+        assertEquals("1:1.1.1 1:1.1.2.1", ids(descendants));
+
+        final NodeSet ancestors = children.selectAncestorDescendant(parents, NodeSet.ANCESTOR, false, Expression.NO_CONTEXT_ID, true);
+        assertEquals("1:1.1", ids(ancestors));
+    }
+
+    @Test
+    public void selectParentChildWithContext() {
+        final DocumentImpl doc = mockDocument(1);
+        final PackedNodeSet children = new PackedNodeSet();
+        children.add(new NodeProxy(doc, new DLN("1.1.1"), Node.ELEMENT_NODE, 1));
+        children.add(new NodeProxy(doc, new DLN("1.2.1"), Node.ELEMENT_NODE, 2));
+
+        final NewArrayNodeSet parents = new NewArrayNodeSet();
+        parents.add(new NodeProxy(doc, new DLN("1.1")));
+        parents.add(new NodeProxy(doc, new DLN("1.2")));
+
+        final NodeSet result = children.selectParentChild(parents, NodeSet.DESCENDANT, 3);
+        assertEquals(2, result.getLength());
+        for (final NodeProxy node : result) {
+            assertNotNull(node.getContext());
+            assertEquals(node.getNodeId().getParentId(), node.getContext().getNode().getNodeId());
+        }
+    }
+
+    @Test
+    public void iterate_skip_loop() {
+        final DocumentImpl doc = mockDocument(1);
+        final PackedNodeSet set = new PackedNodeSet();
+        for (int i = 1; i <= 99; i++) {
+            set.add(new NodeProxy(doc, new DLN("1." + i), Node.ELEMENT_NODE, i));
+        }
+
+        final SequenceIterator it = set.iterate();
+        assertEquals(99, it.skippable());
+        assertEquals(10, it.skip(10));
+        assertEquals(89, it.skippable());
+
+        int count = 0;
+        while (it.hasNext()) {
+            it.nextItem();
+            count++;
+        }
+        assertEquals(89, count);
+    }
+
+    @Test
+    public void matchesAsNewArrayNodeSet() {
+        final DocumentImpl doc1 = mockDocument(1);
+        final DocumentImpl doc2 = mockDocument(2);
+        final Supplier<List<NodeProxy>> nodes = () -> {
+            final List<NodeProxy> list = new ArrayList<>();
+            list.add(withMatch(new NodeProxy(doc2, new DLN("1.2"), Node.ELEMENT_NODE, 22), 1, "b", 3));
+            list.add(withMatch(new NodeProxy(doc1, new DLN("1.3"), Node.ELEMENT_NODE, 13), 1, "a", 0));
+            list.add(new NodeProxy(doc1, new DLN("1.2.1"), Node.ELEMENT_NODE, 121));
+            // a duplicate with the same term, whose offsets are merged
+            list.add(withMatch(new NodeProxy(doc1, new DLN("1.3"), Node.ELEMENT_NODE, 13), 1, "a", 5));
+            // a duplicate with another term, whose match is appended
+            list.add(withMatch(new NodeProxy(doc1, new DLN("1.3"), Node.ELEMENT_NODE, 13), 2, "c", 1));
+            return list;
+        };
+
+        assertSameAsNewArrayNodeSet(nodes, set -> set);
+
+        final NewArrayNodeSet parents = new NewArrayNodeSet();
+        parents.add(new NodeProxy(doc1, new DLN("1")));
+        assertSameAsNewArrayNodeSet(nodes, set -> set.selectParentChild(parents, NodeSet.DESCENDANT, Expression.NO_CONTEXT_ID));
+        assertSameAsNewArrayNodeSet(nodes, set -> set.selectAncestorDescendant(parents, NodeSet.DESCENDANT, false, Expression.NO_CONTEXT_ID, true));
+    }
+
+    @Test
+    public void contextTrackingAsNewArrayNodeSet() {
+        final DocumentImpl doc = mockDocument(1);
+        final Supplier<List<NodeProxy>> nodes = () -> {
+            final List<NodeProxy> list = new ArrayList<>();
+            list.add(new NodeProxy(doc, new DLN("1.1.1"), Node.ELEMENT_NODE, 1));
+            list.add(new NodeProxy(doc, new DLN("1.1.2"), Node.ELEMENT_NODE, 2));
+            list.add(new NodeProxy(doc, new DLN("1.1.2.1"), Node.ELEMENT_NODE, 3));
+            list.add(new NodeProxy(doc, new DLN("1.2.1"), Node.ELEMENT_NODE, 4));
+            list.add(new NodeProxy(doc, new DLN("1.3.1"), Node.ELEMENT_NODE, 5));
+            // a duplicate which was already selected in another context
+            final NodeProxy duplicate = new NodeProxy(doc, new DLN("1.1.1"), Node.ELEMENT_NODE, 1);
+            duplicate.addContextNode(1, new NodeProxy(doc, new DLN("1")));
+            list.add(duplicate);
+            return list;
+        };
+
+        final NewArrayNodeSet parents = new NewArrayNodeSet();
+        parents.add(new NodeProxy(doc, new DLN("1.1")));
+        parents.add(new NodeProxy(doc, new DLN("1.2")));
+
+        assertSameAsNewArrayNodeSet(nodes, set -> set.selectParentChild(parents, NodeSet.DESCENDANT, 3));
+        assertSameAsNewArrayNodeSet(nodes, set -> set.selectParentChild(parents, NodeSet.ANCESTOR, 3));
+        assertSameAsNewArrayNodeSet(nodes, set -> set.selectAncestorDescendant(parents, NodeSet.DESCENDANT, false, 3, true));
+        assertSameAsNewArrayNodeSet(nodes, set -> set.selectAncestorDescendant(parents, NodeSet.DESCENDANT, true, 3, true));
+        assertSameAsNewArrayNodeSet(nodes, set -> set.selectAncestorDescendant(parents, NodeSet.ANCESTOR, false, 3, true));
+    }
+
+    @Test
+    public void addAllAsNewArrayNodeSet() {
+        final DocumentImpl doc1 = mockDocument(1);
+        final DocumentImpl doc2 = mockDocument(2);
+        final Supplier<List<NodeProxy>> nodes = () -> {
+            final List<NodeProxy> list = new ArrayList<>();
+            list.add(new NodeProxy(doc1, new DLN("1.1"), Node.ELEMENT_NODE, 11));
+            list.add(withMatch(new NodeProxy(doc1, new DLN("1.4"), Node.ELEMENT_NODE, 14), 1, "a", 0));
+            list.add(new NodeProxy(doc2, new DLN("1.1"), Node.ELEMENT_NODE, 21));
+            return list;
+        };
+
+        assertSameAsNewArrayNodeSet(nodes, set -> {
+            // the other set overlaps, and its nodes carry contexts and matches of their own
+            final NewArrayNodeSet other = new NewArrayNodeSet();
+            final NodeProxy overlapping = withMatch(new NodeProxy(doc1, new DLN("1.4"), Node.ELEMENT_NODE, 14), 2, "b", 2);
+            overlapping.addContextNode(4, new NodeProxy(doc1, new DLN("1")));
+            other.add(overlapping);
+            other.add(new NodeProxy(doc1, new DLN("1.2"), Node.ELEMENT_NODE, 12));
+            other.add(withMatch(new NodeProxy(doc2, new DLN("1.1"), Node.ELEMENT_NODE, 21), 1, "c", 4));
+            other.add(new NodeProxy(doc1, new DLN("1.1.3"), Node.ATTRIBUTE_NODE, 113));
+            set.addAll(other);
+            return set;
+        });
+    }
+
+    /**
+     * Fills a {@link NewArrayNodeSet} and a {@link PackedNodeSet} with the same nodes,
+     * and checks that the operation returns the same nodes, contexts and matches for both.
+     *
+     * The nodes are created for each set, as the sets change the proxies they are given.
+     */
+    private static void assertSameAsNewArrayNodeSet(final Supplier<List<NodeProxy>> nodes, final Function<NodeSet, NodeSet> operation) {
+        final NewArrayNodeSet expected = new NewArrayNodeSet();
+        for (final NodeProxy node : nodes.get()) {
+            expected.add(node);
+        }
+        final PackedNodeSet actual = new PackedNodeSet();
+        for (final NodeProxy node : nodes.get()) {
+            actual.add(node);
+        }
+
+        assertEquals(describe(operation.apply(expected)), describe(operation.apply(actual)));
+    }
+
+    /**
+     * Describes the nodes of a set with their contexts and matches. As duplicates
+     * may be merged in any order, the contexts and the matches of a node are sorted.
+     */
+    private static String describe(final NodeSet set) {
+        final List<String> nodes = new ArrayList<>();
+        for (final NodeProxy node : set) {
+            final List<String> contexts = new ArrayList<>();
+            for (ContextItem context = node.getContext(); context != null; context = context.getNextDirect()) {
+                contexts.add(context.getContextId() + "@" + context.getNode().getNodeId());
+            }
+            Collections.sort(contexts);
+
+            final List<String> matches = new ArrayList<>();
+            for (Match match = node.getMatches(); match != null; match = match.getNextMatch()) {
+                final StringBuilder offsets = new StringBuilder();
+                for (final Match.Offset offset : match.getOffsets()) {
+                    offsets.append(' ').append(offset.getOffset()).append('+').append(offset.getLength());
+                }
+                matches.add(match.getContextId() + "@" + match.getNodeId() + offsets);
+            }
+            Collections.sort(matches);
+
+            nodes.add(node.getOwnerDocument().getDocId() + ":" + node.getNodeId() + " #" + node.getInternalAddress()
+                    + " type=" + node.getNodeType() + " contexts=" + contexts + " matches=" + matches);
+        }
+        return String.join("\n", nodes);
+    }
+
+    private static NodeProxy withMatch(final NodeProxy node, final int contextId, final String term, final int offset) {
+        final Match match = new TestMatch(contextId, node.getNodeId(), term);
+        match.addOffset(offset, term.length());
+        node.addMatch(match);
+        return node;
+    }
+
+    private static final class TestMatch extends Match {
+        TestMatch(final int contextId, final NodeId nodeId, final String matchTerm) {
+            super(contextId, nodeId, matchTerm);
+        }
+
+        private TestMatch(final TestMatch match) {
+            super(match);
+        }
+
+        @Override
+        public Match createInstance(final int contextId, final NodeId nodeId, final String matchTerm) {
+            return new TestMatch(contextId, nodeId, matchTerm);
+        }
+
+        @Override
+        public Match newCopy() {
+            return new TestMatch(this);
+        }
+
+        @Override
+        public String getIndexId() {
+            return "test";
+        }
+    }
+
+    private static void addFromBytes(final PackedNodeSet set, final DocumentImpl doc, final DLN nodeId, final long address) {
+        final byte[] data = new byte[nodeId.size()];
+        nodeId.serialize(data, 0);
+        set.add(doc, nodeId.units(), data, 0, Node.ELEMENT_NODE, address, null);
+    }
+
+    private static String ids(final NodeSet set) {
+        final List<String> ids = new ArrayList<>();
+        for (final NodeProxy node : set) {
+            ids.add(node.getOwnerDocument().getDocId() + ":" + node.getNodeId());
+        }
+        return String.join(" ", ids);
+    }
+
+    private static DocumentImpl mockDocument(final int docId) {
+        final BrokerPool pool = createMock(BrokerPool.class);
+        expect(pool.getNodeFactory()).andReturn(new DLNFactory()).anyTimes();
+        replay(pool);
+
+        final DocumentImpl doc = createMock(DocumentImpl.class);
+        expect(doc.getDocId()).andReturn(docId).anyTimes();
+        expect(doc.getBrokerPool()).andReturn(pool).anyTimes();
+        expect(doc.getCollection()).andReturn(null).anyTimes();
+        replay(doc);
+        return doc;
+    }
+}
@@ -31,12 +31,19 @@ import org.exist.storage.io.VariableByteOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.exist.util.Configuration;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -143,6 +150,48 @@ public class SymbolTableTest {
         assertEquals(mimetype, roundTrippedMimetype);
     }
 
+    @Test
+    public void concurrent_localName_ids_are_unique_and_stable() throws IOException, BrokerPoolServiceException, InterruptedException, ExecutionException {
+        final Path tmpDir = createTempDir();
+        SymbolTable symbolTable = createSymbolTable(tmpDir);
+
+        final int threads = 8;
+        final int names = 500;
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        final List<Future<short[]>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                final SymbolTable table = symbolTable;
+                results.add(executorService.submit(() -> {
+                    final short[] ids = new short[names];
+                    for (int i = 0; i < names; i++) {
+                        ids[i] = table.getSymbol("name-" + i);
+                        assertEquals("name-" + i, table.getName(ids[i]));
+                    }
+                    return ids;
+                }));
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        // every thread must have been given the same id for the same name
+        final short[] ids = results.get(0).get();
+        for (final Future<short[]> result : results) {
+            assertArrayEquals(ids, result.get());
+        }
+        symbolTable.close();
+
+        // and each name must have been written to symbols.dbx exactly once
+        symbolTable = createSymbolTable(tmpDir);
+        for (int i = 0; i < names; i++) {
+            assertEquals("name-" + i, symbolTable.getName(ids[i]));
+            assertEquals(ids[i], symbolTable.getSymbol("name-" + i));
+        }
+        assertEquals(names, symbolTable.localNameSymbols.offset);
+        symbolTable.close();
+    }
+
     @Test
     public void write_and_read_are_balanced() throws IOException, BrokerPoolServiceException {
         final SymbolTable symbolTable = createSymbolTable(createTempDir());
@@ -0,0 +1,169 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class BulkLoaderTest {
+
+    @ClassRule
+    public static ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create("/db/bulk-load-test");
+
+    private static final int DOCUMENTS = 250;
+    private static final int BATCH_SIZE = 100;
+
+    @Test
+    public void loadDirectory() throws EXistException, PermissionDeniedException, IOException, LockException, XPathException {
+        final Path source = temporaryFolder.newFolder("source").toPath();
+        final Path child = Files.createDirectory(source.resolve("child"));
+        for (int i = 0; i < DOCUMENTS; i++) {
+            Files.write((i % 2 == 0 ? source : child).resolve("doc" + i + ".xml"), document(i));
+        }
+        Files.write(source.resolve("malformed.xml"), "<items>".getBytes(StandardCharsets.UTF_8));
+        Files.write(child.resolve("data.bin"), new byte[] { 1, 2, 3 });
+
+        final BulkLoader.Result result = bulkLoad(source, false);
+        assertEquals(DOCUMENTS + 1, result.getStored());
+        assertEquals(0, result.getSkipped());
+        assertEquals(1, result.getFailed());
+        assertEquals(3, result.getBatches());
+
+        assertEquals(DOCUMENTS, count("count(collection('" + TEST_COLLECTION + "')//item)"));
+        assertEquals(DOCUMENTS / 2, count("count(collection('" + TEST_COLLECTION.append("child") + "')//item)"));
+        assertEquals(1, count("count(util:binary-doc-available('" + TEST_COLLECTION.append("child").append("data.bin") + "')[.])"));
+    }
+
+    @Test
+    public void resume() throws EXistException, PermissionDeniedException, IOException, LockException, XPathException {
+        final Path source = temporaryFolder.newFolder("source").toPath();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            Files.write(source.resolve("doc" + i + ".xml"), document(i));
+        }
+
+        final BulkLoader.Result result = bulkLoad(source, false);
+        assertEquals(DOCUMENTS, result.getStored());
+
+        // add some documents, as though the first load had been stopped early
+        for (int i = DOCUMENTS; i < DOCUMENTS + 10; i++) {
+            Files.write(source.resolve("doc" + i + ".xml"), document(i));
+        }
+
+        final BulkLoader.Result resumed = bulkLoad(source, true);
+        assertEquals(10, resumed.getStored());
+        assertEquals(DOCUMENTS, resumed.getSkipped());
+        assertEquals(0, resumed.getFailed());
+
+        assertEquals(DOCUMENTS + 10, count("count(collection('" + TEST_COLLECTION + "')//item)"));
+    }
+
+    @Test
+    public void loadArchive() throws EXistException, PermissionDeniedException, IOException, LockException, XPathException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (final ZipOutputStream zos = new ZipOutputStream(os)) {
+            for (int i = 0; i < DOCUMENTS; i++) {
+                zos.putNextEntry(new ZipEntry((i % 2 == 0 ? "" : "child/") + "doc" + i + ".xml"));
+                zos.write(document(i));
+                zos.closeEntry();
+            }
+        }
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final BulkLoader.Result result;
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final InputStream is = new ByteArrayInputStream(os.toByteArray())) {
+            result = broker.bulkLoad(TEST_COLLECTION, is, 4, BATCH_SIZE, false);
+        }
+        assertEquals(DOCUMENTS, result.getStored());
+
+        assertEquals(DOCUMENTS, count("count(collection('" + TEST_COLLECTION + "')//item)"));
+        assertEquals(DOCUMENTS / 2, count("count(collection('" + TEST_COLLECTION.append("child") + "')//item)"));
+    }
+
+    private static byte[] document(final int i) {
+        return ("<items><item n=\"" + i + "\"/></items>").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static BulkLoader.Result bulkLoad(final Path source, final boolean resume) throws EXistException, PermissionDeniedException, IOException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            return broker.bulkLoad(TEST_COLLECTION, source, 4, BATCH_SIZE, resume);
+        }
+    }
+
+    private static int count(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence result = xquery.execute(broker, query, null);
+            return Integer.parseInt(result.itemAt(0).getStringValue());
+        }
+    }
+
+    @After
+    public void cleanup() throws EXistException, PermissionDeniedException, IOException, TriggerException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction();
+             final Collection collection = broker.openCollection(TEST_COLLECTION, Lock.LockMode.WRITE_LOCK)) {
+
+            if (collection != null) {
+                broker.removeCollection(transaction, collection);
+            }
+
+            transaction.commit();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class ParallelReindexTest {
+
+    @ClassRule
+    public static ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                .set(NativeBroker.PROPERTY_REINDEX_PARALLELISM, 4)
+                .build(),
+            true,
+            true);
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create("/db/parallel-reindex-test");
+    private static final XmldbURI TEST_CHILD_COLLECTION = TEST_COLLECTION.append("child");
+
+    // several documents per worker
+    private static final int DOCUMENTS = 507;
+    private static final int ITEMS_PER_DOCUMENT = 10;
+
+    @Test
+    public void reindexCollection() throws EXistException, PermissionDeniedException, IOException, LockException, XPathException {
+        assertItems();
+
+        reindex(TEST_COLLECTION);
+
+        assertItems();
+    }
+
+    @Test
+    public void reindexChildCollection() throws EXistException, PermissionDeniedException, IOException, LockException, XPathException {
+        reindex(TEST_CHILD_COLLECTION);
+
+        assertItems();
+    }
+
+    private static void assertItems() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            // the structural index is used to find the items, and is rebuilt by the reindex
+            final Sequence result = xquery.execute(broker, "count(collection('" + TEST_COLLECTION + "')//item[@n])", null);
+            assertEquals(DOCUMENTS * ITEMS_PER_DOCUMENT, Integer.parseInt(result.itemAt(0).getStringValue()));
+
+            final Sequence childResult = xquery.execute(broker, "count(collection('" + TEST_CHILD_COLLECTION + "')//item[@n])", null);
+            assertEquals((DOCUMENTS / 2) * ITEMS_PER_DOCUMENT, Integer.parseInt(childResult.itemAt(0).getStringValue()));
+
+            // the nodes of each document must be indexed under that document, and not under another one reindexed by the same worker
+            for (int i = 0; i < DOCUMENTS; i += 17) {
+                final XmldbURI docUri = (i % 2 == 0 ? TEST_COLLECTION : TEST_CHILD_COLLECTION).append("doc" + i + ".xml");
+                final Sequence docResult = xquery.execute(broker, "count(doc('" + docUri + "')//item[@n][. = '" + i + "'])", null);
+                assertEquals(docUri.toString(), ITEMS_PER_DOCUMENT, Integer.parseInt(docResult.itemAt(0).getStringValue()));
+            }
+        }
+    }
+
+    private static void reindex(final XmldbURI collectionUri) throws EXistException, PermissionDeniedException, IOException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            broker.reindexCollection(transaction, collectionUri);
+            transaction.commit();
+        }
+    }
+
+    @BeforeClass
+    public static void setup() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+
+            final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            assertNotNull(collection);
+            broker.saveCollection(transaction, collection);
+
+            final Collection childCollection = broker.getOrCreateCollection(transaction, TEST_CHILD_COLLECTION);
+            assertNotNull(childCollection);
+            broker.saveCollection(transaction, childCollection);
+
+            // half of the documents are stored in the child collection
+            for (int i = 0; i < DOCUMENTS; i++) {
+                final StringBuilder builder = new StringBuilder("<items>");
+                for (int j = 0; j < ITEMS_PER_DOCUMENT; j++) {
+                    builder.append("<item n=\"").append(j).append("\">").append(i).append("</item>");
+                }
+                builder.append("</items>");
+
+                broker.storeDocument(transaction, XmldbURI.create("doc" + i + ".xml"), new StringInputSource(builder.toString()), MimeType.XML_TYPE, i % 2 == 0 ? collection : childCollection);
+            }
+
+            transaction.commit();
+        }
+    }
+
+    @AfterClass
+    public static void cleanup() throws EXistException, PermissionDeniedException, IOException, TriggerException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction();
+             final Collection collection = broker.openCollection(TEST_COLLECTION, Lock.LockMode.WRITE_LOCK)) {
+
+            if (collection != null) {
+                broker.removeCollection(transaction, collection);
+            }
+
+            transaction.commit();
+        }
+    }
+}
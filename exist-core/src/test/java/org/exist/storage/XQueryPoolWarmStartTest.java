@@ -0,0 +1,154 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.DBSource;
+import org.exist.source.Source;
+import org.exist.source.StringSource;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.Sequence;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class XQueryPoolWarmStartTest {
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                    .put(XQueryPoolWarmStart.PROPERTY_WARM_START, true)
+                    .build(),
+            true,
+            true);
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create("/db/query-pool-warm-start-test");
+    private static final XmldbURI MAIN = XmldbURI.create("main.xq");
+    private static final XmldbURI MODULE = XmldbURI.create("module.xqm");
+
+    private static final String MAIN_QUERY =
+            "import module namespace m = 'http://exist-db.org/test/warm-start' at 'module.xqm';\n" +
+            "m:answer()";
+    private static final String MODULE_QUERY =
+            "module namespace m = 'http://exist-db.org/test/warm-start';\n" +
+            "declare function m:answer() { 42 };";
+    private static final String STRING_QUERY = "'not saved'";
+
+    @Test
+    public void compiledAfterRestart() throws EXistException, PermissionDeniedException, XPathException, IOException, SAXException, LockException, TriggerException, DatabaseConfigurationException, InterruptedException {
+        storeQueries();
+        compileAndReturn(getMainSource(existEmbeddedServer.getBrokerPool()));
+
+        existEmbeddedServer.restart(false);
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Source source = getMainSource(pool);
+
+            // the queries are compiled by a background thread
+            CompiledXQuery compiled = null;
+            final long deadline = System.currentTimeMillis() + 30_000;
+            while (compiled == null && System.currentTimeMillis() < deadline) {
+                compiled = pool.getXQueryPool().borrowCompiledXQuery(broker, source);
+                if (compiled == null) {
+                    Thread.sleep(50);
+                }
+            }
+            assertNotNull(compiled);
+
+            final Sequence result = pool.getXQueryService().execute(broker, compiled, null);
+            assertEquals("42", result.itemAt(0).getStringValue());
+        }
+    }
+
+    @Test
+    public void onlyStoredQueriesAreSaved() throws EXistException, PermissionDeniedException, XPathException, IOException, SAXException, LockException, TriggerException, DatabaseConfigurationException {
+        storeQueries();
+        compileAndReturn(getMainSource(existEmbeddedServer.getBrokerPool()));
+        compileAndReturn(new StringSource(STRING_QUERY));
+
+        final Path file = existEmbeddedServer.getBrokerPool().getStoragePlace().resolve(XQueryPoolWarmStart.FILE_NAME);
+        existEmbeddedServer.restart(false);
+
+        final List<String> lines = Files.readAllLines(file, UTF_8);
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("db\t1\t") && line.endsWith(TEST_COLLECTION.append(MAIN).toString())));
+        assertFalse(lines.stream().anyMatch(line -> line.contains(STRING_QUERY)));
+    }
+
+    private void storeQueries() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION);
+            broker.saveCollection(transaction, collection);
+            broker.storeDocument(transaction, MODULE, new StringInputSource(MODULE_QUERY.getBytes(UTF_8)), MimeType.XQUERY_TYPE, collection);
+            broker.storeDocument(transaction, MAIN, new StringInputSource(MAIN_QUERY.getBytes(UTF_8)), MimeType.XQUERY_TYPE, collection);
+            transaction.commit();
+        }
+    }
+
+    private static Source getMainSource(final BrokerPool pool) throws EXistException, PermissionDeniedException {
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Collection collection = broker.openCollection(TEST_COLLECTION, Lock.LockMode.READ_LOCK)) {
+            return new DBSource(broker, (BinaryDocument) collection.getDocument(broker, MAIN), true);
+        }
+    }
+
+    private void compileAndReturn(final Source source) throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQueryContext context = new XQueryContext(pool);
+            context.setModuleLoadPath(XmldbURI.EMBEDDED_SERVER_URI.append(TEST_COLLECTION).toString());
+            final CompiledXQuery compiled = xquery.compile(broker, context, source);
+            pool.getXQueryPool().returnCompiledXQuery(source, compiled);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.Sequence;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class XQueryResultCacheTest {
+
+    @ClassRule
+    public static ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create("/db/query-result-cache-test");
+    private static final XmldbURI OTHER_COLLECTION = XmldbURI.create("/db/query-result-cache-other");
+
+    private static final String CACHE_OPTION = "declare option exist:result-cache 'enable=yes';\n";
+
+    // util:uuid() returns a different value each time the query is evaluated
+    private static final String QUERY = "(count(collection('" + TEST_COLLECTION + "')//item), util:uuid())";
+
+    @Test
+    public void cachedResult() throws EXistException, PermissionDeniedException, XPathException {
+        final String[] first = execute(CACHE_OPTION + QUERY, null);
+        final String[] second = execute(CACHE_OPTION + QUERY, null);
+        assertEquals(first[1], second[1]);
+    }
+
+    @Test
+    public void notCachedWithoutOption() throws EXistException, PermissionDeniedException, XPathException {
+        final String[] first = execute(QUERY, null);
+        final String[] second = execute(QUERY, null);
+        assertNotEquals(first[1], second[1]);
+    }
+
+    @Test
+    public void invalidatedByStore() throws EXistException, PermissionDeniedException, XPathException, IOException, SAXException, LockException, TriggerException {
+        storeDocument(TEST_COLLECTION, "doc1.xml", "<items><item/><item/></items>");
+        final String[] first = execute(CACHE_OPTION + QUERY, null);
+        assertEquals("2", first[0]);
+
+        storeDocument(TEST_COLLECTION, "doc2.xml", "<items><item/></items>");
+        final String[] second = execute(CACHE_OPTION + QUERY, null);
+        assertEquals("3", second[0]);
+        assertNotEquals(first[1], second[1]);
+
+        final String[] third = execute(CACHE_OPTION + QUERY, null);
+        assertEquals(second[1], third[1]);
+    }
+
+    @Test
+    public void notInvalidatedByStoreInOtherCollection() throws EXistException, PermissionDeniedException, XPathException, IOException, SAXException, LockException, TriggerException {
+        storeDocument(TEST_COLLECTION, "doc1.xml", "<items><item/></items>");
+        final String[] first = execute(CACHE_OPTION + QUERY, null);
+        assertEquals("1", first[0]);
+
+        storeDocument(OTHER_COLLECTION, "doc1.xml", "<items><item/><item/></items>");
+        final String[] second = execute(CACHE_OPTION + QUERY, null);
+        assertEquals("1", second[0]);
+        assertEquals(first[1], second[1]);
+    }
+
+    @Test
+    public void notInvalidatedByReadOnlyTransaction() throws EXistException, PermissionDeniedException, XPathException {
+        final String[] first = execute(CACHE_OPTION + QUERY, null);
+
+        // e.g. the REST server begins and commits a transaction around each query
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            transaction.commit();
+        }
+
+        final String[] second = execute(CACHE_OPTION + QUERY, null);
+        assertEquals(first[1], second[1]);
+    }
+
+    @Test
+    public void cachedNodes() throws EXistException, PermissionDeniedException, XPathException, IOException, SAXException, LockException, TriggerException {
+        storeDocument(TEST_COLLECTION, "doc1.xml", "<items><item>a</item><item>b</item></items>");
+        final String query = CACHE_OPTION + "(collection('" + TEST_COLLECTION + "')//item, util:uuid())";
+        final String[] first = execute(query, null);
+        final String[] second = execute(query, null);
+        assertEquals(3, second.length);
+        assertEquals("a", second[0]);
+        assertEquals("b", second[1]);
+        assertEquals(first[2], second[2]);
+    }
+
+    @Test
+    public void inMemoryNodesNotCached() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = CACHE_OPTION + "(<item/>, util:uuid())";
+        final String[] first = execute(query, null);
+        final String[] second = execute(query, null);
+        assertNotEquals(first[1], second[1]);
+    }
+
+    @Test
+    public void keyedByExternalVariables() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = CACHE_OPTION + "declare variable $n external; ($n, util:uuid())";
+        final String[] first = execute(query, "1");
+        final String[] second = execute(query, "2");
+        assertEquals("2", second[0]);
+        assertNotEquals(first[1], second[1]);
+
+        final String[] third = execute(query, "1");
+        assertEquals("1", third[0]);
+        assertEquals(first[1], third[1]);
+    }
+
+    private static String[] execute(final String query, final String n) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQueryContext context = new XQueryContext(pool);
+            final CompiledXQuery compiled = xquery.compile(context, query);
+            if (n != null) {
+                context.declareVariable("n", n);
+            }
+            final Sequence result = xquery.execute(broker, compiled, null);
+            final String[] values = new String[result.getItemCount()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = result.itemAt(i).getStringValue();
+            }
+            return values;
+        }
+    }
+
+    private static void storeDocument(final XmldbURI collectionUri, final String name, final String content) throws EXistException, PermissionDeniedException, IOException, SAXException, LockException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, collectionUri);
+            broker.storeDocument(transaction, XmldbURI.create(name), new StringInputSource(content), MimeType.XML_TYPE, collection);
+            transaction.commit();
+        }
+    }
+
+    @After
+    public void cleanup() throws EXistException, PermissionDeniedException, IOException, TriggerException, LockException {
+        removeCollection(TEST_COLLECTION);
+        removeCollection(OTHER_COLLECTION);
+    }
+
+    private static void removeCollection(final XmldbURI collectionUri) throws EXistException, PermissionDeniedException, IOException, TriggerException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction();
+             final Collection collection = broker.openCollection(collectionUri, Lock.LockMode.WRITE_LOCK)) {
+
+            if (collection != null) {
+                broker.removeCollection(transaction, collection);
+            }
+
+            transaction.commit();
+        }
+    }
+}
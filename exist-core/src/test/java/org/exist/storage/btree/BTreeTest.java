@@ -23,6 +23,8 @@ package org.exist.storage.btree;
 
 import org.exist.EXistException;
 import org.exist.storage.BrokerPool;
+import org.exist.storage.lock.LockManager;
+import org.exist.storage.lock.ManagedLock;
 import org.exist.test.ExistEmbeddedServer;
 import org.exist.util.*;
 import org.exist.xquery.TerminatedException;
@@ -39,9 +41,17 @@ import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Low-level tests on the B+tree.
@@ -147,6 +157,270 @@ public class BTreeTest {
         }
     }
 
+    @Test
+    public void memoryMappedReads() throws DBException, IOException, TerminatedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final Configuration configuration = pool.getConfiguration();
+        final Object prevMemoryMappedFiles = configuration.getProperty(Paged.PROPERTY_MEMORY_MAPPED_FILES);
+        configuration.setProperty(Paged.PROPERTY_MEMORY_MAPPED_FILES, Collections.singleton(FileUtils.fileName(file)));
+        try {
+            final String prefixStr = "M";
+            try (final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+                assertTrue(btree.isMemoryMapped());
+                btree.create((short) -1);
+
+                for (int i = 1; i <= COUNT; i++) {
+                    btree.addValue(new Value(prefixStr + Integer.toString(i)), i);
+                }
+                btree.flush();
+
+                // pages which were added after the file was first mapped must be readable
+                for (int i = 1; i <= COUNT; i++) {
+                    assertEquals(i, btree.findValue(new Value(prefixStr + Integer.toString(i))));
+                }
+            }
+
+            // re-open the file, so that all pages are read from the mapping rather than the cache
+            try (final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+                assertTrue(btree.isMemoryMapped());
+                assertTrue(btree.open(BTREE_TEST_FILE_VERSION));
+
+                for (int i = 1; i <= COUNT; i++) {
+                    assertEquals(i, btree.findValue(new Value(prefixStr + Integer.toString(i))));
+                }
+
+                final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefixStr));
+                btree.query(query, new StringIndexCallback());
+                assertEquals(COUNT, count);
+            }
+        } finally {
+            configuration.setProperty(Paged.PROPERTY_MEMORY_MAPPED_FILES, prevMemoryMappedFiles);
+        }
+    }
+
+    @Test
+    public void concurrentSharedReads() throws DBException, IOException, InterruptedException, ExecutionException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final LockManager lockManager = pool.getLockManager();
+        final String lockName = FileUtils.fileName(file);
+        lockManager.enableBtreeSharedReads(lockName);
+
+        final String prefixStr = "C";
+        try (final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value(prefixStr + Integer.toString(i)), i);
+            }
+            btree.flush();
+        }
+
+        // re-open the file, so that the readers race to populate the cache
+        try (final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            assertTrue(btree.open(BTREE_TEST_FILE_VERSION));
+
+            final int readers = 8;
+            final ExecutorService executorService = Executors.newFixedThreadPool(readers);
+            try {
+                final List<Future<Integer>> results = new ArrayList<>();
+                for (int r = 0; r < readers; r++) {
+                    final long seed = r;
+                    results.add(executorService.submit(() -> {
+                        final Random random = new Random(seed);
+                        int found = 0;
+                        for (int j = 0; j < COUNT; j++) {
+                            final int i = random.nextInt(COUNT) + 1;
+                            try (final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeReadLock(lockName)) {
+                                if (btree.findValue(new Value(prefixStr + Integer.toString(i))) == i) {
+                                    found++;
+                                }
+                            }
+                        }
+                        return found;
+                    }));
+                }
+
+                for (final Future<Integer> result : results) {
+                    assertEquals(COUNT, result.get().intValue());
+                }
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void bulkBuild() throws DBException, IOException, TerminatedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+
+            final int keys = COUNT * 10;
+            final List<Integer> order = new ArrayList<>(keys);
+            for (int i = 1; i <= keys; i++) {
+                order.add(i);
+            }
+            Collections.shuffle(order, new Random(42));
+
+            // a small buffer, so that the keys are spilled to several sorted runs
+            try (final SortedRunBuilder runs = new SortedRunBuilder(64 * 1024)) {
+                for (final int i : order) {
+                    runs.add(new Value("B" + i), i);
+                }
+                // the last pointer added for a key wins
+                runs.add(new Value("B1"), -1);
+
+                try (final SortedRunBuilder.Cursor cursor = runs.sort()) {
+                    assertEquals(keys, btree.addSortedValues(null, cursor));
+                }
+            }
+            btree.flush();
+
+            assertEquals(-1, btree.findValue(new Value("B1")));
+            for (int i = 2; i <= keys; i++) {
+                assertEquals(i, btree.findValue(new Value("B" + i)));
+            }
+
+            final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value("B"));
+            final List<Value> found = new ArrayList<>();
+            btree.query(query, (value, pointer) -> found.add(value));
+            assertEquals(keys, found.size());
+            for (int i = 1; i < found.size(); i++) {
+                assertTrue(found.get(i - 1).compareTo(found.get(i)) < 0);
+            }
+
+            // the tree built bottom-up can be updated as usual
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value("A" + i), i);
+                btree.removeValue(new Value("B" + (i * 2)));
+            }
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value("A" + i)));
+                assertEquals(BTree.KEY_NOT_FOUND, btree.findValue(new Value("B" + (i * 2))));
+                assertEquals(i * 2 + 1, btree.findValue(new Value("B" + (i * 2 + 1))));
+            }
+        }
+    }
+
+    @Test
+    public void compressedKeys() throws DBException, IOException, TerminatedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final long legacyPages;
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value("/db/collection/document-" + i), i);
+            }
+            btree.flush();
+            legacyPages = btree.getFileHeader().getTotalCount();
+        }
+        FileUtils.deleteQuietly(file);
+
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            btree.setKeyCompression(true);
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value("/db/collection/document-" + i), i);
+            }
+            btree.flush();
+            assertTrue(btree.getFileHeader().getTotalCount() < legacyPages);
+
+            // overwrite pointers with ones far apart, so the pointer deltas no longer fit
+            final Random random = new Random(42);
+            final long[] pointers = new long[COUNT + 1];
+            for (int i = 1; i <= COUNT; i++) {
+                pointers[i] = random.nextLong() & Long.MAX_VALUE;
+                btree.addValue(new Value("/db/collection/document-" + i), pointers[i]);
+            }
+            for (int i = 1; i <= COUNT; i += 2) {
+                btree.removeValue(new Value("/db/collection/document-" + i));
+            }
+            btree.flush();
+        }
+
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.open(BTREE_TEST_FILE_VERSION);
+
+            final Random random = new Random(42);
+            for (int i = 1; i <= COUNT; i++) {
+                final long pointer = random.nextLong() & Long.MAX_VALUE;
+                final long expected = i % 2 == 1 ? BTree.KEY_NOT_FOUND : pointer;
+                assertEquals(expected, btree.findValue(new Value("/db/collection/document-" + i)));
+            }
+
+            final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value("/db/collection/"));
+            btree.query(query, new SimpleCallback());
+            assertEquals(COUNT / 2, count);
+        }
+    }
+
+    @Test
+    public void legacyFileIsUpgraded() throws DBException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final short legacyVersion = BTREE_TEST_FILE_VERSION;
+        final short version = BTREE_TEST_FILE_VERSION + 1;
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, legacyVersion, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value("U" + i), i);
+            }
+            btree.flush();
+        }
+
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, version, false, pool.getCacheManager(), file)) {
+            assertTrue(btree.open(version, legacyVersion));
+            assertEquals(version, btree.getFileHeader().getVersion());
+
+            // legacy pages are read as before, and written compressed when they change
+            btree.setKeyCompression(true);
+            for (int i = 1; i <= COUNT; i += 3) {
+                btree.addValue(new Value("V" + i), i);
+            }
+            btree.flush();
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value("U" + i)));
+            }
+        }
+
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, version, false, pool.getCacheManager(), file)) {
+            assertTrue(btree.open(version));
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value("U" + i)));
+                assertEquals(i % 3 == 1 ? i : BTree.KEY_NOT_FOUND, btree.findValue(new Value("V" + i)));
+            }
+        }
+    }
+
+    @Test
+    public void bulkLoadIsDeferred() throws DBException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+
+            btree.startBulkLoad();
+            for (int i = COUNT; i > 0; i--) {
+                btree.addValueDeferred(new Value("D" + i), i);
+            }
+            assertEquals(BTree.KEY_NOT_FOUND, btree.findValue(new Value("D1")));
+
+            // add the keys deferred so far, e.g. before keys are removed
+            btree.flushBulkLoad(null);
+            assertEquals(1, btree.findValue(new Value("D1")));
+
+            // the tree is no longer empty, so further keys are inserted in key order
+            for (int i = COUNT; i > 0; i--) {
+                btree.addValueDeferred(new Value("E" + i), i);
+            }
+            assertEquals(BTree.KEY_NOT_FOUND, btree.findValue(new Value("E1")));
+            btree.finishBulkLoad(null);
+            assertFalse(btree.isBulkLoading());
+
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value("D" + i)));
+                assertEquals(i, btree.findValue(new Value("E" + i)));
+            }
+        }
+    }
+
     @Test
     public void longStrings() throws DBException, IOException {
         // Test storage of long keys up to half of the page size (4k)
@@ -0,0 +1,165 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class OffHeapPagePoolTest {
+
+    private static final int PAGE_SIZE = 64;
+    private static final int HEADER_SIZE = 8;
+
+    @Test
+    public void putAndGet() {
+        final OffHeapPagePool pool = new OffHeapPagePool(PAGE_SIZE * 16, PAGE_SIZE, PAGE_SIZE * 4);
+        final int fileId = pool.registerFile();
+
+        pool.put(fileId, 3, header(3), data(3, 40));
+
+        final byte[] headerData = new byte[HEADER_SIZE];
+        final byte[] data = pool.get(fileId, 3, headerData);
+        assertArrayEquals(header(3), headerData);
+        assertArrayEquals(data(3, 40), data);
+
+        assertNull(pool.get(fileId, 4, headerData));
+        assertNull(pool.get(pool.registerFile(), 3, headerData));
+
+        assertEquals(1, pool.getHits());
+        assertEquals(2, pool.getMisses());
+        assertEquals(1, pool.getUsedPages());
+    }
+
+    @Test
+    public void putPageData() {
+        final OffHeapPagePool pool = new OffHeapPagePool(PAGE_SIZE * 16, PAGE_SIZE, PAGE_SIZE * 4);
+        final int fileId = pool.registerFile();
+
+        final byte[] pageData = new byte[PAGE_SIZE];
+        System.arraycopy(header(7), 0, pageData, 0, HEADER_SIZE);
+        System.arraycopy(data(7, 20), 0, pageData, HEADER_SIZE, 20);
+        pool.put(fileId, 7, pageData, HEADER_SIZE + 20);
+
+        final byte[] headerData = new byte[HEADER_SIZE];
+        assertArrayEquals(data(7, 20), pool.get(fileId, 7, headerData));
+        assertArrayEquals(header(7), headerData);
+    }
+
+    @Test
+    public void replace() {
+        final OffHeapPagePool pool = new OffHeapPagePool(PAGE_SIZE * 16, PAGE_SIZE, PAGE_SIZE * 4);
+        final int fileId = pool.registerFile();
+
+        pool.put(fileId, 1, header(1), data(1, 40));
+        pool.put(fileId, 1, header(2), data(2, 10));
+
+        final byte[] headerData = new byte[HEADER_SIZE];
+        assertArrayEquals(data(2, 10), pool.get(fileId, 1, headerData));
+        assertArrayEquals(header(2), headerData);
+        assertEquals(1, pool.getUsedPages());
+    }
+
+    @Test
+    public void invalidate() {
+        final OffHeapPagePool pool = new OffHeapPagePool(PAGE_SIZE * 16, PAGE_SIZE, PAGE_SIZE * 4);
+        final int fileId = pool.registerFile();
+
+        for (int i = 0; i < 4; i++) {
+            pool.put(fileId, i, header(i), data(i, PAGE_SIZE - HEADER_SIZE));
+        }
+        assertEquals(0.0, pool.getFragmentation(), 0.0);
+
+        pool.invalidate(fileId, 1);
+        assertNull(pool.get(fileId, 1, new byte[HEADER_SIZE]));
+        assertEquals(3, pool.getUsedPages());
+        assertEquals(0.25, pool.getFragmentation(), 0.0);
+
+        // the freed slot is re-used
+        pool.put(fileId, 10, header(10), data(10, PAGE_SIZE - HEADER_SIZE));
+        assertEquals(0.0, pool.getFragmentation(), 0.0);
+        assertEquals(PAGE_SIZE * 4, pool.getAllocatedSize());
+    }
+
+    @Test
+    public void evictsWhenFull() {
+        final OffHeapPagePool pool = new OffHeapPagePool(PAGE_SIZE * 8, PAGE_SIZE, PAGE_SIZE * 4);
+        final int fileId = pool.registerFile();
+
+        for (int i = 0; i < 100; i++) {
+            pool.put(fileId, i, header(i), data(i, 16));
+        }
+
+        assertEquals(8, pool.getUsedPages());
+        assertEquals(92, pool.getEvictions());
+        assertEquals(1.0, pool.getUtilization(), 0.0);
+        assertEquals(PAGE_SIZE * 8, pool.getAllocatedSize());
+
+        // the most recently put pages are still in the pool
+        final byte[] headerData = new byte[HEADER_SIZE];
+        assertArrayEquals(data(99, 16), pool.get(fileId, 99, headerData));
+        assertArrayEquals(header(99), headerData);
+    }
+
+    @Test
+    public void deregisterFile() {
+        final OffHeapPagePool pool = new OffHeapPagePool(PAGE_SIZE * 16, PAGE_SIZE, PAGE_SIZE * 4);
+        final int fileId1 = pool.registerFile();
+        final int fileId2 = pool.registerFile();
+
+        for (int i = 0; i < 4; i++) {
+            pool.put(fileId1, i, header(i), data(i, 16));
+            pool.put(fileId2, i, header(i), data(i, 16));
+        }
+        pool.deregisterFile(fileId1);
+
+        assertEquals(4, pool.getUsedPages());
+        assertNull(pool.get(fileId1, 0, new byte[HEADER_SIZE]));
+        assertNotNull(pool.get(fileId2, 0, new byte[HEADER_SIZE]));
+    }
+
+    @Test
+    public void oversizedPageIsNotPooled() {
+        final OffHeapPagePool pool = new OffHeapPagePool(PAGE_SIZE * 16, PAGE_SIZE, PAGE_SIZE * 4);
+        final int fileId = pool.registerFile();
+
+        pool.put(fileId, 1, header(1), data(1, PAGE_SIZE));
+        assertNull(pool.get(fileId, 1, new byte[HEADER_SIZE]));
+        assertEquals(0, pool.getAllocatedSize());
+    }
+
+    private static byte[] header(final int value) {
+        final byte[] header = new byte[HEADER_SIZE];
+        Arrays.fill(header, (byte) value);
+        return header;
+    }
+
+    private static byte[] data(final int value, final int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (value + i);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TwoQueueCacheTest {
+
+    @Test
+    public void getAfterAdd() {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", 8, 0.0, 0.0, Cache.CacheType.DATA);
+        final Page page = new Page(1);
+        cache.add(page);
+
+        assertSame(page, cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getFails());
+        assertEquals(1, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void evictsToSize() {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", 8, 0.0, 0.0, Cache.CacheType.DATA);
+        for (int i = 0; i < 100; i++) {
+            cache.add(new Page(i));
+        }
+
+        assertEquals(8, cache.getUsedBuffers());
+        assertEquals(92, cache.getEvictions());
+    }
+
+    @Test
+    public void evictedDirtyPagesAreSynced() {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", 1, 0.0, 0.0, Cache.CacheType.DATA);
+        final Page page = new Page(1);
+        page.dirty = true;
+        cache.add(page);
+        cache.add(new Page(2));
+
+        assertNull(cache.get(1));
+        assertFalse(page.dirty);
+    }
+
+    @Test
+    public void evictedDirtyPagesAreCachedUntilSynced() {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", 1, 0.0, 0.0, Cache.CacheType.DATA);
+        final Page page = new Page(1);
+        page.dirty = true;
+        final boolean[] cachedWhilstSyncing = { false };
+        page.onSync = () -> cachedWhilstSyncing[0] = cache.get(1) == page;
+        cache.add(page);
+        cache.add(new Page(2));
+
+        assertTrue(cachedWhilstSyncing[0]);
+        assertNull(cache.get(1));
+        assertEquals(1, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void scanDoesNotEvictHotPages() {
+        final int size = 100;
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", size, 0.0, 0.0, Cache.CacheType.DATA);
+
+        // a hot working set, which is read again and again in between the pages of a scan,
+        // and so is re-loaded shortly after its eviction from probation
+        final int hot = 20;
+        int cold = 1000;
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < hot; i++) {
+                access(cache, i);
+                access(cache, cold++);
+            }
+        }
+
+        // a scan over many pages, each of which is read several times in short succession
+        for (final int end = cold + 10_000; cold < end; cold++) {
+            for (int j = 0; j < 3; j++) {
+                access(cache, cold);
+            }
+        }
+
+        for (int i = 0; i < hot; i++) {
+            assertNotNull("hot page " + i + " was evicted by the scan", cache.get(i));
+        }
+    }
+
+    @Test
+    public void referenceOnProbationDoesNotPromote() {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", 4, 0.0, 0.0, Cache.CacheType.DATA);
+        for (int i = 0; i < 4; i++) {
+            cache.add(new Page(i));
+            assertNotNull(cache.get(i));
+            cache.add(new Page(i));
+        }
+
+        // the pages on probation are evicted in FIFO order, although they were referenced again
+        cache.add(new Page(4));
+        assertNull(cache.get(0));
+
+        // but a page which is re-loaded after its eviction is promoted to main
+        cache.add(new Page(0));
+        for (int i = 5; i < 20; i++) {
+            cache.add(new Page(i));
+        }
+        assertNotNull(cache.get(0));
+    }
+
+    private static void access(final TwoQueueCache<Page> cache, final long key) {
+        if (cache.get(key) == null) {
+            cache.add(new Page(key));
+        }
+    }
+
+    @Test
+    public void pinnedPagesAreNotEvicted() {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", 4, 0.0, 0.0, Cache.CacheType.DATA);
+        final Page pinned = new Page(1);
+        pinned.allowUnload = false;
+        cache.add(pinned);
+        for (int i = 2; i < 100; i++) {
+            cache.add(new Page(i));
+        }
+
+        assertSame(pinned, cache.get(1));
+    }
+
+    @Test
+    public void removedPagesAreNotReturned() {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", 4, 0.0, 0.0, Cache.CacheType.DATA);
+        final Page page = new Page(1);
+        cache.add(page);
+        cache.remove(page);
+
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getUsedBuffers());
+
+        // the space of the removed page can be reused
+        for (int i = 2; i < 6; i++) {
+            cache.add(new Page(i));
+        }
+        assertEquals(4, cache.getUsedBuffers());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void shrink() {
+        final TwoQueueCache<Page> cache = new TwoQueueCache<>("test", 16, 0.0, 0.0, Cache.CacheType.DATA);
+        for (int i = 0; i < 16; i++) {
+            cache.add(new Page(i));
+        }
+        cache.resize(4);
+
+        assertEquals(4, cache.getBuffers());
+        assertEquals(4, cache.getUsedBuffers());
+    }
+
+    private static class Page implements Cacheable {
+        private final long key;
+        private int refCount = 0;
+        private int timestamp = 0;
+        boolean dirty = false;
+        boolean allowUnload = true;
+        Runnable onSync = null;
+
+        Page(final long key) {
+            this.key = key;
+        }
+
+        @Override
+        public long getKey() {
+            return key;
+        }
+
+        @Override
+        public int getReferenceCount() {
+            return refCount;
+        }
+
+        @Override
+        public int incReferenceCount() {
+            return ++refCount;
+        }
+
+        @Override
+        public int decReferenceCount() {
+            return --refCount;
+        }
+
+        @Override
+        public void setReferenceCount(final int count) {
+            this.refCount = count;
+        }
+
+        @Override
+        public void setTimestamp(final int timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean sync(final boolean syncJournal) {
+            if (onSync != null) {
+                onSync.run();
+            }
+            final boolean wasDirty = dirty;
+            dirty = false;
+            return wasDirty;
+        }
+
+        @Override
+        public boolean allowUnload() {
+            return allowUnload;
+        }
+
+        @Override
+        public boolean isDirty() {
+            return dirty;
+        }
+    }
+}
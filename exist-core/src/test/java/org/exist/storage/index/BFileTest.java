@@ -0,0 +1,139 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.index;
+
+import org.exist.storage.BrokerPool;
+import org.exist.storage.btree.DBException;
+import org.exist.storage.btree.Value;
+import org.exist.storage.lock.LockManager;
+import org.exist.storage.lock.ManagedLock;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.FileUtils;
+import org.exist.util.ReadOnlyException;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Low-level tests on the BFile.
+ */
+public class BFileTest {
+
+    private final static byte BFILE_TEST_FILE_ID = 0x7E;
+    private final static short BFILE_TEST_FILE_VERSION = Short.MIN_VALUE;
+
+    private static final int COUNT = 2000;
+
+    private Path file = null;
+
+    @Test
+    public void concurrentSharedReads() throws DBException, ReadOnlyException, InterruptedException, ExecutionException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final LockManager lockManager = pool.getLockManager();
+        final String lockName = FileUtils.fileName(file);
+        lockManager.enableBtreeSharedReads(lockName);
+
+        try (final BFile bfile = new BFile(pool, BFILE_TEST_FILE_ID, BFILE_TEST_FILE_VERSION, false, file, pool.getCacheManager(), 1.0, 0.01)) {
+            for (int i = 1; i <= COUNT; i++) {
+                bfile.put(key(i), value(i).getBytes(UTF_8), true);
+            }
+            bfile.flush();
+        }
+
+        // re-open the file, so that the readers race to populate the cache
+        try (final BFile bfile = new BFile(pool, BFILE_TEST_FILE_ID, BFILE_TEST_FILE_VERSION, false, file, pool.getCacheManager(), 1.0, 0.01)) {
+            final int readers = 8;
+            final ExecutorService executorService = Executors.newFixedThreadPool(readers);
+            try {
+                final List<Future<Integer>> results = new ArrayList<>();
+                for (int r = 0; r < readers; r++) {
+                    final long seed = r;
+                    results.add(executorService.submit(() -> {
+                        final Random random = new Random(seed);
+                        int found = 0;
+                        for (int j = 0; j < COUNT; j++) {
+                            final int i = random.nextInt(COUNT) + 1;
+                            try (final ManagedLock<ReentrantReadWriteLock> bfileLock = lockManager.acquireBtreeReadLock(lockName)) {
+                                final Value value = bfile.get(key(i));
+                                if (value != null && value(i).equals(new String(value.getData(), UTF_8))) {
+                                    found++;
+                                }
+                            }
+                        }
+                        return found;
+                    }));
+                }
+
+                for (final Future<Integer> result : results) {
+                    assertEquals(COUNT, result.get().intValue());
+                }
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+    }
+
+    private static Value key(final int i) {
+        return new Value("K" + i);
+    }
+
+    /**
+     * Every 100th value is larger than a page, so that it is stored in overflow pages.
+     */
+    private static String value(final int i) {
+        final StringBuilder builder = new StringBuilder("V").append(i);
+        final int repeat = i % 100 == 0 ? 1000 : 10;
+        for (int j = 0; j < repeat; j++) {
+            builder.append('-').append(i);
+        }
+        return builder.toString();
+    }
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void initialize() {
+        // the BFile creates the file if it does not exist yet
+        file = temporaryFolder.getRoot().toPath().resolve("test.dbx");
+    }
+
+    @After
+    public void cleanUp() {
+        FileUtils.deleteQuietly(file);
+    }
+}
@@ -26,6 +26,8 @@ import org.easymock.CaptureType;
 import org.exist.EXistException;
 import org.exist.scheduler.Scheduler;
 import org.exist.storage.BrokerPool;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.TxnCommit;
 import org.exist.util.Configuration;
 import org.exist.util.FileUtils;
 import org.exist.util.ReadOnlyException;
@@ -39,9 +41,15 @@ import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -412,6 +420,69 @@ public class JournalTest {
         verify(mockBrokerPool, mockConfiguration);
     }
 
+    @Test
+    public void writeToLogAndSyncConcurrently() throws EXistException, IOException, ReadOnlyException, InterruptedException, ExecutionException {
+        final BrokerPool mockBrokerPool = mock(BrokerPool.class);
+        final Configuration mockConfiguration = mock(Configuration.class);
+        final Scheduler mockScheduler = createNiceMock(Scheduler.class);
+        final TransactionManager mockTransactionManager = createNiceMock(TransactionManager.class);
+        expect(mockBrokerPool.getConfiguration()).andReturn(mockConfiguration);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT, Journal.DEFAULT_SYNC_ON_COMMIT)).andReturn(true);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_JOURNAL_DIR)).andReturn(null);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_MIN, Journal.DEFAULT_MIN_SIZE)).andReturn(Journal.DEFAULT_MIN_SIZE);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_LIMIT, Journal.DEFAULT_MAX_SIZE)).andReturn(Journal.DEFAULT_MAX_SIZE);
+        expect(mockBrokerPool.getScheduler()).andReturn(mockScheduler);
+        expect(mockBrokerPool.getTransactionManager()).andReturn(mockTransactionManager).anyTimes();
+
+        replay(mockBrokerPool, mockConfiguration, mockTransactionManager);
+
+        final Path tempJournalDir = TEMPORARY_FOLDER.newFolder().toPath();
+        Files.createDirectories(tempJournalDir);
+        assertTrue(Files.exists(tempJournalDir));
+
+        // group commit window of 100 microseconds
+        final Journal journal = new Journal(mockBrokerPool, tempJournalDir, 100, Journal.DEFAULT_GROUP_COMMIT_SIZE);
+        journal.initialize();
+        journal.switchFiles();
+
+        final int committers = 8;
+        final int commitsPerCommitter = 50;
+        final ExecutorService executorService = Executors.newFixedThreadPool(committers);
+        try {
+            final List<Future<Lsn>> futures = new ArrayList<>();
+            for (int i = 0; i < committers; i++) {
+                final long txnIdBase = i * commitsPerCommitter;
+                final Callable<Lsn> committer = () -> {
+                    Lsn maxLsn = Lsn.LSN_INVALID;
+                    for (int j = 0; j < commitsPerCommitter; j++) {
+                        final TxnCommit txnCommit = new TxnCommit(txnIdBase + j);
+                        journal.writeToLogAndSync(txnCommit);
+
+                        // once writeToLogAndSync has returned, the entry must have been written to the journal file
+                        assertTrue(txnCommit.getLsn().compareTo(journal.lastWrittenLsn()) <= 0);
+                        maxLsn = txnCommit.getLsn();
+                    }
+                    return maxLsn;
+                };
+                futures.add(executorService.submit(committer));
+            }
+
+            for (final Future<Lsn> future : futures) {
+                assertTrue(future.get().compareTo(journal.lastWrittenLsn()) <= 0);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        // every commit record has been written to the journal file
+        final long expectedSize = Journal.JOURNAL_HEADER_LEN + ((long) committers * commitsPerCommitter * (Journal.LOG_ENTRY_BASE_LEN + new TxnCommit(0).getLogSize()));
+        assertEquals(expectedSize, Files.size(journal.getFile(journal.getCurrentJournalFileNumber())));
+
+        journal.close();
+
+        verify(mockBrokerPool, mockConfiguration);
+    }
+
     private static Path createTempDirWithFiles(final List<String> fileNames) throws IOException {
         final Path tempFolder = TEMPORARY_FOLDER.newFolder().toPath();
         Files.createDirectories(tempFolder);
@@ -45,7 +45,7 @@ import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.Stack;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.junit.Assert.*;
 
@@ -686,19 +686,19 @@ public class LockManagerTest {
     public void getBtreeLock_isStripedByPath() {
         final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
 
-        final ReentrantLock btree1Lock1 = lockManager.getBTreeLock("btree1.dbx");
+        final ReentrantReadWriteLock btree1Lock1 = lockManager.getBTreeLock("btree1.dbx");
         assertNotNull(btree1Lock1);
 
-        final ReentrantLock btree1Lock2 = lockManager.getBTreeLock("btree1.dbx");
+        final ReentrantReadWriteLock btree1Lock2 = lockManager.getBTreeLock("btree1.dbx");
         assertNotNull(btree1Lock2);
 
         assertTrue(btree1Lock1 == btree1Lock2);
 
-        final ReentrantLock btree2Lock = lockManager.getBTreeLock("btree2.dbx");
+        final ReentrantReadWriteLock btree2Lock = lockManager.getBTreeLock("btree2.dbx");
         assertNotNull(btree2Lock);
         assertFalse(btree1Lock1 == btree2Lock);
 
-        final ReentrantLock btree3Lock = lockManager.getBTreeLock("btree3.dbx");
+        final ReentrantReadWriteLock btree3Lock = lockManager.getBTreeLock("btree3.dbx");
         assertNotNull(btree3Lock);
         assertFalse(btree1Lock1 == btree3Lock);
 
@@ -716,7 +716,7 @@ public class LockManagerTest {
 
         final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
         final Stack<LockAction> events = recordLockEvents(lockManager, () -> {
-            try (final ManagedLock<ReentrantLock> btree1Lock
+            try (final ManagedLock<ReentrantReadWriteLock> btree1Lock
                          = lockManager.acquireBtreeReadLock(btree1Name)) {
                 assertNotNull(btree1Lock);
             }
@@ -752,7 +752,7 @@ public class LockManagerTest {
 
         final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
         final Stack<LockAction> events = recordLockEvents(lockManager, () -> {
-            try (final ManagedLock<ReentrantLock> btree1Lock
+            try (final ManagedLock<ReentrantReadWriteLock> btree1Lock
                          = lockManager.acquireBtreeWriteLock(btree1Name)) {
                 assertNotNull(btree1Lock);
             }
@@ -778,6 +778,74 @@ public class LockManagerTest {
     }
 
 
+    /**
+     * A READ lock on a BTree which has not
+     * enabled shared reads is exclusive
+     */
+    @Test
+    public void btreeReadLockIsExclusiveByDefault() throws LockException {
+        final String btree1Name = "btree1.dbx";
+
+        final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
+        try (final ManagedLock<ReentrantReadWriteLock> btree1Lock = lockManager.acquireBtreeReadLock(btree1Name)) {
+            assertTrue(btree1Lock.lock.isWriteLockedByCurrentThread());
+            assertTrue(lockManager.isBtreeLocked(btree1Name));
+        }
+        assertFalse(lockManager.isBtreeLocked(btree1Name));
+    }
+
+    /**
+     * A READ lock on a BTree which has enabled shared
+     * reads is shared between readers, but excludes writers
+     */
+    @Test
+    public void btreeReadLockIsSharedWhenEnabled() throws LockException, InterruptedException {
+        final String btree1Name = "btree1.dbx";
+
+        final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
+        lockManager.enableBtreeSharedReads(btree1Name);
+
+        try (final ManagedLock<ReentrantReadWriteLock> btree1Lock = lockManager.acquireBtreeReadLock(btree1Name)) {
+            assertFalse(btree1Lock.lock.isWriteLocked());
+            assertTrue(lockManager.isBtreeLocked(btree1Name));
+            assertFalse(lockManager.isBtreeLockedForWrite(btree1Name));
+
+            final AtomicBoolean otherReaderAcquired = new AtomicBoolean();
+            final AtomicBoolean writerAcquired = new AtomicBoolean();
+            final Thread otherReader = new Thread(() -> {
+                try (final ManagedLock<ReentrantReadWriteLock> otherLock = lockManager.acquireBtreeReadLock(btree1Name)) {
+                    otherReaderAcquired.set(true);
+                } catch (final LockException e) {
+                    // no-op, checked below
+                }
+                writerAcquired.set(lockManager.getBTreeLock(btree1Name).writeLock().tryLock());
+            });
+            otherReader.start();
+            otherReader.join(10_000);
+
+            assertTrue(otherReaderAcquired.get());
+            assertFalse(writerAcquired.get());
+        }
+        assertFalse(lockManager.isBtreeLocked(btree1Name));
+    }
+
+    /**
+     * A shared READ lock on a BTree cannot be upgraded to
+     * a WRITE lock, which would otherwise deadlock
+     */
+    @Test(expected = LockException.class)
+    public void btreeSharedReadLockCannotBeUpgraded() throws LockException {
+        final String btree1Name = "btree1.dbx";
+
+        final LockManager lockManager = new LockManager(CONCURRENCY_LEVEL);
+        lockManager.enableBtreeSharedReads(btree1Name);
+
+        try (final ManagedLock<ReentrantReadWriteLock> btree1ReadLock = lockManager.acquireBtreeReadLock(btree1Name);
+                final ManagedLock<ReentrantReadWriteLock> btree1WriteLock = lockManager.acquireBtreeWriteLock(btree1Name)) {
+            fail("Upgraded READ_LOCK to WRITE_LOCK");
+        }
+    }
+
     private Stack<LockAction> recordLockEvents(final LockManager lockManager, final RunnableE<LockException> runnable) throws LockException{
         final LockTable lockTable = lockManager.getLockTable();
         final LockEventRecordingListener lockEventRecordingListener = new LockEventRecordingListener();
@@ -0,0 +1,91 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.PropertiesBuilder;
+import org.exist.xquery.value.Sequence;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs group by clauses with more groups than the spill threshold,
+ * so that their tuples are grouped on disk.
+ */
+public class GroupBySpillTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            PropertiesBuilder.propertiesBuilder()
+                    .put(GroupByClause.PROPERTY_GROUP_BY_SPILL_THRESHOLD, 3)
+                    .build(),
+            true,
+            true);
+
+    @Test
+    public void atomicValues() throws EXistException, PermissionDeniedException, XPathException {
+        assertQuery("0:100 1:100 2:100 3:100 4:100 5:100 6:100 7:100 8:100 9:100",
+                "for $i in 1 to 1000 let $s := string($i) group by $k := $i mod 10 order by $k " +
+                        "return $k || ':' || count($s)");
+    }
+
+    @Test
+    public void tupleOrderIsKept() throws EXistException, PermissionDeniedException, XPathException {
+        assertQuery("a:1,5,9 b:2,6,10 c:3,7 d:4,8",
+                "for $i in 1 to 10 group by $k := ('a', 'b', 'c', 'd')[($i - 1) mod 4 + 1] order by $k " +
+                        "return $k || ':' || string-join($i, ',')");
+    }
+
+    @Test
+    public void mixedValues() throws EXistException, PermissionDeniedException, XPathException {
+        assertQuery("1:3:true 2:2:1.5 3:1:2020-01-01 4:1:x 5:1:x",
+                "for $v in (1, 2, 3, 4, 5, 1, 2, 1) " +
+                        "let $x := (true(), 1.5e0, xs:date('2020-01-01'), <x>x</x>, map { 'x': 'x' })[$v] " +
+                        "group by $v order by $v " +
+                        "return $v || ':' || count($x) || ':' || (if ($x[1] instance of map(*)) then $x[1]('x') else string($x[1]))");
+    }
+
+    @Test
+    public void collation() throws EXistException, PermissionDeniedException, XPathException {
+        assertQuery("a:2 b:2 c:2 d:1 e:1",
+                "for $s in ('a', 'A', 'b', 'B', 'c', 'C', 'd', 'e') " +
+                        "group by $k := $s collation '?strength=primary' order by lower-case($k) " +
+                        "return lower-case($k) || ':' || count($s)");
+    }
+
+    private static void assertQuery(final String expected, final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence result = xquery.execute(broker, "string-join((" + query + "), ' ')", null);
+            assertEquals(expected, result.getStringValue());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+import com.ibm.icu.text.Collator;
+import org.exist.util.Collations;
+import org.exist.xquery.XPathException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class AtomicValueKeyTest {
+
+    @Test
+    public void numericValues() throws XPathException {
+        assertEqualKeys(null, new IntegerValue(1), new DecimalValue("1.0"));
+        assertEqualKeys(null, new IntegerValue(1), new DoubleValue(1.0));
+        assertEqualKeys(null, new DecimalValue("0.5"), new FloatValue(0.5f));
+        assertEqualKeys(null, new DoubleValue(0.0), new DoubleValue(-0.0));
+        assertEqualKeys(null, new DoubleValue(Double.NaN), new FloatValue(Float.NaN));
+        assertNotEquals(key(null, new IntegerValue(1)), key(null, new IntegerValue(2)));
+    }
+
+    @Test
+    public void stringValues() throws XPathException {
+        assertEqualKeys(null, new StringValue("abc"), new UntypedAtomicValue("abc"));
+        assertEqualKeys(null, new StringValue("http://exist-db.org"), new AnyURIValue("http://exist-db.org"));
+        assertNotEquals(key(null, new StringValue("abc")), key(null, new StringValue("ABC")));
+        assertNotEquals(key(null, new StringValue("1")), key(null, new IntegerValue(1)));
+    }
+
+    @Test
+    public void collation() throws XPathException {
+        final Collator collator = Collations.getCollationFromURI("?strength=primary");
+        assertEqualKeys(collator, new StringValue("abc"), new StringValue("ABC"));
+        assertEqualKeys(collator, new StringValue("D\u00FCsseldorf"), new UntypedAtomicValue("Dusseldorf"));
+        assertNotEquals(key(collator, new StringValue("abc")), key(collator, new StringValue("abd")));
+    }
+
+    @Test
+    public void dateTimeValues() throws XPathException {
+        assertEqualKeys(null, new DateTimeValue("2020-01-01T01:00:00+01:00"), new DateTimeValue("2020-01-01T00:00:00Z"));
+        assertNotEquals(key(null, new DateTimeValue("2020-01-01T00:00:00Z")), key(null, new DateTimeValue("2020-01-02T00:00:00Z")));
+    }
+
+    @Test
+    public void emptyValue() {
+        assertEqualKeys(null, AtomicValue.EMPTY_VALUE, AtomicValue.EMPTY_VALUE);
+        assertNotEquals(key(null, AtomicValue.EMPTY_VALUE), key(null, new StringValue("")));
+    }
+
+    private static void assertEqualKeys(final Collator collator, final AtomicValue v1, final AtomicValue v2) {
+        final AtomicValueKey k1 = key(collator, v1);
+        final AtomicValueKey k2 = key(collator, v2);
+        assertEquals(k1, k2);
+        assertEquals(k1.hashCode(), k2.hashCode());
+    }
+
+    private static AtomicValueKey key(final Collator collator, final AtomicValue value) {
+        return new AtomicValueKey(collator, value);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+import org.exist.xquery.XPathException;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NumericSequenceBuilderTest {
+
+    @Test
+    public void integers() throws XPathException {
+        final NumericSequenceBuilder builder = new NumericSequenceBuilder();
+        for (int i = 1; i <= 100; i++) {
+            builder.add(new IntegerValue(i));
+        }
+
+        final Sequence sequence = builder.toSequence();
+        assertTrue(sequence instanceof LongArraySequence);
+        assertEquals(100, sequence.getItemCount());
+        assertEquals(Type.INTEGER, sequence.getItemType());
+        assertEquals(42, ((IntegerValue) sequence.itemAt(41)).getLong());
+
+        final LongSequence longs = (LongSequence) sequence;
+        assertEquals(BigInteger.valueOf(5050), longs.sum());
+        assertEquals(1, longs.min());
+        assertEquals(100, longs.max());
+    }
+
+    @Test
+    public void integersSumOverflow() throws XPathException {
+        final NumericSequenceBuilder builder = new NumericSequenceBuilder();
+        builder.add(new IntegerValue(Long.MAX_VALUE));
+        builder.add(new IntegerValue(Long.MAX_VALUE));
+        builder.add(new IntegerValue(-1));
+
+        final LongSequence longs = (LongSequence) builder.toSequence();
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE).shiftLeft(1).subtract(BigInteger.ONE), longs.sum());
+    }
+
+    @Test
+    public void doubles() throws XPathException {
+        final NumericSequenceBuilder builder = new NumericSequenceBuilder();
+        builder.addAll(new DoubleValue(-0.0));
+        builder.addAll(new DoubleValue(2.5));
+
+        final Sequence sequence = builder.toSequence();
+        assertTrue(sequence instanceof DoubleArraySequence);
+        final DoubleSequence doubles = (DoubleSequence) sequence;
+        assertEquals(2.5, doubles.sum(), 0);
+        assertEquals(-0.0, doubles.min(), 0);
+        assertEquals(2.5, doubles.max(), 0);
+
+        builder.add(new DoubleValue(Double.NaN));
+        assertTrue(Double.isNaN(((DoubleSequence) builder.toSequence()).max()));
+    }
+
+    @Test
+    public void mixedTypes() throws XPathException {
+        final NumericSequenceBuilder builder = new NumericSequenceBuilder();
+        builder.add(new IntegerValue(1));
+        builder.add(new IntegerValue(2));
+        builder.add(new DoubleValue(3.0));
+        builder.add(new StringValue("four"));
+
+        final Sequence sequence = builder.toSequence();
+        assertTrue(sequence instanceof ValueSequence);
+        assertEquals(4, sequence.getItemCount());
+        assertEquals(Type.INTEGER, sequence.itemAt(1).getType());
+        assertEquals(Type.DOUBLE, sequence.itemAt(2).getType());
+        assertEquals("four", sequence.itemAt(3).getStringValue());
+    }
+
+    @Test
+    public void integerSubtypes() throws XPathException {
+        final NumericSequenceBuilder builder = new NumericSequenceBuilder();
+        builder.add(new IntegerValue(1));
+        builder.add(new IntegerValue(2, Type.INT));
+
+        final Sequence sequence = builder.toSequence();
+        assertFalse(sequence instanceof LongSequence);
+        assertEquals(Type.INT, sequence.itemAt(1).getType());
+    }
+
+    @Test
+    public void empty() {
+        assertTrue(new NumericSequenceBuilder().toSequence().isEmpty());
+    }
+}
@@ -25,11 +25,15 @@ package org.exist.xquery.value;
 import org.exist.xquery.Expression;
 import org.exist.xquery.OrderSpec;
 import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 
 public class OrderedValueSequenceTest {
@@ -96,6 +100,69 @@ public class OrderedValueSequenceTest {
         assertEquals(69, count);
     }
 
+    @Test
+    public void topK() throws XPathException {
+        final long[] keys = { 5, 3, 9, 1, 7, 3, 8 };
+        final Expression sortExpr = createMock(Expression.class);
+        for (final long key : keys) {
+            expect(sortExpr.eval(null)).andReturn(new IntegerValue(key));
+        }
+        replay(sortExpr);
+
+        final OrderedValueSequence orderedValueSequence = new OrderedValueSequence(new OrderSpec[] { new OrderSpec(mockContext(), sortExpr) }, 100, 3);
+        for (int i = 0; i < keys.length; i++) {
+            orderedValueSequence.add(new StringValue("item" + i));
+        }
+        orderedValueSequence.sort();
+
+        assertEquals(3, orderedValueSequence.getItemCount());
+        assertEquals(keys.length, orderedValueSequence.getAddedCount());
+        assertEquals("item3", orderedValueSequence.itemAt(0).getStringValue());
+        assertEquals("item1", orderedValueSequence.itemAt(1).getStringValue());
+        assertEquals("item5", orderedValueSequence.itemAt(2).getStringValue());
+
+        verify(sortExpr);
+    }
+
+    @Test
+    public void topKRetainsFirstItemsOfFullSort() throws XPathException {
+        final Random random = new Random(42);
+        final long[] keys = new long[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextInt(50);
+        }
+
+        final OrderedValueSequence all = orderedValueSequence(keys, OrderedValueSequence.NO_LIMIT);
+        final OrderedValueSequence topK = orderedValueSequence(keys, 20);
+
+        assertEquals(20, topK.getItemCount());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(all.itemAt(i).getStringValue(), topK.itemAt(i).getStringValue());
+        }
+    }
+
+    private static OrderedValueSequence orderedValueSequence(final long[] keys, final int limit) throws XPathException {
+        final Expression sortExpr = createMock(Expression.class);
+        for (final long key : keys) {
+            expect(sortExpr.eval(null)).andReturn(new IntegerValue(key));
+        }
+        replay(sortExpr);
+
+        final OrderedValueSequence orderedValueSequence = new OrderedValueSequence(new OrderSpec[] { new OrderSpec(mockContext(), sortExpr) }, keys.length, limit);
+        for (int i = 0; i < keys.length; i++) {
+            orderedValueSequence.add(new StringValue("item" + i));
+        }
+        orderedValueSequence.sort();
+        return orderedValueSequence;
+    }
+
+    private static XQueryContext mockContext() {
+        final XQueryContext context = createMock(XQueryContext.class);
+        expect(context.getDefaultCollator()).andReturn(null).anyTimes();
+        replay(context);
+        return context;
+    }
+
     private static OrderedValueSequence mockOrderedValueSequence(final int size) throws XPathException {
         final Expression mockSortExpr = createMock(Expression.class);
         expect(mockSortExpr.eval(null)).andReturn(Sequence.EMPTY_SEQUENCE).anyTimes();
@@ -31,6 +31,7 @@ import org.apache.lucene.facet.taxonomy.SearcherTaxonomyManager;
 import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
 import org.apache.lucene.index.*;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
@@ -51,8 +52,27 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
+import static org.exist.util.ThreadUtils.newInstanceThread;
+
+/**
+ * Full text index based on Apache Lucene.
+ *
+ * By default, every query refreshes the readers, so that it sees all of the changes
+ * made to the index so far. In near real-time mode ({@link #NEAR_REAL_TIME_ATTRIBUTE}),
+ * the readers are instead refreshed by a background thread at a fixed interval
+ * ({@link #REFRESH_INTERVAL_ATTRIBUTE}), so that a query may not yet see the changes
+ * made within the last interval. This avoids flushing a small segment for every query
+ * which follows an update.
+ *
+ * In both modes, changes are only committed to disk on a major sync of the database, i.e.
+ * when a checkpoint is written to the journal. If the database crashes, the uncommitted
+ * changes are lost, and are restored by the reindex which follows the recovery from the journal.
+ */
 public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     
     public final static Version LUCENE_VERSION_IN_USE = Version.LUCENE_4_10_4;
@@ -64,6 +84,10 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 	private static final String DIR_NAME = "lucene";
 	private static final String TAXONOMY_DIR_NAME = "taxonomy";
 
+    public static final String NEAR_REAL_TIME_ATTRIBUTE = "near-real-time";
+    public static final String REFRESH_INTERVAL_ATTRIBUTE = "refresh-interval";
+    public static final long DEFAULT_REFRESH_INTERVAL = 1000;
+
     protected Directory directory;
     protected Directory taxoDirectory;
 
@@ -77,6 +101,10 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     protected SearcherTaxonomyManager searcherManager = null;
     protected ReaderManager readerManager = null;
 
+    protected boolean nearRealTime = false;
+    protected long refreshInterval = DEFAULT_REFRESH_INTERVAL;
+    private ScheduledExecutorService refreshExecutor = null;
+
     public String getDirName() {
         return DIR_NAME;
     }
@@ -97,6 +125,24 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
         if (LOG.isDebugEnabled())
             LOG.debug("Using buffer size: {}", bufferSize);
+
+        nearRealTime = "yes".equalsIgnoreCase(config.getAttribute(NEAR_REAL_TIME_ATTRIBUTE))
+                || "true".equalsIgnoreCase(config.getAttribute(NEAR_REAL_TIME_ATTRIBUTE));
+        final String refreshIntervalParam = config.getAttribute(REFRESH_INTERVAL_ATTRIBUTE);
+        if (!refreshIntervalParam.isEmpty()) {
+            try {
+                refreshInterval = Long.parseLong(refreshIntervalParam);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid refresh interval setting for lucene index: {}", refreshIntervalParam, e);
+            }
+            if (refreshInterval <= 0) {
+                LOG.warn("Invalid refresh interval setting for lucene index: {}", refreshIntervalParam);
+                refreshInterval = DEFAULT_REFRESH_INTERVAL;
+            }
+        }
+
+        if (LOG.isDebugEnabled() && nearRealTime)
+            LOG.debug("Using near real-time readers, refreshed every {}ms", refreshInterval);
         
         NodeList nl = config.getElementsByTagName("analyzer");
         if (nl.getLength() > 0) {
@@ -137,6 +183,15 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
             searcherManager = new SearcherTaxonomyManager(cachedWriter, true, null, cachedTaxonomyWriter);
             readerManager = new ReaderManager(cachedWriter, true);
+
+            if (nearRealTime) {
+                refreshExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = newInstanceThread(pool, "lucene.refresh", runnable);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                refreshExecutor.scheduleWithFixedDelay(this::refresh, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+            }
         } catch (IOException e) {
             throw new DatabaseConfigurationException("Exception while reading lucene index directory: " +
                 e.getMessage(), e);
@@ -147,6 +202,15 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
     @Override
     public synchronized void close() throws DBException {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+            try {
+                refreshExecutor.awaitTermination(refreshInterval * 2, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            refreshExecutor = null;
+        }
         try {
             if (searcherManager != null) {
                 searcherManager.close();
@@ -243,8 +307,24 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         }
     }
 
+    /**
+     * Refresh the readers of the index, so that they see the changes
+     * made since they were last refreshed. Called periodically in near
+     * real-time mode.
+     */
+    private void refresh() {
+        try {
+            searcherManager.maybeRefresh();
+            readerManager.maybeRefresh();
+        } catch (final IOException | AlreadyClosedException e) {
+            LOG.warn("Error while refreshing lucene index readers: {}", e.getMessage(), e);
+        }
+    }
+
     public <R> R withReader(FunctionE<IndexReader, R, IOException> fn) throws IOException {
-        readerManager.maybeRefreshBlocking();
+        if (!nearRealTime) {
+            readerManager.maybeRefreshBlocking();
+        }
         final DirectoryReader reader = readerManager.acquire();
         try {
             return fn.apply(reader);
@@ -254,7 +334,9 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     }
 
     public <R> R withSearcher(Function2E<SearcherTaxonomyManager.SearcherAndTaxonomy, R, IOException, XPathException> consumer) throws IOException, XPathException {
-        searcherManager.maybeRefreshBlocking();
+        if (!nearRealTime) {
+            searcherManager.maybeRefreshBlocking();
+        }
         final SearcherTaxonomyManager.SearcherAndTaxonomy searcher = searcherManager.acquire();
         try {
             return consumer.apply(searcher);
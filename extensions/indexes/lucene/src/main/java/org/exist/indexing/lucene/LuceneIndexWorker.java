@@ -63,6 +63,7 @@ import org.exist.util.Occurrences;
 import org.exist.util.pool.NodePool;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
+import org.exist.xquery.modules.lucene.LuceneQueryRewriter;
 import org.exist.xquery.modules.lucene.QueryOptions;
 import org.exist.xquery.value.*;
 import org.w3c.dom.*;
@@ -138,7 +139,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     public QueryRewriter getQueryRewriter(XQueryContext context) {
-        return null;
+        return new LuceneQueryRewriter(context);
     }
 
     public Object configure(IndexController controller, NodeList configNodes, Map<String, String> namespaces) throws DatabaseConfigurationException {
@@ -450,7 +451,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                     query = drilldown(facets.get(), query, config);
                 }
                 searchAndProcess(contextId, qname, docs, contextSet, resultSet,
-                        returnAncestor, searcher, query, options.getFields(), config);
+                        returnAncestor, searcher, query, options.getFields(), config, options.getTop());
             }
             return resultSet;
         });
@@ -494,7 +495,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 }
                 if (query != null) {
                     searchAndProcess(contextId, qname, docs, contextSet, resultSet,
-                            returnAncestor, searcher, query, options.getFields(), config);
+                            returnAncestor, searcher, query, options.getFields(), config, options.getTop());
                 }
             }
             return resultSet;
@@ -512,7 +513,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             final Query query = queryTranslator.parse(field, queryRoot, analyzer, options);
             if (query != null) {
                 searchAndProcess(contextId, null, docs, contextSet, resultSet,
-                        returnAncestor, searcher, query, null, config);
+                        returnAncestor, searcher, query, null, config, options.getTop());
             }
             return resultSet;
         });
@@ -527,19 +528,103 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         return drillDownQuery;
     }
 
+    /**
+     * Run the query and add the matching nodes to the result set.
+     *
+     * If only the best scoring matches are requested, all of the hits are still counted
+     * for the facets, but only the best scoring hits are resolved to nodes and added to
+     * the result set. Hits which score the same as the last of the best scoring hits are
+     * added as well, see {@link TopHits}.
+     *
+     * @param top the number of best scoring matches to return, or 0 to return all matches
+     */
     private void searchAndProcess(int contextId, QName qname, DocumentSet docs,
                                   NodeSet contextSet, NodeSet resultSet, boolean returnAncestor,
                                   SearcherTaxonomyManager.SearcherAndTaxonomy searcher, Query query,
-                                  @Nullable Set<String> fields, LuceneConfig config) throws IOException {
+                                  @Nullable Set<String> fields, LuceneConfig config, int top) throws IOException {
         final LuceneFacets facets = new LuceneFacets();
         final FacetsCollector facetsCollector = new FacetsCollector();
-        final LuceneHitCollector collector = new LuceneHitCollector(qname, query, docs, contextSet, resultSet, returnAncestor, contextId, facets, facetsCollector, fields);
+        final TopHits topHits = top > 0 ? new TopHits(top) : null;
+        final LuceneHitCollector collector = new LuceneHitCollector(qname, query, docs, contextSet, resultSet, returnAncestor, contextId, facets, facetsCollector, fields, topHits);
         searcher.searcher.search(query, collector);
+        if (topHits != null) {
+            collector.collectTopDocs(searcher.searcher.getIndexReader().leaves(), topHits.scoreDocs());
+        }
 
         // compute facets
         facets.compute(searcher.taxonomyReader, config.facetsConfig, facetsCollector);
     }
 
+    /**
+     * Keeps the best scoring hits of a search.
+     *
+     * A {@link TopScoreDocCollector} breaks ties by the Lucene document number, which does
+     * not follow the document order of the nodes, e.g. after a document has been reindexed.
+     * The hits which score the same as the N-th best hit are therefore all kept, so that a
+     * stable order by score, of which only the first N items are used, returns the same
+     * items as without the limit.
+     */
+    private static class TopHits {
+
+        private final int top;
+
+        /** the scores of the best N hits collected so far, the lowest score first */
+        private final PriorityQueue<Float> topScores;
+
+        /** the hits which score at least as high as the N-th best hit at the time they were collected */
+        private final List<ScoreDoc> hits = new ArrayList<>();
+
+        private float minScore = Float.NEGATIVE_INFINITY;
+        private int pruneAt;
+
+        private TopHits(int top) {
+            this.top = top;
+            this.topScores = new PriorityQueue<>(top);
+            this.pruneAt = 2 * top;
+        }
+
+        /**
+         * Collect a hit.
+         *
+         * @param doc the Lucene document number of the hit within the whole index
+         * @param score the score of the hit
+         */
+        private void collect(int doc, float score) {
+            if (topScores.size() < top) {
+                topScores.add(score);
+                if (topScores.size() == top) {
+                    minScore = topScores.peek();
+                }
+            } else if (score < minScore) {
+                return;
+            } else if (score > minScore) {
+                topScores.poll();
+                topScores.add(score);
+                minScore = topScores.peek();
+                if (hits.size() >= pruneAt) {
+                    prune();
+                }
+            }
+            hits.add(new ScoreDoc(doc, score));
+        }
+
+        /**
+         * Drop the hits which score lower than the N-th best hit.
+         */
+        private void prune() {
+            hits.removeIf(hit -> hit.score < minScore);
+            pruneAt = Math.max(2 * top, 2 * hits.size());
+        }
+
+        /**
+         * @return the best N hits, and all of the hits which score the same as the N-th best hit
+         */
+        private ScoreDoc[] scoreDocs() {
+            prune();
+            return hits.toArray(new ScoreDoc[0]);
+        }
+    }
+
     /**
      * Wrapper around Lucene {@link Facets}, which are computed after the search has finished.
      */
@@ -595,7 +680,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             options.configureParser(parser.getConfiguration());
             Query query = parser.parse(queryString);
             searchAndProcess(contextId, null, docs, contextSet, resultSet,
-                    returnAncestor, searcher, query, null, config);
+                    returnAncestor, searcher, query, null, config, options.getTop());
             return resultSet;
         });
     }
@@ -905,6 +990,15 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         return false;
     }
 
+    /**
+     * Collects the hits of a query and adds the matching nodes to the result set.
+     *
+     * If {@link TopHits} are given, the hits are not added to the result set during
+     * the search, but only passed on to the top hits, which keep the best scoring hits.
+     * Hits which would not be added to the result set are not passed on, so that they
+     * cannot take the place of a better scoring hit. The best scoring hits are added to
+     * the result set after the search by {@link #collectTopDocs(List, ScoreDoc[])}.
+     */
     private class LuceneHitCollector extends Collector {
 
         private Scorer scorer;
@@ -922,8 +1016,10 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         private final LuceneFacets facets;
         private final FacetsCollector chainedCollector;
         private final Set<String> fields;
+        @Nullable private final TopHits topHits;
+        private int docBase;
 
-        private LuceneHitCollector(QName qname, Query query, DocumentSet docs, NodeSet contextSet, NodeSet resultSet, boolean returnAncestor, int contextId, LuceneFacets facets, FacetsCollector nextCollector, @Nullable Set<String> fields) {
+        private LuceneHitCollector(QName qname, Query query, DocumentSet docs, NodeSet contextSet, NodeSet resultSet, boolean returnAncestor, int contextId, LuceneFacets facets, FacetsCollector nextCollector, @Nullable Set<String> fields, @Nullable TopHits topHits) {
             this.qname = qname;
             this.docs = docs;
             this.contextSet = contextSet;
@@ -934,6 +1030,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             this.facets = facets;
             this.chainedCollector = nextCollector;
             this.fields = fields;
+            this.topHits = topHits;
         }
 
         @Override
@@ -944,10 +1041,15 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
         @Override
         public void setNextReader(AtomicReaderContext atomicReaderContext) throws IOException {
+            setReader(atomicReaderContext);
+            this.docBase = atomicReaderContext.docBase;
+            chainedCollector.setNextReader(atomicReaderContext);
+        }
+
+        private void setReader(AtomicReaderContext atomicReaderContext) throws IOException {
             this.reader = atomicReaderContext.reader();
             this.docIdValues = this.reader.getNumericDocValues(FIELD_DOC_ID);
             this.nodeIdValues = this.reader.getBinaryDocValues(LuceneUtil.FIELD_NODE_ID);
-            chainedCollector.setNextReader(atomicReaderContext);
         }
 
         @Override
@@ -958,47 +1060,12 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         @Override
         public void collect(int doc) {
             try {
-                float score = scorer.score();
-                int docId = (int) this.docIdValues.get(doc);
-                DocumentImpl storedDocument = docs.getDoc(docId);
-                if (storedDocument == null)
-                    return;
-                final BytesRef ref = this.nodeIdValues.get(doc);
-                int units = ByteConversion.byteToShort(ref.bytes, ref.offset);
-                NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, ref.bytes, ref.offset + 2);
-                //LOG.info("doc: " + docId + "; node: " + nodeId.toString() + "; units: " + units);
-
-                NodeProxy storedNode = new NodeProxy(storedDocument, nodeId);
-                if (qname != null)
-                    storedNode.setNodeType(qname.getNameType() == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node.ELEMENT_NODE);
-                // if a context set is specified, we can directly check if the
-                // matching node is a descendant of one of the nodes
-                // in the context set.
-                if (contextSet != null) {
-                    int sizeHint = contextSet.getSizeHint(storedDocument);
-                    if (returnAncestor) {
-                        NodeProxy parentNode = contextSet.get(storedNode);
-                        // NodeProxy parentNode = contextSet.parentWithChild(storedNode, false, true, NodeProxy.UNKNOWN_NODE_LEVEL);
-                        if (parentNode != null) {
-                            LuceneMatch match = createMatch(doc, score, nodeId);
-                            parentNode.addMatch(match);
-                            resultSet.add(parentNode, sizeHint);
-                            if (Expression.NO_CONTEXT_ID != contextId) {
-                                parentNode.deepCopyContext(storedNode, contextId);
-                            } else
-                                parentNode.copyContext(storedNode);
-                            chainedCollector.collect(doc);
-                        }
-                    } else {
-                        LuceneMatch match = createMatch(doc, score, nodeId);
-                        storedNode.addMatch(match);
-                        resultSet.add(storedNode, sizeHint);
+                if (topHits == null) {
+                    if (addHit(doc, scorer.score())) {
                         chainedCollector.collect(doc);
                     }
-                } else {
-                    LuceneMatch match = createMatch(doc, score, nodeId);
-                    storedNode.addMatch(match);
-                    resultSet.add(storedNode);
+                } else if (accepts(doc)) {
+                    topHits.collect(docBase + doc, scorer.score());
                     chainedCollector.collect(doc);
                 }
             } catch (IOException e) {
@@ -1006,6 +1073,95 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             }
         }
 
+        /**
+         * Add the best scoring hits to the result set.
+         *
+         * @param leaves the leaves of the index reader which was searched
+         * @param scoreDocs the best scoring hits
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        private void collectTopDocs(List<AtomicReaderContext> leaves, ScoreDoc[] scoreDocs) throws IOException {
+            // resolve the hits in index order, so that every leaf is only visited once
+            Arrays.sort(scoreDocs, (d1, d2) -> Integer.compare(d1.doc, d2.doc));
+            AtomicReaderContext leaf = null;
+            for (final ScoreDoc scoreDoc : scoreDocs) {
+                if (leaf == null || scoreDoc.doc >= leaf.docBase + leaf.reader().maxDoc()) {
+                    leaf = leaves.get(ReaderUtil.subIndex(scoreDoc.doc, leaves));
+                    setReader(leaf);
+                }
+                addHit(scoreDoc.doc - leaf.docBase, scoreDoc.score);
+            }
+        }
+
+        /**
+         * Check if a hit would be added to the result set, without
+         * creating its node unless it needs to be checked against the context set.
+         */
+        private boolean accepts(int doc) {
+            int docId = (int) this.docIdValues.get(doc);
+            DocumentImpl storedDocument = docs.getDoc(docId);
+            if (storedDocument == null)
+                return false;
+            if (contextSet == null || !returnAncestor)
+                return true;
+            return contextSet.get(createNode(storedDocument, doc)) != null;
+        }
+
+        /**
+         * Add the node of a hit to the result set.
+         *
+         * @return true if the hit was added, false if it is not within the documents or context set
+         */
+        private boolean addHit(int doc, float score) throws IOException {
+            int docId = (int) this.docIdValues.get(doc);
+            DocumentImpl storedDocument = docs.getDoc(docId);
+            if (storedDocument == null)
+                return false;
+            NodeProxy storedNode = createNode(storedDocument, doc);
+            NodeId nodeId = storedNode.getNodeId();
+            // if a context set is specified, we can directly check if the
+            // matching node is a descendant of one of the nodes
+            // in the context set.
+            if (contextSet != null) {
+                int sizeHint = contextSet.getSizeHint(storedDocument);
+                if (returnAncestor) {
+                    NodeProxy parentNode = contextSet.get(storedNode);
+                    // NodeProxy parentNode = contextSet.parentWithChild(storedNode, false, true, NodeProxy.UNKNOWN_NODE_LEVEL);
+                    if (parentNode == null)
+                        return false;
+                    LuceneMatch match = createMatch(doc, score, nodeId);
+                    parentNode.addMatch(match);
+                    resultSet.add(parentNode, sizeHint);
+                    if (Expression.NO_CONTEXT_ID != contextId) {
+                        parentNode.deepCopyContext(storedNode, contextId);
+                    } else
+                        parentNode.copyContext(storedNode);
+                } else {
+                    LuceneMatch match = createMatch(doc, score, nodeId);
+                    storedNode.addMatch(match);
+                    resultSet.add(storedNode, sizeHint);
+                }
+            } else {
+                LuceneMatch match = createMatch(doc, score, nodeId);
+                storedNode.addMatch(match);
+                resultSet.add(storedNode);
+            }
+            return true;
+        }
+
+        private NodeProxy createNode(DocumentImpl storedDocument, int doc) {
+            final BytesRef ref = this.nodeIdValues.get(doc);
+            int units = ByteConversion.byteToShort(ref.bytes, ref.offset);
+            NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, ref.bytes, ref.offset + 2);
+            //LOG.info("doc: " + docId + "; node: " + nodeId.toString() + "; units: " + units);
+
+            NodeProxy storedNode = new NodeProxy(storedDocument, nodeId);
+            if (qname != null)
+                storedNode.setNodeType(qname.getNameType() == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node.ELEMENT_NODE);
+            return storedNode;
+        }
+
         private LuceneMatch createMatch(int docId, float score, NodeId nodeId) throws IOException {
             final LuceneMatch match = new LuceneMatch(contextId, nodeId, query, facets);
             match.setScore(score);
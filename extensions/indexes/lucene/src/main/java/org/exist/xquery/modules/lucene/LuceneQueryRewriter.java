@@ -0,0 +1,152 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.modules.lucene;
+
+import org.exist.dom.QName;
+import org.exist.xquery.*;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Query rewriter for the Lucene index. Restricts a full text query to its best scoring matches
+ * if only the first items of a FLWOR expression like
+ *
+ * <pre>
+ * for $hit in collection(...)//p[ft:query(., $query)]
+ * order by ft:score($hit) descending
+ * return $hit
+ * </pre>
+ *
+ * are consumed, so that the index does not need to resolve all of the other matches to nodes.
+ */
+public class LuceneQueryRewriter extends QueryRewriter {
+
+    public LuceneQueryRewriter(final XQueryContext context) {
+        super(context);
+    }
+
+    @Override
+    public boolean limitOrderBy(final OrderByClause orderBy, final int limit) throws XPathException {
+        // the tuples need to be ordered only by the score, a further order spec may prefer a lower scoring match
+        final OrderSpec[] orderSpecs = orderBy.getOrderSpecs();
+        if (orderSpecs.length != 1 || (orderSpecs[0].getModifiers() & OrderSpec.DESCENDING_ORDER) == 0) {
+            return false;
+        }
+        final Expression sortExpr = unwrap(orderSpecs[0].getSortExpression());
+        if (!(sortExpr instanceof InternalFunctionCall) || !(((InternalFunctionCall) sortExpr).getFunction() instanceof Score)) {
+            return false;
+        }
+        final Expression scored = unwrap(((InternalFunctionCall) sortExpr).getFunction().getArgument(0));
+        if (!(scored instanceof VariableReference)) {
+            return false;
+        }
+
+        final ForExpr binding = findBinding(orderBy, (VariableReference) scored);
+        if (binding == null) {
+            return false;
+        }
+        final Query query = findQuery(binding.getInputSequence());
+        if (query == null) {
+            return false;
+        }
+        query.setTopLimit(limit);
+        return true;
+    }
+
+    /**
+     * Find the for clause which binds the variable, if there is exactly one tuple for each
+     * of the items it binds, i.e. it is the first clause of the FLWOR expression and is only
+     * followed by let clauses. The for clause must not have a positional variable, as the
+     * positions would change if the input sequence is restricted.
+     */
+    private static @Nullable ForExpr findBinding(final OrderByClause orderBy, final VariableReference variable) {
+        for (FLWORClause clause = orderBy.getPreviousClause(); clause != null; clause = clause.getPreviousClause()) {
+            if (clause.getType() == FLWORClause.ClauseType.LET) {
+                continue;
+            }
+            if (clause.getType() != FLWORClause.ClauseType.FOR || clause.getPreviousClause() != null) {
+                return null;
+            }
+            final ForExpr forExpr = (ForExpr) clause;
+            if (forExpr.getPositionalVariable() != null) {
+                return null;
+            }
+            try {
+                return variable.getName().equals(QName.parse(forExpr.getContext(), forExpr.getVariable(), null)) ? forExpr : null;
+            } catch (final QName.IllegalQNameException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the full text query, if the expression returns exactly the nodes matched by it,
+     * i.e. the expression is a path whose last step has an ft:query(., ...) call as its only predicate.
+     */
+    private static @Nullable Query findQuery(final Expression input) {
+        Expression last = unwrap(input);
+        if (last instanceof PathExpr) {
+            last = ((PathExpr) last).getLastExpression();
+        }
+        // the step may have been wrapped into an optimize pragma
+        if (!(last instanceof LocationStep || last instanceof ExtensionExpression)) {
+            return null;
+        }
+        final List<LocationStep> steps = BasicExpressionVisitor.findLocationSteps(last);
+        if (steps.size() != 1 || steps.get(0) == null) {
+            return null;
+        }
+        final Predicate[] predicates = steps.get(0).getPredicates();
+        if (predicates == null || predicates.length != 1 || predicates[0].getLength() != 1) {
+            return null;
+        }
+        final Expression predicateExpr = unwrap(predicates[0].getExpression(0));
+        if (!(predicateExpr instanceof InternalFunctionCall)) {
+            return null;
+        }
+        final Function function = ((InternalFunctionCall) predicateExpr).getFunction();
+        if (!(function instanceof Query) || !function.isCalledAs("query") || !((Query) function).optimizeOnSelf()) {
+            return null;
+        }
+        return (Query) function;
+    }
+
+    private static Expression unwrap(Expression expr) {
+        while (true) {
+            if (expr instanceof DynamicCardinalityCheck) {
+                expr = ((DynamicCardinalityCheck) expr).getExpression();
+            } else if (expr instanceof DynamicTypeCheck) {
+                expr = ((DynamicTypeCheck) expr).getExpression();
+            } else if (expr instanceof Atomize) {
+                expr = ((Atomize) expr).getExpression();
+            } else if (expr instanceof UntypedValueCheck) {
+                expr = ((UntypedValueCheck) expr).getExpression();
+            } else if (expr.getClass() == PathExpr.class && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else {
+                return expr;
+            }
+        }
+    }
+}
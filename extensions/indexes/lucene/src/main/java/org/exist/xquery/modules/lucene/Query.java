@@ -25,10 +25,12 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.dom.QName;
 import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.persistent.NodeSet;
 import org.exist.dom.persistent.VirtualNodeSet;
 import org.exist.indexing.lucene.LuceneIndex;
 import org.exist.indexing.lucene.LuceneIndexWorker;
+import org.exist.numbering.NodeId;
 import org.exist.storage.ElementValue;
 import org.exist.xquery.*;
 import org.exist.xquery.functions.map.AbstractMapType;
@@ -88,6 +90,7 @@ public class Query extends Function implements Optimizable {
                         "   <phrase-slop>number</phrase-slop>\n" +
                         "   <leading-wildcard>yes|no</leading-wildcard>\n" +
                         "   <filter-rewrite>yes|no</filter-rewrite>\n" +
+                        "   <top>number</top>\n" +
                         "</options>")
             },
             new FunctionReturnSequenceType(Type.NODE, Cardinality.ZERO_OR_MORE,
@@ -103,6 +106,7 @@ public class Query extends Function implements Optimizable {
     private NodeSet preselectResult = null;
     protected boolean optimizeSelf = false;
     protected boolean optimizeChild = false;
+    private int topLimit = 0;
 
     public Query(XQueryContext context, FunctionSignature signature) {
         super(context, signature);
@@ -196,6 +200,39 @@ public class Query extends Function implements Optimizable {
         return axis;
     }
 
+    /**
+     * Tell the function that only the given number of best scoring
+     * matches are consumed, so that the search can skip resolving
+     * the other matches to nodes.
+     *
+     * @param limit the number of best scoring matches
+     */
+    public void setTopLimit(final int limit) {
+        this.topLimit = limit;
+    }
+
+    public int getTopLimit() {
+        return topLimit;
+    }
+
+    /**
+     * Check if the nodes selected by the optimized location step from the context
+     * are all of the indexed nodes in the documents of the context. Only then can the
+     * best scoring matches be selected by the index, as none of them will be dropped
+     * by the location step.
+     */
+    private boolean selectsAllIndexed(final Sequence contextSequence) throws XPathException {
+        if (!(optimizeSelf && (axis == Constants.DESCENDANT_AXIS || axis == Constants.DESCENDANT_SELF_AXIS))) {
+            return false;
+        }
+        for (final NodeProxy node : contextSequence.toNodeSet()) {
+            if (node.getNodeId() != NodeId.DOCUMENT_NODE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public NodeSet preSelect(Sequence contextSequence, boolean useContext) throws XPathException {
         // guard against an empty contextSequence
     	if (contextSequence == null || !contextSequence.isPersistentSet()) {
@@ -213,6 +250,9 @@ public class Query extends Function implements Optimizable {
         List<QName> qnames = new ArrayList<>(1);
         qnames.add(contextQName);
         QueryOptions options = parseOptions(this, contextSequence, null, 3);
+        if (topLimit > 0 && selectsAllIndexed(contextSequence)) {
+            options.limitTop(topLimit);
+        }
         try {
             if (key != null && Type.subTypeOf(key.getType(), Type.ELEMENT)) {
                 final Element queryXML = key == null ? null : (Element) ((NodeValue) key).getNode();
@@ -260,6 +300,8 @@ public class Query extends Function implements Optimizable {
                     qnames.add(contextQName);
                 }
                 QueryOptions options = parseOptions(this, contextSequence, contextItem, 3);
+                // the matches are filtered by the input nodes within the search
+                options.limitTop(topLimit);
                 try {
                     if (key != null && Type.subTypeOf(key.getType(), Type.ELEMENT)) {
                         final Element queryXML = (Element) ((NodeValue) key).getNode();
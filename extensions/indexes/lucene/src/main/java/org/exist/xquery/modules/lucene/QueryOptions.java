@@ -54,6 +54,7 @@ public class QueryOptions {
     public static final String OPTION_FACETS = "facets";
     public static final String OPTION_FIELDS = "fields";
     public static final String OPTION_QUERY_ANALYZER_ID = "query-analyzer-id";
+    public static final String OPTION_TOP = "top";
 
     protected enum DefaultOperator {
         OR,
@@ -69,6 +70,7 @@ public class QueryOptions {
     protected boolean lowercaseExpandedTerms = false;
     protected Optional<Map<String, FacetQuery>> facets = Optional.empty();
     protected Set<String> fields = null;
+    protected int top = 0;
 
     public QueryOptions() {
         // default options
@@ -208,6 +210,28 @@ public class QueryOptions {
         return filterRewrite;
     }
 
+    /**
+     * Get the number of best scoring matches to return. Matches which score
+     * the same as the last of them are returned as well.
+     *
+     * @return the number of matches, or 0 to return all matches
+     */
+    public int getTop() {
+        return top;
+    }
+
+    /**
+     * Restrict the query to return only the given number of best scoring
+     * matches, unless it is already restricted to fewer matches.
+     *
+     * @param limit the number of matches
+     */
+    public void limitTop(final int limit) {
+        if (limit > 0 && (top <= 0 || limit < top)) {
+            top = limit;
+        }
+    }
+
     private void set(String key, String value) throws XPathException {
         switch (key) {
             case OPTION_DEFAULT_OPERATOR:
@@ -231,6 +255,16 @@ public class QueryOptions {
             case OPTION_LOWERCASE_EXPANDED_TERMS:
                 lowercaseExpandedTerms = value.equalsIgnoreCase("yes");
                 break;
+            case OPTION_TOP:
+                try {
+                    top = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw new XPathException(LuceneModule.EXXQDYFT0004, "Option " + OPTION_TOP + " must be an integer");
+                }
+                if (top < 0) {
+                    throw new XPathException(LuceneModule.EXXQDYFT0004, "Option " + OPTION_TOP + " must not be negative");
+                }
+                break;
             case OPTION_QUERY_ANALYZER_ID:
                 queryAnalyzerId = value;
             default:
@@ -0,0 +1,103 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.lucene;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.exist.test.ExistEmbeddedServer;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.junit.Assert.assertEquals;
+
+public class NearRealTimeTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void changesVisibleImmediately() throws Exception {
+        final LuceneIndex index = openIndex(false, 1000);
+        try {
+            addDocument(index);
+            assertEquals(1, numDocs(index));
+        } finally {
+            index.close();
+        }
+    }
+
+    @Test
+    public void changesVisibleAfterRefresh() throws Exception {
+        final LuceneIndex index = openIndex(true, 1000);
+        try {
+            addDocument(index);
+            assertEquals(0, numDocs(index));
+
+            // wait for the background refresh
+            final long timeout = System.currentTimeMillis() + 10_000;
+            while (numDocs(index) == 0 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(50);
+            }
+            assertEquals(1, numDocs(index));
+        } finally {
+            index.close();
+        }
+    }
+
+    private LuceneIndex openIndex(final boolean nearRealTime, final long refreshInterval) throws Exception {
+        final Element config = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument().createElement("module");
+        config.setAttribute("id", "lucene-index");
+        config.setAttribute(LuceneIndex.NEAR_REAL_TIME_ATTRIBUTE, nearRealTime ? "yes" : "no");
+        config.setAttribute(LuceneIndex.REFRESH_INTERVAL_ATTRIBUTE, Long.toString(refreshInterval));
+
+        final LuceneIndex index = new LuceneIndex();
+        index.configure(existEmbeddedServer.getBrokerPool(), temporaryFolder.newFolder().toPath(), config);
+        index.open();
+        return index;
+    }
+
+    private static void addDocument(final LuceneIndex index) throws Exception {
+        final IndexWriter writer = index.getWriter();
+        try {
+            final Document doc = new Document();
+            doc.add(new StringField("test", "value", Field.Store.NO));
+            writer.addDocument(doc);
+        } finally {
+            index.releaseWriter(writer);
+        }
+    }
+
+    private static int numDocs(final LuceneIndex index) throws Exception {
+        return index.withReader(IndexReader::numDocs);
+    }
+}
@@ -23,7 +23,7 @@ package org.exist.indexing.ngram;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
@@ -34,6 +34,7 @@ import org.apache.logging.log4j.Logger;
 import org.exist.collections.Collection;
 import org.exist.dom.persistent.AttrImpl;
 import org.exist.dom.persistent.AbstractCharacterData;
+import org.exist.dom.persistent.DefaultDocumentSet;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.DocumentSet;
 import org.exist.dom.persistent.ElementImpl;
@@ -225,7 +226,7 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 continue;
             }
 
-            try (final ManagedLock<ReentrantLock> dbLock = lockManager.acquireBtreeWriteLock(index.db.getLockName())) {
+            try (final ManagedLock<ReentrantReadWriteLock> dbLock = lockManager.acquireBtreeWriteLock(index.db.getLockName())) {
                 final NGramQNameKey value = new NGramQNameKey(currentDoc.getCollection().getId(), key.qname,
                         index.getBrokerPool().getSymbols(), key.term);
                 index.db.append(value, data);
@@ -255,7 +256,7 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             occurencesList.sort();
             os.clear();
 
-            try (final ManagedLock<ReentrantLock> dbLock = lockManager.acquireBtreeWriteLock(index.db.getLockName())) {
+            try (final ManagedLock<ReentrantReadWriteLock> dbLock = lockManager.acquireBtreeWriteLock(index.db.getLockName())) {
                 final NGramQNameKey value = new NGramQNameKey(currentDoc.getCollection().getId(), key.qname,
                         index.getBrokerPool().getSymbols(), key.term);
                 boolean changed = false;
@@ -365,7 +366,7 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Dropping NGram index for collection {}", collection.getURI());
         }
-        try (final ManagedLock<ReentrantLock> dbLock = lockManager.acquireBtreeWriteLock(index.db.getLockName())) {
+        try (final ManagedLock<ReentrantReadWriteLock> dbLock = lockManager.acquireBtreeWriteLock(index.db.getLockName())) {
             // remove generic index
             final Value value = new NGramQNameKey(collection.getId());
             index.db.removeAll(null, new IndexQuery(IndexQuery.TRUNC_RIGHT, value));
@@ -391,7 +392,7 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             final int collectionId = iter.next().getId();
             for (final QName qname : searchQnames) {
                 final NGramQNameKey key = new NGramQNameKey(collectionId, qname, index.getBrokerPool().getSymbols(), query);
-                try (final ManagedLock<ReentrantLock> dbLock = lockManager.acquireBtreeReadLock(index.db.getLockName())) {
+                try (final ManagedLock<ReentrantReadWriteLock> dbLock = lockManager.acquireBtreeReadLock(index.db.getLockName())) {
                     final SearchCallback cb = new SearchCallback(contextId, query, ngram, docs, contextSet, context, result, axis == NodeSet.ANCESTOR);
                     final int op = query.codePointCount(0, query.length()) < getN() ? IndexQuery.TRUNC_RIGHT : IndexQuery.EQ;
                     index.db.query(new IndexQuery(op, key), cb);
@@ -408,6 +409,72 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         return result;
     }
 
+    /**
+     * Find the documents which contain all of the given ngrams. Only the document ids of the occurrence
+     * lists are read, the node ids and offsets are skipped, and the documents of the ngrams are intersected
+     * as bitmaps. Used to restrict a search for several ngrams to the documents which can contain a match,
+     * before the occurrences of each ngram are read.
+     *
+     * @param docs the documents to search
+     * @param qnames the qnames to search, or null to search all qnames with an index defined on them
+     * @param ngrams the ngrams, an ngram shorter than n matches all ngrams it is a prefix of
+     * @param context the xquery context
+     *
+     * @return the documents of docs which contain all of the ngrams
+     *
+     * @throws TerminatedException if the query is terminated
+     */
+    public DocumentSet getDocumentsContaining(final DocumentSet docs, final List<QName> qnames, final String[] ngrams,
+            final XQueryContext context) throws TerminatedException {
+        final List<QName> searchQnames;
+        if (qnames == null || qnames.isEmpty()) {
+            searchQnames = getDefinedIndexes(context.getBroker(), docs);
+        } else {
+            searchQnames = qnames;
+        }
+
+        BitSet docIds = null;
+        for (final String ngram : ngrams) {
+            final DocumentIdCallback cb = new DocumentIdCallback(docs);
+            final int op = ngram.codePointCount(0, ngram.length()) < getN() ? IndexQuery.TRUNC_RIGHT : IndexQuery.EQ;
+            for (final Iterator<Collection> iter = docs.getCollectionIterator(); iter.hasNext(); ) {
+                final int collectionId = iter.next().getId();
+                for (final QName qname : searchQnames) {
+                    final NGramQNameKey key = new NGramQNameKey(collectionId, qname, index.getBrokerPool().getSymbols(), ngram);
+                    try (final ManagedLock<ReentrantReadWriteLock> dbLock = lockManager.acquireBtreeReadLock(index.db.getLockName())) {
+                        index.db.query(new IndexQuery(op, key), cb);
+                    } catch (final LockException e) {
+                        LOG.warn("Failed to acquire lock for '{}'", FileUtils.fileName(index.db.getFile()), e);
+                    } catch (final IOException | BTreeException e) {
+                        LOG.error("{} in '{}'", e.getMessage(), FileUtils.fileName(index.db.getFile()), e);
+                    }
+                }
+            }
+            context.proceed();
+
+            if (docIds == null) {
+                docIds = cb.docIds;
+            } else {
+                docIds.and(cb.docIds);
+            }
+            if (docIds.isEmpty()) {
+                break;
+            }
+        }
+
+        if (docIds == null) {
+            return docs;
+        }
+        final DefaultDocumentSet result = new DefaultDocumentSet(docIds.cardinality());
+        for (final Iterator<DocumentImpl> i = docs.getDocumentIterator(); i.hasNext(); ) {
+            final DocumentImpl doc = i.next();
+            if (docIds.get(doc.getDocId())) {
+                result.add(doc);
+            }
+        }
+        return result;
+    }
+
     /**
      * Check index configurations for all collection in the given DocumentSet and return
      * a list of QNames, which have indexes defined on them.
@@ -471,7 +538,7 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                             index.getBrokerPool().getSymbols(), end.toString().toLowerCase());
                     query = new IndexQuery(IndexQuery.BW, startRef, endRef);
                 }
-                try (final ManagedLock<ReentrantLock> dbLock = lockManager.acquireBtreeReadLock(index.db.getLockName())) {
+                try (final ManagedLock<ReentrantReadWriteLock> dbLock = lockManager.acquireBtreeReadLock(index.db.getLockName())) {
                     index.db.query(query, cb);
                 } catch (final LockException e) {
                     LOG.warn("Failed to acquire lock for '{}'", FileUtils.fileName(index.db.getFile()), e);
@@ -1069,6 +1136,41 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         }
     }
 
+    private final class DocumentIdCallback implements BTreeCallback {
+        private final DocumentSet docs;
+        private final BitSet docIds = new BitSet();
+
+        DocumentIdCallback(final DocumentSet docs) {
+            this.docs = docs;
+        }
+
+        @Override
+        public boolean indexInfo(final Value key, final long pointer) {
+            try {
+                final VariableByteInput is = index.db.getAsStream(pointer);
+                //Does the token already has data in the index ?
+                if (is == null) {
+                    return true;
+                }
+
+                while (is.available() > 0) {
+                    final int storedDocId = is.readInt();
+                    is.readByte();
+                    is.readInt();
+                    //Skip the node IDs + frequency + offsets
+                    final int length = is.readFixedInt();
+                    is.skipBytes(length);
+                    if (docs.contains(storedDocId)) {
+                        docIds.set(storedDocId);
+                    }
+                }
+            } catch (final IOException e) {
+                LOG.error("{} in '{}'", e.getMessage(), FileUtils.fileName(index.db.getFile()), e);
+            }
+            return true;
+        }
+    }
+
     private final class IndexScanCallback implements BTreeCallback {
         private final DocumentSet docs;
         private NodeSet contextSet;
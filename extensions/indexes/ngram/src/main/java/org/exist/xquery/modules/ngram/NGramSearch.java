@@ -490,19 +490,17 @@ public class NGramSearch extends Function implements Optimizable {
         if (ngrams.length == 0)
             return new EmptyNodeSet();
 
-        String firstNgramm = ngrams[0];
-        LOG.trace("First NGRAM: {}", firstNgramm);
-        NodeSet result = index.search(getExpressionId(), docs, qnames, firstNgramm, firstNgramm, context, nodeSet, axis);
-
+        // if this ngram is shorter than n,
+        // fill it up with characters from the previous ngram. too short
+        // ngrams lead to a considerable performance loss.
+        String[] filledNgrams = new String[ngrams.length];
+        filledNgrams[0] = ngrams[0];
         for (int i = 1; i < ngrams.length; i++) {
             String ngram = ngrams[i];
             int len = ngram.codePointCount(0, ngram.length());
             int fillSize = index.getN() - len;
             String filledNgram = ngram;
 
-            // if this ngram is shorter than n,
-            // fill it up with characters from the previous ngram. too short
-            // ngrams lead to a considerable performance loss.
             if (fillSize > 0) {
                 String filler = ngrams[i - 1];
                 StringBuilder buf = new StringBuilder();
@@ -516,8 +514,24 @@ public class NGramSearch extends Function implements Optimizable {
                 filledNgram = buf.toString();
                 LOG.debug("Filled: {}", filledNgram);
             }
+            filledNgrams[i] = filledNgram;
+        }
 
-            NodeSet nodes = index.search(getExpressionId(), docs, qnames, filledNgram, ngram, context, nodeSet, axis);
+        // only read the occurrences in documents which contain all of the ngrams
+        DocumentSet searchDocs = docs;
+        if (ngrams.length > 1) {
+            searchDocs = index.getDocumentsContaining(docs, qnames, filledNgrams, context);
+            if (searchDocs.getDocumentCount() == 0) {
+                return new EmptyNodeSet();
+            }
+        }
+
+        String firstNgramm = ngrams[0];
+        LOG.trace("First NGRAM: {}", firstNgramm);
+        NodeSet result = index.search(getExpressionId(), searchDocs, qnames, firstNgramm, firstNgramm, context, nodeSet, axis);
+
+        for (int i = 1; i < ngrams.length; i++) {
+            NodeSet nodes = index.search(getExpressionId(), searchDocs, qnames, filledNgrams[i], ngrams[i], context, nodeSet, axis);
 
             final NodeSet nodesContainingFirstINgrams = result;
 
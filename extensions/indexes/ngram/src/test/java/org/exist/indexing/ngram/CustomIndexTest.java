@@ -537,6 +537,37 @@ public class CustomIndexTest {
         }
     }
 
+    @Test
+    public void documentsContaining() throws PermissionDeniedException, XPathException, EXistException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            NGramIndexWorker index = (NGramIndexWorker) broker.getIndexController().getWorkerByIndexId(NGramIndex.ID);
+            XQueryContext context = new XQueryContext(broker.getBrokerPool());
+
+            DocumentSet found = index.getDocumentsContaining(docs, null, new String[] { "cha", "air" }, context);
+            assertEquals(1, found.getDocumentCount());
+            assertEquals("test_string.xml", found.getDocumentIterator().next().getFileURI().toString());
+
+            // the ngrams only need to occur in the same document
+            found = index.getDocumentsContaining(docs, null, new String[] { "012", "567" }, context);
+            assertEquals(1, found.getDocumentCount());
+            assertEquals("test_string2.xml", found.getDocumentIterator().next().getFileURI().toString());
+
+            found = index.getDocumentsContaining(docs, null, new String[] { "cha", "567" }, context);
+            assertEquals(0, found.getDocumentCount());
+
+            XQuery xquery = pool.getXQueryService();
+            Sequence seq = xquery.execute(broker, "//item[ngram:contains(., 'cabinet')]", null);
+            assertEquals(1, seq.getItemCount());
+
+            seq = xquery.execute(broker, "//section[ngram:contains(para, '01234')]", null);
+            assertEquals(1, seq.getItemCount());
+
+            seq = xquery.execute(broker, "//section[ngram:contains(para, '04567')]", null);
+            assertEquals(0, seq.getItemCount());
+        }
+    }
+
     @Test
     public void indexKeys() throws SAXException, PermissionDeniedException, XPathException, EXistException {
         final BrokerPool pool = existEmbeddedServer.getBrokerPool();
@@ -0,0 +1,266 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.range;
+
+import org.apache.lucene.util.NumericUtils;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.*;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Statistics over the values of a numeric, date or time field of the range index,
+ * computed from the doc values of the field by {@link RangeIndexWorker#getStatistics}.
+ *
+ * The minimum and maximum are tracked in the encoding of the doc values, which preserves
+ * the order of the values, and are only converted back into atomic values when requested.
+ * The sum and the histogram are only available for numeric fields.
+ */
+public class FieldStatistics {
+
+    private final int type;
+    private final double histogramInterval;
+    private long count = 0;
+    private long missing = 0;
+    private long values = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    private long longSum = 0;
+    @Nullable private BigInteger bigSum = null;
+    private double doubleSum = 0;
+
+    @Nullable private final Map<Long, Long> histogram;
+
+    /**
+     * @param type the type of the field
+     */
+    public FieldStatistics(final int type) {
+        this(type, 0);
+    }
+
+    /**
+     * @param type the type of the field
+     * @param histogramInterval the width of the buckets of the histogram, or 0 to not compute a histogram
+     */
+    public FieldStatistics(final int type, final double histogramInterval) {
+        this.type = type;
+        this.histogramInterval = histogramInterval;
+        this.histogram = histogramInterval > 0 ? new TreeMap<>() : null;
+    }
+
+    /**
+     * Check if the sum and histogram of the values of a field can be computed.
+     *
+     * @param type the type of the field
+     * @return true if the type is numeric
+     */
+    public static boolean isNumeric(final int type) {
+        return isInteger(type) || isFloatingPoint(type);
+    }
+
+    private static boolean isInteger(final int type) {
+        switch (type) {
+            case Type.INTEGER:
+            case Type.LONG:
+            case Type.UNSIGNED_LONG:
+            case Type.INT:
+            case Type.UNSIGNED_INT:
+            case Type.SHORT:
+            case Type.UNSIGNED_SHORT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isFloatingPoint(final int type) {
+        return type == Type.DECIMAL || type == Type.DOUBLE || type == Type.FLOAT;
+    }
+
+    /**
+     * Add an index entry which has a value.
+     */
+    void addEntry() {
+        count++;
+    }
+
+    /**
+     * Add an index entry which has no value.
+     */
+    void addMissing() {
+        count++;
+        missing++;
+    }
+
+    /**
+     * Add a value of the current entry.
+     *
+     * @param value the doc value
+     */
+    void addValue(final long value) {
+        values++;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+
+        if (isInteger(type)) {
+            if (bigSum != null) {
+                bigSum = bigSum.add(BigInteger.valueOf(value));
+            } else {
+                try {
+                    longSum = Math.addExact(longSum, value);
+                } catch (final ArithmeticException e) {
+                    bigSum = BigInteger.valueOf(longSum).add(BigInteger.valueOf(value));
+                }
+            }
+        } else if (isFloatingPoint(type)) {
+            doubleSum += NumericUtils.sortableLongToDouble(value);
+        }
+
+        if (histogram != null) {
+            final double number = isInteger(type) ? value : NumericUtils.sortableLongToDouble(value);
+            histogram.merge((long) Math.floor(number / histogramInterval), 1L, Long::sum);
+        }
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return the number of index entries matched, i.e. the number of nodes
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the number of index entries matched which have no doc value for the field, either
+     * because the field is not defined for them, or because they were written before doc values
+     * were stored. The other statistics do not reflect these entries.
+     *
+     * @return the number of entries without a value
+     */
+    public long getMissing() {
+        return missing;
+    }
+
+    /**
+     * @return the number of values, which is larger than the number of entries with a value if an entry has several values
+     */
+    public long getValueCount() {
+        return values;
+    }
+
+    /**
+     * @return the smallest value, or null if no entry has a value
+     * @throws XPathException if the value cannot be converted
+     */
+    public @Nullable AtomicValue getMin() throws XPathException {
+        return values > 0 ? RangeIndexConfigElement.fromDocValue(min, type) : null;
+    }
+
+    /**
+     * @return the largest value, or null if no entry has a value
+     * @throws XPathException if the value cannot be converted
+     */
+    public @Nullable AtomicValue getMax() throws XPathException {
+        return values > 0 ? RangeIndexConfigElement.fromDocValue(max, type) : null;
+    }
+
+    /**
+     * Get the sum of the values, typed as fn:sum would type the sum of values of the type of the field.
+     * As the index stores decimals as doubles, the sum of decimals is computed as a double.
+     *
+     * @return the sum, or the integer 0 if no entry has a value
+     * @throws XPathException if the field is not numeric
+     */
+    public NumericValue getSum() throws XPathException {
+        checkNumeric();
+        if (values == 0) {
+            return new IntegerValue(0);
+        }
+        switch (type) {
+            case Type.DECIMAL:
+                return new DecimalValue(doubleSum);
+            case Type.DOUBLE:
+                return new DoubleValue(doubleSum);
+            case Type.FLOAT:
+                return new FloatValue((float) doubleSum);
+            default:
+                return bigSum != null ? new IntegerValue(bigSum) : new IntegerValue(longSum);
+        }
+    }
+
+    /**
+     * Get the average of the values, typed as fn:avg would type the average of values of the type of the field.
+     *
+     * @return the average, or null if no entry has a value
+     * @throws XPathException if the field is not numeric
+     */
+    public @Nullable NumericValue getAverage() throws XPathException {
+        checkNumeric();
+        if (values == 0) {
+            return null;
+        }
+        switch (type) {
+            case Type.DOUBLE:
+                return new DoubleValue(doubleSum / values);
+            case Type.FLOAT:
+                return new FloatValue((float) (doubleSum / values));
+            case Type.DECIMAL:
+                return new DecimalValue(doubleSum / values);
+            default:
+                final BigDecimal sum = new BigDecimal(bigSum != null ? bigSum : BigInteger.valueOf(longSum));
+                return (NumericValue) new DecimalValue(sum).div(new DecimalValue(BigDecimal.valueOf(values)));
+        }
+    }
+
+    /**
+     * Get the histogram of the values, if requested when the statistics were created.
+     *
+     * @return the number of values per bucket, keyed by the lower bound of the bucket
+     */
+    public Map<Double, Long> getHistogram() {
+        final Map<Double, Long> buckets = new TreeMap<>();
+        if (histogram != null) {
+            for (final Map.Entry<Long, Long> bucket : histogram.entrySet()) {
+                buckets.put(bucket.getKey() * histogramInterval, bucket.getValue());
+            }
+        }
+        return buckets;
+    }
+
+    private void checkNumeric() throws XPathException {
+        if (!isNumeric(type)) {
+            throw new XPathException("Values of type " + Type.getTypeName(type) + " cannot be summed up");
+        }
+    }
+}
@@ -81,6 +81,26 @@ public class RangeIndexConfig {
         return null;
     }
 
+    /* find the configuration for path, if it is the only one for the last component of path and is defined on the same path */
+    public RangeIndexConfigElement findExact(NodePath path) {
+        final RangeIndexConfigElement rice = paths.get(path.getLastComponent());
+        if (rice == null || rice.getNext() != null) {
+            return null;
+        }
+        final NodePath configPath = rice.getNodePath();
+        if (configPath.length() != path.length()) {
+            return null;
+        }
+        for (int i = 0; i < path.length(); i++) {
+            final QName component = path.getComponent(i);
+            final QName configComponent = configPath.getComponent(i);
+            if (!component.equals(configComponent) || component.getNameType() != configComponent.getNameType()) {
+                return null;
+            }
+        }
+        return rice;
+    }
+
     /* find all complex configurations for path (that might have different conditions) */
     public List<ComplexRangeIndexConfigElement> findAll(NodePath path) {
         ArrayList<ComplexRangeIndexConfigElement> rices = new ArrayList<>();
@@ -245,6 +245,68 @@ public class RangeIndexConfigElement {
         return time.getTimeInMillis();
     }
 
+    /**
+     * Create the doc values field for a numeric field returned by {@link #convertToField(String, String)}.
+     * The doc values store the same value as the indexed terms, in a column per segment,
+     * so that it can be read without un-inverting the terms. Floating point values are
+     * stored as sortable longs, see {@link NumericUtils#doubleToSortableLong(double)}.
+     *
+     * @param field the indexed field
+     * @return the doc values field, or null if the field is not numeric
+     */
+    public static Field toDocValuesField(final Field field) {
+        final Number number = field.numericValue();
+        if (number == null) {
+            return null;
+        }
+        final long value;
+        if (number instanceof Double || number instanceof Float) {
+            value = NumericUtils.doubleToSortableLong(number.doubleValue());
+        } else {
+            value = number.longValue();
+        }
+        return new SortedNumericDocValuesField(field.name(), value);
+    }
+
+    /**
+     * Convert a value read from the doc values of a field back into an atomic value
+     * of the type of the field, i.e. the reverse of {@link #toDocValuesField(Field)}.
+     * Dates and times are returned normalized to UTC.
+     *
+     * @param value the doc value
+     * @param type the type of the field
+     * @return the atomic value
+     * @throws XPathException if the type is not stored as doc values
+     */
+    public static AtomicValue fromDocValue(final long value, final int type) throws XPathException {
+        switch (type) {
+            case Type.INTEGER:
+            case Type.LONG:
+            case Type.UNSIGNED_LONG:
+            case Type.INT:
+            case Type.UNSIGNED_INT:
+            case Type.SHORT:
+            case Type.UNSIGNED_SHORT:
+                return new IntegerValue(value, type);
+            case Type.DECIMAL:
+                return new DecimalValue(NumericUtils.sortableLongToDouble(value));
+            case Type.DOUBLE:
+                return new DoubleValue(NumericUtils.sortableLongToDouble(value));
+            case Type.FLOAT:
+                return new FloatValue((float) NumericUtils.sortableLongToDouble(value));
+            case Type.DATE:
+                final long year = value >> 16;
+                return new DateValue(String.format(year < 0 ? "-%04d-%02d-%02d" : "%04d-%02d-%02d",
+                        Math.abs(year), (value >> 8) & 0xFF, value & 0xFF));
+            case Type.TIME:
+                final long millis = Math.floorMod(value, 24L * 60 * 60 * 1000);
+                return new TimeValue(String.format("%02d:%02d:%02d.%03dZ",
+                        millis / 3600000, millis / 60000 % 60, millis / 1000 % 60, millis % 1000));
+            default:
+                throw new XPathException("Values of type " + Type.getTypeName(type) + " are not stored as doc values");
+        }
+    }
+
     public static String dateTimeToString(DateTimeValue dtv) {
         final XMLGregorianCalendar utccal = dtv.calendar.normalize();
         final StringBuilder sb = new StringBuilder();
@@ -293,6 +355,10 @@ public class RangeIndexConfigElement {
         return caseSensitive;
     }
 
+    public boolean includeNested() {
+        return includeNested;
+    }
+
     public boolean usesCollation() {
         return usesCollation;
     }
@@ -69,6 +69,8 @@ import org.exist.xquery.value.*;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
+
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.*;
@@ -495,6 +497,11 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                     Field fld = pending.getConfig().convertToField(contentField, field.getContent().toString());
                     if (fld != null) {
                         doc.add(fld);
+                        // numeric, date and time values are also stored as doc values
+                        final Field docValuesField = RangeIndexConfigElement.toDocValuesField(fld);
+                        if (docValuesField != null) {
+                            doc.add(docValuesField);
+                        }
                     }
                 }
                 fDocIdIdx.setIntValue(currentDoc.getDocId());
@@ -571,6 +578,146 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         });
     }
 
+    /**
+     * Read the keys stored in the index for all nodes of the given document which are
+     * indexed on a field. The keys are returned as stored in the index, i.e. dates and times
+     * are returned as the integer they were converted to, decimals as doubles.
+     *
+     * @param field the field, i.e. the name of a field or the encoded qname of a simple index
+     * @param type the type of the field, which must be a numeric, date or time type
+     * @param doc the document
+     * @return the keys of the indexed nodes, ordered by node id
+     * @throws IOException in case of an error reading the index
+     */
+    public SortedMap<NodeId, AtomicValue> getOrderKeys(final String field, final int type, final DocumentImpl doc) throws IOException {
+        return index.withReader(reader -> {
+            final SortedMap<NodeId, AtomicValue> keys = new TreeMap<>();
+            final BytesRefBuilder bytes = new BytesRefBuilder();
+            NumericUtils.intToPrefixCoded(doc.getDocId(), 0, bytes);
+            final Term docTerm = new Term(FIELD_DOC_ID, bytes.toBytesRef());
+            for (final AtomicReaderContext context : reader.leaves()) {
+                final AtomicReader leaf = context.reader();
+                final DocsEnum docsEnum = leaf.termDocsEnum(docTerm);
+                if (docsEnum == null) {
+                    continue;
+                }
+                final BinaryDocValues nodeIdValues = leaf.getBinaryDocValues(FIELD_NODE_ID);
+
+                final SortedNumericDocValues values = leaf.getSortedNumericDocValues(field);
+                if (values != null) {
+                    // the values are read from the column stored by write()
+                    int luceneDoc;
+                    while ((luceneDoc = docsEnum.nextDoc()) != DocsEnum.NO_MORE_DOCS) {
+                        values.setDocument(luceneDoc);
+                        if (values.count() == 0) {
+                            continue;
+                        }
+                        final long value = values.valueAt(0);
+                        final AtomicValue key;
+                        switch (type) {
+                            case Type.DECIMAL:
+                            case Type.DOUBLE:
+                            case Type.FLOAT:
+                                key = new DoubleValue(NumericUtils.sortableLongToDouble(value));
+                                break;
+                            default:
+                                key = new IntegerValue(value);
+                                break;
+                        }
+                        keys.put(readNodeId(nodeIdValues, luceneDoc), key);
+                    }
+                    continue;
+                }
+
+                // segments written before doc values were stored: the values are un-inverted
+                // from the index terms and cached per segment by Lucene
+                final Bits docsWithField = FieldCache.DEFAULT.getDocsWithField(leaf, field);
+                FieldCache.Ints ints = null;
+                FieldCache.Longs longs = null;
+                FieldCache.Doubles doubles = null;
+                switch (type) {
+                    case Type.INT:
+                    case Type.UNSIGNED_INT:
+                    case Type.SHORT:
+                    case Type.UNSIGNED_SHORT:
+                        ints = FieldCache.DEFAULT.getInts(leaf, field, FieldCache.NUMERIC_UTILS_INT_PARSER, false);
+                        break;
+                    case Type.DECIMAL:
+                    case Type.DOUBLE:
+                        doubles = FieldCache.DEFAULT.getDoubles(leaf, field, FieldCache.NUMERIC_UTILS_DOUBLE_PARSER, false);
+                        break;
+                    default:
+                        longs = FieldCache.DEFAULT.getLongs(leaf, field, FieldCache.NUMERIC_UTILS_LONG_PARSER, false);
+                        break;
+                }
+
+                int luceneDoc;
+                while ((luceneDoc = docsEnum.nextDoc()) != DocsEnum.NO_MORE_DOCS) {
+                    if (!docsWithField.get(luceneDoc)) {
+                        continue;
+                    }
+                    final AtomicValue key;
+                    if (ints != null) {
+                        key = new IntegerValue(ints.get(luceneDoc));
+                    } else if (doubles != null) {
+                        key = new DoubleValue(doubles.get(luceneDoc));
+                    } else {
+                        key = new IntegerValue(longs.get(luceneDoc));
+                    }
+                    keys.put(readNodeId(nodeIdValues, luceneDoc), key);
+                }
+            }
+            return keys;
+        });
+    }
+
+    /**
+     * Compute statistics over the values of a numeric, date or time field for the index entries
+     * which match a query. Only the doc values of the index are read and no nodes are created, so
+     * this is much cheaper than querying the index and aggregating over the resulting node set.
+     *
+     * @param docs the documents to which the index entries are restricted
+     * @param field the field, i.e. the name of a field or the encoded qname of a simple index
+     * @param type the type of the field
+     * @param query the query selecting the index entries, or null to select all entries of the field
+     * @return the statistics
+     * @throws IOException in case of an error reading the index
+     * @throws XPathException in case of an error acquiring the searcher
+     */
+    public FieldStatistics getStatistics(final DocumentSet docs, final String field, final int type, @Nullable final Query query) throws IOException, XPathException {
+        return getStatistics(docs, field, query, new FieldStatistics(type));
+    }
+
+    /**
+     * Compute statistics over the values of a field for the index entries which match a query,
+     * see {@link #getStatistics(DocumentSet, String, int, Query)}.
+     *
+     * @param docs the documents to which the index entries are restricted
+     * @param field the field, i.e. the name of a field or the encoded qname of a simple index
+     * @param query the query selecting the index entries, or null to select all entries of the field
+     * @param statistics the statistics to add the values to
+     * @return the statistics
+     * @throws IOException in case of an error reading the index
+     * @throws XPathException in case of an error acquiring the searcher
+     */
+    public FieldStatistics getStatistics(final DocumentSet docs, final String field, @Nullable final Query query, final FieldStatistics statistics) throws IOException, XPathException {
+        return index.withSearcher(searcher -> {
+            final StatisticsCollector collector = new StatisticsCollector(docs, field, statistics);
+            searcher.searcher.search(query == null ? allEntries(field) : query, collector);
+            return statistics;
+        });
+    }
+
+    /**
+     * Create a query which matches all index entries which have a value for the field.
+     *
+     * @param field the field
+     * @return the query
+     */
+    public static Query allEntries(final String field) {
+        return new TermRangeQuery(field, null, null, true, true);
+    }
+
 //    private OpenBitSet getDocs(DocumentSet docs, IndexSearcher searcher) throws IOException {
 //        OpenBitSet bits = new OpenBitSet(searcher.getIndexReader().maxDoc());
 //        for (Iterator i = docs.getDocumentIterator(); i.hasNext(); ) {
@@ -688,6 +835,64 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         }
     }
 
+    private NodeId readNodeId(final BinaryDocValues nodeIdValues, final int doc) {
+        final BytesRef ref = nodeIdValues.get(doc);
+        final int units = ByteConversion.byteToShort(ref.bytes, ref.offset);
+        return index.getBrokerPool().getNodeFactory().createFromData(units, ref.bytes, ref.offset + 2);
+    }
+
+    private static class StatisticsCollector extends Collector {
+        private final DocumentSet docs;
+        private final String field;
+        private final FieldStatistics statistics;
+        private NumericDocValues docIdValues;
+        private SortedNumericDocValues values;
+
+        StatisticsCollector(final DocumentSet docs, final String field, final FieldStatistics statistics) {
+            this.docs = docs;
+            this.field = field;
+            this.statistics = statistics;
+        }
+
+        @Override
+        public void setScorer(final Scorer scorer) {
+            // ignore
+        }
+
+        @Override
+        public void collect(final int doc) {
+            if (!docs.contains((int) docIdValues.get(doc))) {
+                return;
+            }
+            if (values == null) {
+                statistics.addMissing();
+                return;
+            }
+            values.setDocument(doc);
+            final int count = values.count();
+            if (count == 0) {
+                statistics.addMissing();
+                return;
+            }
+            statistics.addEntry();
+            for (int i = 0; i < count; i++) {
+                statistics.addValue(values.valueAt(i));
+            }
+        }
+
+        @Override
+        public void setNextReader(final AtomicReaderContext atomicReaderContext) throws IOException {
+            final AtomicReader reader = atomicReaderContext.reader();
+            this.docIdValues = reader.getNumericDocValues(FIELD_DOC_ID);
+            this.values = reader.getSortedNumericDocValues(field);
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return true;
+        }
+    }
+
     /**
      * Check index configurations for all collection in the given DocumentSet and return
      * a list of QNames, which have indexes defined on them.
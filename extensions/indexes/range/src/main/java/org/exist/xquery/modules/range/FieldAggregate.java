@@ -0,0 +1,260 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.modules.range;
+
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.exist.collections.Collection;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.indexing.range.FieldStatistics;
+import org.exist.indexing.range.RangeIndex;
+import org.exist.indexing.range.RangeIndexConfig;
+import org.exist.indexing.range.RangeIndexWorker;
+import org.exist.storage.IndexSpec;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.*;
+import org.exist.xquery.functions.map.MapType;
+import org.exist.xquery.value.*;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Aggregates the values of a field of the range index, computed from the doc values of the
+ * index without loading any of the nodes. The aggregates can be restricted to the index entries
+ * which match a condition on the same, or on another field of the same index.
+ */
+public class FieldAggregate extends BasicFunction {
+
+    private final static FunctionParameterSequenceType FIELD_PARAM =
+        new FunctionParameterSequenceType("field", Type.STRING, Cardinality.EXACTLY_ONE, "The name of the field to aggregate");
+    private final static FunctionParameterSequenceType CONDITION_FIELD_PARAM =
+        new FunctionParameterSequenceType("condition-field", Type.STRING, Cardinality.EXACTLY_ONE, "The name of the field to compare");
+    private final static FunctionParameterSequenceType OPERATOR_PARAM =
+        new FunctionParameterSequenceType("operator", Type.STRING, Cardinality.EXACTLY_ONE,
+            "The operator to compare the field with: one of \"eq\", \"lt\", \"gt\", \"le\", \"ge\", \"ne\", \"starts-with\", " +
+            "\"ends-with\", \"contains\" or \"matches\"");
+    private final static FunctionParameterSequenceType KEYS_PARAM =
+        new FunctionParameterSequenceType("keys", Type.ATOMIC, Cardinality.ZERO_OR_MORE,
+            "The keys to compare the field with. An index entry matches if it matches any of the keys");
+
+    public final static FunctionSignature[] signatures = {
+        new FunctionSignature(
+            new QName("field-count", RangeIndexModule.NAMESPACE_URI, RangeIndexModule.PREFIX),
+            "Count the index entries which have a value for the field, i.e. the number of indexed nodes, " +
+            "within the documents of the context sequence or the statically known documents.",
+            new SequenceType[] { FIELD_PARAM },
+            new FunctionReturnSequenceType(Type.INTEGER, Cardinality.EXACTLY_ONE, "the number of index entries")
+        ),
+        new FunctionSignature(
+            new QName("field-count", RangeIndexModule.NAMESPACE_URI, RangeIndexModule.PREFIX),
+            "Count the index entries whose value for the field matches the keys, " +
+            "within the documents of the context sequence or the statically known documents.",
+            new SequenceType[] { FIELD_PARAM, OPERATOR_PARAM, KEYS_PARAM },
+            new FunctionReturnSequenceType(Type.INTEGER, Cardinality.EXACTLY_ONE, "the number of index entries")
+        ),
+        new FunctionSignature(
+            new QName("field-sum", RangeIndexModule.NAMESPACE_URI, RangeIndexModule.PREFIX),
+            "Sum up the values of a numeric field. As the index stores decimals as doubles, decimals are summed up as doubles.",
+            new SequenceType[] { FIELD_PARAM },
+            new FunctionReturnSequenceType(Type.NUMBER, Cardinality.EXACTLY_ONE, "the sum of the values, or 0 if there are none")
+        ),
+        new FunctionSignature(
+            new QName("field-sum", RangeIndexModule.NAMESPACE_URI, RangeIndexModule.PREFIX),
+            "Sum up the values of a numeric field of the index entries whose value for $condition-field matches the keys.",
+            new SequenceType[] { FIELD_PARAM, CONDITION_FIELD_PARAM, OPERATOR_PARAM, KEYS_PARAM },
+            new FunctionReturnSequenceType(Type.NUMBER, Cardinality.EXACTLY_ONE, "the sum of the values, or 0 if there are none")
+        ),
+        new FunctionSignature(
+            new QName("field-avg", RangeIndexModule.NAMESPACE_URI, RangeIndexModule.PREFIX),
+            "Compute the average of the values of a numeric field.",
+            new SequenceType[] { FIELD_PARAM },
+            new FunctionReturnSequenceType(Type.NUMBER, Cardinality.ZERO_OR_ONE, "the average of the values, or the empty sequence if there are none")
+        ),
+        new FunctionSignature(
+            new QName("field-avg", RangeIndexModule.NAMESPACE_URI, RangeIndexModule.PREFIX),
+            "Compute the average of the values of a numeric field of the index entries whose value for $condition-field matches the keys.",
+            new SequenceType[] { FIELD_PARAM, CONDITION_FIELD_PARAM, OPERATOR_PARAM, KEYS_PARAM },
+            new FunctionReturnSequenceType(Type.NUMBER, Cardinality.ZERO_OR_ONE, "the average of the values, or the empty sequence if there are none")
+        ),
+        new FunctionSignature(
+            new QName("field-min", RangeIndexModule.NAMESPACE_URI, RangeIndexModule.PREFIX),
+            "Find the smallest value of a numeric, date or time field.",
+            new SequenceType[] { FIELD_PARAM },
+            new FunctionReturnSequenceType(Type.ATOMIC, Cardinality.ZERO_OR_ONE, "the smallest value, or the empty sequence if there are none")
+        ),
+        new FunctionSignature(
+            new QName("field-min", RangeIndexModule.NAMESPACE_URI, RangeIndexModule.PREFIX),
+            "Find the smallest value of a numeric, date or time field of the index entries whose value for $condition-field matches the keys.",
+            new SequenceType[] { FIELD_PARAM, CONDITION_FIELD_PARAM, OPERATOR_PARAM, KEYS_PARAM },
+            new FunctionReturnSequenceType(Type.ATOMIC, Cardinality.ZERO_OR_ONE, "the smallest value, or the empty sequence if there are none")
+        ),
+        new FunctionSignature(
+            new QName("field-max", RangeIndexModule.NAMESPACE_URI, RangeIndexModule.PREFIX),
+            "Find the largest value of a numeric, date or time field.",
+            new SequenceType[] { FIELD_PARAM },
+            new FunctionReturnSequenceType(Type.ATOMIC, Cardinality.ZERO_OR_ONE, "the largest value, or the empty sequence if there are none")
+        ),
+        new FunctionSignature(
+            new QName("field-max", RangeIndexModule.NAMESPACE_URI, RangeIndexModule.PREFIX),
+            "Find the largest value of a numeric, date or time field of the index entries whose value for $condition-field matches the keys.",
+            new SequenceType[] { FIELD_PARAM, CONDITION_FIELD_PARAM, OPERATOR_PARAM, KEYS_PARAM },
+            new FunctionReturnSequenceType(Type.ATOMIC, Cardinality.ZERO_OR_ONE, "the largest value, or the empty sequence if there are none")
+        ),
+        new FunctionSignature(
+            new QName("field-histogram", RangeIndexModule.NAMESPACE_URI, RangeIndexModule.PREFIX),
+            "Count the values of a numeric field per bucket of a fixed width.",
+            new SequenceType[] {
+                FIELD_PARAM,
+                new FunctionParameterSequenceType("interval", Type.DOUBLE, Cardinality.EXACTLY_ONE, "The width of the buckets")
+            },
+            new FunctionReturnSequenceType(Type.MAP, Cardinality.EXACTLY_ONE, "a map from the lower bound of each bucket " +
+                "which contains values to the number of values in the bucket")
+        )
+    };
+
+    public FieldAggregate(final XQueryContext context, final FunctionSignature signature) {
+        super(context, signature);
+    }
+
+    @Override
+    public Sequence eval(final Sequence[] args, final Sequence contextSequence) throws XPathException {
+        final long start = System.currentTimeMillis();
+        final String field = args[0].getStringValue();
+        final DocumentSet docs;
+        if (contextSequence == null) {
+            docs = context.getStaticallyKnownDocuments();
+        } else if (contextSequence.isPersistentSet()) {
+            docs = contextSequence.getDocumentSet();
+        } else {
+            // in-memory docs won't have an index
+            docs = DocumentSet.EMPTY_DOCUMENT_SET;
+        }
+        final int type = getType(docs, field);
+
+        if ((isCalledAs("field-sum") || isCalledAs("field-avg") || isCalledAs("field-histogram")) &&
+                type != Type.ITEM && !FieldStatistics.isNumeric(type)) {
+            throw new XPathException(this, ErrorCodes.XPTY0004, "Field " + field + " of type " + Type.getTypeName(type) + " is not numeric");
+        }
+        double interval = 0;
+        if (isCalledAs("field-histogram")) {
+            interval = ((DoubleValue) args[1].itemAt(0)).getDouble();
+            if (!(interval > 0)) {
+                throw new XPathException(this, ErrorCodes.ERROR, "The interval of a histogram needs to be positive: " + interval);
+            }
+        }
+
+        final RangeIndexWorker worker = (RangeIndexWorker) context.getBroker().getIndexController().getWorkerByIndexId(RangeIndex.ID);
+        Query query = null;
+        if (args.length == 3) {
+            query = toQuery(worker, docs, field, type, args[1], args[2]);
+        } else if (args.length == 4) {
+            final String conditionField = args[1].getStringValue();
+            final BooleanQuery bool = new BooleanQuery();
+            bool.add(toQuery(worker, docs, conditionField, getType(docs, conditionField), args[2], args[3]), BooleanClause.Occur.MUST);
+            bool.add(RangeIndexWorker.allEntries(field), BooleanClause.Occur.MUST);
+            query = bool;
+        }
+
+        final FieldStatistics statistics;
+        try {
+            statistics = worker.getStatistics(docs, field, query, new FieldStatistics(type, interval));
+        } catch (final IOException e) {
+            throw new XPathException(this, "Error while computing aggregate from range index: " + e.getMessage(), e);
+        }
+
+        if (context.getProfiler().traceFunctions()) {
+            context.getProfiler().traceIndexUsage(context, "new-range", this, PerformanceStats.OPTIMIZED_INDEX, System.currentTimeMillis() - start);
+        }
+
+        if (isCalledAs("field-count")) {
+            return new IntegerValue(statistics.getCount());
+        } else if (isCalledAs("field-sum")) {
+            return statistics.getValueCount() == 0 ? new IntegerValue(0) : statistics.getSum();
+        } else if (isCalledAs("field-avg")) {
+            return statistics.getValueCount() == 0 ? Sequence.EMPTY_SEQUENCE : statistics.getAverage();
+        } else if (isCalledAs("field-min")) {
+            return toSequence(statistics.getMin());
+        } else if (isCalledAs("field-max")) {
+            return toSequence(statistics.getMax());
+        }
+
+        final MapType histogram = new MapType(context);
+        for (final Map.Entry<Double, Long> bucket : statistics.getHistogram().entrySet()) {
+            histogram.add(new DoubleValue(bucket.getKey()), new IntegerValue(bucket.getValue()));
+        }
+        return histogram;
+    }
+
+    private Query toQuery(final RangeIndexWorker worker, final DocumentSet docs, final String field, final int type,
+            final Sequence operatorSeq, final Sequence keys) throws XPathException {
+        final String operatorName = operatorSeq.getStringValue();
+        final RangeIndex.Operator operator = RangeIndexModule.OPERATOR_MAP.get(operatorName);
+        if (operator == null) {
+            throw new XPathException(this, ErrorCodes.ERROR, "Unknown operator: " + operatorName);
+        }
+        // an empty boolean query matches no entries
+        final BooleanQuery bool = new BooleanQuery();
+        for (final SequenceIterator i = keys.unorderedIterator(); i.hasNext(); ) {
+            AtomicValue key = i.nextItem().atomize();
+            if (type != Type.ITEM && !Type.subTypeOf(key.getType(), type)) {
+                key = key.convertTo(type);
+            }
+            final Query query = worker.toQuery(field, null, key, operator, docs);
+            if (keys.hasOne()) {
+                return query;
+            }
+            bool.add(query, BooleanClause.Occur.SHOULD);
+        }
+        return bool;
+    }
+
+    private static Sequence toSequence(final AtomicValue value) {
+        return value == null ? Sequence.EMPTY_SEQUENCE : value;
+    }
+
+    /**
+     * Get the type of the field from the range index configuration of the collections of the documents.
+     */
+    private int getType(final DocumentSet docs, final String field) {
+        for (final Iterator<Collection> i = docs.getCollectionIterator(); i.hasNext(); ) {
+            final Collection collection = i.next();
+            if (collection.getURI().startsWith(XmldbURI.SYSTEM_COLLECTION_URI)) {
+                continue;
+            }
+            final IndexSpec idxConf = collection.getIndexConfiguration(context.getBroker());
+            if (idxConf != null) {
+                final RangeIndexConfig config = (RangeIndexConfig) idxConf.getCustomIndexSpec(RangeIndex.ID);
+                if (config != null) {
+                    final int type = config.getType(field);
+                    if (type != Type.ITEM) {
+                        return type;
+                    }
+                }
+            }
+        }
+        return Type.ITEM;
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.modules.range;
+
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.indexing.range.*;
+import org.exist.numbering.NodeId;
+import org.exist.storage.ElementValue;
+import org.exist.storage.IndexSpec;
+import org.exist.storage.NodePath;
+import org.exist.util.XMLString;
+import org.exist.xquery.*;
+import org.exist.xquery.functions.fn.FunAvg;
+import org.exist.xquery.functions.fn.FunCount;
+import org.exist.xquery.functions.fn.FunMax;
+import org.exist.xquery.functions.fn.FunMin;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.*;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * Computes a call to fn:count, fn:sum, fn:avg, fn:min or fn:max from the doc values of the range index,
+ * inserted by {@link RangeQueryRewriter#rewriteAggregate(Function)}.
+ *
+ * Replaces aggregates over the nodes of a set of documents which are selected by a complex index and a
+ * comparison on one of its fields, e.g. <code>count(collection("/db/orders")//order[status = "open"])</code>
+ * and <code>sum(collection("/db/orders")//order[status = "open"]/@amount)</code> for a complex index on
+ * <code>//order</code> with fields on <code>status</code> and <code>@amount</code>. The matching index entries
+ * are found by a query on the index, and their values are aggregated without loading any of the nodes.
+ *
+ * The values are aggregated as <code>xs:double</code>, as the original function would aggregate the
+ * untyped values of the nodes. If the expression does not select document nodes, or if the collections of
+ * the documents do not all define the index in the same way, the original function is evaluated instead.
+ * The original function is also evaluated if any of the matching entries has no value for the field to
+ * aggregate: the value cannot be converted to the type of the field and so is not indexed, which makes
+ * the original function raise an error, or the node has no such attribute. Nodes whose value for the
+ * field to compare cannot be converted are not indexed either, so fn:count does not raise an error for
+ * them, but only counts the nodes which can be compared.
+ */
+public class IndexAggregate extends AbstractExpression {
+
+    private final Function function;
+    private final Expression contextExpr;
+    private final NodePath path;
+    @Nullable private final NodePath conditionPath;
+    @Nullable private final RangeIndex.Operator operator;
+    @Nullable private final Expression key;
+    @Nullable private final NodePath valuePath;
+
+    /**
+     * @param context the xquery context
+     * @param function the aggregate function, which is evaluated if the index cannot be used
+     * @param contextExpr the expression selecting the documents
+     * @param path the path of the nodes selected in the documents, i.e. of the index entries
+     * @param conditionPath the path of the field to compare, relative to the nodes selected, or null
+     * @param operator the operator to compare the field with, or null
+     * @param key the expression returning the keys to compare the field with, or null
+     * @param valuePath the path of the field to aggregate, relative to the nodes selected, or null
+     *                  to aggregate the nodes themselves
+     */
+    public IndexAggregate(final XQueryContext context, final Function function, final Expression contextExpr,
+            final NodePath path, @Nullable final NodePath conditionPath, @Nullable final RangeIndex.Operator operator,
+            @Nullable final Expression key, @Nullable final NodePath valuePath) {
+        super(context);
+        this.function = function;
+        this.contextExpr = contextExpr;
+        this.path = path;
+        this.conditionPath = conditionPath;
+        this.operator = operator;
+        this.key = key;
+        this.valuePath = valuePath;
+    }
+
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        // the context expression and key are part of the function's argument
+        function.analyze(new AnalyzeContextInfo(contextInfo));
+    }
+
+    @Override
+    public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+        final Sequence nodes = contextExpr.eval(contextSequence, contextItem);
+        if (!isDocumentSet(nodes)) {
+            return function.eval(contextSequence, contextItem);
+        }
+        final DocumentSet docs = nodes.getDocumentSet();
+        final Target target = getTarget(docs);
+        if (target == null) {
+            return function.eval(contextSequence, contextItem);
+        }
+
+        final long start = System.currentTimeMillis();
+        final RangeIndexWorker worker = (RangeIndexWorker) context.getBroker().getIndexController().getWorkerByIndexId(RangeIndex.ID);
+        Query query = null;
+        if (target.conditionField != null) {
+            final Sequence keys = Atomize.atomize(key.eval(contextSequence, contextItem));
+            if (keys.isEmpty()) {
+                return function.eval(contextSequence, contextItem);
+            }
+            if (keys.hasOne()) {
+                query = toQuery(worker, target, keys.itemAt(0).atomize(), docs);
+            } else {
+                final BooleanQuery bool = new BooleanQuery();
+                for (final SequenceIterator i = keys.unorderedIterator(); i.hasNext(); ) {
+                    bool.add(toQuery(worker, target, i.nextItem().atomize(), docs), BooleanClause.Occur.SHOULD);
+                }
+                query = bool;
+            }
+        }
+
+        final FieldStatistics statistics;
+        try {
+            if (target.valueField != null) {
+                statistics = worker.getStatistics(docs, target.valueField, target.valueType, query);
+            } else {
+                statistics = worker.getStatistics(docs, target.conditionField, target.conditionType, query);
+            }
+        } catch (final IOException e) {
+            throw new XPathException(this, "Error while computing aggregate from range index: " + e.getMessage(), e);
+        }
+        if (target.valueField != null && statistics.getMissing() > 0) {
+            // the value of some entries could not be converted to the type of the field, the entries
+            // have no such attribute or were indexed before the values were stored as doc values
+            return function.eval(contextSequence, contextItem);
+        }
+
+        if (context.getProfiler().traceFunctions()) {
+            context.getProfiler().traceIndexUsage(context, "new-range", this, PerformanceStats.OPTIMIZED_INDEX, System.currentTimeMillis() - start);
+        }
+        return toResult(statistics);
+    }
+
+    private Query toQuery(final RangeIndexWorker worker, final Target target, AtomicValue value, final DocumentSet docs) throws XPathException {
+        if (!Type.subTypeOf(value.getType(), target.conditionType)) {
+            value = value.convertTo(target.conditionType);
+        }
+        return worker.toQuery(target.conditionField, null, value, operator, docs);
+    }
+
+    private Sequence toResult(final FieldStatistics statistics) throws XPathException {
+        if (function instanceof FunCount) {
+            return new IntegerValue(statistics.getCount());
+        }
+        if (statistics.getValueCount() == 0) {
+            return function instanceof FunAvg || function instanceof FunMin || function instanceof FunMax ?
+                    Sequence.EMPTY_SEQUENCE : new IntegerValue(0);
+        }
+        if (function instanceof FunAvg) {
+            return statistics.getAverage().convertTo(Type.DOUBLE);
+        } else if (function instanceof FunMin) {
+            return statistics.getMin().convertTo(Type.DOUBLE);
+        } else if (function instanceof FunMax) {
+            return statistics.getMax().convertTo(Type.DOUBLE);
+        }
+        return statistics.getSum().convertTo(Type.DOUBLE);
+    }
+
+    /**
+     * Check if the sequence consists of the document nodes of stored documents.
+     */
+    private static boolean isDocumentSet(final Sequence nodes) throws XPathException {
+        if (nodes.isEmpty() || !nodes.isPersistentSet()) {
+            return false;
+        }
+        for (final SequenceIterator i = nodes.iterate(); i.hasNext(); ) {
+            final Item item = i.nextItem();
+            if (!(item instanceof NodeProxy) || ((NodeProxy) item).getNodeId() != NodeId.DOCUMENT_NODE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the index fields to query and aggregate, if the range index configurations of
+     * all the collections of the documents define them in the same way.
+     */
+    private @Nullable Target getTarget(final DocumentSet docs) {
+        Target target = null;
+        for (final Iterator<Collection> i = docs.getCollectionIterator(); i.hasNext(); ) {
+            final Target next = getTarget(i.next());
+            if (next == null || (target != null && !target.equals(next))) {
+                return null;
+            }
+            target = next;
+        }
+        return target;
+    }
+
+    private @Nullable Target getTarget(final Collection collection) {
+        final IndexSpec idxConf = collection.getIndexConfiguration(context.getBroker());
+        final RangeIndexConfig config = idxConf == null ? null : (RangeIndexConfig) idxConf.getCustomIndexSpec(RangeIndex.ID);
+        if (config == null) {
+            return null;
+        }
+        final RangeIndexConfigElement rice = config.findExact(path);
+        if (rice == null) {
+            return null;
+        }
+
+        // fields of a complex index on the nodes
+        if (!rice.isComplex() || ((ComplexRangeIndexConfigElement) rice).getNumberOfConditions() > 0) {
+            return null;
+        }
+        final ComplexRangeIndexConfigElement complex = (ComplexRangeIndexConfigElement) rice;
+        String conditionField = null;
+        int conditionType = Type.ITEM;
+        if (conditionPath != null) {
+            final RangeIndexConfigField field = complex.getField(append(path, conditionPath));
+            if (field == null || !isComparable(complex, field, conditionPath)) {
+                return null;
+            }
+            conditionField = field.getName();
+            conditionType = field.getType();
+        }
+        String valueField = null;
+        int valueType = Type.ITEM;
+        if (valuePath != null) {
+            final RangeIndexConfigField field = complex.getField(append(path, valuePath));
+            if (field == null || field.getTypeConverter() != null || !FieldStatistics.isNumeric(field.getType()) || !isAttribute(valuePath)) {
+                return null;
+            }
+            valueField = field.getName();
+            valueType = field.getType();
+        }
+        return new Target(conditionField, conditionType, valueField, valueType);
+    }
+
+    /**
+     * Check if comparing the values of the field in the index gives the same result as comparing the nodes.
+     */
+    private static boolean isComparable(final ComplexRangeIndexConfigElement rice, final RangeIndexConfigField field, final NodePath fieldPath) {
+        if (field.getTypeConverter() != null || (!isAttribute(fieldPath) && !field.includeNested())) {
+            return false;
+        }
+        if (Type.subTypeOf(field.getType(), Type.STRING)) {
+            return field.isCaseSensitive() && field.whitespaceTreatment() == XMLString.SUPPRESS_NONE && !rice.usesCollation();
+        }
+        return true;
+    }
+
+    private static boolean isAttribute(final NodePath path) {
+        return path.getLastComponent().getNameType() == ElementValue.ATTRIBUTE;
+    }
+
+    private static NodePath append(final NodePath path, final NodePath relativePath) {
+        final NodePath absolute = new NodePath(path);
+        absolute.append(relativePath);
+        return absolute;
+    }
+
+    @Override
+    public int returnsType() {
+        return function.returnsType();
+    }
+
+    @Override
+    public Cardinality getCardinality() {
+        return function.getCardinality();
+    }
+
+    @Override
+    public int getDependencies() {
+        return function.getDependencies();
+    }
+
+    @Override
+    public void accept(final ExpressionVisitor visitor) {
+        // the original function may still need to be evaluated and optimized
+        function.accept(visitor);
+    }
+
+    @Override
+    public void resetState(final boolean postOptimization) {
+        super.resetState(postOptimization);
+        function.resetState(postOptimization);
+    }
+
+    @Override
+    public void dump(final ExpressionDumper dumper) {
+        dumper.display("range:aggregate(");
+        function.dump(dumper);
+        dumper.display(")");
+    }
+
+    @Override
+    public String toString() {
+        return "range:aggregate(" + function.toString() + ")";
+    }
+
+    /**
+     * The index fields to query and aggregate.
+     */
+    private static class Target {
+        @Nullable private final String conditionField;
+        private final int conditionType;
+        @Nullable private final String valueField;
+        private final int valueType;
+
+        Target(@Nullable final String conditionField, final int conditionType, @Nullable final String valueField, final int valueType) {
+            this.conditionField = conditionField;
+            this.conditionType = conditionType;
+            this.valueField = valueField;
+            this.valueType = valueType;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Target)) {
+                return false;
+            }
+            final Target other = (Target) obj;
+            return conditionType == other.conditionType && valueType == other.valueType
+                    && Objects.equals(conditionField, other.conditionField)
+                    && Objects.equals(valueField, other.valueField);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(conditionField, conditionType, valueField, valueType);
+        }
+    }
+}
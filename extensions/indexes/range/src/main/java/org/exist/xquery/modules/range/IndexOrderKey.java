@@ -0,0 +1,275 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.modules.range;
+
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.indexing.lucene.LuceneUtil;
+import org.exist.indexing.range.*;
+import org.exist.numbering.NodeId;
+import org.exist.storage.IndexSpec;
+import org.exist.storage.NodePath;
+import org.exist.xquery.*;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.*;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Computes the sort key of an order spec from the range index, inserted by
+ * {@link RangeQueryRewriter#rewriteOrderSpec(OrderByClause, OrderSpec)}.
+ *
+ * Replaces a sort expression like <code>xs:date($x/@date)</code>, where <code>$x</code> is bound by
+ * a for clause and the range index on <code>@date</code> has the same type as the cast. The key of a node
+ * is read from the index, so the value of the node does not need to be loaded and converted. The keys of
+ * a document are read all at once, when the first of its nodes is sorted.
+ *
+ * The keys are returned as stored in the index, e.g. dates as integers. If a node is not indexed, e.g.
+ * because its collection does not define the index, the original sort expression is evaluated and
+ * its value is converted in the same way, so all keys remain comparable.
+ */
+public class IndexOrderKey extends AbstractExpression {
+
+    /**
+     * The number of documents whose keys are kept.
+     */
+    private static final int MAX_CACHED_DOCUMENTS = 16;
+
+    private final Expression sortExpr;
+    private final VariableReference variable;
+    private final Expression nodeExpr;
+    private final int type;
+    @Nullable private final NodePath contextPath;
+    private final NodePath path;
+
+    private final Map<Collection, Target> targets = new IdentityHashMap<>();
+
+    public IndexOrderKey(final XQueryContext context, final Expression sortExpr, final VariableReference variable,
+            final Expression nodeExpr, final int type, @Nullable final NodePath contextPath, final NodePath relativePath) {
+        super(context);
+        this.sortExpr = sortExpr;
+        this.variable = variable;
+        this.nodeExpr = nodeExpr;
+        this.type = type;
+        this.contextPath = contextPath;
+        if (contextPath == null) {
+            this.path = new NodePath(relativePath.getLastComponent());
+        } else {
+            this.path = new NodePath(contextPath);
+            this.path.append(relativePath);
+        }
+    }
+
+    /**
+     * Check if the sort keys of the given type can be read from the index,
+     * i.e. if the index stores them in an order preserving way.
+     *
+     * @param type the type of the sort expression
+     * @return true if the type is supported
+     */
+    public static boolean isSupportedType(final int type) {
+        switch (type) {
+            case Type.INTEGER:
+            case Type.LONG:
+            case Type.UNSIGNED_LONG:
+            case Type.INT:
+            case Type.UNSIGNED_INT:
+            case Type.SHORT:
+            case Type.UNSIGNED_SHORT:
+            case Type.DECIMAL:
+            case Type.DOUBLE:
+            case Type.DATE:
+            case Type.TIME:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        contextInfo.setParent(this);
+        // the variable and node expression are part of the sort expression
+        sortExpr.analyze(new AnalyzeContextInfo(contextInfo));
+    }
+
+    @Override
+    public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+        final Sequence contextNode = variable.eval(contextSequence, contextItem);
+        if (contextNode.hasOne() && contextNode.itemAt(0) instanceof NodeProxy) {
+            final NodeProxy node = (NodeProxy) contextNode.itemAt(0);
+            final Target target = getTarget(node.getOwnerDocument().getCollection());
+            if (target != null) {
+                NodeProxy indexed = null;
+                if (target.onContextNode) {
+                    indexed = node;
+                } else {
+                    final Sequence nodes = nodeExpr.eval(contextSequence, contextItem);
+                    if (nodes.hasOne() && nodes.itemAt(0) instanceof NodeProxy) {
+                        indexed = (NodeProxy) nodes.itemAt(0);
+                    }
+                }
+                if (indexed != null) {
+                    final AtomicValue key = target.getKeys(indexed.getOwnerDocument()).get(indexed.getNodeId());
+                    if (key != null) {
+                        return key;
+                    }
+                }
+            }
+        }
+
+        // not indexed: compute the key from the value
+        final Sequence value = sortExpr.eval(contextSequence, contextItem);
+        if (value.isEmpty()) {
+            return Sequence.EMPTY_SEQUENCE;
+        }
+        return toKey(value.itemAt(0).atomize());
+    }
+
+    private AtomicValue toKey(final AtomicValue value) throws XPathException {
+        switch (type) {
+            case Type.DATE:
+                return new IntegerValue(RangeIndexConfigElement.dateToLong((DateValue) value));
+            case Type.TIME:
+                return new IntegerValue(RangeIndexConfigElement.timeToLong((TimeValue) value));
+            case Type.DECIMAL:
+            case Type.DOUBLE:
+                return value.convertTo(Type.DOUBLE);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Find the index field, if any, which the range index configuration
+     * of the collection defines for the sort expression.
+     */
+    private @Nullable Target getTarget(final Collection collection) {
+        if (targets.containsKey(collection)) {
+            return targets.get(collection);
+        }
+
+        Target target = null;
+        final IndexSpec idxConf = collection.getIndexConfiguration(context.getBroker());
+        final RangeIndexConfig config = idxConf == null ? null : (RangeIndexConfig) idxConf.getCustomIndexSpec(RangeIndex.ID);
+        if (config != null) {
+            if (contextPath != null) {
+                // a field of the node bound to the variable
+                final List<ComplexRangeIndexConfigElement> rices = config.findAll(path);
+                for (final ComplexRangeIndexConfigElement rice : rices) {
+                    final RangeIndexConfigField field = rice.getField(path);
+                    if (rice.match(contextPath) && field != null && field.getType() == type && field.getTypeConverter() == null) {
+                        target = new Target(field.getName(), true);
+                        break;
+                    }
+                }
+            }
+            if (target == null) {
+                // a simple index on the node selected by the sort expression
+                final RangeIndexConfigElement rice = config.find(path);
+                if (rice != null && rice.getType() == type && rice.getTypeConverter(null) == null) {
+                    final String field = LuceneUtil.encodeQName(path.getLastComponent(), context.getBroker().getBrokerPool().getSymbols());
+                    target = new Target(field, false);
+                }
+            }
+        }
+        targets.put(collection, target);
+        return target;
+    }
+
+    @Override
+    public int returnsType() {
+        return type == Type.DECIMAL || type == Type.DOUBLE ? Type.DOUBLE : Type.INTEGER;
+    }
+
+    @Override
+    public Cardinality getCardinality() {
+        return Cardinality.ZERO_OR_ONE;
+    }
+
+    @Override
+    public int getDependencies() {
+        return sortExpr.getDependencies();
+    }
+
+    @Override
+    public void resetState(final boolean postOptimization) {
+        super.resetState(postOptimization);
+        sortExpr.resetState(postOptimization);
+        targets.clear();
+    }
+
+    @Override
+    public void dump(final ExpressionDumper dumper) {
+        dumper.display("range:order-key(");
+        sortExpr.dump(dumper);
+        dumper.display(")");
+    }
+
+    @Override
+    public String toString() {
+        return "range:order-key(" + sortExpr.toString() + ")";
+    }
+
+    /**
+     * The index field from which the keys are read, together
+     * with the keys of the documents read most recently.
+     */
+    private class Target {
+        private final String field;
+        private final boolean onContextNode;
+
+        private final Map<Integer, SortedMap<NodeId, AtomicValue>> documentKeys =
+                new LinkedHashMap<Integer, SortedMap<NodeId, AtomicValue>>(MAX_CACHED_DOCUMENTS, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(final Map.Entry<Integer, SortedMap<NodeId, AtomicValue>> eldest) {
+                        return size() > MAX_CACHED_DOCUMENTS;
+                    }
+                };
+
+        Target(final String field, final boolean onContextNode) {
+            this.field = field;
+            this.onContextNode = onContextNode;
+        }
+
+        SortedMap<NodeId, AtomicValue> getKeys(final DocumentImpl doc) throws XPathException {
+            SortedMap<NodeId, AtomicValue> keys = documentKeys.get(doc.getDocId());
+            if (keys == null) {
+                final RangeIndexWorker index = (RangeIndexWorker) context.getBroker().getIndexController().getWorkerByIndexId(RangeIndex.ID);
+                try {
+                    keys = index.getOrderKeys(field, type, doc);
+                } catch (final IOException e) {
+                    throw new XPathException(IndexOrderKey.this, "Error while reading sort keys from range index: " + e.getMessage(), e);
+                }
+                documentKeys.put(doc.getDocId(), keys);
+            }
+            return keys;
+        }
+    }
+}
@@ -61,7 +61,18 @@ public class RangeIndexModule extends AbstractInternalModule {
         new FunctionDef(FieldLookup.signatures[10], FieldLookup.class),
         new FunctionDef(Optimize.signature, Optimize.class),
         new FunctionDef(IndexKeys.signatures[0], IndexKeys.class),
-        new FunctionDef(IndexKeys.signatures[1], IndexKeys.class)
+        new FunctionDef(IndexKeys.signatures[1], IndexKeys.class),
+        new FunctionDef(FieldAggregate.signatures[0], FieldAggregate.class),
+        new FunctionDef(FieldAggregate.signatures[1], FieldAggregate.class),
+        new FunctionDef(FieldAggregate.signatures[2], FieldAggregate.class),
+        new FunctionDef(FieldAggregate.signatures[3], FieldAggregate.class),
+        new FunctionDef(FieldAggregate.signatures[4], FieldAggregate.class),
+        new FunctionDef(FieldAggregate.signatures[5], FieldAggregate.class),
+        new FunctionDef(FieldAggregate.signatures[6], FieldAggregate.class),
+        new FunctionDef(FieldAggregate.signatures[7], FieldAggregate.class),
+        new FunctionDef(FieldAggregate.signatures[8], FieldAggregate.class),
+        new FunctionDef(FieldAggregate.signatures[9], FieldAggregate.class),
+        new FunctionDef(FieldAggregate.signatures[10], FieldAggregate.class)
     };
 
     public final static Map<String, RangeIndex.Operator> OPERATOR_MAP = new HashMap<>();
@@ -21,10 +21,14 @@
  */
 package org.exist.xquery.modules.range;
 
+import org.exist.dom.QName;
 import org.exist.indexing.range.RangeIndex;
 import org.exist.storage.NodePath;
 import org.exist.xquery.*;
 import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.functions.fn.FunCount;
+import org.exist.xquery.functions.fn.FunNumber;
+import org.exist.xquery.value.Type;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
@@ -126,6 +130,197 @@ public class RangeQueryRewriter extends QueryRewriter {
         return null;
     }
 
+    @Override
+    public Expression rewriteOrderSpec(final OrderByClause orderBy, final OrderSpec orderSpec) throws XPathException {
+        // the sort expression needs to be cast to the type of the index
+        final Expression sortExpr = unwrap(orderSpec.getSortExpression());
+        final int type;
+        final Expression nodeExpr;
+        if (sortExpr instanceof CastExpression) {
+            type = sortExpr.returnsType();
+            nodeExpr = unwrap(((CastExpression) sortExpr).getInnerExpression());
+        } else if (sortExpr instanceof FunNumber && ((FunNumber) sortExpr).getArgumentCount() == 1) {
+            type = Type.DOUBLE;
+            nodeExpr = unwrap(((FunNumber) sortExpr).getArgument(0));
+        } else {
+            return null;
+        }
+        if (!IndexOrderKey.isSupportedType(type)) {
+            return null;
+        }
+
+        // the value to cast needs to be selected by a path starting at a variable bound by a for clause
+        if (!(nodeExpr instanceof PathExpr)) {
+            return null;
+        }
+        final PathExpr path = (PathExpr) nodeExpr;
+        if (path.getLength() < 2 || !(path.getExpression(0) instanceof VariableReference)) {
+            return null;
+        }
+        final List<LocationStep> steps = new ArrayList<>(path.getLength() - 1);
+        for (int i = 1; i < path.getLength(); i++) {
+            final Expression next = path.getExpression(i);
+            if (!(next instanceof LocationStep)) {
+                return null;
+            }
+            final LocationStep step = (LocationStep) next;
+            if (step.hasPredicates() || step.getTest().isWildcardTest()) {
+                return null;
+            }
+            steps.add(step);
+        }
+        final NodePath relativePath = toNodePath(steps);
+        if (relativePath == null || relativePath.length() == 0) {
+            return null;
+        }
+
+        final VariableReference variable = (VariableReference) path.getExpression(0);
+        final ForExpr binding = findBinding(orderBy, variable);
+        if (binding == null) {
+            return null;
+        }
+        return new IndexOrderKey(getContext(), orderSpec.getSortExpression(), variable, nodeExpr, type,
+                getContextPath(binding.getInputSequence()), relativePath);
+    }
+
+    @Override
+    public Expression rewriteAggregate(final Function function) throws XPathException {
+        // the argument needs to be a path selecting nodes from the documents returned by its first expression
+        final Expression arg = unwrap(function.getArgument(0));
+        if (arg.getClass() != PathExpr.class) {
+            return null;
+        }
+        final PathExpr path = (PathExpr) arg;
+        if (path.getLength() < 2 || path.getExpression(0) instanceof LocationStep) {
+            return null;
+        }
+        final List<LocationStep> steps = new ArrayList<>(path.getLength() - 1);
+        int predicateStep = -1;
+        for (int i = 1; i < path.getLength(); i++) {
+            final Expression next = path.getExpression(i);
+            if (!(next instanceof LocationStep)) {
+                return null;
+            }
+            final LocationStep step = (LocationStep) next;
+            if (step.getTest().isWildcardTest() || step.getTest().getName() == null) {
+                return null;
+            }
+            if (step.hasPredicates()) {
+                // only a single comparison on the nodes of the index is supported
+                if (predicateStep >= 0 || step.getPredicates().length != 1) {
+                    return null;
+                }
+                predicateStep = steps.size();
+            }
+            steps.add(step);
+        }
+
+        if (predicateStep < 0) {
+            // e.g. sum(collection("/db/orders")//order/@amount) on a simple index: nodes whose value cannot
+            // be converted to the type of the index are not indexed, so they can neither be counted nor
+            // make the aggregate raise an error as the original function would
+            return null;
+        }
+
+        final boolean count = function instanceof FunCount;
+
+        // e.g. count(collection("/db/orders")//order[status = "open"]) or
+        // sum(collection("/db/orders")//order[status = "open"]/@amount) on the fields of a complex index
+        final List<LocationStep> valueSteps = steps.subList(predicateStep + 1, steps.size());
+        if (count != valueSteps.isEmpty() || valueSteps.size() > 1) {
+            return null;
+        }
+        final Predicate predicate = steps.get(predicateStep).getPredicates()[0];
+        if (predicate.getLength() != 1 || !(unwrap(predicate.getExpression(0)) instanceof GeneralComparison)) {
+            return null;
+        }
+        final GeneralComparison comparison = (GeneralComparison) unwrap(predicate.getExpression(0));
+        final RangeIndex.Operator operator = getOperator(comparison);
+        if (!(operator == RangeIndex.Operator.EQ || operator == RangeIndex.Operator.LT || operator == RangeIndex.Operator.LE ||
+                operator == RangeIndex.Operator.GT || operator == RangeIndex.Operator.GE)) {
+            return null;
+        }
+        final List<LocationStep> conditionSteps = BasicExpressionVisitor.findLocationSteps(comparison.getLeft());
+        if (conditionSteps.isEmpty()) {
+            return null;
+        }
+        for (final LocationStep step : conditionSteps) {
+            if (step == null || step.hasPredicates() || step.getTest().getName() == null) {
+                return null;
+            }
+        }
+        final Expression key = comparison.getRight();
+        if (Dependency.dependsOn(key, Dependency.CONTEXT_ITEM) || Dependency.dependsOn(key, Dependency.CONTEXT_SET)) {
+            return null;
+        }
+
+        final NodePath nodePath = toNodePath(steps.subList(0, predicateStep + 1));
+        final NodePath conditionPath = toNodePath(conditionSteps);
+        final NodePath valuePath = count ? null : toNodePath(valueSteps);
+        if (nodePath == null || nodePath.length() == 0 || conditionPath == null || conditionPath.length() == 0 ||
+                (!count && (valuePath == null || valuePath.length() != 1))) {
+            return null;
+        }
+        return new IndexAggregate(getContext(), function, path.getExpression(0), nodePath, conditionPath, operator, key, valuePath);
+    }
+
+    /**
+     * Find the for clause which binds the variable, if it is not bound by any other clause
+     * in between. Any group by clause in between rebinds all the variables.
+     */
+    private static @Nullable ForExpr findBinding(final OrderByClause orderBy, final VariableReference variable) {
+        for (FLWORClause clause = orderBy.getPreviousClause(); clause != null; clause = clause.getPreviousClause()) {
+            if (clause.getType() == FLWORClause.ClauseType.GROUPBY) {
+                return null;
+            }
+            if (clause instanceof BindingExpression) {
+                final String varName = ((BindingExpression) clause).getVariable();
+                try {
+                    if (variable.getName().equals(QName.parse(clause.getContext(), varName, null))) {
+                        return clause instanceof ForExpr ? (ForExpr) clause : null;
+                    }
+                } catch (final QName.IllegalQNameException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compute the node path of the trailing location steps of the expression, if any.
+     */
+    private static @Nullable NodePath getContextPath(final Expression expr) {
+        final List<LocationStep> steps = BasicExpressionVisitor.findLocationSteps(expr);
+        int start = steps.size();
+        while (start > 0 && steps.get(start - 1) != null) {
+            start--;
+        }
+        if (start == steps.size()) {
+            return null;
+        }
+        final NodePath path = toNodePath(steps.subList(start, steps.size()));
+        return path == null || path.length() == 0 ? null : path;
+    }
+
+    private static Expression unwrap(Expression expr) {
+        while (true) {
+            if (expr instanceof DynamicCardinalityCheck) {
+                expr = ((DynamicCardinalityCheck) expr).getExpression();
+            } else if (expr instanceof DynamicTypeCheck) {
+                expr = ((DynamicTypeCheck) expr).getExpression();
+            } else if (expr instanceof Atomize) {
+                expr = ((Atomize) expr).getExpression();
+            } else if (expr instanceof UntypedValueCheck) {
+                expr = ((UntypedValueCheck) expr).getExpression();
+            } else if (expr.getClass() == PathExpr.class && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else {
+                return expr;
+            }
+        }
+    }
+
     protected static Lookup rewrite(Expression expression, NodePath path) throws XPathException {
         ArrayList<Expression> eqArgs = new ArrayList<>(2);
         if (expression instanceof GeneralComparison) {
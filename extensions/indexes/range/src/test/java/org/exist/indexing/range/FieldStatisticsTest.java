@@ -0,0 +1,191 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.range;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationException;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DefaultDocumentSet;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.MutableDocumentSet;
+import org.exist.indexing.lucene.LuceneUtil;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.DoubleValue;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.Type;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FieldStatisticsTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI COLLECTION_URI = XmldbURI.create("/db/field-statistics-test");
+
+    private static final String COLLECTION_CONFIG =
+            "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+            "    <index xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">" +
+            "        <range>" +
+            "            <create qname=\"@n\" type=\"xs:integer\"/>" +
+            "            <create qname=\"@price\" type=\"xs:double\"/>" +
+            "            <create qname=\"@date\" type=\"xs:date\"/>" +
+            "        </range>" +
+            "    </index>" +
+            "</collection>";
+
+    private static final String DATA =
+            "<entries>" +
+            "    <entry n=\"3\" price=\"10.5\" date=\"2010-05-01\"/>" +
+            "    <entry n=\"10\" price=\"2\" date=\"2009-01-15\"/>" +
+            "    <entry n=\"1\" price=\"99.9\" date=\"2011-12-31\"/>" +
+            "    <entry n=\"2\" price=\"7\"/>" +
+            "</entries>";
+
+    private static DocumentSet docs;
+
+    @BeforeClass
+    public static void storeDocuments() throws EXistException, PermissionDeniedException, IOException, SAXException, TriggerException, LockException, CollectionConfigurationException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final MutableDocumentSet stored = new DefaultDocumentSet();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION_URI);
+            pool.getConfigurationManager().addConfiguration(transaction, broker, collection, COLLECTION_CONFIG);
+            broker.storeDocument(transaction, XmldbURI.create("test.xml"), new StringInputSource(DATA), MimeType.XML_TYPE, collection);
+            stored.add(collection.getDocument(broker, XmldbURI.create("test.xml")));
+            transaction.commit();
+        }
+        docs = stored;
+    }
+
+    @Test
+    public void allValues() throws EXistException, IOException, XPathException {
+        final FieldStatistics statistics = getStatistics(docs, "n", Type.INTEGER, null);
+        assertEquals(4, statistics.getCount());
+        assertEquals(0, statistics.getMissing());
+        assertEquals(1, ((IntegerValue) statistics.getMin()).getLong());
+        assertEquals(10, ((IntegerValue) statistics.getMax()).getLong());
+    }
+
+    @Test
+    public void rangeQuery() throws EXistException, IOException, XPathException {
+        final FieldStatistics statistics = getStatistics(docs, "n", Type.INTEGER, new IntegerValue(2));
+        assertEquals(2, statistics.getCount());
+        assertEquals(3, ((IntegerValue) statistics.getMin()).getLong());
+        assertEquals(10, ((IntegerValue) statistics.getMax()).getLong());
+    }
+
+    @Test
+    public void doubles() throws EXistException, IOException, XPathException {
+        final FieldStatistics statistics = getStatistics(docs, "price", Type.DOUBLE, null);
+        assertEquals(4, statistics.getCount());
+        assertEquals("2", statistics.getMin().getStringValue());
+        assertEquals("99.9", statistics.getMax().getStringValue());
+    }
+
+    @Test
+    public void dates() throws EXistException, IOException, XPathException {
+        final FieldStatistics statistics = getStatistics(docs, "date", Type.DATE, null);
+        assertEquals(3, statistics.getCount());
+        assertEquals("2009-01-15", statistics.getMin().getStringValue());
+        assertEquals("2011-12-31", statistics.getMax().getStringValue());
+    }
+
+    @Test
+    public void sumAndAverage() throws EXistException, IOException, XPathException {
+        final FieldStatistics integers = getStatistics(docs, "n", Type.INTEGER, null);
+        assertEquals(4, integers.getValueCount());
+        assertEquals("16", integers.getSum().getStringValue());
+        assertEquals("4", integers.getAverage().getStringValue());
+
+        final FieldStatistics doubles = getStatistics(docs, "price", Type.DOUBLE, null);
+        assertEquals(119.4, ((DoubleValue) doubles.getSum()).getDouble(), 0.000001);
+        assertEquals(29.85, ((DoubleValue) doubles.getAverage()).getDouble(), 0.000001);
+    }
+
+    @Test
+    public void histogram() throws EXistException, IOException, XPathException {
+        final FieldStatistics statistics = getStatistics(docs, "n", new FieldStatistics(Type.INTEGER, 5));
+        final Map<Double, Long> expected = new TreeMap<>();
+        expected.put(0.0, 3L);
+        expected.put(10.0, 1L);
+        assertEquals(expected, statistics.getHistogram());
+    }
+
+    @Test
+    public void restrictedToDocuments() throws EXistException, IOException, XPathException {
+        final FieldStatistics statistics = getStatistics(new DefaultDocumentSet(), "n", Type.INTEGER, null);
+        assertEquals(0, statistics.getCount());
+        assertNull(statistics.getMin());
+        assertNull(statistics.getMax());
+    }
+
+    private static FieldStatistics getStatistics(final DocumentSet docs, final String attribute, final FieldStatistics statistics)
+            throws EXistException, IOException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final RangeIndexWorker worker = (RangeIndexWorker) broker.getIndexController().getWorkerByIndexId(RangeIndex.ID);
+            final QName qname = new QName(attribute, XMLConstants.NULL_NS_URI, ElementValue.ATTRIBUTE);
+            return worker.getStatistics(docs, LuceneUtil.encodeQName(qname, pool.getSymbols()), null, statistics);
+        }
+    }
+
+    /**
+     * Compute the statistics of an attribute index, either over all values,
+     * or over the values greater than the given lower bound.
+     */
+    private static FieldStatistics getStatistics(final DocumentSet docs, final String attribute, final int type,
+            final IntegerValue greaterThan) throws EXistException, IOException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final RangeIndexWorker worker = (RangeIndexWorker) broker.getIndexController().getWorkerByIndexId(RangeIndex.ID);
+            final QName qname = new QName(attribute, XMLConstants.NULL_NS_URI, ElementValue.ATTRIBUTE);
+            final String field = LuceneUtil.encodeQName(qname, pool.getSymbols());
+            return worker.getStatistics(docs, field, type,
+                    greaterThan == null ? null : worker.toQuery(field, qname, greaterThan, RangeIndex.Operator.GT, docs));
+        }
+    }
+}
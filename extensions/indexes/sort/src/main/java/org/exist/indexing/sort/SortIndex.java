@@ -39,7 +39,7 @@ import org.exist.util.LockException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * SortIndex helps to improve the performance of 'order by' expressions in XQuery.
@@ -68,6 +68,8 @@ public class SortIndex extends AbstractIndex implements RawBackupSupport {
         try {
             btree = new BTreeStore(pool, SORT_INDEX_ID, FILE_FORMAT_VERSION_ID, false,
                     file, pool.getCacheManager());
+            // the sort index is a plain BTree, so queries may read it concurrently
+            pool.getLockManager().enableBtreeSharedReads(btree.getLockName());
         } catch (final DBException e) {
             LOG.error("Failed to initialize structural index: {}", e.getMessage(), e);
             throw new DatabaseConfigurationException(e.getMessage(), e);
@@ -85,7 +87,7 @@ public class SortIndex extends AbstractIndex implements RawBackupSupport {
         if (btree == null)
             return;
         final LockManager lockManager = pool.getLockManager();
-        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
+        try(final ManagedLock<ReentrantReadWriteLock> btreeLock = lockManager.acquireBtreeWriteLock(btree.getLockName())) {
             btree.flush();
         } catch (final LockException e) {
             LOG.warn("Failed to acquire lock for '{}'", FileUtils.fileName(btree.getFile()), e);